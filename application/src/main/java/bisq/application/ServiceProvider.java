@@ -17,6 +17,7 @@
 
 package bisq.application;
 
+import bisq.common.threading.ExecutorFactory;
 import bisq.common.util.ConfigUtil;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
@@ -31,12 +32,22 @@ public abstract class ServiceProvider {
     public ServiceProvider(String configFileName) {
         bisqConfig = ConfigFactory.load(configFileName);
         bisqConfig.checkValid(ConfigFactory.defaultReference(), configFileName);
+        applyThreadingConfig();
     }
 
     protected Config getConfig(String path) {
         return ConfigUtil.getConfig(bisqConfig, path);
     }
 
+    // Needs to be applied before the static executors (e.g. NetworkService.NETWORK_IO_POOL) get created.
+    private void applyThreadingConfig() {
+        if (bisqConfig.hasPath("bisq.threadingConfig")) {
+            Config threadingConfig = getConfig("bisq.threadingConfig");
+            ExecutorFactory.configureVirtualThreads(threadingConfig.getBoolean("useVirtualThreads"),
+                    threadingConfig.getBoolean("tracePinnedVirtualThreads"));
+        }
+    }
+
     public abstract CompletableFuture<Boolean> readAllPersisted();
 
     public abstract CompletableFuture<Boolean> initialize();
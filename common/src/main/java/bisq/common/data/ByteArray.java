@@ -18,6 +18,7 @@
 package bisq.common.data;
 
 import bisq.common.encoding.Hex;
+import lombok.AccessLevel;
 import lombok.Getter;
 
 import java.io.Serializable;
@@ -28,11 +29,16 @@ import java.util.Arrays;
  * equality if a record is used. We could override the equals methods but this would violate the semantics of a record.
  * We prefer to keep is as a normal class instead.
  * See: https://stackoverflow.com/questions/61261226/java-14-records-and-arrays
+ * <p>
+ * ByteArray is used as map key, so we cache the hashCode. The bytes must not be modified after construction.
  */
 @SuppressWarnings("ClassCanBeRecord")
 @Getter
 public class ByteArray implements Serializable {
     private final byte[] bytes;
+    // Lazily computed like in String. 0 means not computed yet.
+    @Getter(AccessLevel.NONE)
+    private transient int hashCode;
 
     public ByteArray(byte[] bytes) {
         this.bytes = bytes;
@@ -43,12 +49,17 @@ public class ByteArray implements Serializable {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ByteArray byteArray = (ByteArray) o;
-        return Arrays.equals(bytes, byteArray.bytes);
+        return hashCode() == byteArray.hashCode() && Arrays.equals(bytes, byteArray.bytes);
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(bytes);
+        int hashCode = this.hashCode;
+        if (hashCode == 0) {
+            hashCode = Arrays.hashCode(bytes);
+            this.hashCode = hashCode;
+        }
+        return hashCode;
     }
 
     @Override
@@ -22,6 +22,8 @@ import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 
+import java.lang.reflect.Method;
+import java.util.Optional;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -30,6 +32,31 @@ public class ExecutorFactory {
     public static final ExecutorService WORKER_POOL = newFixedThreadPool("Worker-pool");
     public static final AtomicInteger COUNTER = new AtomicInteger(0);
 
+    // Needs to be configured before any blocking IO executor got created.
+    private static volatile boolean useVirtualThreads;
+
+    /**
+     * @param useVirtualThreads  Use virtual threads for blocking IO executors if the runtime supports it (Java 21+).
+     * @param tracePinnedThreads Prints the stack trace if a virtual thread blocks while being pinned to its carrier
+     *                           thread (e.g. blocking inside a synchronized block). Only has an effect if called before
+     *                           the first virtual thread got created.
+     */
+    public static void configureVirtualThreads(boolean useVirtualThreads, boolean tracePinnedThreads) {
+        ExecutorFactory.useVirtualThreads = useVirtualThreads;
+        if (useVirtualThreads && tracePinnedThreads && System.getProperty("jdk.tracePinnedThreads") == null) {
+            System.setProperty("jdk.tracePinnedThreads", "short");
+        }
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return newVirtualThreadPerTaskExecutor("VirtualThreadSupportCheck")
+                .map(executor -> {
+                    executor.shutdown();
+                    return true;
+                })
+                .orElse(false);
+    }
+
     public static void shutdownAndAwaitTermination(ExecutorService executor) {
         shutdownAndAwaitTermination(executor, 100);
     }
@@ -74,6 +101,23 @@ public class ExecutorFactory {
         return executorService;
     }
 
+    /**
+     * For tasks which block on IO for a long time, like connecting to a peer or reading from a socket.
+     * Uses a new virtual thread per task if enabled and supported, otherwise a cached thread pool.
+     */
+    public static ExecutorService newBlockingIOExecutor(String name) {
+        if (useVirtualThreads) {
+            Optional<ExecutorService> executor = newVirtualThreadPerTaskExecutor(name);
+            if (executor.isPresent()) {
+                log.info("Using virtual threads for {}", name);
+                return executor.get();
+            }
+            log.warn("Virtual threads are not supported by the Java runtime {}. We use a cached thread pool for {}.",
+                    Runtime.version(), name);
+        }
+        return newCachedThreadPool(name);
+    }
+
     /**
      * Used when queuing is desired.
      */
@@ -89,6 +133,21 @@ public class ExecutorFactory {
         return Executors.newFixedThreadPool(numThreads, threadFactory);
     }
 
+    /**
+     * Creates threads on demand up to maxNumThreads. Tasks get queued if all threads are busy. Idle threads are
+     * terminated after keepAliveInSec.
+     */
+    public static ThreadPoolExecutor newBoundedThreadPool(String name, int maxNumThreads, long keepAliveInSec) {
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat(name + "-%d")
+                .setDaemon(true)
+                .build();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxNumThreads, maxNumThreads, keepAliveInSec,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     public static ThreadPoolExecutor getThreadPoolExecutor(String name,
                                                            int corePoolSize,
                                                            int maximumPoolSize,
@@ -109,4 +168,32 @@ public class ExecutorFactory {
         return new ThreadPoolExecutor(corePoolSize, maximumPoolSize, keepAliveTimeInSec,
                 TimeUnit.MILLISECONDS, workQueue, threadFactory);
     }
+
+    // We compile against Java versions without the virtual thread API, thus we access it by reflection.
+    // Equivalent to Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory())
+    private static Optional<ExecutorService> newVirtualThreadPerTaskExecutor(String name) {
+        return getOfVirtualMethod().flatMap(ofVirtual -> {
+            try {
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                Object builder = ofVirtual.invoke(null);
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+                ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+                Object executor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                        .invoke(null, threadFactory);
+                return Optional.of((ExecutorService) executor);
+            } catch (ReflectiveOperationException e) {
+                // Java 19 and 20 throw an UnsupportedOperationException if preview features are not enabled
+                log.debug("Could not create virtual thread executor", e);
+                return Optional.empty();
+            }
+        });
+    }
+
+    private static Optional<Method> getOfVirtualMethod() {
+        try {
+            return Optional.of(Thread.class.getMethod("ofVirtual"));
+        } catch (NoSuchMethodException e) {
+            return Optional.empty();
+        }
+    }
 }
@@ -0,0 +1,116 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.common.threading;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes tasks on a fixed number of single threaded lanes. Tasks with the same key are always executed on the same
+ * lane, thus in the order they have been added. Tasks with different keys might run in parallel.
+ * Tasks without a key are executed in order on the first lane.
+ */
+@Slf4j
+public class PartitionedExecutor implements Executor {
+    public record LaneMetrics(int queueSize, long numTasks, double averageLatencyMs, double maxLatencyMs) {
+    }
+
+    private static class Lane {
+        private final ExecutorService executor;
+        private final AtomicInteger queueSize = new AtomicInteger();
+        private final AtomicLong numTasks = new AtomicLong();
+        private final AtomicLong totalLatency = new AtomicLong();
+        private final AtomicLong maxLatency = new AtomicLong();
+
+        private Lane(String name) {
+            executor = ExecutorFactory.newSingleThreadExecutor(name);
+        }
+
+        private void execute(Runnable task) {
+            long enqueued = System.nanoTime();
+            queueSize.incrementAndGet();
+            executor.execute(() -> {
+                queueSize.decrementAndGet();
+                long latency = System.nanoTime() - enqueued;
+                numTasks.incrementAndGet();
+                totalLatency.addAndGet(latency);
+                maxLatency.accumulateAndGet(latency, Math::max);
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    log.error("Task failed", t);
+                }
+            });
+        }
+
+        private LaneMetrics getMetrics() {
+            long numTasks = this.numTasks.get();
+            double averageLatency = numTasks > 0 ? totalLatency.get() / (double) numTasks : 0;
+            return new LaneMetrics(queueSize.get(),
+                    numTasks,
+                    averageLatency / TimeUnit.MILLISECONDS.toNanos(1),
+                    maxLatency.get() / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private final Lane[] lanes;
+
+    public PartitionedExecutor(String name, int numLanes) {
+        lanes = new Lane[numLanes];
+        for (int i = 0; i < numLanes; i++) {
+            lanes[i] = new Lane(name);
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        lanes[0].execute(task);
+    }
+
+    public void execute(Object key, Runnable task) {
+        int hash = key.hashCode();
+        // Spread the high bits as hashCode of strings often differs only in the low bits
+        hash ^= hash >>> 16;
+        lanes[Math.floorMod(hash, lanes.length)].execute(task);
+    }
+
+    public int getNumLanes() {
+        return lanes.length;
+    }
+
+    /**
+     * @return Number of tasks waiting for execution at all lanes.
+     */
+    public int getQueueSize() {
+        return Arrays.stream(lanes).mapToInt(lane -> lane.queueSize.get()).sum();
+    }
+
+    /**
+     * Latency is the time a task has been waiting in the queue of its lane.
+     */
+    public List<LaneMetrics> getLaneMetrics() {
+        return Arrays.stream(lanes).map(Lane::getMetrics).toList();
+    }
+}
@@ -18,28 +18,38 @@
 package bisq.common.timer;
 
 import bisq.common.threading.ExecutorFactory;
+import bisq.common.util.OsUtils;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
+import javax.annotation.Nullable;
 import java.util.Optional;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class Scheduler implements TaskScheduler {
-    // We do not use a ScheduledThreadPoolExecutor as the queue cannot be customized. It would cause undesired behaviour 
-    // in case we would use a static executor for all Scheduler instances and multiple schedule calls would get 
-    // queued up instead of starting a new scheduler.
-    private final ScheduledExecutorService executor;
+    // All schedulers share one timer thread. Expired tasks are executed on a bounded pool so that a slow task does not
+    // delay the timer. Periodic tasks get rescheduled only after the task has completed, thus a task never overlaps with
+    // itself (fixed delay semantics).
+    // Tasks must not block, as they share the pool with all other schedulers. Blocking tasks have to set their own
+    // executor (e.g. the network IO pool) by using `executor`.
+    public static final TimerWheel TIMER_WHEEL = new TimerWheel("Scheduler.timer", 10, 512,
+            ExecutorFactory.newBoundedThreadPool("Scheduler.task",
+                    Math.max(4, 2 * OsUtils.availableProcessors()), 60));
+
     private final Runnable task;
     private volatile boolean stopped;
     @Getter
-    private long counter;
+    private volatile long counter;
     private Optional<String> threadName = Optional.empty();
+    private Optional<Executor> executor = Optional.empty();
+    @Nullable
+    private volatile TimerWheel.Timeout timeout;
 
     private Scheduler(Runnable task) {
         this.task = task;
-        executor = ExecutorFactory.newSingleThreadScheduledExecutor("Scheduler");
     }
 
     public static Scheduler run(Runnable task) {
@@ -51,6 +61,15 @@ public class Scheduler implements TaskScheduler {
         return this;
     }
 
+    /**
+     * Runs the task on the given executor instead of the shared scheduler pool. Needs to be set before the task gets
+     * scheduled.
+     */
+    public Scheduler executor(Executor executor) {
+        this.executor = Optional.of(executor);
+        return this;
+    }
+
     @Override
     public Scheduler after(long delayMs) {
         return after(delayMs, TimeUnit.MILLISECONDS);
@@ -85,40 +104,47 @@ public class Scheduler implements TaskScheduler {
             log.warn("Delay must be > 0. We set it to 1 ms.");
             delay = 1;
         }
-        if (cycles == 1) {
-            executor.schedule(() -> {
-                if (stopped) {
-                    return;
-                }
-                threadName.ifPresent(name -> Thread.currentThread().setName(name));
-                try {
-                    task.run();
-                } finally {
-                    stopped = true;
-                }
-            }, delay, timeUnit);
-        } else {
-            executor.scheduleWithFixedDelay(() -> {
-                if (stopped) {
-                    return;
-                }
-                threadName.ifPresent(name -> Thread.currentThread().setName(name));
-                try {
-                    task.run();
-                } finally {
-                    counter++;
-                    if (counter >= cycles) {
-                        stop();
-                    }
-                }
-            }, delay, delay, timeUnit);
-        }
+        schedule(delay, timeUnit, cycles);
         return this;
     }
 
     @Override
     public void stop() {
         stopped = true;
-        ExecutorFactory.shutdownAndAwaitTermination(executor);
+        TimerWheel.Timeout timeout = this.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private void schedule(long delay, TimeUnit timeUnit, long cycles) {
+        Runnable runnable = () -> {
+            if (stopped) {
+                return;
+            }
+            Thread thread = Thread.currentThread();
+            String previousName = thread.getName();
+            threadName.ifPresent(thread::setName);
+            try {
+                task.run();
+            } catch (Throwable t) {
+                log.error("Scheduled task failed", t);
+            } finally {
+                thread.setName(previousName);
+                counter++;
+                if (counter >= cycles) {
+                    stop();
+                } else if (!stopped) {
+                    schedule(delay, timeUnit, cycles);
+                }
+            }
+        };
+        timeout = TIMER_WHEEL.schedule(executor.<Runnable>map(executor -> () -> {
+            try {
+                executor.execute(runnable);
+            } catch (RejectedExecutionException e) {
+                log.warn("Task got rejected by executor. {}", e.toString());
+            }
+        }).orElse(runnable), delay, timeUnit);
     }
 }
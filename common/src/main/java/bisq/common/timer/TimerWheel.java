@@ -0,0 +1,181 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.common.timer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Hashed timer wheel (see Varghese and Lauck, "Hashed and Hierarchical Timing Wheels"). A single thread advances the
+ * wheel each tick and hands expired tasks to the executor, so the timer thread is never blocked by the tasks.
+ * Scheduling and cancellation are O(1). The precision is limited to the tick duration.
+ */
+@Slf4j
+public class TimerWheel {
+    public static class Timeout {
+        private final Runnable task;
+        // Nanos relative to the start time of the wheel
+        private final long deadline;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final String name;
+    private final long tickNanos;
+    private final int mask;
+    private final ArrayDeque<Timeout>[] wheel;
+    private final Executor executor;
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final long startTime = System.nanoTime();
+    private final AtomicLong maxLagMs = new AtomicLong();
+    @Nullable
+    private volatile LongConsumer lagListener;
+    @Nullable
+    private Thread workerThread;
+    // Only accessed by the worker thread
+    private long tick;
+
+    /**
+     * @param wheelSize Number of buckets. Gets rounded up to a power of 2.
+     */
+    public TimerWheel(String name, long tickDurationMs, int wheelSize, Executor executor) {
+        this.name = name;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickDurationMs);
+        this.executor = executor;
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        mask = size - 1;
+        //noinspection unchecked
+        wheel = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+    }
+
+    public Timeout schedule(Runnable task, long delay, TimeUnit timeUnit) {
+        startIfNotStarted();
+        long deadline = System.nanoTime() - startTime + timeUnit.toNanos(delay);
+        Timeout timeout = new Timeout(task, deadline);
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * The listener gets called with the lag in ms (time between deadline and dispatch) for each dispatched task.
+     */
+    public void setLagListener(@Nullable LongConsumer lagListener) {
+        this.lagListener = lagListener;
+    }
+
+    public long getMaxLagMs() {
+        return maxLagMs.get();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private synchronized void startIfNotStarted() {
+        if (workerThread == null) {
+            workerThread = new Thread(this::run, name);
+            workerThread.setDaemon(true);
+            workerThread.start();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            waitForNextTick();
+            transferPendingTimeouts();
+            expireTimeouts();
+            tick++;
+        }
+    }
+
+    private void waitForNextTick() {
+        long deadline = startTime + (tick + 1) * tickNanos;
+        long sleepNanos;
+        while ((sleepNanos = deadline - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(TimeUnit.NANOSECONDS.toMillis(sleepNanos) + 1);
+            } catch (InterruptedException ignore) {
+            }
+        }
+    }
+
+    private void transferPendingTimeouts() {
+        Timeout timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            // If the deadline is already passed we expire it at the current tick
+            long ticks = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expireTimeouts() {
+        Iterator<Timeout> iterator = wheel[(int) (tick & mask)].iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.cancelled) {
+                iterator.remove();
+            } else if (timeout.remainingRounds <= 0) {
+                iterator.remove();
+                dispatch(timeout);
+            } else {
+                timeout.remainingRounds--;
+            }
+        }
+    }
+
+    private void dispatch(Timeout timeout) {
+        long lagMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime - timeout.deadline);
+        maxLagMs.accumulateAndGet(lagMs, Math::max);
+        LongConsumer listener = lagListener;
+        if (listener != null) {
+            listener.accept(lagMs);
+        }
+        try {
+            executor.execute(timeout.task);
+        } catch (RejectedExecutionException e) {
+            log.warn("Task got rejected by executor. {}", e.toString());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.common.threading;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExecutorFactoryTest {
+    @Test
+    public void testBlockingIOExecutor() throws ExecutionException, InterruptedException {
+        try {
+            ExecutorService executor = ExecutorFactory.newBlockingIOExecutor("test");
+            assertTrue(executor instanceof ThreadPoolExecutor);
+            assertFalse(isVirtual(executor.submit(Thread::currentThread).get()));
+
+            ExecutorFactory.configureVirtualThreads(true, false);
+            executor = ExecutorFactory.newBlockingIOExecutor("test");
+            Thread thread = executor.submit(Thread::currentThread).get();
+            // Falls back to a thread pool at Java versions without virtual threads
+            assertEquals(ExecutorFactory.isVirtualThreadsSupported(), isVirtual(thread));
+            assertEquals(ExecutorFactory.isVirtualThreadsSupported(), !(executor instanceof ThreadPoolExecutor));
+        } finally {
+            ExecutorFactory.configureVirtualThreads(false, false);
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        try {
+            return (boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+}
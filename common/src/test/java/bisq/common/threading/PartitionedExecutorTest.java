@@ -0,0 +1,80 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.common.threading;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PartitionedExecutorTest {
+    @Test
+    public void testOrderPerKey() throws InterruptedException {
+        PartitionedExecutor executor = new PartitionedExecutor("test", 4);
+        int numKeys = 20;
+        int numTasksPerKey = 1000;
+        CountDownLatch latch = new CountDownLatch(numKeys * numTasksPerKey);
+        Map<String, List<Integer>> resultsByKey = new ConcurrentHashMap<>();
+        for (int i = 0; i < numTasksPerKey; i++) {
+            for (int k = 0; k < numKeys; k++) {
+                String key = "key" + k;
+                int value = i;
+                executor.execute(key, () -> {
+                    resultsByKey.computeIfAbsent(key, e -> new CopyOnWriteArrayList<>()).add(value);
+                    latch.countDown();
+                });
+            }
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        resultsByKey.values().forEach(results -> {
+            assertEquals(numTasksPerKey, results.size());
+            for (int i = 0; i < numTasksPerKey; i++) {
+                assertEquals(i, (int) results.get(i));
+            }
+        });
+        assertEquals(numKeys * numTasksPerKey,
+                executor.getLaneMetrics().stream().mapToLong(PartitionedExecutor.LaneMetrics::numTasks).sum());
+    }
+
+    @Test
+    public void testSlowTaskDoesNotBlockOtherLanes() throws InterruptedException {
+        PartitionedExecutor executor = new PartitionedExecutor("test", 2);
+        CountDownLatch blockingTaskLatch = new CountDownLatch(1);
+        executor.execute(0, () -> {
+            try {
+                blockingTaskLatch.await();
+            } catch (InterruptedException ignore) {
+            }
+        });
+        executor.execute(0, () -> {
+        });
+        CountDownLatch otherLaneLatch = new CountDownLatch(1);
+        executor.execute(1, otherLaneLatch::countDown);
+
+        assertTrue(otherLaneLatch.await(1, TimeUnit.SECONDS));
+        assertEquals(1, executor.getQueueSize());
+        blockingTaskLatch.countDown();
+    }
+}
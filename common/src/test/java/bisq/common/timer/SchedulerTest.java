@@ -0,0 +1,101 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.common.timer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SchedulerTest {
+    @Test
+    public void testTimerWheel() throws InterruptedException {
+        TimerWheel timerWheel = new TimerWheel("test", 10, 8, Executors.newSingleThreadExecutor());
+        CountDownLatch latch = new CountDownLatch(2);
+        long start = System.currentTimeMillis();
+        // Exceeds one round of the wheel (8 * 10 ms)
+        timerWheel.schedule(latch::countDown, 250, TimeUnit.MILLISECONDS);
+        timerWheel.schedule(latch::countDown, 20, TimeUnit.MILLISECONDS);
+        AtomicBoolean cancelledTaskExecuted = new AtomicBoolean();
+        timerWheel.schedule(() -> cancelledTaskExecuted.set(true), 50, TimeUnit.MILLISECONDS).cancel();
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 250);
+        Thread.sleep(100);
+        assertFalse(cancelledTaskExecuted.get());
+    }
+
+    @Test
+    public void testRepeated() throws InterruptedException {
+        AtomicInteger numRuns = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(3);
+        Scheduler scheduler = Scheduler.run(() -> {
+            numRuns.incrementAndGet();
+            latch.countDown();
+        }).name("testRepeated").repeated(20, 3);
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(3, numRuns.get());
+        assertEquals(3, scheduler.getCounter());
+    }
+
+    @Test
+    public void testStop() throws InterruptedException {
+        AtomicInteger numRuns = new AtomicInteger();
+        Scheduler scheduler = Scheduler.run(numRuns::incrementAndGet).periodically(20);
+        Thread.sleep(200);
+        scheduler.stop();
+        int numRunsAtStop = numRuns.get();
+        assertTrue(numRunsAtStop > 0);
+        Thread.sleep(100);
+        assertTrue(numRuns.get() <= numRunsAtStop + 1);
+    }
+
+    @Test
+    public void testExecutor() throws InterruptedException {
+        AtomicReference<Thread> executorThread = new AtomicReference<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "testExecutor");
+            executorThread.set(thread);
+            return thread;
+        });
+        AtomicReference<Thread> taskThread = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(2);
+        Scheduler scheduler = Scheduler.run(() -> {
+            taskThread.set(Thread.currentThread());
+            latch.countDown();
+        }).executor(executor).repeated(20, 2);
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertSame(executorThread.get(), taskThread.get());
+        Thread.sleep(100);
+        assertEquals(2, scheduler.getCounter());
+        executor.shutdownNow();
+    }
+}
@@ -25,6 +25,7 @@ import bisq.network.p2p.message.Message;
 import bisq.network.p2p.node.CloseReason;
 import bisq.network.p2p.node.Connection;
 import bisq.network.p2p.node.Metrics;
+import bisq.network.p2p.node.RttStats;
 import bisq.presentation.formatters.DateFormatter;
 import bisq.presentation.formatters.TimeFormatter;
 import javafx.beans.property.SimpleStringProperty;
@@ -93,9 +94,9 @@ public class ConnectionListItem implements TableItem {
     }
 
     private void updateRtt() {
-        long rrt = Math.round(metrics.getAverageRtt());
-        if (rrt > 0) {
-            rtt.set(TimeFormatter.formatTime(rrt));
+        RttStats rttStats = metrics.getRttStats();
+        if (rttStats.hasSamples()) {
+            rtt.set(TimeFormatter.formatTime(Math.round(rttStats.getEwma())));
         }
     }
 
@@ -136,7 +137,7 @@ public class ConnectionListItem implements TableItem {
     }
 
     public int compareRtt(ConnectionListItem other) {
-        return 0;//todo
+        return Double.compare(metrics.getRttStats().getEwma(), other.metrics.getRttStats().getEwma());
     }
 
     @Override
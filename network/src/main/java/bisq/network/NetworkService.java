@@ -19,8 +19,10 @@ package bisq.network;
 
 
 import bisq.common.threading.ExecutorFactory;
+import bisq.common.threading.PartitionedExecutor;
 import bisq.common.util.CompletableFutureUtils;
 import bisq.common.util.NetworkUtils;
+import bisq.common.util.OsUtils;
 import bisq.network.http.HttpService;
 import bisq.network.http.common.BaseHttpClient;
 import bisq.network.p2p.ServiceNode;
@@ -64,8 +66,11 @@ import static java.util.concurrent.CompletableFuture.supplyAsync;
  */
 @Slf4j
 public class NetworkService implements PersistenceClient<HashMap<String, NetworkId>> {
-    public static final ExecutorService NETWORK_IO_POOL = ExecutorFactory.newCachedThreadPool("NetworkService.network-IO-pool");
-    public static final ExecutorService DISPATCHER = ExecutorFactory.newSingleThreadExecutor("NetworkService.dispatcher");
+    public static final ExecutorService NETWORK_IO_POOL = ExecutorFactory.newBlockingIOExecutor("NetworkService.network-IO-pool");
+    // Messages and events of a connection are dispatched in order by using the connection id as key. Tasks without key
+    // are dispatched in order at the first lane.
+    public static final PartitionedExecutor DISPATCHER = new PartitionedExecutor("NetworkService.dispatcher",
+            Math.max(2, OsUtils.availableProcessors()));
     @Getter
     private final Persistence<HashMap<String, NetworkId>> persistence;
 
@@ -286,6 +291,14 @@ public class NetworkService implements PersistenceClient<HashMap<String, Network
         dataService.orElseThrow().requestInventory(storeName);
     }
 
+    /**
+     * Sets the priority of the store with the given file name for paged inventory responses we send to our peers.
+     * See StorageService.DEFAULT_INVENTORY_PRIORITY.
+     */
+    public void setInventoryPriority(String fileName, int priority) {
+        dataService.ifPresent(service -> service.setInventoryPriority(fileName, priority));
+    }
+
 
     ///////////////////////////////////////////////////////////////////////////////////////////////////
     // Listeners
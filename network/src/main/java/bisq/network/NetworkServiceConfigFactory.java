@@ -46,12 +46,16 @@ public class NetworkServiceConfigFactory {
         supportedTransportTypes = Set.of(Transport.Type.CLEAR);
         supportedTransportTypes = Set.of(Transport.Type.TOR);*/
 
+        Config serviceNodeTypesafeConfig = typesafeConfig.getConfig("serviceNodeConfig");
+        boolean sessionModeEnabled = serviceNodeTypesafeConfig.hasPath("sessionModeEnabled") &&
+                serviceNodeTypesafeConfig.getBoolean("sessionModeEnabled");
         ServiceNode.Config serviceNodeConfig = new ServiceNode.Config(Set.of(
                 ServiceNode.Service.CONFIDENTIAL,
                 ServiceNode.Service.PEER_GROUP,
                 ServiceNode.Service.DATA,
                 ServiceNode.Service.RELAY,
-                ServiceNode.Service.MONITOR));
+                ServiceNode.Service.MONITOR),
+                sessionModeEnabled);
 
         Config seedConfig = typesafeConfig.getConfig("seedAddressByTransportType");
         Map<Transport.Type, List<Address>> seedAddressesByTransport = Map.of(
@@ -63,7 +63,10 @@ import static java.util.concurrent.CompletableFuture.runAsync;
 public class ServiceNode {
     private static final Logger log = LoggerFactory.getLogger(ServiceNode.class);
 
-    public static record Config(Set<Service> services) {
+    /**
+     * @param sessionModeEnabled See ConfidentialMessageService
+     */
+    public static record Config(Set<Service> services, boolean sessionModeEnabled) {
     }
 
     public interface Listener {
@@ -138,7 +141,10 @@ public class ServiceNode {
         }
 
         if (services.contains(Service.CONFIDENTIAL)) {
-            confidentialMessageService = Optional.of(new ConfidentialMessageService(nodesById, keyPairService, dataService));
+            confidentialMessageService = Optional.of(new ConfidentialMessageService(nodesById,
+                    keyPairService,
+                    dataService,
+                    config.sessionModeEnabled()));
         }
     }
 
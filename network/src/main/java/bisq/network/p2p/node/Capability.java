@@ -17,11 +17,25 @@
 
 package bisq.network.p2p.node;
 
+import bisq.network.p2p.node.codec.Compression;
+import bisq.network.p2p.node.codec.WireCodec;
 import bisq.network.p2p.node.transport.Transport;
 
+import javax.annotation.Nullable;
 import java.io.Serializable;
 import java.util.Set;
 
+/**
+ * @param supportedWireCodecTypes Is null if the peer runs a version which did not support WireCodec negotiation.
+ * @param supportedCompressions   Is null if the peer runs a version which did not support compression.
+ * @param supportedFeatures       Is null if the peer runs a version which did not announce its features.
+ */
 public record Capability(Address address,
-                         Set<Transport.Type> supportedTransportTypes) implements Serializable {
+                         Set<Transport.Type> supportedTransportTypes,
+                         @Nullable Set<WireCodec.Type> supportedWireCodecTypes,
+                         @Nullable Set<Compression> supportedCompressions,
+                         @Nullable Set<Feature> supportedFeatures) implements Serializable {
+    public boolean supports(Feature feature) {
+        return Feature.isSupported(feature, supportedFeatures);
+    }
 }
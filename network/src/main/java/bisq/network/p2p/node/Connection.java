@@ -19,20 +19,30 @@ package bisq.network.p2p.node;
 
 import bisq.common.util.StringUtils;
 import bisq.network.NetworkService;
+import bisq.network.p2p.message.ControlMessage;
 import bisq.network.p2p.message.Envelope;
 import bisq.network.p2p.message.Message;
 import bisq.network.p2p.message.Version;
 import bisq.network.p2p.node.authorization.AuthorizedMessage;
+import bisq.network.p2p.node.codec.Compression;
+import bisq.network.p2p.node.codec.FrameDecoder;
+import bisq.network.p2p.node.codec.WireCodec;
+import bisq.network.p2p.services.data.SeenMessageCache;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Future;
 import java.util.function.BiConsumer;
@@ -51,6 +61,8 @@ public abstract class Connection {
         void onMessage(Message message, Connection connection);
 
         void onConnectionClosed(Connection connection, CloseReason closeReason);
+
+        void onSeenMessageDropped(Connection connection);
     }
 
     public interface Listener {
@@ -68,12 +80,27 @@ public abstract class Connection {
     private final Load peersLoad;
     @Getter
     private final Metrics metrics;
+    // Unique per connection and known to both peers. Null if the peer runs an older version.
+    @Nullable
+    @Getter
+    private final byte[] channelBinding;
 
     private final Socket socket;
     private final Handler handler;
     private final Set<Listener> listeners = new CopyOnWriteArraySet<>();
-    private ObjectInputStream objectInputStream;
-    private ObjectOutputStream objectOutputStream;
+    private CountingInputStream inputStream;
+    private CountingOutputStream outputStream;
+    private WireCodec wireCodec;
+    private final WireCodec.Type wireCodecType;
+    private final Compression compression;
+    @Nullable
+    private final SeenMessageCache seenMessageCache;
+    @Nullable
+    private NioConnectionChannel nioChannel;
+    // Send can be called from different threads. The queue ensures that only one writer is active.
+    private final SendQueue sendQueue = new SendQueue(this::write,
+            NetworkService.NETWORK_IO_POOL,
+            this::onWriteException);
     @Nullable
     private Future<?> future;
 
@@ -84,6 +111,10 @@ public abstract class Connection {
                          Capability peersCapability,
                          Load peersLoad,
                          Metrics metrics,
+                         WireCodec.Type wireCodecType,
+                         Compression compression,
+                         @Nullable byte[] channelBinding,
+                         @Nullable SeenMessageCache seenMessageCache,
                          Handler handler,
                          BiConsumer<Connection, Exception> errorHandler) {
         this.socket = socket;
@@ -91,15 +122,39 @@ public abstract class Connection {
         this.peersLoad = peersLoad;
         this.handler = handler;
         this.metrics = metrics;
-        // TODO java serialisation is just for dev, will be replaced by custom serialisation
-        // https://github.com/lightningnetwork/lightning-rfc/blob/master/01-messaging.md#type-length-value-format
-        // ObjectOutputStream need to be set before objectInputStream otherwise we get blocked...
-        // https://stackoverflow.com/questions/14110986/new-objectinputstream-blocks/14111047
+        this.wireCodecType = wireCodecType;
+        this.compression = compression;
+        this.channelBinding = channelBinding;
+        this.seenMessageCache = seenMessageCache;
+        // Clear-net sockets are backed by a channel. The JAVA_SERIALIZATION codec requires a blocking stream, thus only
+        // connections using LENGTH_PREFIXED framing are handled by the event loop.
+        SocketChannel channel = socket.getChannel();
+        if (channel != null && wireCodecType == WireCodec.Type.LENGTH_PREFIXED) {
+            try {
+                nioChannel = new NioConnectionChannel(channel,
+                        (frame, numBytes) -> onFrame(frame, numBytes, errorHandler),
+                        exception -> onReadException(exception, errorHandler),
+                        sendQueue::resume);
+            } catch (IOException exception) {
+                log.error("Could not create nioChannel", exception);
+                errorHandler.accept(this, exception);
+                close(CloseReason.EXCEPTION.exception(exception));
+            }
+            return;
+        }
+
         try {
-            objectOutputStream = new ObjectOutputStream(socket.getOutputStream());
-            objectInputStream = new ObjectInputStream(socket.getInputStream());
+            inputStream = new CountingInputStream(socket.getInputStream());
+            // We count the bytes before buffering to get the size of each written envelope.
+            outputStream = new CountingOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            wireCodec = WireCodec.create(wireCodecType,
+                    inputStream,
+                    outputStream,
+                    seenMessageCache,
+                    compression,
+                    metrics.getCompressionStats());
         } catch (IOException exception) {
-            log.error("Could not create objectOutputStream/objectInputStream", exception);
+            log.error("Could not create wireCodec", exception);
             errorHandler.accept(this, exception);
             close(CloseReason.EXCEPTION.exception(exception));
             return;
@@ -108,57 +163,53 @@ public abstract class Connection {
             Thread.currentThread().setName("Connection.read-" + getThreadNameId());
             try {
                 while (isNotStopped()) {
-                    Object msg = objectInputStream.readObject();
-                    if (isNotStopped()) {
-                        String simpleName = msg.getClass().getSimpleName();
-                        if (!(msg instanceof Envelope envelope)) {
-                            throw new ConnectionException("Received message not type of Envelope. " + simpleName);
-                        }
-                        if (envelope.version() != Version.VERSION) {
-                            throw new ConnectionException("Invalid network version. " + simpleName);
-                        }
-                        log.debug("Received message: {} at: {}", StringUtils.truncate(envelope.payload().toString(), 200), this);
-                        metrics.onMessage(envelope.payload());
-                        NetworkService.DISPATCHER.submit(() -> handler.onMessage(envelope.payload(), this));
-                    }
+                    long numBytesBefore = inputStream.getCount();
+                    Envelope envelope = wireCodec.read();
+                    onEnvelope(envelope, inputStream.getCount() - numBytesBefore);
                 }
             } catch (Exception exception) {
-                //todo StreamCorruptedException from i2p at shutdown. prob it send some text data at shut down
-                if (!isStopped) {
-                    log.debug("Call shutdown from startListen read handler {} due exception={}", this, exception.toString());
-                    close(CloseReason.EXCEPTION.exception(exception));
-                    // EOFException expected if connection got closed
-                    if (!(exception instanceof EOFException)) {
-                        errorHandler.accept(this, exception);
-                    }
-                }
+                onReadException(exception, errorHandler);
             }
         });
     }
 
+    /**
+     * Blocks until the message has been written.
+     *
+     * @throws SendQueueFullException if the send queue is full. The connection is still usable.
+     * @throws ConnectionException    if the write failed. The connection gets closed.
+     */
     Connection send(AuthorizedMessage message) {
+        return sendAsync(message).join();
+    }
+
+    /**
+     * Adds the message to the send queue. ControlMessages are sent before other queued messages.
+     *
+     * @return Future which completes once the message has been written. Completes exceptionally with a
+     * SendQueueFullException if the send queue is full.
+     */
+    CompletableFuture<Connection> sendAsync(AuthorizedMessage message) {
         if (isStopped) {
             log.warn("Message not sent as connection has been shut down already. Message={}, Connection={}",
                     StringUtils.truncate(message.toString(), 200), this);
-            throw new ConnectionClosedException(this);
-        }
-        try {
-            Envelope envelope = new Envelope(message, Version.VERSION);
-            objectOutputStream.writeObject(envelope);
-            objectOutputStream.flush();
-            metrics.sent(message);
-            log.debug("Sent {} from {}",
-                    StringUtils.truncate(message.toString(), 300), this);
-            return this;
-        } catch (IOException exception) {
-            if (!isStopped) {
-                log.debug("Call shutdown from send {} due exception={}", this, exception.toString());
-                close(CloseReason.EXCEPTION.exception(exception));
-            }
-            // We wrap any exception (also expected EOFException in case of connection close), to inform the caller 
-            // that the "send proto" intent failed.
-            throw new ConnectionException(exception);
+            return CompletableFuture.failedFuture(new ConnectionClosedException(this));
         }
+        Envelope envelope = new Envelope(message, Version.VERSION);
+        boolean isHighPriority = message.message() instanceof ControlMessage;
+        return sendQueue.add(envelope, isHighPriority, () -> new SendQueueFullException(this))
+                .thenApply(__ -> {
+                    log.debug("Sent {} from {}", StringUtils.truncate(message.toString(), 300), this);
+                    return this;
+                });
+    }
+
+    public int getSendQueueSize() {
+        return sendQueue.size();
+    }
+
+    public boolean isSendQueueFull() {
+        return sendQueue.isFull();
     }
 
     void close(CloseReason closeReason) {
@@ -171,12 +222,13 @@ public abstract class Connection {
         if (future != null) {
             future.cancel(true);
         }
+        sendQueue.close(new ConnectionClosedException(this));
         try {
             socket.close();
         } catch (IOException e) {
             log.error("Error at socket.close", e);
         }
-        NetworkService.DISPATCHER.submit(() -> {
+        NetworkService.DISPATCHER.execute(id, () -> {
             handler.onConnectionClosed(this, closeReason);
             listeners.forEach(listener -> listener.onConnectionClosed(closeReason));
             listeners.clear();
@@ -221,9 +273,100 @@ public abstract class Connection {
     public String toString() {
         return "'" + getClass().getSimpleName() + " [peerAddress=" + getPeersCapability().address() +
                 ", socket=" + socket +
+                ", wireCodec=" + wireCodecType +
                 ", keyId=" + getId() + "]'";
     }
 
+    // Called only from the single writer of the send queue
+    private boolean write(List<Envelope> envelopes) throws IOException {
+        if (nioChannel != null) {
+            ByteBuffer[] buffers = new ByteBuffer[envelopes.size()];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = FrameDecoder.encode(envelopes.get(i), compression, metrics.getCompressionStats());
+                metrics.onSent(envelopes.get(i).payload(), buffers[i].remaining());
+            }
+            return nioChannel.write(buffers);
+        }
+
+        for (Envelope envelope : envelopes) {
+            long numBytesBefore = outputStream.getCount();
+            wireCodec.write(envelope);
+            metrics.onSent(envelope.payload(), outputStream.getCount() - numBytesBefore);
+        }
+        wireCodec.flush();
+        return true;
+    }
+
+    private void onWriteException(Exception exception) {
+        if (!isStopped) {
+            log.debug("Call shutdown from write {} due exception={}", this, exception.toString());
+            close(CloseReason.EXCEPTION.exception(exception));
+        }
+    }
+
+    // Called from the reader thread
+    private void onEnvelope(@Nullable Envelope envelope, long numBytes) {
+        if (isStopped) {
+            return;
+        }
+        verifyAndCount(envelope, numBytes);
+        NetworkService.DISPATCHER.execute(id, () -> dispatch(envelope));
+    }
+
+    // Called from the event loop. The frames get decoded at the dispatcher thread of that connection, so that
+    // decompression and deserialization of large messages do not block the other connections of the event loop.
+    private void onFrame(byte[] frame, int numBytes, BiConsumer<Connection, Exception> errorHandler) {
+        if (isStopped) {
+            return;
+        }
+        NetworkService.DISPATCHER.execute(id, () -> {
+            if (isStopped) {
+                return;
+            }
+            try {
+                Envelope envelope = FrameDecoder.decodeFrame(frame, seenMessageCache, metrics.getCompressionStats());
+                verifyAndCount(envelope, numBytes);
+                dispatch(envelope);
+            } catch (Exception exception) {
+                onReadException(exception, errorHandler);
+            }
+        });
+    }
+
+    private void verifyAndCount(@Nullable Envelope envelope, long numBytes) {
+        if (envelope == null) {
+            // The codec has dropped a data request we have seen already
+            metrics.onSeenMessageDropped(numBytes);
+            return;
+        }
+        if (envelope.version() != Version.VERSION) {
+            throw new ConnectionException("Invalid network version. " +
+                    envelope.payload().getClass().getSimpleName());
+        }
+        log.debug("Received message: {} at: {}", StringUtils.truncate(envelope.payload().toString(), 200), this);
+        metrics.onReceived(envelope.payload(), numBytes);
+    }
+
+    private void dispatch(@Nullable Envelope envelope) {
+        if (envelope == null) {
+            handler.onSeenMessageDropped(this);
+        } else {
+            handler.onMessage(envelope.payload(), this);
+        }
+    }
+
+    private void onReadException(Exception exception, BiConsumer<Connection, Exception> errorHandler) {
+        //todo StreamCorruptedException from i2p at shutdown. prob it send some text data at shut down
+        if (!isStopped) {
+            log.debug("Call shutdown from read handler {} due exception={}", this, exception.toString());
+            close(CloseReason.EXCEPTION.exception(exception));
+            // EOFException expected if connection got closed
+            if (!(exception instanceof EOFException)) {
+                errorHandler.accept(this, exception);
+            }
+        }
+    }
+
     private String getThreadNameId() {
         return StringUtils.truncate(getPeersCapability().address().toString() + "-" + id.substring(0, 8));
     }
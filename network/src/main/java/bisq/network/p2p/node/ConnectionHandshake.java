@@ -23,23 +23,36 @@ import bisq.network.p2p.message.Message;
 import bisq.network.p2p.message.Version;
 import bisq.network.p2p.node.authorization.AuthorizationService;
 import bisq.network.p2p.node.authorization.AuthorizationToken;
+import bisq.network.p2p.node.codec.Compression;
+import bisq.network.p2p.node.codec.WireCodec;
 import bisq.network.p2p.services.peergroup.BanList;
+import bisq.security.DigestUtil;
+import com.google.common.io.CountingInputStream;
+import com.google.common.primitives.Bytes;
+import com.google.common.io.CountingOutputStream;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.net.SocketException;
+import java.security.SecureRandom;
 
 /**
  * At initial connection we exchange capabilities and require a valid AuthorizationToken (e.g. PoW).
  * The Client sends a Request and awaits for the servers Response.
  * The server awaits the Request and sends the Response.
+ * Both peers send a random nonce. The hash of both nonces is the channelBinding, which is unique per connection.
+ * Peers running an older version do not send a nonce.
  */
 @Slf4j
 class ConnectionHandshake {
+    private static final int NONCE_SIZE = 16;
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
     @Getter
     private final String id = StringUtils.createUid();
     private final Socket socket;
@@ -47,13 +60,24 @@ class ConnectionHandshake {
     private final Capability capability;
     private final AuthorizationService authorizationService;
 
-    private static record Request(AuthorizationToken token, Capability capability, Load load) implements Message {
+    private static record Request(AuthorizationToken token,
+                                  Capability capability,
+                                  Load load,
+                                  @Nullable byte[] nonce) implements Message {
     }
 
-    private static record Response(AuthorizationToken token, Capability capability, Load load) implements Message {
+    private static record Response(AuthorizationToken token,
+                                   Capability capability,
+                                   Load load,
+                                   @Nullable byte[] nonce) implements Message {
     }
 
-    static record Result(Capability capability, Load load, Metrics metrics) {
+    static record Result(Capability capability,
+                         Load load,
+                         Metrics metrics,
+                         WireCodec.Type wireCodecType,
+                         Compression compression,
+                         @Nullable byte[] channelBinding) {
     }
 
     ConnectionHandshake(Socket socket, BanList banList, int socketTimeout, Capability capability, AuthorizationService authorizationService) {
@@ -75,16 +99,19 @@ class ConnectionHandshake {
     Result start(Load myLoad) {
         try {
             Metrics metrics = new Metrics();
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(socket.getOutputStream());
+            CountingOutputStream outputStream = new CountingOutputStream(socket.getOutputStream());
+            ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream);
             AuthorizationToken token = authorizationService.createToken(Request.class);
-            Envelope requestEnvelope = new Envelope(new Request(token, capability, myLoad), Version.VERSION);
+            byte[] nonce = createNonce();
+            Envelope requestEnvelope = new Envelope(new Request(token, capability, myLoad, nonce), Version.VERSION);
             log.debug("Client sends {}", requestEnvelope);
             long ts = System.currentTimeMillis();
             objectOutputStream.writeObject(requestEnvelope);
             objectOutputStream.flush();
-            metrics.sent(requestEnvelope);
+            metrics.onSent(requestEnvelope, outputStream.getCount());
 
-            ObjectInputStream objectInputStream = new ObjectInputStream(socket.getInputStream());
+            CountingInputStream inputStream = new CountingInputStream(socket.getInputStream());
+            ObjectInputStream objectInputStream = new ObjectInputStream(inputStream);
             Object msg = objectInputStream.readObject();
             if (!(msg instanceof Envelope responseEnvelope)) {
                 throw new ConnectionException("Received proto not type of Envelope. " + msg.getClass().getSimpleName());
@@ -104,10 +131,17 @@ class ConnectionHandshake {
             if (!authorizationService.isAuthorized(response.token())) {
                 throw new ConnectionException("Response authorization failed. response=" + response);
             }
-            metrics.onMessage(responseEnvelope);
+            metrics.onReceived(responseEnvelope, inputStream.getCount());
             metrics.addRtt(System.currentTimeMillis() - ts);
             log.debug("Servers capability {}, load={}", response.capability(), response.load());
-            return new Result(response.capability(), response.load(), metrics);
+            WireCodec.Type wireCodecType = negotiateWireCodec(response.capability());
+            Compression compression = negotiateCompression(response.capability(), wireCodecType);
+            return new Result(response.capability(),
+                    response.load(),
+                    metrics,
+                    wireCodecType,
+                    compression,
+                    getChannelBinding(nonce, response.nonce()));
         } catch (Exception e) {
             try {
                 socket.close();
@@ -125,7 +159,8 @@ class ConnectionHandshake {
     Result onSocket(Load myLoad) {
         try {
             Metrics metrics = new Metrics();
-            ObjectInputStream objectInputStream = new ObjectInputStream(socket.getInputStream());
+            CountingInputStream inputStream = new CountingInputStream(socket.getInputStream());
+            ObjectInputStream objectInputStream = new ObjectInputStream(inputStream);
             Object msg = objectInputStream.readObject();
             long ts = System.currentTimeMillis();
             if (!(msg instanceof Envelope requestEnvelope)) {
@@ -147,16 +182,25 @@ class ConnectionHandshake {
                 throw new ConnectionException("Request authorization failed. request=" + request);
             }
             log.debug("Clients capability {}, load={}", request.capability(), request.load());
-            metrics.onMessage(requestEnvelope);
+            metrics.onReceived(requestEnvelope, inputStream.getCount());
 
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(socket.getOutputStream());
+            CountingOutputStream outputStream = new CountingOutputStream(socket.getOutputStream());
+            ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream);
             AuthorizationToken token = authorizationService.createToken(Response.class);
-            Envelope responseEnvelope = new Envelope(new Response(token, capability, myLoad), Version.VERSION);
+            byte[] nonce = createNonce();
+            Envelope responseEnvelope = new Envelope(new Response(token, capability, myLoad, nonce), Version.VERSION);
             objectOutputStream.writeObject(responseEnvelope);
             objectOutputStream.flush();
-            metrics.sent(responseEnvelope);
+            metrics.onSent(responseEnvelope, outputStream.getCount());
             metrics.addRtt(System.currentTimeMillis() - ts);
-            return new Result(request.capability(), request.load(), metrics);
+            WireCodec.Type wireCodecType = negotiateWireCodec(request.capability());
+            Compression compression = negotiateCompression(request.capability(), wireCodecType);
+            return new Result(request.capability(),
+                    request.load(),
+                    metrics,
+                    wireCodecType,
+                    compression,
+                    getChannelBinding(request.nonce(), nonce));
         } catch (Exception e) {
             try {
                 socket.close();
@@ -170,6 +214,35 @@ class ConnectionHandshake {
         }
     }
 
+    // Both peers know each others capability after the handshake, so both sides come to the same result.
+    private WireCodec.Type negotiateWireCodec(Capability peersCapability) {
+        return WireCodec.negotiate(capability.supportedWireCodecTypes(), peersCapability.supportedWireCodecTypes());
+    }
+
+    // Compression is only supported by the LENGTH_PREFIXED codec.
+    private Compression negotiateCompression(Capability peersCapability, WireCodec.Type wireCodecType) {
+        if (wireCodecType != WireCodec.Type.LENGTH_PREFIXED) {
+            return Compression.NONE;
+        }
+        return Compression.negotiate(capability.supportedCompressions(), peersCapability.supportedCompressions());
+    }
+
+    private static byte[] createNonce() {
+        byte[] nonce = new byte[NONCE_SIZE];
+        SECURE_RANDOM.nextBytes(nonce);
+        return nonce;
+    }
+
+    // Both nonces in the same order on both sides, so both peers derive the same value.
+    @Nullable
+    private static byte[] getChannelBinding(@Nullable byte[] clientNonce, @Nullable byte[] serverNonce) {
+        if (clientNonce == null || serverNonce == null ||
+                clientNonce.length != NONCE_SIZE || serverNonce.length != NONCE_SIZE) {
+            return null;
+        }
+        return DigestUtil.sha256(Bytes.concat(clientNonce, serverNonce));
+    }
+
     void shutdown() {
         try {
             socket.close();
@@ -0,0 +1,44 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.node;
+
+import javax.annotation.Nullable;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Protocol features which must only be used if the peer supports them. Announced in the Capability at the connection
+ * handshake.
+ */
+public enum Feature {
+    // Bloom filter, pages and partitions in inventory requests
+    INVENTORY_V2,
+    // Decryption of ConfidentialData.VERSION_2 (AES-GCM)
+    HYBRID_ENCRYPTION_V2,
+    // Receiving SessionInitMessage and SessionMessage, and responding with SessionResponse
+    SESSION_CHANNELS;
+
+    public static final Set<Feature> SUPPORTED = EnumSet.of(INVENTORY_V2, HYBRID_ENCRYPTION_V2, SESSION_CHANNELS);
+
+    /**
+     * @param peersFeatures Is null if the peer runs a version which did not announce its features.
+     */
+    public static boolean isSupported(Feature feature, @Nullable Set<Feature> peersFeatures) {
+        return SUPPORTED.contains(feature) && peersFeatures != null && peersFeatures.contains(feature);
+    }
+}
@@ -17,11 +17,15 @@
 
 package bisq.network.p2p.node;
 
+import bisq.network.p2p.node.codec.Compression;
+import bisq.network.p2p.node.codec.WireCodec;
 import bisq.network.p2p.node.transport.Transport;
+import bisq.network.p2p.services.data.SeenMessageCache;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import javax.annotation.Nullable;
 import java.net.Socket;
 import java.util.function.BiConsumer;
 
@@ -38,9 +42,13 @@ public class InboundConnection extends Connection {
                       Capability peersCapability,
                       Load peersLoad,
                       Metrics metrics,
+                      WireCodec.Type wireCodecType,
+                      Compression compression,
+                      @Nullable byte[] channelBinding,
+                      @Nullable SeenMessageCache seenMessageCache,
                       Handler handler,
                       BiConsumer<Connection, Exception> errorHandler) {
-        super(socket, peersCapability, peersLoad, metrics, handler, errorHandler);
+        super(socket, peersCapability, peersLoad, metrics, wireCodecType, compression, channelBinding, seenMessageCache, handler, errorHandler);
         this.serverSocketResult = serverSocketResult;
         log.debug("Create inboundConnection from server: {}", serverSocketResult);
     }
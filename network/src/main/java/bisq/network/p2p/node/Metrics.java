@@ -17,18 +17,37 @@
 
 package bisq.network.p2p.node;
 
+import bisq.network.p2p.message.Envelope;
 import bisq.network.p2p.message.Message;
+import bisq.network.p2p.node.authorization.AuthorizedMessage;
+import bisq.network.p2p.node.codec.CompressionStats;
 import lombok.Getter;
 import lombok.ToString;
 
 import java.util.Date;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * The number of bytes is provided by the caller from the counting streams wrapping the socket streams, so we do not
+ * need to serialize the message again only for counting its size.
+ */
 @Getter
 @ToString
 public class Metrics {
+    @Getter
+    @ToString
+    public static class MessageTypeMetrics {
+        private final LongAdder numMessages = new LongAdder();
+        private final LongAdder numBytes = new LongAdder();
+
+        private void add(long bytes) {
+            numMessages.increment();
+            numBytes.add(bytes);
+        }
+    }
 
     private final long created;
     private final AtomicLong lastUpdate = new AtomicLong();
@@ -36,7 +55,12 @@ public class Metrics {
     private final AtomicLong receivedBytes = new AtomicLong();
     private final AtomicLong numMessagesSent = new AtomicLong();
     private final AtomicLong numMessagesReceived = new AtomicLong();
-    private final List<Long> rrtList = new CopyOnWriteArrayList<>();
+    private final AtomicLong numSeenMessagesDropped = new AtomicLong();
+    private final RttStats rttStats = new RttStats();
+    private final CompressionStats compressionStats = new CompressionStats();
+    // Key is the simple class name of the message. For Envelopes and AuthorizedMessages we use the contained message.
+    private final Map<String, MessageTypeMetrics> sentByMessageType = new ConcurrentHashMap<>();
+    private final Map<String, MessageTypeMetrics> receivedByMessageType = new ConcurrentHashMap<>();
 
     public Metrics() {
         created = new Date().getTime();
@@ -50,23 +74,41 @@ public class Metrics {
         return System.currentTimeMillis() - created;
     }
 
-    public void sent(Message message) {
+    public void onSent(Message message, long numBytes) {
         lastUpdate.set(System.currentTimeMillis());
-        sentBytes.addAndGet(message.serialize().length);
+        sentBytes.addAndGet(numBytes);
         numMessagesSent.incrementAndGet();
+        sentByMessageType.computeIfAbsent(getMessageType(message), key -> new MessageTypeMetrics()).add(numBytes);
     }
 
-    public void onMessage(Message message) {
+    public void onReceived(Message message, long numBytes) {
         lastUpdate.set(System.currentTimeMillis());
-        receivedBytes.addAndGet(message.serialize().length);
+        receivedBytes.addAndGet(numBytes);
         numMessagesReceived.incrementAndGet();
+        receivedByMessageType.computeIfAbsent(getMessageType(message), key -> new MessageTypeMetrics()).add(numBytes);
+    }
+
+    public void onSeenMessageDropped(long numBytes) {
+        lastUpdate.set(System.currentTimeMillis());
+        receivedBytes.addAndGet(numBytes);
+        numSeenMessagesDropped.incrementAndGet();
     }
 
     public void addRtt(long value) {
-        this.rrtList.add(value);
+        rttStats.add(value);
     }
 
     public double getAverageRtt() {
-        return rrtList.stream().mapToLong(e -> e).average().orElse(0d);
+        return rttStats.getAverage();
+    }
+
+    private static String getMessageType(Message message) {
+        if (message instanceof Envelope envelope) {
+            return getMessageType(envelope.payload());
+        }
+        if (message instanceof AuthorizedMessage authorizedMessage) {
+            return getMessageType(authorizedMessage.message());
+        }
+        return message.getClass().getSimpleName();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,136 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.node;
+
+import bisq.network.p2p.node.codec.FrameDecoder;
+import bisq.network.p2p.node.transport.NioEventLoop;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking IO for a connection using the LENGTH_PREFIXED codec. Reads are done at the event loop. Writes are tried
+ * directly at the caller's thread and only if the socket send buffer is full, the remaining data gets queued and is
+ * written once the channel becomes writable again. The drainedHandler is called once all queued data has been written.
+ * Received frames are passed undecoded to the frameHandler, so the event loop does not spend time on decoding.
+ */
+@Slf4j
+class NioConnectionChannel implements NioEventLoop.Handler {
+    private final SocketChannel channel;
+    private final FrameDecoder.RawFrameHandler frameHandler;
+    private final Consumer<Exception> exceptionHandler;
+    private final Runnable drainedHandler;
+    private final NioEventLoop eventLoop;
+    private final FrameDecoder frameDecoder;
+    // Guarded by this
+    private final Queue<ByteBuffer> pendingWrites = new ArrayDeque<>();
+    private volatile SelectionKey selectionKey;
+
+    NioConnectionChannel(SocketChannel channel,
+                         FrameDecoder.RawFrameHandler frameHandler,
+                         Consumer<Exception> exceptionHandler,
+                         Runnable drainedHandler) throws IOException {
+        this.channel = channel;
+        this.frameHandler = frameHandler;
+        this.exceptionHandler = exceptionHandler;
+        this.drainedHandler = drainedHandler;
+        frameDecoder = new FrameDecoder();
+        channel.configureBlocking(false);
+        eventLoop = NioEventLoop.next();
+        eventLoop.register(channel, SelectionKey.OP_READ, this)
+                .whenComplete((key, throwable) -> {
+                    if (throwable != null) {
+                        exceptionHandler.accept(new ConnectionException(throwable));
+                    } else {
+                        selectionKey = key;
+                    }
+                });
+    }
+
+    /**
+     * Does not block. Data which cannot be written immediately gets queued.
+     *
+     * @return True if all data has been written to the socket.
+     */
+    synchronized boolean write(ByteBuffer... buffers) throws IOException {
+        if (pendingWrites.isEmpty()) {
+            // Gathering write, so that several small frames need only one system call
+            channel.write(buffers);
+        }
+        for (ByteBuffer buffer : buffers) {
+            if (buffer.hasRemaining()) {
+                pendingWrites.add(buffer);
+            }
+        }
+        if (pendingWrites.isEmpty()) {
+            return true;
+        }
+        // As tasks are executed in order, the registration has been completed when that task runs.
+        eventLoop.execute(() -> setInterestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE));
+        return false;
+    }
+
+    @Override
+    public void onReadable(NioEventLoop eventLoop) throws IOException {
+        ByteBuffer readBuffer = eventLoop.getReadBuffer();
+        if (channel.read(readBuffer) == -1) {
+            throw new EOFException();
+        }
+        readBuffer.flip();
+        frameDecoder.split(readBuffer, frameHandler);
+    }
+
+    @Override
+    public void onWritable(NioEventLoop eventLoop) throws IOException {
+        synchronized (this) {
+            if (pendingWrites.isEmpty()) {
+                setInterestOps(SelectionKey.OP_READ);
+                return;
+            }
+            while (!pendingWrites.isEmpty()) {
+                ByteBuffer buffer = pendingWrites.peek();
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    return;
+                }
+                pendingWrites.poll();
+            }
+            setInterestOps(SelectionKey.OP_READ);
+        }
+        drainedHandler.run();
+    }
+
+    @Override
+    public void onException(Exception exception) {
+        exceptionHandler.accept(exception);
+    }
+
+    private void setInterestOps(int interestOps) {
+        SelectionKey key = selectionKey;
+        if (key != null && key.isValid()) {
+            key.interestOps(interestOps);
+        }
+    }
+}
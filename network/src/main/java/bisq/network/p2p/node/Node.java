@@ -26,15 +26,20 @@ import bisq.network.p2p.message.Message;
 import bisq.network.p2p.node.authorization.AuthorizationService;
 import bisq.network.p2p.node.authorization.AuthorizationToken;
 import bisq.network.p2p.node.authorization.AuthorizedMessage;
+import bisq.network.p2p.node.codec.Compression;
+import bisq.network.p2p.node.codec.WireCodec;
 import bisq.network.p2p.node.transport.ClearNetTransport;
 import bisq.network.p2p.node.transport.I2PTransport;
 import bisq.network.p2p.node.transport.TorTransport;
 import bisq.network.p2p.node.transport.Transport;
+import bisq.network.p2p.services.data.SeenMessageCache;
 import bisq.network.p2p.services.peergroup.BanList;
 import com.runjva.sourceforge.jsocks.protocol.Socks5Proxy;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import javax.annotation.Nullable;
 import java.io.EOFException;
 import java.io.IOException;
 import java.net.Socket;
@@ -87,6 +92,12 @@ public class Node implements Connection.Handler {
 
         default void onStateChange(State state) {
         }
+
+        /**
+         * Called if a data request got dropped by the wire codec as we have seen it already.
+         */
+        default void onSeenMessageDropped(Connection connection, String nodeId) {
+        }
     }
 
     public static record Config(Transport.Type transportType,
@@ -112,6 +123,10 @@ public class Node implements Connection.Handler {
     private final Map<String, ConnectionHandshake> connectionHandshakes = new ConcurrentHashMap<>();
     private Optional<Server> server = Optional.empty();
     private Optional<Capability> myCapability = Optional.empty();
+    // Set if the node is used for the data service. Only applied to connections created after it has been set.
+    @Setter
+    @Nullable
+    private volatile SeenMessageCache seenMessageCache;
 
     private volatile boolean isStopped;
     @Getter
@@ -163,7 +178,11 @@ public class Node implements Connection.Handler {
 
     private void createServerAndListen(int port) {
         Transport.ServerSocketResult serverSocketResult = transport.getServerSocket(port, nodeId);
-        myCapability = Optional.of(new Capability(serverSocketResult.address(), config.supportedTransportTypes()));
+        myCapability = Optional.of(new Capability(serverSocketResult.address(),
+                config.supportedTransportTypes(),
+                WireCodec.Type.SUPPORTED,
+                Compression.SUPPORTED,
+                Feature.SUPPORTED));
         server = Optional.of(new Server(serverSocketResult,
                 socket -> onClientSocket(socket, serverSocketResult, myCapability.get()),
                 this::handleException));
@@ -198,10 +217,15 @@ public class Node implements Connection.Handler {
                     result.capability(),
                     result.load(),
                     result.metrics(),
+                    result.wireCodecType(),
+                    result.compression(),
+                    result.channelBinding(),
+                    seenMessageCache,
                     this,
                     this::handleException);
             inboundConnectionsByAddress.put(connection.getPeerAddress(), connection);
-            DISPATCHER.submit(() -> listeners.forEach(listener -> listener.onConnection(connection)));
+            DISPATCHER.execute(connection.getId(),
+                    () -> listeners.forEach(listener -> listener.onConnection(connection)));
         } catch (Throwable throwable) {
             connectionHandshake.shutdown();
             connectionHandshakes.remove(connectionHandshake.getId());
@@ -224,6 +248,11 @@ public class Node implements Connection.Handler {
         return send(message, connection);
     }
 
+    /**
+     * Blocks until the message has been written.
+     *
+     * @throws SendQueueFullException if the send queue of the connection is full. The connection stays open.
+     */
     public Connection send(Message message, Connection connection) {
         if (connection.isStopped()) {
             throw new ConnectionClosedException(connection);
@@ -231,15 +260,37 @@ public class Node implements Connection.Handler {
         try {
             AuthorizationToken token = authorizationService.createToken(message.getClass());
             return connection.send(new AuthorizedMessage(message, token));
+        } catch (SendQueueFullException exception) {
+            throw exception;
         } catch (Throwable throwable) {
-            if (connection.isRunning()) {
-                handleException(connection, throwable);
-                closeConnection(connection, CloseReason.EXCEPTION.exception(throwable));
-            }
+            handleSendException(connection, throwable);
             throw new ConnectionClosedException(connection);
         }
     }
 
+    /**
+     * Does not block. The returned future completes once the message has been written. It completes exceptionally
+     * with a SendQueueFullException if the send queue of the connection is full, which can be used as backpressure
+     * signal.
+     */
+    public CompletableFuture<Connection> sendAsync(Message message, Connection connection) {
+        if (connection.isStopped()) {
+            return CompletableFuture.failedFuture(new ConnectionClosedException(connection));
+        }
+        AuthorizationToken token;
+        try {
+            token = authorizationService.createToken(message.getClass());
+        } catch (Throwable throwable) {
+            return CompletableFuture.failedFuture(throwable);
+        }
+        return connection.sendAsync(new AuthorizedMessage(message, token))
+                .whenComplete((c, throwable) -> {
+                    if (throwable != null && !(throwable instanceof SendQueueFullException)) {
+                        handleSendException(connection, throwable);
+                    }
+                });
+    }
+
 
     ///////////////////////////////////////////////////////////////////////////////////////////////////
     // Connection
@@ -334,10 +385,15 @@ public class Node implements Connection.Handler {
                     result.capability(),
                     result.load(),
                     result.metrics(),
+                    result.wireCodecType(),
+                    result.compression(),
+                    result.channelBinding(),
+                    seenMessageCache,
                     this,
                     this::handleException);
             outboundConnectionsByAddress.put(address, connection);
-            DISPATCHER.submit(() -> listeners.forEach(listener -> listener.onConnection(connection)));
+            DISPATCHER.execute(connection.getId(),
+                    () -> listeners.forEach(listener -> listener.onConnection(connection)));
             return connection;
         } catch (Throwable throwable) {
             connectionHandshake.shutdown();
@@ -368,6 +424,10 @@ public class Node implements Connection.Handler {
         }
         if (message instanceof AuthorizedMessage authorizedMessage) {
             if (authorizationService.isAuthorized(authorizedMessage)) {
+                SeenMessageCache seenMessageCache = this.seenMessageCache;
+                if (seenMessageCache != null) {
+                    seenMessageCache.onAuthorized(authorizedMessage);
+                }
                 Message payLoadMessage = authorizedMessage.message();
                 if (payLoadMessage instanceof CloseConnectionMessage closeConnectionMessage) {
                     log.debug("Node {} received CloseConnectionMessage from {} with reason: {}", this, connection.getPeerAddress(), closeConnectionMessage.closeReason());
@@ -384,6 +444,14 @@ public class Node implements Connection.Handler {
         }
     }
 
+    @Override
+    public void onSeenMessageDropped(Connection connection) {
+        if (isStopped) {
+            return;
+        }
+        listeners.forEach(listener -> listener.onSeenMessageDropped(connection, nodeId));
+    }
+
     @Override
     public void onConnectionClosed(Connection connection, CloseReason closeReason) {
         Address peerAddress = connection.getPeerAddress();
@@ -487,6 +555,13 @@ public class Node implements Connection.Handler {
     // Private
     ///////////////////////////////////////////////////////////////////////////////////////////////////
 
+    private void handleSendException(Connection connection, Throwable throwable) {
+        if (connection.isRunning()) {
+            handleException(connection, throwable);
+            closeConnection(connection, CloseReason.EXCEPTION.exception(throwable));
+        }
+    }
+
     private void handleException(Connection connection, Throwable exception) {
         log.warn("Node {} got called handleException. connection={}, exception={}", this, connection, exception.getMessage());
         if (isStopped) {
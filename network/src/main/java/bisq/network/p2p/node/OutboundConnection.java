@@ -17,9 +17,13 @@
 
 package bisq.network.p2p.node;
 
+import bisq.network.p2p.node.codec.Compression;
+import bisq.network.p2p.node.codec.WireCodec;
+import bisq.network.p2p.services.data.SeenMessageCache;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
+import javax.annotation.Nullable;
 import java.net.Socket;
 import java.util.function.BiConsumer;
 
@@ -34,9 +38,13 @@ public class OutboundConnection extends Connection {
                        Capability peersCapability,
                        Load peersLoad,
                        Metrics metrics,
+                       WireCodec.Type wireCodecType,
+                       Compression compression,
+                       @Nullable byte[] channelBinding,
+                       @Nullable SeenMessageCache seenMessageCache,
                        Handler handler,
                        BiConsumer<Connection, Exception> errorHandler) {
-        super(socket, peersCapability, peersLoad, metrics, handler, errorHandler);
+        super(socket, peersCapability, peersLoad, metrics, wireCodecType, compression, channelBinding, seenMessageCache, handler, errorHandler);
 
         this.address = address;
         log.debug("Create outboundConnection to {}", address);
@@ -0,0 +1,99 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.node;
+
+import java.util.Arrays;
+
+/**
+ * Fixed memory round trip time statistics of a connection.
+ * Keeps the most recent SAMPLE_SIZE values in a ring buffer for the percentiles and an exponentially weighted
+ * moving average over all values.
+ */
+public class RttStats {
+    private static final int SAMPLE_SIZE = 128;
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final long[] samples = new long[SAMPLE_SIZE];
+    private int index;
+    private int numSamples;
+    private long count;
+    private double ewma;
+
+    public synchronized void add(long rtt) {
+        samples[index] = rtt;
+        index = (index + 1) % SAMPLE_SIZE;
+        numSamples = Math.min(numSamples + 1, SAMPLE_SIZE);
+        ewma = count == 0 ? rtt : EWMA_ALPHA * rtt + (1 - EWMA_ALPHA) * ewma;
+        count++;
+    }
+
+    /**
+     * @return Average of the recent samples or 0 if we do not have any sample.
+     */
+    public synchronized double getAverage() {
+        return Arrays.stream(samples, 0, numSamples).average().orElse(0d);
+    }
+
+    public long getP50() {
+        return getPercentile(0.5);
+    }
+
+    public long getP99() {
+        return getPercentile(0.99);
+    }
+
+    /**
+     * @param percentile Value between 0 and 1
+     * @return The percentile of the recent samples or 0 if we do not have any sample.
+     */
+    public long getPercentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (numSamples == 0) {
+                return 0;
+            }
+            sorted = Arrays.copyOf(samples, numSamples);
+        }
+        Arrays.sort(sorted);
+        int pos = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(pos, sorted.length - 1))];
+    }
+
+    /**
+     * @return Exponentially weighted moving average or 0 if we do not have any sample.
+     */
+    public synchronized double getEwma() {
+        return ewma;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public boolean hasSamples() {
+        return getCount() > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "RttStats{count=" + getCount() +
+                ", p50=" + getP50() +
+                ", p99=" + getP99() +
+                ", ewma=" + Math.round(getEwma()) + "}";
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.node;
+
+import bisq.network.p2p.message.Envelope;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Outbound queue of a connection drained by a single writer task. All queued envelopes (up to MAX_BATCH_SIZE) are
+ * written before flushing. High priority envelopes are written before the others. The number of normal priority
+ * envelopes is limited to MAX_QUEUE_SIZE, so that a slow peer causes a backpressure signal instead of unbounded memory
+ * usage.
+ */
+@Slf4j
+class SendQueue {
+    interface Writer {
+        /**
+         * Writes and flushes the envelopes.
+         *
+         * @return False if the writer cannot accept more data at the moment. Writing continues once resume got called.
+         */
+        boolean write(List<Envelope> envelopes) throws Exception;
+    }
+
+    static final int MAX_QUEUE_SIZE = 1000;
+    static final int MAX_BATCH_SIZE = 100;
+
+    private record Entry(Envelope envelope, CompletableFuture<Void> future) {
+    }
+
+    private final Writer writer;
+    private final Executor executor;
+    private final Consumer<Exception> exceptionHandler;
+    // Guarded by this
+    private final Deque<Entry> highPriorityEntries = new ArrayDeque<>();
+    private final Deque<Entry> entries = new ArrayDeque<>();
+    private boolean isWriting;
+    private boolean isPaused;
+    private boolean resumeRequested;
+    @Nullable
+    private RuntimeException closeException;
+
+    SendQueue(Writer writer, Executor executor, Consumer<Exception> exceptionHandler) {
+        this.writer = writer;
+        this.executor = executor;
+        this.exceptionHandler = exceptionHandler;
+    }
+
+    /**
+     * @return Future which completes once the envelope has been written. Completes exceptionally with the exception
+     * provided by queueFullExceptionSupplier if the queue is full, or with the exception passed to close if the queue
+     * has been closed.
+     */
+    synchronized CompletableFuture<Void> add(Envelope envelope,
+                                             boolean isHighPriority,
+                                             Supplier<? extends RuntimeException> queueFullExceptionSupplier) {
+        if (closeException != null) {
+            return CompletableFuture.failedFuture(closeException);
+        }
+        if (!isHighPriority && entries.size() >= MAX_QUEUE_SIZE) {
+            return CompletableFuture.failedFuture(queueFullExceptionSupplier.get());
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        (isHighPriority ? highPriorityEntries : entries).add(new Entry(envelope, future));
+        maybeStartWriting();
+        return future;
+    }
+
+    synchronized int size() {
+        return highPriorityEntries.size() + entries.size();
+    }
+
+    synchronized boolean isFull() {
+        return entries.size() >= MAX_QUEUE_SIZE;
+    }
+
+    synchronized void resume() {
+        if (isPaused) {
+            isPaused = false;
+            maybeStartWriting();
+        } else {
+            // The writer might not have set the paused state yet
+            resumeRequested = true;
+        }
+    }
+
+    /**
+     * Fails all queued futures and all envelopes added later with the given exception.
+     */
+    void close(RuntimeException exception) {
+        List<Entry> pending;
+        synchronized (this) {
+            closeException = exception;
+            pending = new ArrayList<>(highPriorityEntries);
+            pending.addAll(entries);
+            highPriorityEntries.clear();
+            entries.clear();
+        }
+        pending.forEach(entry -> entry.future().completeExceptionally(exception));
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void maybeStartWriting() {
+        if (!isWriting && !isPaused && closeException == null && size() > 0) {
+            isWriting = true;
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            List<Entry> batch = pollBatch();
+            if (batch.isEmpty()) {
+                return;
+            }
+            boolean canContinue;
+            try {
+                canContinue = writer.write(batch.stream().map(Entry::envelope).toList());
+            } catch (Exception exception) {
+                synchronized (this) {
+                    isWriting = false;
+                }
+                batch.forEach(entry -> entry.future().completeExceptionally(new ConnectionException(exception)));
+                exceptionHandler.accept(exception);
+                return;
+            }
+            batch.forEach(entry -> entry.future().complete(null));
+            if (!canContinue) {
+                synchronized (this) {
+                    if (!resumeRequested) {
+                        isPaused = true;
+                        isWriting = false;
+                        return;
+                    }
+                    resumeRequested = false;
+                }
+            }
+        }
+    }
+
+    private synchronized List<Entry> pollBatch() {
+        List<Entry> batch = new ArrayList<>();
+        while (batch.size() < MAX_BATCH_SIZE && !highPriorityEntries.isEmpty()) {
+            batch.add(highPriorityEntries.poll());
+        }
+        while (batch.size() < MAX_BATCH_SIZE && !entries.isEmpty()) {
+            batch.add(entries.poll());
+        }
+        if (batch.isEmpty()) {
+            isWriting = false;
+            return List.of();
+        }
+        // A resume received before this write refers to an earlier pause
+        resumeRequested = false;
+        return batch;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.node.codec;
+
+import javax.annotation.Nullable;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Compression of the message bytes of LENGTH_PREFIXED frames. Negotiated at the connection handshake like the
+ * WireCodec. Only messages above MIN_SIZE get compressed, and only if the result is smaller.
+ * The receiver can decompress all supported types independent of the negotiated one, as each frame carries its
+ * compression type.
+ */
+public enum Compression {
+    NONE,
+    // Deflate with a preset dictionary of strings common in our java serialized messages. As the dictionary is part of
+    // the protocol, a changed dictionary requires a new type.
+    DEFLATE;
+
+    public static final Set<Compression> SUPPORTED = EnumSet.of(DEFLATE);
+
+    // Smaller messages fit into a few Tor cells anyway and are not worth the CPU cost.
+    static final int MIN_SIZE = 1024;
+
+    /**
+     * @param mySupportedTypes    Our supported compression types.
+     * @param peersSupportedTypes Peers supported compression types. Is null if peer is on an older version which did
+     *                            not announce its compression types.
+     */
+    public static Compression negotiate(Set<Compression> mySupportedTypes, @Nullable Set<Compression> peersSupportedTypes) {
+        if (peersSupportedTypes != null &&
+                mySupportedTypes.contains(DEFLATE) &&
+                peersSupportedTypes.contains(DEFLATE)) {
+            return DEFLATE;
+        }
+        return NONE;
+    }
+}
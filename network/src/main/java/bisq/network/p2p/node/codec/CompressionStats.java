@@ -0,0 +1,57 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.node.codec;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compression ratio and CPU time spent for compression of a connection.
+ */
+@Getter
+@ToString
+public class CompressionStats {
+    private final LongAdder numCompressed = new LongAdder();
+    private final LongAdder numUncompressedBytes = new LongAdder();
+    private final LongAdder numCompressedBytes = new LongAdder();
+    private final LongAdder compressionNanos = new LongAdder();
+    private final LongAdder numDecompressed = new LongAdder();
+    private final LongAdder decompressionNanos = new LongAdder();
+
+    void onCompressed(int uncompressedSize, int compressedSize, long nanos) {
+        numCompressed.increment();
+        numUncompressedBytes.add(uncompressedSize);
+        numCompressedBytes.add(compressedSize);
+        compressionNanos.add(nanos);
+    }
+
+    void onDecompressed(long nanos) {
+        numDecompressed.increment();
+        decompressionNanos.add(nanos);
+    }
+
+    /**
+     * @return Compressed size relative to the uncompressed size of the sent messages which got compressed.
+     */
+    public double getCompressionRatio() {
+        long uncompressed = numUncompressedBytes.sum();
+        return uncompressed == 0 ? 1 : (double) numCompressedBytes.sum() / uncompressed;
+    }
+}
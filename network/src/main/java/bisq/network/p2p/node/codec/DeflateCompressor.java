@@ -0,0 +1,112 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.node.codec;
+
+import bisq.network.p2p.node.ConnectionException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate with a preset dictionary. Our messages are java serialized, so each message contains the class descriptors
+ * of its object graph. The dictionary contains the most common class and field names, so that those are compressed
+ * well already in smaller messages.
+ * The Deflater and Inflater instances are reused per thread, as creating them allocates native memory.
+ */
+final class DeflateCompressor {
+    // The last entries are the cheapest to reference, so the most frequent strings are at the end.
+    // Must not be changed as long as Compression.DEFLATE is supported.
+    private static final byte[] DICTIONARY = String.join("",
+            "java.util.HashMapjava.util.HashSetjava.util.ArrayListjava.util.Collections$UnmodifiableSet",
+            "java.util.ImmutableCollections$ListNjava.util.ImmutableCollections$SetNjava.util.Optional",
+            "java.lang.Enumjava.lang.Numberjava.lang.Integerjava.lang.Longjava.lang.Boolean",
+            "bisq.network.p2p.node.Addressbisq.network.p2p.node.transport.Transport$Type",
+            "bisq.network.p2p.services.peergroup.Peerbisq.network.p2p.node.Capabilitybisq.network.p2p.node.Load",
+            "bisq.network.p2p.services.peergroup.exchange.PeerExchangeResponse",
+            "bisq.network.p2p.services.data.inventory.InventoryResponsebisq.network.p2p.services.data.inventory.Inventory",
+            "bisq.network.p2p.services.data.storage.append.AddAppendOnlyDataRequest",
+            "bisq.network.p2p.services.data.storage.mailbox.AddMailboxRequestbisq.network.p2p.services.data.storage.mailbox.MailboxPayload",
+            "bisq.network.p2p.services.confidential.ConfidentialMessagebisq.security.ConfidentialData",
+            "bisq.network.p2p.services.data.storage.auth.RemoveAuthenticatedDataRequest",
+            "bisq.network.p2p.services.data.storage.auth.RefreshRequest",
+            "bisq.network.p2p.services.data.storage.auth.authorized.AuthorizedPayloadbisq.network.p2p.services.data.storage.mailbox.MailboxData",
+            "bisq.network.p2p.services.data.storage.auth.AuthenticatedData",
+            "bisq.network.p2p.services.data.storage.auth.AddAuthenticatedDataRequest",
+            "bisq.network.p2p.services.data.storage.MetaDatabisq.common.data.ByteArray",
+            "addresshostportsupportedTransportTypessupportedWireCodecTypescapabilityloadnumConnectionsisOutboundConnection",
+            "keyIdconfidentialDataencodedSenderPublicKeyhmacivcypherTextversion",
+            "authenticatedDataownerPublicKeyBytessignaturesequenceNumber",
+            "hashOfPublicKeymetaDatamaxSizeInBytesttlfileNamecreatedpayloadentriesnumDroppedinventory",
+            "[Bxpsrt").getBytes(StandardCharsets.UTF_8);
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(Deflater::new);
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private DeflateCompressor() {
+    }
+
+    /**
+     * @return The compressed bytes or empty if they would not be smaller than the input.
+     */
+    static Optional<byte[]> compress(byte[] bytes) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(bytes);
+        deflater.finish();
+        byte[] buffer = new byte[bytes.length];
+        int size = 0;
+        while (!deflater.finished() && size < buffer.length) {
+            size += deflater.deflate(buffer, size, buffer.length - size);
+        }
+        return deflater.finished() ? Optional.of(Arrays.copyOf(buffer, size)) : Optional.empty();
+    }
+
+    /**
+     * @param maxSize Limit for the decompressed size, so that a small frame cannot blow up our memory.
+     */
+    static byte[] decompress(byte[] compressed, int maxSize) throws DataFormatException {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(compressed);
+        byte[] buffer = new byte[(int) Math.min(maxSize, Math.max(1024, compressed.length * 4L))];
+        int size = 0;
+        while (!inflater.finished()) {
+            if (size == buffer.length) {
+                if (buffer.length == maxSize) {
+                    throw new ConnectionException("Decompressed message exceeds max size of " + maxSize);
+                }
+                buffer = Arrays.copyOf(buffer, (int) Math.min(maxSize, buffer.length * 2L));
+            }
+            int numBytes = inflater.inflate(buffer, size, buffer.length - size);
+            if (numBytes == 0) {
+                if (inflater.needsDictionary()) {
+                    inflater.setDictionary(DICTIONARY);
+                } else if (inflater.needsInput()) {
+                    throw new DataFormatException("Compressed data is truncated");
+                }
+            }
+            size += numBytes;
+        }
+        return size == buffer.length ? buffer : Arrays.copyOf(buffer, size);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.node.codec;
+
+import bisq.network.p2p.message.Envelope;
+import bisq.network.p2p.node.ConnectionException;
+import bisq.network.p2p.services.data.SeenMessageCache;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental decoder for LENGTH_PREFIXED frames read from a non-blocking channel, where a frame can be split over
+ * several reads and one read can contain several frames. Only the incomplete frame is kept, so idle connections do not
+ * hold any read buffer.
+ * Frames can be either decoded at the reading thread or only split with the decoding done by the caller at another
+ * thread by using decodeFrame.
+ * Not thread safe. Is expected to be used only by the thread reading from the channel.
+ */
+public final class FrameDecoder {
+    public interface FrameHandler {
+        /**
+         * @param envelope The envelope or null if the frame contained an already seen data request.
+         * @param numBytes Size of the frame including the length prefix.
+         */
+        void onFrame(@Nullable Envelope envelope, int numBytes);
+    }
+
+    public interface RawFrameHandler {
+        /**
+         * @param frame    The frame without the length prefix. To be decoded with decodeFrame.
+         * @param numBytes Size of the frame including the length prefix.
+         */
+        void onFrame(byte[] frame, int numBytes) throws IOException;
+    }
+
+    // A varint32 has at most 5 bytes
+    private static final int MAX_PREFIX_SIZE = 5;
+
+    @Nullable
+    private final SeenMessageCache seenMessageCache;
+    private int size;
+    private int prefixSize;
+    private byte[] frame;
+    private int position;
+
+    public FrameDecoder() {
+        this(null);
+    }
+
+    /**
+     * @param seenMessageCache If set, already seen data requests are dropped before deserialization.
+     */
+    public FrameDecoder(@Nullable SeenMessageCache seenMessageCache) {
+        this.seenMessageCache = seenMessageCache;
+    }
+
+    public static ByteBuffer encode(Envelope envelope) throws IOException {
+        return encode(envelope, Compression.NONE, null);
+    }
+
+    public static ByteBuffer encode(Envelope envelope,
+                                    Compression compression,
+                                    @Nullable CompressionStats compressionStats) throws IOException {
+        return ByteBuffer.wrap(LengthPrefixedWireCodec.encode(envelope, compression, compressionStats));
+    }
+
+    /**
+     * @param frame The frame without the length prefix.
+     * @return The envelope or null if the frame contained an already seen data request.
+     */
+    @Nullable
+    public static Envelope decodeFrame(byte[] frame,
+                                       @Nullable SeenMessageCache seenMessageCache,
+                                       @Nullable CompressionStats compressionStats) throws IOException {
+        return LengthPrefixedWireCodec.decode(frame, seenMessageCache, compressionStats);
+    }
+
+    /**
+     * Consumes all remaining bytes of the buffer and calls the handler for each completed and decoded frame.
+     */
+    public void decode(ByteBuffer buffer, FrameHandler handler) throws IOException {
+        split(buffer, (frame, numBytes) -> handler.onFrame(decodeFrame(frame, seenMessageCache, null), numBytes));
+    }
+
+    /**
+     * Consumes all remaining bytes of the buffer and calls the handler for each completed frame without decoding it.
+     */
+    public void split(ByteBuffer buffer, RawFrameHandler handler) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (frame == null) {
+                readPrefix(buffer.get());
+            }
+            if (frame != null) {
+                int numBytes = Math.min(buffer.remaining(), frame.length - position);
+                buffer.get(frame, position, numBytes);
+                position += numBytes;
+                if (position == frame.length) {
+                    byte[] completed = frame;
+                    int frameSize = prefixSize + frame.length;
+                    reset();
+                    handler.onFrame(completed, frameSize);
+                }
+            }
+        }
+    }
+
+    private void readPrefix(byte value) {
+        size |= (value & 0x7F) << (7 * prefixSize);
+        prefixSize++;
+        if ((value & 0x80) == 0) {
+            if (size < 0 || size > LengthPrefixedWireCodec.MAX_FRAME_SIZE) {
+                throw new ConnectionException("Invalid frame size. size=" + size);
+            }
+            frame = new byte[size];
+        } else if (prefixSize == MAX_PREFIX_SIZE) {
+            throw new ConnectionException("Malformed frame size prefix");
+        }
+    }
+
+    private void reset() {
+        size = 0;
+        prefixSize = 0;
+        frame = null;
+        position = 0;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.node.codec;
+
+import bisq.network.p2p.message.Envelope;
+import bisq.network.p2p.node.ConnectionException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * The codec used before the LENGTH_PREFIXED codec was introduced. Used for peers not supporting other codecs.
+ */
+class JavaSerializationWireCodec implements WireCodec {
+    private final ObjectOutputStream objectOutputStream;
+    private final ObjectInputStream objectInputStream;
+
+    JavaSerializationWireCodec(InputStream inputStream, OutputStream outputStream) throws IOException {
+        // ObjectOutputStream need to be set before objectInputStream otherwise we get blocked...
+        // https://stackoverflow.com/questions/14110986/new-objectinputstream-blocks/14111047
+        objectOutputStream = new ObjectOutputStream(outputStream);
+        // The stream header must reach the peer, otherwise its ObjectInputStream blocks
+        objectOutputStream.flush();
+        objectInputStream = new ObjectInputStream(inputStream);
+    }
+
+    @Override
+    public Type getType() {
+        return Type.JAVA_SERIALIZATION;
+    }
+
+    @Override
+    public void write(Envelope envelope) throws IOException {
+        objectOutputStream.writeObject(envelope);
+        // The ObjectOutputStream keeps data in its internal buffer which is not exposed. To get the number of bytes
+        // written for each envelope we flush at each write.
+        objectOutputStream.flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        objectOutputStream.flush();
+    }
+
+    @Override
+    public Envelope read() throws IOException {
+        try {
+            Object msg = objectInputStream.readObject();
+            if (!(msg instanceof Envelope envelope)) {
+                throw new ConnectionException("Received message not type of Envelope. " + msg.getClass().getSimpleName());
+            }
+            return envelope;
+        } catch (ClassNotFoundException e) {
+            throw new ConnectionException(e);
+        }
+    }
+}
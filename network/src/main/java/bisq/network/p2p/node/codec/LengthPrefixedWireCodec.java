@@ -0,0 +1,251 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.node.codec;
+
+import bisq.common.ObjectSerializer;
+import bisq.network.p2p.message.Envelope;
+import bisq.network.p2p.message.Message;
+import bisq.network.p2p.node.ConnectionException;
+import bisq.network.p2p.node.authorization.AuthorizationToken;
+import bisq.network.p2p.node.authorization.AuthorizedMessage;
+import bisq.network.p2p.services.data.DataRequest;
+import bisq.network.p2p.services.data.SeenMessageCache;
+import bisq.network.proto.Frame;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.UnsafeByteOperations;
+
+import javax.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+
+/**
+ * Writes each envelope as a varint length prefixed protobuf Frame.
+ * Envelope and AuthorizedMessage are mapped to their proto counterparts. The contained Message and
+ * AuthorizationToken are still java serialized, but each one independently so that no stream state is kept between
+ * frames. Once messages get their own proto definitions they can be added to the Frame without changing the framing.
+ * <p>
+ * Until then a frame is not cheaper than the JAVA_SERIALIZATION codec. Each message carries the full class
+ * descriptors which the stream of the JAVA_SERIALIZATION codec writes only once per connection, so small messages
+ * are larger and take more CPU to encode. What we gain is a bounded frame size, no stream state growing over the
+ * lifetime of the connection, compression, and dropping of seen data requests before deserialization.
+ * <p>
+ * If a SeenMessageCache is given, data requests we have seen already are dropped before deserialization.
+ * Large message bytes get compressed with the negotiated Compression. The seen check is done on the decompressed
+ * bytes, so it does not depend on whether the peers we receive the data request from use compression.
+ */
+class LengthPrefixedWireCodec implements WireCodec {
+    // Frames above that size are considered invalid and cause the connection to get closed.
+    static final int MAX_FRAME_SIZE = 100 * 1024 * 1024;
+
+    private final DataInputStream inputStream;
+    private final OutputStream outputStream;
+    @Nullable
+    private final SeenMessageCache seenMessageCache;
+    private final Compression compression;
+    @Nullable
+    private final CompressionStats compressionStats;
+
+    LengthPrefixedWireCodec(InputStream inputStream,
+                            OutputStream outputStream,
+                            @Nullable SeenMessageCache seenMessageCache,
+                            Compression compression,
+                            @Nullable CompressionStats compressionStats) {
+        this.inputStream = new DataInputStream(inputStream);
+        this.outputStream = outputStream;
+        this.seenMessageCache = seenMessageCache;
+        this.compression = compression;
+        this.compressionStats = compressionStats;
+    }
+
+    @Override
+    public Type getType() {
+        return Type.LENGTH_PREFIXED;
+    }
+
+    @Override
+    public void write(Envelope envelope) throws IOException {
+        outputStream.write(encode(envelope, compression, compressionStats));
+    }
+
+    @Override
+    public void flush() throws IOException {
+        outputStream.flush();
+    }
+
+    @Override
+    @Nullable
+    public Envelope read() throws IOException {
+        int firstByte = inputStream.read();
+        if (firstByte == -1) {
+            throw new EOFException();
+        }
+        int size = CodedInputStream.readRawVarint32(firstByte, inputStream);
+        if (size < 0 || size > MAX_FRAME_SIZE) {
+            throw new ConnectionException("Invalid frame size. size=" + size);
+        }
+        byte[] bytes = new byte[size];
+        inputStream.readFully(bytes);
+        return decode(bytes, seenMessageCache, compressionStats);
+    }
+
+    /**
+     * @return The length prefixed frame as it is written to the stream.
+     */
+    static byte[] encode(Envelope envelope,
+                         Compression compression,
+                         @Nullable CompressionStats compressionStats) throws IOException {
+        Frame frame = toFrame(envelope, compression, compressionStats);
+        int size = frame.getSerializedSize();
+        byte[] bytes = new byte[CodedOutputStream.computeUInt32SizeNoTag(size) + size];
+        CodedOutputStream codedOutputStream = CodedOutputStream.newInstance(bytes);
+        codedOutputStream.writeUInt32NoTag(size);
+        frame.writeTo(codedOutputStream);
+        codedOutputStream.checkNoSpaceLeft();
+        return bytes;
+    }
+
+    /**
+     * @param bytes The frame without the length prefix.
+     * @return The envelope or null if the frame contained a data request we have seen already.
+     */
+    @Nullable
+    static Envelope decode(byte[] bytes,
+                           @Nullable SeenMessageCache seenMessageCache,
+                           @Nullable CompressionStats compressionStats) throws IOException {
+        return fromFrame(Frame.parseFrom(bytes), seenMessageCache, compressionStats);
+    }
+
+    private static Frame toFrame(Envelope envelope,
+                                 Compression compression,
+                                 @Nullable CompressionStats compressionStats) {
+        Frame.Builder builder = Frame.newBuilder().setVersion(envelope.version());
+        if (envelope.payload() instanceof AuthorizedMessage authorizedMessage) {
+            byte[] message = maybeCompress(authorizedMessage.message().serialize(), compression, compressionStats, builder);
+            builder.setAuthorizedMessage(bisq.network.proto.AuthorizedMessage.newBuilder()
+                    .setMessage(wrap(message))
+                    .setAuthorizationToken(wrap(ObjectSerializer.serialize(authorizedMessage.authorizationToken()))));
+        } else {
+            byte[] message = maybeCompress(envelope.payload().serialize(), compression, compressionStats, builder);
+            builder.setMessage(wrap(message));
+        }
+        return builder.build();
+    }
+
+    private static byte[] maybeCompress(byte[] message,
+                                        Compression compression,
+                                        @Nullable CompressionStats compressionStats,
+                                        Frame.Builder builder) {
+        if (compression != Compression.DEFLATE || message.length < Compression.MIN_SIZE) {
+            return message;
+        }
+        long ts = System.nanoTime();
+        Optional<byte[]> compressed = DeflateCompressor.compress(message);
+        if (compressionStats != null) {
+            compressionStats.onCompressed(message.length,
+                    compressed.map(bytes -> bytes.length).orElse(message.length),
+                    System.nanoTime() - ts);
+        }
+        if (compressed.isEmpty()) {
+            return message;
+        }
+        builder.setCompression(Frame.Compression.DEFLATE);
+        return compressed.get();
+    }
+
+    @Nullable
+    private static Envelope fromFrame(Frame frame,
+                                      @Nullable SeenMessageCache seenMessageCache,
+                                      @Nullable CompressionStats compressionStats) {
+        Message payload = switch (frame.getPayloadCase()) {
+            case AUTHORIZEDMESSAGE -> fromProto(frame.getAuthorizedMessage(),
+                    frame.getCompression(),
+                    seenMessageCache,
+                    compressionStats);
+            case MESSAGE -> deserialize(decompress(frame.getMessage(), frame.getCompression(), compressionStats),
+                    Message.class);
+            case PAYLOAD_NOT_SET -> throw new ConnectionException("Received frame without payload");
+        };
+        return payload != null ? new Envelope(payload, frame.getVersion()) : null;
+    }
+
+    @Nullable
+    private static AuthorizedMessage fromProto(bisq.network.proto.AuthorizedMessage proto,
+                                               Frame.Compression compression,
+                                               @Nullable SeenMessageCache seenMessageCache,
+                                               @Nullable CompressionStats compressionStats) {
+        ByteString messageBytes = decompress(proto.getMessage(), compression, compressionStats);
+        long digest = 0;
+        if (seenMessageCache != null) {
+            digest = seenMessageCache.digest(messageBytes.asReadOnlyByteBuffer());
+            if (seenMessageCache.isSeen(digest)) {
+                return null;
+            }
+        }
+        Message message = deserialize(messageBytes, Message.class);
+        AuthorizedMessage authorizedMessage = new AuthorizedMessage(message,
+                deserialize(proto.getAuthorizationToken(), AuthorizationToken.class));
+        if (seenMessageCache != null && message instanceof DataRequest) {
+            // The token is checked at the node, which marks the digest as seen once it is authorized
+            seenMessageCache.addPending(authorizedMessage, digest);
+        }
+        return authorizedMessage;
+    }
+
+    private static ByteString decompress(ByteString byteString,
+                                         Frame.Compression compression,
+                                         @Nullable CompressionStats compressionStats) {
+        return switch (compression) {
+            case NONE -> byteString;
+            case DEFLATE -> wrap(inflate(byteString, compressionStats));
+            case UNRECOGNIZED -> throw new ConnectionException("Received frame with unsupported compression");
+        };
+    }
+
+    private static byte[] inflate(ByteString byteString, @Nullable CompressionStats compressionStats) {
+        long ts = System.nanoTime();
+        try {
+            byte[] decompressed = DeflateCompressor.decompress(byteString.toByteArray(), MAX_FRAME_SIZE);
+            if (compressionStats != null) {
+                compressionStats.onDecompressed(System.nanoTime() - ts);
+            }
+            return decompressed;
+        } catch (DataFormatException e) {
+            throw new ConnectionException(e);
+        }
+    }
+
+    private static ByteString wrap(byte[] bytes) {
+        return UnsafeByteOperations.unsafeWrap(bytes);
+    }
+
+    private static <T> T deserialize(ByteString byteString, Class<T> type) {
+        Object object = ObjectSerializer.deserialize(byteString.toByteArray());
+        if (!type.isInstance(object)) {
+            throw new ConnectionException("Received data not type of " + type.getSimpleName() + ". " +
+                    object.getClass().getSimpleName());
+        }
+        return type.cast(object);
+    }
+}
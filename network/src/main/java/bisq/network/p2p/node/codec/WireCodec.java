@@ -0,0 +1,106 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.node.codec;
+
+import bisq.network.p2p.message.Envelope;
+import bisq.network.p2p.services.data.SeenMessageCache;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Encodes and decodes the envelopes sent over a connection's socket streams.
+ * The codec is negotiated at the connection handshake. The handshake itself is always done with JAVA_SERIALIZATION
+ * as at that moment we do not know yet what the peer supports.
+ * Implementations are not thread safe. Concurrent writes need to be synchronized by the caller.
+ * The output stream is expected to be buffered by the caller, so that several envelopes can be written with one flush.
+ */
+public interface WireCodec {
+    enum Type {
+        // Legacy java serialisation using one ObjectOutputStream/ObjectInputStream for the lifetime of the connection.
+        JAVA_SERIALIZATION,
+        // Varint length prefixed protobuf frames. See network.proto. The messages inside are still java serialized,
+        // each one on its own, so it improves the framing, not the size of the serialized messages.
+        LENGTH_PREFIXED;
+
+        public static final Set<Type> SUPPORTED = EnumSet.allOf(Type.class);
+    }
+
+    /**
+     * Selects the preferred codec supported by both peers.
+     *
+     * @param mySupportedTypes    Our supported codec types.
+     * @param peersSupportedTypes Peers supported codec types. Is null if peer is on an older version which did not
+     *                            announce its codec types.
+     */
+    static Type negotiate(Set<Type> mySupportedTypes, @Nullable Set<Type> peersSupportedTypes) {
+        if (peersSupportedTypes != null &&
+                mySupportedTypes.contains(Type.LENGTH_PREFIXED) &&
+                peersSupportedTypes.contains(Type.LENGTH_PREFIXED)) {
+            return Type.LENGTH_PREFIXED;
+        }
+        return Type.JAVA_SERIALIZATION;
+    }
+
+    static WireCodec create(Type type, InputStream inputStream, OutputStream outputStream) throws IOException {
+        return create(type, inputStream, outputStream, null, Compression.NONE, null);
+    }
+
+    /**
+     * @param seenMessageCache If set, already seen data requests are dropped before deserialization. Only
+     *                         supported by the LENGTH_PREFIXED codec, as the JAVA_SERIALIZATION codec deserializes
+     *                         the whole envelope from the stream.
+     * @param compression      Compression used for writing. Only supported by the LENGTH_PREFIXED codec.
+     */
+    static WireCodec create(Type type,
+                            InputStream inputStream,
+                            OutputStream outputStream,
+                            @Nullable SeenMessageCache seenMessageCache,
+                            Compression compression,
+                            @Nullable CompressionStats compressionStats) throws IOException {
+        return switch (type) {
+            case JAVA_SERIALIZATION -> new JavaSerializationWireCodec(inputStream, outputStream);
+            case LENGTH_PREFIXED -> new LengthPrefixedWireCodec(inputStream,
+                    outputStream,
+                    seenMessageCache,
+                    compression,
+                    compressionStats);
+        };
+    }
+
+    Type getType();
+
+    /**
+     * Writes the envelope. The data might be buffered until flush got called.
+     */
+    void write(Envelope envelope) throws IOException;
+
+    void flush() throws IOException;
+
+    /**
+     * Blocks until the next envelope has been received.
+     *
+     * @return The envelope or null if the codec dropped an already seen data request.
+     */
+    @Nullable
+    Envelope read() throws IOException;
+}
@@ -4,8 +4,11 @@ import bisq.network.p2p.node.Address;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
@@ -42,7 +45,16 @@ public class ClearNetTransport implements Transport {
     public ServerSocketResult getServerSocket(int port, String nodeId) {
         log.info("Create serverSocket at port {}", port);
         try {
-            ServerSocket serverSocket = new ServerSocket(port);
+            // We use channels so that connections can be switched to non-blocking mode after the handshake.
+            ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+            ServerSocket serverSocket = serverSocketChannel.socket();
+            try {
+                serverSocket.setReuseAddress(true);
+                serverSocket.bind(new InetSocketAddress(port));
+            } catch (IOException e) {
+                serverSocketChannel.close();
+                throw e;
+            }
             Address address = Address.localHost(port);
             log.debug("ServerSocket created at port {}", port);
             return new ServerSocketResult(nodeId, serverSocket, address);
@@ -55,7 +67,7 @@ public class ClearNetTransport implements Transport {
     @Override
     public Socket getSocket(Address address) throws IOException {
         log.debug("Create new Socket to {}", address);
-        return new Socket(address.getHost(), address.getPort());
+        return SocketChannel.open(new InetSocketAddress(address.getHost(), address.getPort())).socket();
     }
 
     @Override
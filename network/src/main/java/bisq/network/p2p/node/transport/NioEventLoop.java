@@ -0,0 +1,160 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.node.transport;
+
+import bisq.common.threading.ExecutorFactory;
+import bisq.common.util.OsUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selector based event loop multiplexing the IO of many non-blocking channels on one thread.
+ * A small static set of event loops is shared by all nodes. Channels get assigned round-robin.
+ * Handlers are called on the event loop thread and must not block.
+ */
+@Slf4j
+public final class NioEventLoop {
+    public interface Handler {
+        void onReadable(NioEventLoop eventLoop) throws IOException;
+
+        void onWritable(NioEventLoop eventLoop) throws IOException;
+
+        void onException(Exception exception);
+    }
+
+    private static final int NUM_EVENT_LOOPS = Math.max(2, OsUtils.availableProcessors() / 2);
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final AtomicInteger INDEX = new AtomicInteger();
+    private static NioEventLoop[] eventLoops;
+
+    public static synchronized NioEventLoop next() {
+        if (eventLoops == null) {
+            eventLoops = new NioEventLoop[NUM_EVENT_LOOPS];
+            for (int i = 0; i < NUM_EVENT_LOOPS; i++) {
+                eventLoops[i] = new NioEventLoop();
+            }
+        }
+        return eventLoops[Math.floorMod(INDEX.getAndIncrement(), NUM_EVENT_LOOPS)];
+    }
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // Only used at the event loop thread. As handlers consume the read data immediately, one buffer is enough for all
+    // channels of that event loop.
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    private NioEventLoop() {
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ExecutorFactory.newSingleThreadExecutor("NioEventLoop").execute(this::run);
+    }
+
+    /**
+     * The channel must be in non-blocking mode.
+     */
+    public CompletableFuture<SelectionKey> register(SelectableChannel channel, int interestOps, Handler handler) {
+        CompletableFuture<SelectionKey> future = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                future.complete(channel.register(selector, interestOps, handler));
+            } catch (ClosedChannelException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Runs the task on the event loop thread. Tasks are executed in the order they have been added.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * @return The cleared read buffer. Must only be used from a handler call.
+     */
+    public ByteBuffer getReadBuffer() {
+        return readBuffer.clear();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void run() {
+        while (true) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                log.error("Selector failed", e);
+                continue;
+            }
+            runTasks();
+
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+                Handler handler = (Handler) key.attachment();
+                try {
+                    if (key.isReadable()) {
+                        handler.onReadable(this);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        handler.onWritable(this);
+                    }
+                } catch (CancelledKeyException ignore) {
+                    // Channel got closed in the meantime
+                } catch (Exception exception) {
+                    key.cancel();
+                    handler.onException(exception);
+                }
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Task at event loop failed", e);
+            }
+        }
+    }
+}
@@ -32,12 +32,14 @@ import bisq.security.ConfidentialData;
 import bisq.security.HybridEncryption;
 import bisq.security.KeyPairService;
 import bisq.security.PubKey;
+import bisq.security.SharedKeyCache;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.Serializable;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
+import java.security.PublicKey;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -46,6 +48,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import static bisq.network.NetworkService.DISPATCHER;
+import static bisq.network.NetworkService.NETWORK_IO_POOL;
 import static java.util.concurrent.CompletableFuture.*;
 
 @Slf4j
@@ -87,11 +90,28 @@ public class ConfidentialMessageService implements Node.Listener, DataService.Li
     private final NodesById nodesById;
     private final KeyPairService keyPairService;
     private final Optional<DataService> dataService;
-
-    public ConfidentialMessageService(NodesById nodesById, KeyPairService keyPairService, Optional<DataService> dataService) {
+    // Chat and trade protocols exchange many messages with the same peers. We cache the keys derived from the ECDH
+    // shared secret per pair of our and the peers public key.
+    private final SharedKeyCache sharedKeyCache = new SharedKeyCache(1000);
+    // Session channels are always supported at receiving. Sending in sessions is opt-in and only done with peers
+    // announcing the SESSION_CHANNELS feature.
+    private final SessionChannels sessionChannels = new SessionChannels();
+    private final boolean sessionModeEnabled;
+
+    /**
+     * @param sessionModeEnabled If enabled, the first message to a peer over a connection opens a session channel
+     *                           with a hybrid encrypted and signed SessionInitMessage. Further messages over that
+     *                           connection are only encrypted with the symmetric session key, once the peer
+     *                           accepted the session.
+     */
+    public ConfidentialMessageService(NodesById nodesById,
+                                      KeyPairService keyPairService,
+                                      Optional<DataService> dataService,
+                                      boolean sessionModeEnabled) {
         this.nodesById = nodesById;
         this.keyPairService = keyPairService;
         this.dataService = dataService;
+        this.sessionModeEnabled = sessionModeEnabled;
 
         nodesById.addNodeListener(this);
         dataService.ifPresent(service -> service.addListener(this));
@@ -101,6 +121,8 @@ public class ConfidentialMessageService implements Node.Listener, DataService.Li
         nodesById.removeNodeListener(this);
         dataService.ifPresent(service -> service.removeListener(this));
         listeners.clear();
+        sharedKeyCache.clear();
+        sessionChannels.clear();
         return completedFuture(null);
     }
 
@@ -117,9 +139,17 @@ public class ConfidentialMessageService implements Node.Listener, DataService.Li
                 // RelayMessage relayMessage = (RelayMessage) proto;
                 // Address targetAddress = relayMessage.getTargetAddress();
                 // send(proto, targetAddress);
+            } else if (confidentialMessage instanceof SessionInitMessage sessionInitMessage) {
+                // We process it on the connection's dispatcher thread, so the session is known before we process
+                // the following SessionMessages of that connection.
+                processSessionInitMessage(sessionInitMessage, connection, nodeId);
             } else {
                 processConfidentialMessage(confidentialMessage);
             }
+        } else if (message instanceof SessionMessage sessionMessage) {
+            processSessionMessage(sessionMessage, connection, nodeId);
+        } else if (message instanceof SessionResponse sessionResponse) {
+            sessionChannels.onResponse(connection.getId(), sessionResponse);
         }
     }
 
@@ -129,6 +159,7 @@ public class ConfidentialMessageService implements Node.Listener, DataService.Li
 
     @Override
     public void onDisconnect(Connection connection, CloseReason closeReason) {
+        sessionChannels.onDisconnect(connection.getId());
     }
 
 
@@ -173,8 +204,7 @@ public class ConfidentialMessageService implements Node.Listener, DataService.Li
             return send(message, connection, receiverPubKey, senderKeyPair, senderNodeId);
         } catch (Throwable throwable) {
             if (message instanceof MailboxMessage mailboxMessage) {
-                ConfidentialMessage confidentialMessage = getConfidentialMessage(message, receiverPubKey, senderKeyPair);
-                return storeMailBoxMessage(mailboxMessage, confidentialMessage, receiverPubKey, senderKeyPair);
+                return storeMailBoxMessage(mailboxMessage, receiverPubKey, senderKeyPair);
             } else {
                 log.warn("Sending proto failed and proto is not type of MailboxMessage. proto={}", message);
                 return new Result(State.FAILED).setErrorMsg("Sending proto failed and proto is not type of MailboxMessage. Exception=" + throwable);
@@ -188,14 +218,21 @@ public class ConfidentialMessageService implements Node.Listener, DataService.Li
                        PubKey receiverPubKey,
                        KeyPair senderKeyPair,
                        String senderNodeId) {
-        ConfidentialMessage confidentialMessage = getConfidentialMessage(message, receiverPubKey, senderKeyPair);
+        if (sessionModeEnabled && supportsSessions(connection)) {
+            return sendInSession(message, connection, receiverPubKey, senderKeyPair, senderNodeId);
+        }
+
         try {
             nodesById.maybeInitializeServer(senderNodeId, NetworkUtils.findFreeSystemPort());
+            ConfidentialMessage confidentialMessage = getConfidentialMessage(message,
+                    receiverPubKey,
+                    senderKeyPair,
+                    getEncryptionVersion(connection));
             nodesById.send(senderNodeId, confidentialMessage, connection);
             return new Result(State.SENT);
         } catch (Throwable throwable) {
             if (message instanceof MailboxMessage mailboxMessage) {
-                return storeMailBoxMessage(mailboxMessage, confidentialMessage, receiverPubKey, senderKeyPair);
+                return storeMailBoxMessage(mailboxMessage, receiverPubKey, senderKeyPair);
             } else {
                 log.warn("Sending proto failed and proto is not type of MailboxMessage. proto={}", message);
                 return new Result(State.FAILED).setErrorMsg("Sending proto failed and proto is not type of MailboxMessage. Exception=" + throwable);
@@ -216,8 +253,61 @@ public class ConfidentialMessageService implements Node.Listener, DataService.Li
     // Private
     ///////////////////////////////////////////////////////////////////////////////////////////////////
 
+    private Result sendInSession(Message message,
+                                 Connection connection,
+                                 PubKey receiverPubKey,
+                                 KeyPair senderKeyPair,
+                                 String senderNodeId) {
+        Optional<SessionChannels.OutboundSession> newSession = Optional.empty();
+        try {
+            nodesById.maybeInitializeServer(senderNodeId, NetworkUtils.findFreeSystemPort());
+            String connectionId = connection.getId();
+            PublicKey senderPublicKey = senderKeyPair.getPublic();
+            String receiverKeyId = receiverPubKey.keyId();
+            Optional<SessionChannels.OutboundSession> session = sessionChannels.findOutbound(connectionId, senderPublicKey, receiverKeyId);
+            // Empty if concurrent senders have used up the session
+            Optional<SessionMessage> sessionMessage = session.isPresent() ?
+                    sessionChannels.encrypt(session.get(), message) :
+                    Optional.empty();
+            if (sessionMessage.isPresent()) {
+                nodesById.send(senderNodeId, sessionMessage.get(), connection);
+            } else {
+                newSession = sessionChannels.createOutbound(connectionId,
+                        connection.getChannelBinding(),
+                        senderPublicKey,
+                        receiverKeyId);
+                if (newSession.isPresent()) {
+                    SessionInitMessage sessionInitMessage = getSessionInitMessage(newSession.get(),
+                            message,
+                            receiverPubKey,
+                            senderKeyPair,
+                            getEncryptionVersion(connection));
+                    // The session gets used once the peer accepted it with a SessionResponse. Until then we
+                    // send with hybrid encryption.
+                    nodesById.send(senderNodeId, sessionInitMessage, connection);
+                } else {
+                    // The session has not been accepted yet
+                    ConfidentialMessage confidentialMessage = getConfidentialMessage(message,
+                            receiverPubKey,
+                            senderKeyPair,
+                            getEncryptionVersion(connection));
+                    nodesById.send(senderNodeId, confidentialMessage, connection);
+                }
+            }
+            return new Result(State.SENT);
+        } catch (Throwable throwable) {
+            newSession.ifPresent(sessionChannels::removeOutbound);
+            if (message instanceof MailboxMessage mailboxMessage) {
+                // Mailbox messages might be received after the session is gone, thus we use the hybrid encryption.
+                return storeMailBoxMessage(mailboxMessage, receiverPubKey, senderKeyPair);
+            } else {
+                log.warn("Sending proto failed and proto is not type of MailboxMessage. proto={}", message);
+                return new Result(State.FAILED).setErrorMsg("Sending proto failed and proto is not type of MailboxMessage. Exception=" + throwable);
+            }
+        }
+    }
+
     private Result storeMailBoxMessage(MailboxMessage mailboxMessage,
-                                       ConfidentialMessage confidentialMessage,
                                        PubKey receiverPubKey,
                                        KeyPair senderKeyPair) {
         if (dataService.isEmpty()) {
@@ -225,6 +315,12 @@ public class ConfidentialMessageService implements Node.Listener, DataService.Li
             return new Result(State.FAILED).setErrorMsg("We have not stored the mailboxMessage because the dataService is not present.");
         }
 
+        // We do not know which version the receiver runs when it fetches the mailbox message
+        ConfidentialMessage confidentialMessage = getConfidentialMessage(mailboxMessage,
+                receiverPubKey,
+                senderKeyPair,
+                HybridEncryption.DEFAULT_VERSION);
+
         MailboxPayload mailboxPayload = new MailboxPayload(confidentialMessage, mailboxMessage.getMetaData());
         // We do not wait for the broadcast result as that can take a while. We pack the future into our result, 
         // so clients can react on it as they wish.
@@ -235,9 +331,29 @@ public class ConfidentialMessageService implements Node.Listener, DataService.Li
         return new Result(State.ADDED_TO_MAILBOX).setMailboxFuture(mailboxFuture);
     }
 
-    private ConfidentialMessage getConfidentialMessage(Message message, PubKey receiverPubKey, KeyPair senderKeyPair) {
+    // Peers on older versions would drop SessionMessages and do not provide a channelBinding
+    private static boolean supportsSessions(Connection connection) {
+        return connection.getChannelBinding() != null &&
+                connection.getPeersCapability().supports(Feature.SESSION_CHANNELS);
+    }
+
+    // Peers on older versions cannot decrypt ConfidentialData.VERSION_2
+    private static int getEncryptionVersion(Connection connection) {
+        return connection.getPeersCapability().supports(Feature.HYBRID_ENCRYPTION_V2) ?
+                ConfidentialData.VERSION_2 :
+                HybridEncryption.DEFAULT_VERSION;
+    }
+
+    private ConfidentialMessage getConfidentialMessage(Message message,
+                                                       PubKey receiverPubKey,
+                                                       KeyPair senderKeyPair,
+                                                       int encryptionVersion) {
         try {
-            ConfidentialData confidentialData = HybridEncryption.encryptAndSign(message.serialize(), receiverPubKey.publicKey(), senderKeyPair);
+            ConfidentialData confidentialData = HybridEncryption.encryptAndSign(encryptionVersion,
+                    message.serialize(),
+                    receiverPubKey.publicKey(),
+                    senderKeyPair,
+                    sharedKeyCache);
             return new ConfidentialMessage(confidentialData, receiverPubKey.keyId());
         } catch (GeneralSecurityException e) {
             log.error("HybridEncryption.encryptAndSign failed at getConfidentialMessage.", e);
@@ -245,15 +361,85 @@ public class ConfidentialMessageService implements Node.Listener, DataService.Li
         }
     }
 
+    private SessionInitMessage getSessionInitMessage(SessionChannels.OutboundSession session,
+                                                     Message message,
+                                                     PubKey receiverPubKey,
+                                                     KeyPair senderKeyPair,
+                                                     int encryptionVersion) throws GeneralSecurityException {
+        SessionInit sessionInit = new SessionInit(session.getSessionId(),
+                session.getSecretKey().getEncoded(),
+                session.getChannelBinding(),
+                message);
+        ConfidentialData confidentialData = HybridEncryption.encryptAndSign(encryptionVersion,
+                sessionInit.serialize(),
+                receiverPubKey.publicKey(),
+                senderKeyPair,
+                sharedKeyCache);
+        return new SessionInitMessage(confidentialData, receiverPubKey.keyId());
+    }
+
+    private void processSessionInitMessage(SessionInitMessage sessionInitMessage, Connection connection, String nodeId) {
+        String keyId = sessionInitMessage.getKeyId();
+        keyPairService.findKeyPair(keyId).ifPresent(receiversKeyPair -> { // Otherwise not our message
+            try {
+                ConfidentialData confidentialData = sessionInitMessage.getConfidentialData();
+                byte[] decrypted = HybridEncryption.decryptAndVerify(confidentialData, receiversKeyPair, sharedKeyCache);
+                Serializable deserialized = ObjectSerializer.deserialize(decrypted);
+                if (deserialized instanceof SessionInit sessionInit) {
+                    SessionChannels.InboundResult result = sessionChannels.addInbound(connection.getId(),
+                            connection.getChannelBinding(),
+                            sessionInit,
+                            confidentialData.encodedSenderPublicKey(),
+                            keyId);
+                    if (result != SessionChannels.InboundResult.INVALID) {
+                        notifyListeners(sessionInit.getMessage());
+                    }
+                    sendSessionResponse(new SessionResponse(sessionInit.getSessionId(),
+                                    result == SessionChannels.InboundResult.ACCEPTED),
+                            connection,
+                            nodeId);
+                } else {
+                    log.warn("Deserialized data is not of type SessionInit. deserialized.getClass()={}", deserialized.getClass());
+                }
+            } catch (Exception e) {
+                log.warn("Processing SessionInitMessage failed. connection={}", connection, e);
+            }
+        });
+    }
+
+    private void processSessionMessage(SessionMessage sessionMessage, Connection connection, String nodeId) {
+        try {
+            sessionChannels.decrypt(connection.getId(), sessionMessage).ifPresent(this::notifyListeners);
+        } catch (Exception e) {
+            log.warn("Processing SessionMessage failed. connection={}", connection, e);
+            // The sender must not continue to use that session
+            sendSessionResponse(new SessionResponse(sessionMessage.getSessionId(), false), connection, nodeId);
+        }
+    }
+
+    private void sendSessionResponse(SessionResponse sessionResponse, Connection connection, String nodeId) {
+        // We must not block the dispatcher thread with sending
+        runAsync(() -> nodesById.send(nodeId, sessionResponse, connection), NETWORK_IO_POOL)
+                .whenComplete((nil, throwable) -> {
+                    if (throwable != null) {
+                        log.warn("Sending {} failed. connection={}", sessionResponse, connection, throwable);
+                    }
+                });
+    }
+
+    private void notifyListeners(Message message) {
+        runAsync(() -> listeners.forEach(l -> l.onMessage(message)), DISPATCHER);
+    }
+
     private CompletableFuture<Boolean> processConfidentialMessage(ConfidentialMessage confidentialMessage) {
         return keyPairService.findKeyPair(confidentialMessage.getKeyId())
                 .map(receiversKeyPair -> supplyAsync(() -> {
                     try {
                         ConfidentialData confidentialData = confidentialMessage.getConfidentialData();
-                        byte[] decrypted = HybridEncryption.decryptAndVerify(confidentialData, receiversKeyPair);
+                        byte[] decrypted = HybridEncryption.decryptAndVerify(confidentialData, receiversKeyPair, sharedKeyCache);
                         Serializable deserialized = ObjectSerializer.deserialize(decrypted);
                         if (deserialized instanceof Message decryptedMessage) {
-                            runAsync(() -> listeners.forEach(l -> l.onMessage(decryptedMessage)), DISPATCHER);
+                            notifyListeners(decryptedMessage);
                             return true;
                         } else {
                             log.warn("Deserialized data is not of type Message. deserialized.getClass()={}", deserialized.getClass());
@@ -0,0 +1,380 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.confidential;
+
+import bisq.common.ObjectSerializer;
+import bisq.common.data.ByteArray;
+import bisq.common.encoding.Hex;
+import bisq.network.p2p.message.Message;
+import bisq.security.AeadEncryption;
+import bisq.security.DigestUtil;
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Longs;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import javax.crypto.SecretKey;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the symmetric session keys of the session channels. A session is bound to a connection and to the pair of
+ * the sender's public key and the receiver's keyId. Sessions get removed when the connection is closed.
+ * <p>
+ * The session key is used with AES-GCM. The nonce is derived from the message counter, which also serves for
+ * detecting replayed messages. The associated data binds each message to its session, the channelBinding of the
+ * connection, the sender, the receiver and its position in the session.
+ * <p>
+ * A SessionInit is only accepted if it carries the channelBinding of the connection it was received on, and only
+ * once per sessionId, so a recorded session cannot be replayed.
+ * <p>
+ * The sender only uses a session after the receiver accepted it with a SessionResponse. The receiver rejects a
+ * session if it cannot keep it, and any session it receives a SessionMessage for it cannot process, so messages do
+ * not get dropped silently.
+ */
+@Slf4j
+class SessionChannels {
+    // After that number of messages or that age the sender opens a new session.
+    static final long MAX_MESSAGES_PER_SESSION = 10_000;
+    static final long MAX_SESSION_AGE = TimeUnit.HOURS.toMillis(1);
+    // If the peer has not responded to the SessionInit in that time we open another session.
+    static final long MAX_PENDING_TIME = TimeUnit.MINUTES.toMillis(1);
+    // Messages of a previous session might still be in flight when a new session got opened, thus we keep a few
+    // sessions per connection.
+    static final int MAX_INBOUND_SESSIONS_PER_CONNECTION = 16;
+    static final int MAX_SEEN_SESSION_IDS = 10_000;
+    private static final int SESSION_ID_SIZE = 16;
+    private static final int REPLAY_WINDOW_SIZE = Long.SIZE;
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    enum InboundResult {
+        ACCEPTED,
+        // The SessionInit is valid but we have no capacity for another session of that connection
+        REJECTED,
+        // The SessionInit was sent over another connection or has been received already
+        INVALID
+    }
+
+    private record OutboundKey(String connectionId, ByteArray senderPublicKey, String receiverKeyId) {
+    }
+
+    static class OutboundSession {
+        private final OutboundKey key;
+        @Getter
+        private final byte[] sessionId;
+        @Getter
+        private final SecretKey secretKey;
+        @Getter
+        private final byte[] channelBinding;
+        private final byte[] associatedDataPrefix;
+        private final long created = System.currentTimeMillis();
+        private final AtomicLong counter = new AtomicLong();
+        private volatile boolean established;
+
+        private OutboundSession(OutboundKey key, byte[] sessionId, SecretKey secretKey, byte[] channelBinding) {
+            this.key = key;
+            this.sessionId = sessionId;
+            this.secretKey = secretKey;
+            this.channelBinding = channelBinding;
+            associatedDataPrefix = getAssociatedDataPrefix(sessionId,
+                    channelBinding,
+                    key.senderPublicKey().getBytes(),
+                    key.receiverKeyId());
+        }
+
+        private boolean isExhausted(long now) {
+            return counter.get() >= MAX_MESSAGES_PER_SESSION || now - created >= MAX_SESSION_AGE;
+        }
+
+        private boolean isPendingTooLong(long now) {
+            return !established && now - created >= MAX_PENDING_TIME;
+        }
+    }
+
+    static class InboundSession {
+        private final SecretKey secretKey;
+        private final byte[] associatedDataPrefix;
+        private final long created = System.currentTimeMillis();
+        private long highestCounter = -1;
+        // Bit i is set if the message with counter highestCounter - i has been received
+        private long window;
+
+        private InboundSession(SecretKey secretKey, byte[] associatedDataPrefix) {
+            this.secretKey = secretKey;
+            this.associatedDataPrefix = associatedDataPrefix;
+        }
+
+        private boolean isExpired(long now) {
+            // We give the sender some time to open a new session
+            return now - created >= 2 * MAX_SESSION_AGE;
+        }
+
+        private synchronized boolean tryAccept(long counter) {
+            if (counter > highestCounter) {
+                long shift = counter - highestCounter;
+                window = shift >= REPLAY_WINDOW_SIZE ? 1 : (window << shift) | 1;
+                highestCounter = counter;
+                return true;
+            }
+            long offset = highestCounter - counter;
+            if (offset >= REPLAY_WINDOW_SIZE) {
+                return false;
+            }
+            long mask = 1L << offset;
+            if ((window & mask) != 0) {
+                return false;
+            }
+            window |= mask;
+            return true;
+        }
+    }
+
+    private final Map<OutboundKey, OutboundSession> outbound = new ConcurrentHashMap<>();
+    private final Map<String, Map<ByteArray, InboundSession>> inboundByConnectionId = new ConcurrentHashMap<>();
+    private final Set<ByteArray> seenSessionIds = Collections.newSetFromMap(Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteArray, Boolean> eldest) {
+            return size() > MAX_SEEN_SESSION_IDS;
+        }
+    }));
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+    // Outbound
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return The established session if it can still be used.
+     */
+    Optional<OutboundSession> findOutbound(String connectionId, PublicKey senderPublicKey, String receiverKeyId) {
+        OutboundSession session = outbound.get(new OutboundKey(connectionId, new ByteArray(senderPublicKey.getEncoded()), receiverKeyId));
+        if (session == null || !session.established || session.isExhausted(System.currentTimeMillis())) {
+            return Optional.empty();
+        }
+        return Optional.of(session);
+    }
+
+    /**
+     * Creates a new session if there is none, if the existing one is exhausted or if the peer has not responded to
+     * its SessionInit in time. The caller has to send the SessionInit, or call removeOutbound if sending failed. The
+     * session gets used once the peer accepted it (see onResponse).
+     *
+     * @return The new session or empty if another session is being established.
+     */
+    Optional<OutboundSession> createOutbound(String connectionId,
+                                             byte[] channelBinding,
+                                             PublicKey senderPublicKey,
+                                             String receiverKeyId) throws GeneralSecurityException {
+        OutboundKey key = new OutboundKey(connectionId, new ByteArray(senderPublicKey.getEncoded()), receiverKeyId);
+        OutboundSession newSession = new OutboundSession(key, createSessionId(), AeadEncryption.generateKey(), channelBinding);
+        long now = System.currentTimeMillis();
+        OutboundSession session = outbound.compute(key, (k, existing) ->
+                existing == null ||
+                        (existing.established && existing.isExhausted(now)) ||
+                        existing.isPendingTooLong(now) ? newSession : existing);
+        return session == newSession ? Optional.of(newSession) : Optional.empty();
+    }
+
+    /**
+     * Applies the peer's response to a SessionInit, or to a SessionMessage it could not process.
+     */
+    void onResponse(String connectionId, SessionResponse response) {
+        outbound.values().stream()
+                .filter(session -> session.key.connectionId().equals(connectionId))
+                .filter(session -> Arrays.equals(session.sessionId, response.getSessionId()))
+                .findAny()
+                .ifPresent(session -> {
+                    if (response.isAccepted()) {
+                        session.established = true;
+                    } else {
+                        if (session.established) {
+                            log.warn("Peer rejected session at connection {} after {} messages. Messages sent in " +
+                                    "that session might not have been delivered.", connectionId, session.counter.get());
+                        } else {
+                            log.info("Peer rejected the session at connection {}", connectionId);
+                        }
+                        removeOutbound(session);
+                    }
+                });
+    }
+
+    void removeOutbound(OutboundSession session) {
+        outbound.remove(session.key, session);
+    }
+
+    /**
+     * @return Empty if the session has reached MAX_MESSAGES_PER_SESSION, which can happen with concurrent senders.
+     * The peer would not accept the message, so the caller has to open a new session.
+     */
+    Optional<SessionMessage> encrypt(OutboundSession session, Message message) throws GeneralSecurityException {
+        long counter = session.counter.getAndIncrement();
+        if (counter >= MAX_MESSAGES_PER_SESSION) {
+            return Optional.empty();
+        }
+        byte[] cypherText = AeadEncryption.encrypt(message.serialize(),
+                session.secretKey,
+                AeadEncryption.counterNonce(counter),
+                getAssociatedData(session.associatedDataPrefix, counter));
+        return Optional.of(new SessionMessage(session.sessionId, counter, cypherText));
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+    // Inbound
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Must only be called with a SessionInit which has been decrypted and verified. The caller has to ensure that
+     * it is called before later messages of the same connection are processed.
+     *
+     * @param channelBinding The channelBinding of the connection the SessionInit was received on.
+     * @return INVALID if the SessionInit was sent over another connection or has been received already. Its message
+     * must not be processed in that case. REJECTED if we cannot keep another session for that connection. Its
+     * message can be processed but the sender must not use the session.
+     */
+    InboundResult addInbound(String connectionId,
+                       @Nullable byte[] channelBinding,
+                       SessionInit sessionInit,
+                       byte[] encodedSenderPublicKey,
+                       String receiverKeyId) {
+        byte[] sessionId = sessionInit.getSessionId();
+        if (sessionId.length != SESSION_ID_SIZE) {
+            throw new IllegalArgumentException("Invalid sessionId size " + sessionId.length);
+        }
+        if (channelBinding == null || !Arrays.equals(channelBinding, sessionInit.getChannelBinding())) {
+            log.warn("SessionInit does not match the channelBinding of connection {}", connectionId);
+            return InboundResult.INVALID;
+        }
+        ByteArray key = new ByteArray(sessionId);
+        if (!seenSessionIds.add(key)) {
+            log.warn("We received a replayed SessionInit at connection {}", connectionId);
+            return InboundResult.INVALID;
+        }
+        InboundSession session = new InboundSession(AeadEncryption.toKey(sessionInit.getSessionKey()),
+                getAssociatedDataPrefix(sessionId, channelBinding, encodedSenderPublicKey, receiverKeyId));
+        Map<ByteArray, InboundSession> sessions = inboundByConnectionId.computeIfAbsent(connectionId,
+                k -> Collections.synchronizedMap(new HashMap<>()));
+        synchronized (sessions) {
+            // We do not evict live sessions as the sender would still use them
+            long now = System.currentTimeMillis();
+            sessions.values().removeIf(inboundSession -> inboundSession.isExpired(now));
+            if (sessions.size() >= MAX_INBOUND_SESSIONS_PER_CONNECTION) {
+                log.warn("Too many sessions at connection {}. We reject the new session.", connectionId);
+                return InboundResult.REJECTED;
+            }
+            return sessions.putIfAbsent(key, session) == null ? InboundResult.ACCEPTED : InboundResult.INVALID;
+        }
+    }
+
+    /**
+     * @return The decrypted message or empty if the message has been received already.
+     * @throws GeneralSecurityException if the session is not known, has been used beyond its limits or if the
+     *                                  message could not be authenticated. The sender has to be told to stop using
+     *                                  the session in that case.
+     */
+    Optional<Message> decrypt(String connectionId, SessionMessage sessionMessage) throws GeneralSecurityException {
+        Map<ByteArray, InboundSession> sessions = inboundByConnectionId.get(connectionId);
+        InboundSession session = sessions != null ? sessions.get(new ByteArray(sessionMessage.getSessionId())) : null;
+        if (session == null) {
+            throw new GeneralSecurityException("No session found for sessionId " + Hex.encode(sessionMessage.getSessionId()));
+        }
+        long counter = sessionMessage.getCounter();
+        if (counter < 0 || counter >= MAX_MESSAGES_PER_SESSION || session.isExpired(System.currentTimeMillis())) {
+            throw new GeneralSecurityException("Session has been used beyond its limits. counter=" + counter);
+        }
+        byte[] decrypted = AeadEncryption.decrypt(sessionMessage.getCypherText(),
+                session.secretKey,
+                AeadEncryption.counterNonce(counter),
+                getAssociatedData(session.associatedDataPrefix, counter));
+        // We only update the replay window after the message got authenticated
+        if (!session.tryAccept(counter)) {
+            log.warn("We received a replayed or too old message. {}", sessionMessage);
+            return Optional.empty();
+        }
+        Serializable deserialized = ObjectSerializer.deserialize(decrypted);
+        if (deserialized instanceof Message message) {
+            return Optional.of(message);
+        } else {
+            log.warn("Deserialized data is not of type Message. deserialized.getClass()={}", deserialized.getClass());
+            throw new IllegalArgumentException("Deserialized data is not of type Message.");
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+    // Lifecycle
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+
+    void onDisconnect(String connectionId) {
+        outbound.keySet().removeIf(key -> key.connectionId().equals(connectionId));
+        inboundByConnectionId.remove(connectionId);
+    }
+
+    void clear() {
+        outbound.clear();
+        inboundByConnectionId.clear();
+        seenSessionIds.clear();
+    }
+
+    int getNumOutbound() {
+        return outbound.size();
+    }
+
+    int getNumInbound() {
+        return inboundByConnectionId.values().stream().mapToInt(Map::size).sum();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static byte[] createSessionId() {
+        byte[] sessionId = new byte[SESSION_ID_SIZE];
+        SECURE_RANDOM.nextBytes(sessionId);
+        return sessionId;
+    }
+
+    private static byte[] getAssociatedDataPrefix(byte[] sessionId,
+                                                  byte[] channelBinding,
+                                                  byte[] encodedSenderPublicKey,
+                                                  String receiverKeyId) {
+        return Bytes.concat(sessionId,
+                DigestUtil.sha256(channelBinding),
+                DigestUtil.sha256(encodedSenderPublicKey),
+                receiverKeyId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] getAssociatedData(byte[] associatedDataPrefix, long counter) {
+        return Bytes.concat(associatedDataPrefix, Longs.toByteArray(counter));
+    }
+}
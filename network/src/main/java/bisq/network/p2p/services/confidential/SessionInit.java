@@ -0,0 +1,49 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.confidential;
+
+import bisq.network.p2p.message.Message;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * Plaintext of a SessionInitMessage. Carries the session key and the first message sent in the session.
+ * The channelBinding of the connection is signed with it, so it cannot be replayed over another connection.
+ */
+@EqualsAndHashCode
+@Getter
+public class SessionInit implements Message {
+    private final byte[] sessionId;
+    private final byte[] sessionKey;
+    private final byte[] channelBinding;
+    private final Message message;
+
+    public SessionInit(byte[] sessionId, byte[] sessionKey, byte[] channelBinding, Message message) {
+        this.sessionId = sessionId;
+        this.sessionKey = sessionKey;
+        this.channelBinding = channelBinding;
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "SessionInit{" +
+                "\r\n     message=" + message +
+                "\r\n}";
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.confidential;
+
+import bisq.security.ConfidentialData;
+
+/**
+ * Opens a session channel. The confidentialData contains a serialized SessionInit and is encrypted and signed like
+ * any ConfidentialMessage, thus the session key is only known to the owner of the keyId and the session is
+ * authenticated by the sender's signature.
+ */
+public class SessionInitMessage extends ConfidentialMessage {
+    public SessionInitMessage(ConfidentialData confidentialData, String keyId) {
+        super(confidentialData, keyId);
+    }
+
+    @Override
+    public String toString() {
+        return "SessionInitMessage{" +
+                "\r\n     sealed=" + getConfidentialData() +
+                "\r\n     keyId=" + getKeyId() +
+                "\r\n}";
+    }
+}
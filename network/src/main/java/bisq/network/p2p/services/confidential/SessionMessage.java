@@ -0,0 +1,50 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.confidential;
+
+import bisq.common.encoding.Hex;
+import bisq.network.p2p.message.Message;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * A message encrypted with the key of a session channel. The counter is used for deriving the nonce and for
+ * detecting replayed messages.
+ */
+@EqualsAndHashCode
+@Getter
+public class SessionMessage implements Message {
+    private final byte[] sessionId;
+    private final long counter;
+    private final byte[] cypherText;
+
+    public SessionMessage(byte[] sessionId, long counter, byte[] cypherText) {
+        this.sessionId = sessionId;
+        this.counter = counter;
+        this.cypherText = cypherText;
+    }
+
+    @Override
+    public String toString() {
+        return "SessionMessage{" +
+                "\r\n     sessionId=" + Hex.encode(sessionId) +
+                "\r\n     counter=" + counter +
+                "\r\n     cypherText.length=" + cypherText.length +
+                "\r\n}";
+    }
+}
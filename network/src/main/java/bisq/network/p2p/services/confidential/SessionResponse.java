@@ -0,0 +1,47 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.confidential;
+
+import bisq.common.encoding.Hex;
+import bisq.network.p2p.message.Message;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * Response to a SessionInitMessage. The sender only uses the session once it has been accepted. Is also sent with
+ * accepted=false if we received a SessionMessage we cannot process, so the sender stops using that session.
+ */
+@EqualsAndHashCode
+@Getter
+public class SessionResponse implements Message {
+    private final byte[] sessionId;
+    private final boolean accepted;
+
+    public SessionResponse(byte[] sessionId, boolean accepted) {
+        this.sessionId = sessionId;
+        this.accepted = accepted;
+    }
+
+    @Override
+    public String toString() {
+        return "SessionResponse{" +
+                "\r\n     sessionId=" + Hex.encode(sessionId) +
+                "\r\n     accepted=" + accepted +
+                "\r\n}";
+    }
+}
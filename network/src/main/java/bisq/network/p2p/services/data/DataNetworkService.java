@@ -24,8 +24,10 @@ import bisq.network.p2p.node.Node;
 import bisq.network.p2p.services.data.broadcast.BroadcastMessage;
 import bisq.network.p2p.services.data.broadcast.BroadcastResult;
 import bisq.network.p2p.services.data.broadcast.Broadcaster;
-import bisq.network.p2p.services.data.filter.DataFilter;
+import bisq.network.p2p.services.data.filter.FilterEntry;
+import bisq.network.p2p.services.data.filter.InventoryFilter;
 import bisq.network.p2p.services.data.inventory.Inventory;
+import bisq.network.p2p.services.data.inventory.InventoryItem;
 import bisq.network.p2p.services.data.inventory.InventoryService;
 import bisq.network.p2p.services.peergroup.PeerGroup;
 import bisq.network.p2p.services.peergroup.PeerGroupService;
@@ -36,6 +38,7 @@ import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Responsible for broadcast and inventory service. One instance per transport type.
@@ -47,7 +50,7 @@ public class DataNetworkService implements PeerGroupService.Listener, Node.Liste
     private final PeerGroupService peerGroupService;
 
     public interface Listener {
-        void onMessage(Message message, Connection connection, String nodeId);
+        void onMessage(Message message, Connection connection, String nodeId, DataNetworkService dataNetworkService);
 
         void onStateChanged(PeerGroupService.State state, DataNetworkService dataNetworkService);
 
@@ -61,13 +64,14 @@ public class DataNetworkService implements PeerGroupService.Listener, Node.Liste
 
     public DataNetworkService(Node node,
                               PeerGroupService peerGroupService,
-                              Function<DataFilter, Inventory> inventoryProvider) {
+                              Function<InventoryFilter, Inventory> inventoryProvider,
+                              Function<InventoryFilter, List<InventoryItem>> orderedInventoryProvider) {
         this.node = node;
         peerGroup = peerGroupService.getPeerGroup();
         this.peerGroupService = peerGroupService;
         peerGroupService.addListener(this);
         broadcaster = new Broadcaster(node, peerGroup);
-        inventoryService = new InventoryService(node, peerGroup, inventoryProvider);
+        inventoryService = new InventoryService(node, peerGroup, inventoryProvider, orderedInventoryProvider);
         node.addListener(this);
     }
 
@@ -95,7 +99,7 @@ public class DataNetworkService implements PeerGroupService.Listener, Node.Liste
 
     @Override
     public void onMessage(Message message, Connection connection, String nodeId) {
-        listeners.forEach(listener -> listener.onMessage(message, connection, nodeId));
+        listeners.forEach(listener -> listener.onMessage(message, connection, nodeId, this));
     }
 
     @Override
@@ -109,6 +113,11 @@ public class DataNetworkService implements PeerGroupService.Listener, Node.Liste
     public void onDisconnect(Connection connection, CloseReason closeReason) {
     }
 
+    @Override
+    public void onSeenMessageDropped(Connection connection, String nodeId) {
+        onBroadcastReceived(true);
+    }
+
     ///////////////////////////////////////////////////////////////////////////////////////////////////
     // API
     ///////////////////////////////////////////////////////////////////////////////////////////////////
@@ -121,8 +130,18 @@ public class DataNetworkService implements PeerGroupService.Listener, Node.Liste
         return broadcaster.reBroadcast(broadcastMessage);
     }
 
-    List<CompletableFuture<Inventory>> requestInventory(DataFilter dataFilter) {
-        return inventoryService.request(dataFilter);
+    /**
+     * Feedback for adapting the fan-out of re-broadcasts.
+     *
+     * @param isDuplicate True if the received broadcast message did not contain new data.
+     */
+    void onBroadcastReceived(boolean isDuplicate) {
+        broadcaster.getAdaptiveFanOut().onBroadcastReceived(isDuplicate);
+    }
+
+    CompletableFuture<Void> requestInventory(Supplier<Set<FilterEntry>> filterEntriesProvider,
+                                             Function<Inventory, CompletableFuture<?>> pageHandler) {
+        return inventoryService.request(filterEntriesProvider, pageHandler);
     }
 
     void addListener(DataNetworkService.Listener listener) {
@@ -18,12 +18,13 @@
 package bisq.network.p2p.services.data;
 
 import bisq.common.timer.Scheduler;
+import bisq.network.NetworkService;
 import bisq.network.p2p.message.Message;
 import bisq.network.p2p.node.Connection;
 import bisq.network.p2p.node.Node;
 import bisq.network.p2p.node.transport.Transport;
 import bisq.network.p2p.services.data.broadcast.BroadcastResult;
-import bisq.network.p2p.services.data.filter.DataFilter;
+import bisq.network.p2p.services.data.filter.FilterEntry;
 import bisq.network.p2p.services.data.storage.Result;
 import bisq.network.p2p.services.data.storage.StorageService;
 import bisq.network.p2p.services.data.storage.append.AddAppendOnlyDataRequest;
@@ -46,6 +47,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -61,26 +63,45 @@ public class DataService implements DataNetworkService.Listener {
         void onNetworkPayloadAdded(NetworkPayload networkPayload);
 
         void onNetworkPayloadRemoved(NetworkPayload networkPayload);
+
+        /**
+         * Called once per batch for payloads received from an inventory response.
+         */
+        default void onNetworkPayloadsAdded(List<NetworkPayload> networkPayloads) {
+            networkPayloads.forEach(this::onNetworkPayloadAdded);
+        }
     }
 
     @Getter
     private final StorageService storageService;
     private final Set<DataService.Listener> listeners = new CopyOnWriteArraySet<>();
     private final Map<Transport.Type, DataNetworkService> dataNetworkServices = new ConcurrentHashMap<>();
+    // Shared by the nodes of all transports, as gossip delivers the same message on each transport.
+    @Getter
+    private final SeenMessageCache seenMessageCache = new SeenMessageCache(50_000, 16);
 
     public DataService(StorageService storageService) {
         this.storageService = storageService;
+        // Expired payloads get removed locally by each node, so there is nothing to broadcast. The storageService
+        // notifies us on the dispatcher thread.
+        storageService.addListener(networkPayload ->
+                listeners.forEach(listener -> listener.onNetworkPayloadRemoved(networkPayload)));
     }
 
     // todo a bit of a hack that way...
     public DataNetworkService getDataServicePerTransport(Transport.Type transportType, Node defaultNode, PeerGroupService peerGroupService) {
-        DataNetworkService dataNetworkService = new DataNetworkService(defaultNode, peerGroupService, storageService::getInventoryOfAllStores);
+        defaultNode.setSeenMessageCache(seenMessageCache);
+        DataNetworkService dataNetworkService = new DataNetworkService(defaultNode,
+                peerGroupService,
+                storageService::getInventoryOfAllStores,
+                storageService::getOrderedInventory);
         dataNetworkServices.put(transportType, dataNetworkService);
         dataNetworkService.addListener(this);
         return dataNetworkService;
     }
 
     public CompletableFuture<Void> shutdown() {
+        log.info("{}", seenMessageCache);
         dataNetworkServices.values().forEach(DataNetworkService::shutdown);
         storageService.shutdown();
         listeners.clear();
@@ -93,11 +114,14 @@ public class DataService implements DataNetworkService.Listener {
     ///////////////////////////////////////////////////////////////////////////////////////////////////
 
     @Override
-    public void onMessage(Message message, Connection connection, String nodeId) {
+    public void onMessage(Message message, Connection connection, String nodeId, DataNetworkService dataNetworkService) {
+        // If the data was not new to us, we count the broadcast as duplicate for adapting the re-broadcast fan-out.
         if (message instanceof AddDataRequest addDataRequest) {
-            processAddDataRequest(addDataRequest, true);
+            processAddDataRequest(addDataRequest, true)
+                    .thenAccept(optionalData -> dataNetworkService.onBroadcastReceived(optionalData.isEmpty()));
         } else if (message instanceof RemoveDataRequest removeDataRequest) {
-            processRemoveDataRequest(removeDataRequest, true);
+            processRemoveDataRequest(removeDataRequest, true)
+                    .thenAccept(optionalData -> dataNetworkService.onBroadcastReceived(optionalData.isEmpty()));
         }
     }
 
@@ -128,6 +152,14 @@ public class DataService implements DataNetworkService.Listener {
         return storageService.getAuthenticatedPayloadStream(storeName);
     }
 
+    public Stream<NetworkPayload> getPayloadsByClass(Class<?> type) {
+        return storageService.getPayloadsByClass(type);
+    }
+
+    public Stream<NetworkPayload> getPayloadsByOwner(byte[] hashOfPublicKey) {
+        return storageService.getPayloadsByOwner(hashOfPublicKey);
+    }
+
 
     ///////////////////////////////////////////////////////////////////////////////////////////////////
     // Add data
@@ -260,29 +292,33 @@ public class DataService implements DataNetworkService.Listener {
     }
 
     public void requestInventory(StorageService.StoreType storeType) {
-        requestInventory(new DataFilter(new HashSet<>(storageService.getFilterEntries(storeType))));
+        requestInventory(() -> storageService.getFilterEntries(storeType));
     }
 
     public void requestInventory(String storeName) {
-        requestInventory(new DataFilter(new HashSet<>(storageService.getFilterEntries(storeName))));
+        requestInventory(() -> storageService.getFilterEntries(storeName));
+    }
+
+    public void setInventoryPriority(String fileName, int priority) {
+        storageService.setInventoryPriority(fileName, priority);
     }
 
-    public void requestInventory(DataFilter dataFilter) {
-        dataNetworkServices.values().forEach(service -> requestInventory(dataFilter, service));
+    /**
+     * @param filterEntriesProvider Provides the filter entries of the data we have. Gets called for each request of
+     *                              the sync.
+     */
+    public void requestInventory(Supplier<Set<FilterEntry>> filterEntriesProvider) {
+        dataNetworkServices.values().forEach(service -> requestInventory(filterEntriesProvider, service));
     }
 
-    public void requestInventory(DataFilter dataFilter, DataNetworkService dataNetworkService) {
-        dataNetworkService.requestInventory(dataFilter).forEach(future -> {
-            future.whenComplete(((inventory, throwable) -> {
-                inventory.entries().forEach(dataRequest -> {
-                    if (dataRequest instanceof AddDataRequest addDataRequest) {
-                        processAddDataRequest(addDataRequest, false);
-                    } else if (dataRequest instanceof RemoveDataRequest removeDataRequest) {
-                        processRemoveDataRequest(removeDataRequest, false);
+    public void requestInventory(Supplier<Set<FilterEntry>> filterEntriesProvider,
+                                 DataNetworkService dataNetworkService) {
+        dataNetworkService.requestInventory(filterEntriesProvider, this::processInventory)
+                .whenComplete(((__, throwable) -> {
+                    if (throwable != null) {
+                        log.warn("Inventory request failed. {}", throwable.toString());
                     }
-                });
-            }));
-        });
+                }));
     }
 
 
@@ -303,35 +339,75 @@ public class DataService implements DataNetworkService.Listener {
     // Private
     ///////////////////////////////////////////////////////////////////////////////////////////////////
 
-    private void processAddDataRequest(AddDataRequest addDataRequest, boolean allowReBroadcast) {
-        storageService.onAddDataRequest(addDataRequest)
-                .whenComplete((optionalData, throwable) -> {
+    private CompletableFuture<Optional<NetworkPayload>> processAddDataRequest(AddDataRequest addDataRequest,
+                                                                              boolean allowReBroadcast) {
+        return storageService.onAddDataRequest(addDataRequest)
+                .whenCompleteAsync((optionalData, throwable) -> {
+                    if (throwable != null) {
+                        log.error("Processing addDataRequest failed.", throwable);
+                        return;
+                    }
                     optionalData.ifPresent(networkData -> {
-                        // We get called on dispatcher thread with onMessage, and we don't switch thread in 
-                        // async calls
+                        // The storageService completes on its verification pool. We notify our listeners on the
+                        // dispatcher thread as we do for other network events.
                         listeners.forEach(listener -> listener.onNetworkPayloadAdded(networkData));
                         if (allowReBroadcast) {
                             dataNetworkServices.values().forEach(e -> e.reBroadcast(addDataRequest));
                         }
                     });
-                });
+                }, NetworkService.DISPATCHER);
+    }
+
+    // Called for each page of an inventory response
+    private CompletableFuture<?> processInventory(Inventory inventory) {
+        // Add requests are the bulk of the inventory, so we process them as batch.
+        List<AddDataRequest> addDataRequests = new ArrayList<>();
+        inventory.entries().forEach(dataRequest -> {
+            if (dataRequest instanceof AddDataRequest addDataRequest) {
+                addDataRequests.add(addDataRequest);
+            } else if (dataRequest instanceof RemoveDataRequest removeDataRequest) {
+                processRemoveDataRequest(removeDataRequest, false);
+            }
+        });
+        return processAddDataRequests(addDataRequests);
     }
 
-    private void processRemoveDataRequest(RemoveDataRequest removeDataRequest, boolean allowReBroadcast) {
-        storageService.onRemoveDataRequest(removeDataRequest)
-                .whenComplete((optionalData, throwable) -> {
+    private CompletableFuture<?> processAddDataRequests(List<AddDataRequest> addDataRequests) {
+        long ts = System.currentTimeMillis();
+        return storageService.onAddDataRequests(addDataRequests)
+                .whenCompleteAsync((networkPayloads, throwable) -> {
+                    if (throwable != null) {
+                        log.error("Processing inventory data failed.", throwable);
+                        return;
+                    }
+                    log.info("Added {} of {} inventory entries in {} ms",
+                            networkPayloads.size(), addDataRequests.size(), System.currentTimeMillis() - ts);
+                    if (!networkPayloads.isEmpty()) {
+                        listeners.forEach(listener -> listener.onNetworkPayloadsAdded(networkPayloads));
+                    }
+                }, NetworkService.DISPATCHER);
+    }
+
+    private CompletableFuture<Optional<NetworkPayload>> processRemoveDataRequest(RemoveDataRequest removeDataRequest,
+                                                                                 boolean allowReBroadcast) {
+        return storageService.onRemoveDataRequest(removeDataRequest)
+                .whenCompleteAsync((optionalData, throwable) -> {
+                    if (throwable != null) {
+                        log.error("Processing removeDataRequest failed.", throwable);
+                        return;
+                    }
                     optionalData.ifPresent(networkData -> {
-                        // We get called on dispatcher thread with onMessage, and we don't switch thread in 
-                        // async calls
+                        // The storageService completes on its verification pool. We notify our listeners on the
+                        // dispatcher thread as we do for other network events.
                         listeners.forEach(listener -> listener.onNetworkPayloadRemoved(networkData));
                         if (allowReBroadcast) {
                             dataNetworkServices.values().forEach(e -> e.reBroadcast(removeDataRequest));
                         }
                     });
-                });
+                }, NetworkService.DISPATCHER);
     }
 
     private void doRequestInventory(DataNetworkService dataNetworkService) {
-        requestInventory(new DataFilter(new HashSet<>(storageService.getFilterEntries(StorageService.StoreType.ALL))), dataNetworkService);
+        requestInventory(() -> storageService.getFilterEntries(StorageService.StoreType.ALL), dataNetworkService);
     }
 }
\ No newline at end of file
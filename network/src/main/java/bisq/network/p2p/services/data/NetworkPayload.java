@@ -19,9 +19,18 @@ package bisq.network.p2p.services.data;
 
 import bisq.network.p2p.message.Proto;
 import bisq.network.p2p.services.data.storage.MetaData;
+import bisq.security.DigestUtil;
 
 public interface NetworkPayload extends Proto {
     MetaData getMetaData();
 
     boolean isDataInvalid();
+
+    /**
+     * @return The hash of the serialized payload, used as key in the data stores. Implementations are immutable and
+     * should compute it only once.
+     */
+    default byte[] getHash() {
+        return DigestUtil.hash(serialize());
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.data;
+
+import bisq.network.p2p.message.Message;
+import com.google.common.collect.MapMaker;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of the digests of the data requests we have received already. Gossip delivers each request from
+ * several peers and on each transport. The wire codec looks up the digest of the serialized message and drops exact
+ * duplicates before they get deserialized, hashed and passed to the store.
+ * <p>
+ * The digest is a SipHash with a random key, so peers cannot craft collisions to get other messages dropped.
+ * The digest is only marked as seen once the node has accepted the authorization token of the message. Otherwise a
+ * copy with an invalid token would get the valid copies from other peers dropped.
+ * Entries expire after MAX_AGE, thus data which gets published again after it has been expired is not dropped.
+ * The cache is split into stripes with their own lock to reduce contention between the reading threads.
+ */
+public class SeenMessageCache {
+    private static final long MAX_AGE = TimeUnit.MINUTES.toMillis(10);
+
+    private static class Stripe extends LinkedHashMap<Long, Long> {
+        private final int maxSize;
+
+        private Stripe(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private final HashFunction hashFunction;
+    private final Stripe[] stripes;
+    private final LongAdder numLookups = new LongAdder();
+    private final LongAdder numHits = new LongAdder();
+    // Digests of decoded messages whose authorization has not been checked yet. Weak keys are compared by identity,
+    // and entries of messages which never get authorized are removed once the message got garbage collected.
+    private final Map<Message, Long> pendingDigests = new MapMaker().weakKeys().makeMap();
+
+    public SeenMessageCache(int maxSize, int numStripes) {
+        SecureRandom random = new SecureRandom();
+        hashFunction = Hashing.sipHash24(random.nextLong(), random.nextLong());
+        stripes = new Stripe[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            stripes[i] = new Stripe(Math.max(1, maxSize / numStripes));
+        }
+    }
+
+    public long digest(ByteBuffer serializedMessage) {
+        return hashFunction.hashBytes(serializedMessage).asLong();
+    }
+
+    /**
+     * Counts as lookup for the hit rate.
+     */
+    public boolean isSeen(long digest) {
+        numLookups.increment();
+        Stripe stripe = getStripe(digest);
+        Long timestamp;
+        synchronized (stripe) {
+            timestamp = stripe.get(digest);
+        }
+        if (timestamp != null && System.currentTimeMillis() - timestamp < MAX_AGE) {
+            numHits.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called by the codec for a decoded message. The digest gets marked as seen at onAuthorized.
+     */
+    public void addPending(Message message, long digest) {
+        pendingDigests.put(message, digest);
+    }
+
+    /**
+     * Called once the authorization of the message has been verified.
+     */
+    public void onAuthorized(Message message) {
+        Long digest = pendingDigests.remove(message);
+        if (digest != null) {
+            markSeen(digest);
+        }
+    }
+
+    public void markSeen(long digest) {
+        Stripe stripe = getStripe(digest);
+        synchronized (stripe) {
+            // We remove it first to move it to the end of the eviction order
+            stripe.remove(digest);
+            stripe.put(digest, System.currentTimeMillis());
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public long getNumLookups() {
+        return numLookups.sum();
+    }
+
+    public long getNumHits() {
+        return numHits.sum();
+    }
+
+    public double getHitRate() {
+        long numLookups = getNumLookups();
+        return numLookups == 0 ? 0 : getNumHits() / (double) numLookups;
+    }
+
+    @Override
+    public String toString() {
+        return "SeenMessageCache{" +
+                "size=" + size() +
+                ", numLookups=" + getNumLookups() +
+                ", numHits=" + getNumHits() +
+                ", hitRate=" + String.format("%.3f", getHitRate()) +
+                "}";
+    }
+
+    private Stripe getStripe(long digest) {
+        return stripes[Math.floorMod(Long.hashCode(digest), stripes.length)];
+    }
+}
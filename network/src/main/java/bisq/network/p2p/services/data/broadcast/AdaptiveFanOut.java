@@ -0,0 +1,70 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.data.broadcast;
+
+/**
+ * Decides to how many peers a received broadcast message gets relayed.
+ * <p>
+ * With push gossip each node receives on average as many copies of a message as the average fan-out in the network,
+ * and the fraction of nodes not reached is about e^-fanOut. We derive the number of received copies from the rate of
+ * duplicates and scale our distribution factor so that the copies converge to TARGET_NUM_COPIES. Nodes with many
+ * connections (e.g. seed nodes) thereby stop sending to most of their peers, while nodes with few connections keep
+ * sending to MAX_DISTRIBUTION_FACTOR of them.
+ */
+public class AdaptiveFanOut {
+    static final double MAX_DISTRIBUTION_FACTOR = 0.75;
+    static final double MIN_DISTRIBUTION_FACTOR = 0.1;
+    static final double TARGET_NUM_COPIES = 6;
+    static final int MIN_FAN_OUT = 3;
+    // Weight of a new sample for the exponential moving average of the duplicate rate
+    private static final double ALPHA = 0.05;
+    // How fast the distribution factor follows the deviation from TARGET_NUM_COPIES
+    private static final double GAIN = 0.02;
+    private static final double MAX_DUPLICATE_RATE = 0.95;
+
+    // Guarded by this
+    private double duplicateRate;
+    private double distributionFactor = MAX_DISTRIBUTION_FACTOR;
+
+    public synchronized void onBroadcastReceived(boolean isDuplicate) {
+        duplicateRate += ALPHA * ((isDuplicate ? 1 : 0) - duplicateRate);
+        double deviation = TARGET_NUM_COPIES / getNumCopies() - 1;
+        distributionFactor = Math.max(MIN_DISTRIBUTION_FACTOR,
+                Math.min(MAX_DISTRIBUTION_FACTOR, distributionFactor * (1 + GAIN * deviation)));
+    }
+
+    public synchronized double getDuplicateRate() {
+        return duplicateRate;
+    }
+
+    /**
+     * @return Estimated average number of copies we receive of each broadcast message.
+     */
+    public synchronized double getNumCopies() {
+        return 1 / (1 - Math.min(duplicateRate, MAX_DUPLICATE_RATE));
+    }
+
+    public synchronized double getDistributionFactor() {
+        return distributionFactor;
+    }
+
+    public int getFanOut(int numConnections) {
+        long fanOut = Math.max(MIN_FAN_OUT, Math.round(numConnections * getDistributionFactor()));
+        return (int) Math.min(numConnections, fanOut);
+    }
+}
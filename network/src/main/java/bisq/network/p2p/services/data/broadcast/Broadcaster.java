@@ -18,27 +18,39 @@
 package bisq.network.p2p.services.data.broadcast;
 
 import bisq.common.util.CollectionUtil;
-import bisq.network.NetworkService;
 import bisq.network.p2p.node.Address;
 import bisq.network.p2p.node.Connection;
 import bisq.network.p2p.node.Node;
 import bisq.network.p2p.services.peergroup.PeerGroup;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
 import java.util.stream.Collectors;
 
+/**
+ * Sends broadcast messages to the connected peers in parallel. Each send uses the connection's send queue, so a slow
+ * peer does not delay the others. Messages received from the network are relayed to a subset of the peers sized by
+ * AdaptiveFanOut.
+ */
 @Slf4j
 public class Broadcaster {
     private static final long BROADCAST_TIMEOUT = 90;
     private static final long RE_BROADCAST_DELAY_MS = 100;
+    private static final Consumer<BroadcastResult> IGNORE_PARTIAL_RESULT = result -> {
+    };
 
     private final Node node;
     private final PeerGroup peerGroup;
+    @Getter
+    private final AdaptiveFanOut adaptiveFanOut = new AdaptiveFanOut();
 
     public Broadcaster(Node node, PeerGroup peerGroup) {
         this.node = node;
@@ -46,8 +58,10 @@ public class Broadcaster {
     }
 
     public CompletableFuture<BroadcastResult> reBroadcast(BroadcastMessage broadcastMessage) {
-        return CompletableFuture.supplyAsync(() -> broadcast(broadcastMessage, 0.75).join(),
-                CompletableFuture.delayedExecutor(RE_BROADCAST_DELAY_MS, TimeUnit.MILLISECONDS));
+        Executor delayedExecutor = CompletableFuture.delayedExecutor(RE_BROADCAST_DELAY_MS, TimeUnit.MILLISECONDS);
+        return CompletableFuture.supplyAsync(() ->
+                        broadcast(broadcastMessage, adaptiveFanOut::getFanOut, IGNORE_PARTIAL_RESULT), delayedExecutor)
+                .thenCompose(future -> future);
     }
 
     public CompletableFuture<BroadcastResult> broadcast(BroadcastMessage broadcastMessage) {
@@ -55,35 +69,61 @@ public class Broadcaster {
     }
 
     public CompletableFuture<BroadcastResult> broadcast(BroadcastMessage broadcastMessage, double distributionFactor) {
+        return broadcast(broadcastMessage,
+                numConnections -> (int) Math.min(numConnections, Math.round(numConnections * distributionFactor)),
+                IGNORE_PARTIAL_RESULT);
+    }
+
+    /**
+     * @param fanOutProvider       Provides the number of peers to send to for the given number of connections.
+     *                             The result gets clamped to the range from 0 to the number of connections.
+     * @param partialResultHandler Gets called with the accumulated result each time a send has completed.
+     * @return Future completing once all sends have completed or timed out.
+     */
+    public CompletableFuture<BroadcastResult> broadcast(BroadcastMessage broadcastMessage,
+                                                        IntUnaryOperator fanOutProvider,
+                                                        Consumer<BroadcastResult> partialResultHandler) {
         long ts = System.currentTimeMillis();
-        CompletableFuture<BroadcastResult> future = new CompletableFuture<BroadcastResult>()
-                .orTimeout(BROADCAST_TIMEOUT, TimeUnit.SECONDS);
-        AtomicInteger numSuccess = new AtomicInteger(0);
-        AtomicInteger numFaults = new AtomicInteger(0);
-        long numConnections = peerGroup.getAllConnections().count();
-        long numBroadcasts = Math.min(numConnections, Math.round(numConnections * distributionFactor));
-        log.debug("Broadcast {} to {} out of {} peers. distributionFactor={}",
-                broadcastMessage.getClass().getSimpleName(), numBroadcasts, numConnections, distributionFactor);
         List<Connection> allConnections = peerGroup.getAllConnections().collect(Collectors.toList());
+        int numConnections = allConnections.size();
+        // We can't send to more peers than we are connected to, otherwise the future would never complete
+        int numBroadcasts = Math.max(0, Math.min(numConnections, fanOutProvider.applyAsInt(numConnections)));
+        log.debug("Broadcast {} to {} out of {} peers",
+                broadcastMessage.getClass().getSimpleName(), numBroadcasts, numConnections);
+        if (numBroadcasts == 0) {
+            return CompletableFuture.completedFuture(new BroadcastResult(0, 0, 0));
+        }
         Collections.shuffle(allConnections);
-        NetworkService.NETWORK_IO_POOL.submit(() -> {
-            allConnections.stream()
-                    .limit(numBroadcasts)
-                    .forEach(connection -> {
-                        log.debug("Node {} broadcast to {}", node, connection.getPeerAddress());
-                        try {
-                            node.send(broadcastMessage, connection);
-                            numSuccess.incrementAndGet();
-                        } catch (Throwable throwable) {
-                            numFaults.incrementAndGet();
-                        }
-                        if (numSuccess.get() + numFaults.get() == numBroadcasts) {
-                            future.complete(new BroadcastResult(numSuccess.get(),
-                                    numFaults.get(),
-                                    System.currentTimeMillis() - ts));
-                        }
-                    });
-        });
+
+        CompletableFuture<BroadcastResult> future = new CompletableFuture<>();
+        AtomicInteger numSuccess = new AtomicInteger(0);
+        AtomicInteger numFaults = new AtomicInteger(0);
+        allConnections.stream()
+                .limit(numBroadcasts)
+                .forEach(connection -> {
+                    log.debug("Node {} broadcast to {}", node, connection.getPeerAddress());
+                    node.sendAsync(broadcastMessage, connection)
+                            .orTimeout(BROADCAST_TIMEOUT, TimeUnit.SECONDS)
+                            .whenComplete((c, throwable) -> {
+                                BroadcastResult result;
+                                // Increment and read together, so that only the last completed send sees the sum of
+                                // numBroadcasts.
+                                synchronized (future) {
+                                    if (throwable == null) {
+                                        numSuccess.incrementAndGet();
+                                    } else {
+                                        numFaults.incrementAndGet();
+                                    }
+                                    result = new BroadcastResult(numSuccess.get(),
+                                            numFaults.get(),
+                                            System.currentTimeMillis() - ts);
+                                }
+                                partialResultHandler.accept(result);
+                                if (result.numSuccess() + result.numFaults() == numBroadcasts) {
+                                    future.complete(result);
+                                }
+                            });
+                });
         return future;
     }
 
@@ -0,0 +1,72 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.data.filter;
+
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Collection;
+
+/**
+ * Bloom filter of the hash and sequence number of the data we hold. The receiver of the inventory request only
+ * sends back data which is not contained in the filter. At a false positive probability of 0.1% the filter costs
+ * about 1.8 bytes per entry. Only sent to peers supporting Feature.INVENTORY_V2.
+ * <p>
+ * A false positive causes a missing entry to not get delivered. As we use a random salt per filter, false positives
+ * are independent between requests, so the entry will be received from another peer or at the next request.
+ */
+@ToString
+public final class BloomDataFilter implements InventoryFilter, Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final double FALSE_POSITIVE_PROBABILITY = 0.001;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    public static BloomDataFilter from(Collection<FilterEntry> filterEntries) {
+        BloomDataFilter dataFilter = new BloomDataFilter(RANDOM.nextInt(),
+                BloomFilter.create(Funnels.byteArrayFunnel(), filterEntries.size(), FALSE_POSITIVE_PROBABILITY));
+        filterEntries.forEach(filterEntry -> dataFilter.bloomFilter.put(dataFilter.getKey(filterEntry)));
+        return dataFilter;
+    }
+
+    private final int salt;
+    private final BloomFilter<byte[]> bloomFilter;
+
+    private BloomDataFilter(int salt, BloomFilter<byte[]> bloomFilter) {
+        this.salt = salt;
+        this.bloomFilter = bloomFilter;
+    }
+
+    @Override
+    public boolean mightContain(FilterEntry filterEntry) {
+        return bloomFilter.mightContain(getKey(filterEntry));
+    }
+
+    private byte[] getKey(FilterEntry filterEntry) {
+        byte[] hash = filterEntry.hash();
+        return ByteBuffer.allocate(8 + hash.length)
+                .putInt(salt)
+                .put(hash)
+                .putInt(filterEntry.sequenceNumber())
+                .array();
+    }
+}
@@ -21,5 +21,13 @@ package bisq.network.p2p.services.data.filter;
 import java.io.Serializable;
 import java.util.HashSet;
 
-public record DataFilter(HashSet<FilterEntry> filterEntries) implements Serializable {
-}
\ No newline at end of file
+/**
+ * Filter sent to peers which do not support Feature.INVENTORY_V2. Is part of the InventoryRequest of older versions,
+ * so it must stay serialization compatible.
+ */
+public record DataFilter(HashSet<FilterEntry> filterEntries) implements InventoryFilter, Serializable {
+    @Override
+    public boolean mightContain(FilterEntry filterEntry) {
+        return filterEntries.contains(filterEntry);
+    }
+}
@@ -18,6 +18,20 @@
 package bisq.network.p2p.services.data.filter;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 public record FilterEntry(byte[] hash, int sequenceNumber) implements Serializable {
+    // Records use reference equality for arrays, so we need to implement equals and hashCode.
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FilterEntry that = (FilterEntry) o;
+        return sequenceNumber == that.sequenceNumber && Arrays.equals(hash, that.hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(hash) + sequenceNumber;
+    }
 }
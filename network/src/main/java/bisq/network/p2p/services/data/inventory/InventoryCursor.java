@@ -0,0 +1,35 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.data.inventory;
+
+import bisq.common.data.ByteArray;
+import bisq.network.p2p.message.Proto;
+import com.google.common.primitives.UnsignedBytes;
+
+import java.util.Comparator;
+
+/**
+ * Position of an entry in the ordered inventory of a peer. Entries of stores with higher priority come first, so that
+ * e.g. offers are received before the chat history. Inside a priority the entries are ordered by store and map key.
+ */
+public record InventoryCursor(int priority, String fileName, ByteArray key) implements Proto {
+    public static final Comparator<InventoryCursor> COMPARATOR = Comparator
+            .comparingInt(InventoryCursor::priority).reversed()
+            .thenComparing(InventoryCursor::fileName)
+            .thenComparing(cursor -> cursor.key().getBytes(), UnsignedBytes.lexicographicalComparator());
+}
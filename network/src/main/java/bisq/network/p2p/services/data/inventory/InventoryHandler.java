@@ -17,48 +17,94 @@
 
 package bisq.network.p2p.services.data.inventory;
 
+import bisq.common.timer.Scheduler;
 import bisq.network.NetworkService;
 import bisq.network.p2p.message.Message;
 import bisq.network.p2p.node.CloseReason;
 import bisq.network.p2p.node.Connection;
 import bisq.network.p2p.node.Node;
+import bisq.network.p2p.node.Feature;
+import bisq.network.p2p.services.data.filter.BloomDataFilter;
 import bisq.network.p2p.services.data.filter.DataFilter;
+import bisq.network.p2p.services.data.filter.FilterEntry;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
+import javax.annotation.Nullable;
+import java.util.HashSet;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 import static java.util.concurrent.CompletableFuture.supplyAsync;
 
+/**
+ * Requests the inventory page by page. The next page is requested once the previous one has been applied by the
+ * pageHandler, so that at most one page is held in memory. The timeout applies to each page.
+ */
 @Getter
 @Slf4j
 class InventoryHandler implements Connection.Listener {
     private final Node node;
     private final Connection connection;
-    private final CompletableFuture<Inventory> future = new CompletableFuture<>();
+    private final Function<Inventory, CompletableFuture<?>> pageHandler;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
     private final int nonce;
+    // Only one of the filters is set, depending on whether the peer supports Feature.INVENTORY_V2
+    @Nullable
+    private DataFilter dataFilter;
+    @Nullable
+    private BloomDataFilter bloomFilter;
+    @Nullable
+    private InventoryPartition partition;
+    private int maxPageSize;
+    private long timeout;
     private long ts;
+    private int numPages;
+    private int numEntries;
+    @Nullable
+    private volatile Scheduler timeoutScheduler;
 
-    InventoryHandler(Node node, Connection connection) {
+    InventoryHandler(Node node, Connection connection, Function<Inventory, CompletableFuture<?>> pageHandler) {
         this.node = node;
         this.connection = connection;
+        this.pageHandler = pageHandler;
 
         nonce = new Random().nextInt();
         connection.addListener(this);
     }
 
-    CompletableFuture<Inventory> request(DataFilter dataFilter) {
-        log.info("Node {} send GetInventoryRequest to {} with dataFilter {} and nonce {}. Connection={}",
-                node, connection.getPeerAddress(), dataFilter, nonce, connection.getId());
-        ts = System.currentTimeMillis();
-        supplyAsync(() -> node.send(new InventoryRequest(dataFilter, nonce), connection), NetworkService.NETWORK_IO_POOL)
-                .whenComplete((c, throwable) -> {
-                    if (throwable != null) {
-                        future.completeExceptionally(throwable);
-                        dispose();
-                    }
-                });
+    /**
+     * Peers on older versions get the filter entries as HashSet and ignore paging and the partition, so they respond
+     * with the whole inventory.
+     *
+     * @param partition Part of the keyspace to request. Null for the whole inventory.
+     * @return Future which completes once the last page has been applied. Cancelling it disposes the handler.
+     */
+    CompletableFuture<Void> request(Set<FilterEntry> filterEntries,
+                                    @Nullable InventoryPartition partition,
+                                    int maxPageSize,
+                                    long timeout) {
+        if (connection.getPeersCapability().supports(Feature.INVENTORY_V2)) {
+            bloomFilter = BloomDataFilter.from(filterEntries);
+        } else {
+            dataFilter = new DataFilter(new HashSet<>(filterEntries));
+        }
+        log.info("Node {} send GetInventoryRequest to {} with {} filter entries, partition {} and nonce {}. " +
+                        "Connection={}",
+                node, connection.getPeerAddress(), filterEntries.size(), partition, nonce, connection.getId());
+        this.partition = partition;
+        future.whenComplete((__, throwable) -> {
+            if (future.isCancelled()) {
+                stopTimeout();
+                removeListeners();
+            }
+        });
+        this.maxPageSize = maxPageSize;
+        this.timeout = timeout;
+        sendRequest(null);
         return future;
     }
 
@@ -66,13 +112,29 @@ class InventoryHandler implements Connection.Listener {
     public void onMessage(Message message) {
         if (message instanceof InventoryResponse response) {
             if (response.requestNonce() == nonce) {
+                stopTimeout();
+                numPages++;
+                numEntries += response.inventory().entries().size();
                 log.info("Node {} received GetInventoryResponse from {} with inventory {} and nonce {}. Connection={}",
                         node, connection.getPeerAddress(), response.inventory(), response.requestNonce(), connection.getId());
-                removeListeners();
-                connection.getMetrics().addRtt(ts = System.currentTimeMillis() - ts);
-                future.complete(response.inventory());
+                connection.getMetrics().addRtt(System.currentTimeMillis() - ts);
+                InventoryCursor nextCursor = response.nextCursor();
+                CompletableFuture<?> applied = pageHandler.apply(response.inventory());
+                if (nextCursor == null) {
+                    log.info("Node {} received {} inventory entries in {} pages from {}",
+                            node, numEntries, numPages, connection.getPeerAddress());
+                    removeListeners();
+                    applied.whenComplete((result, throwable) -> future.complete(null));
+                } else {
+                    applied.whenComplete((result, throwable) -> {
+                        if (!future.isDone()) {
+                            sendRequest(nextCursor);
+                        }
+                    });
+                }
             } else {
-                log.warn("Node {} received Pong from {} with invalid nonce {}. Request nonce was {}. Connection={}",
+                log.warn("Node {} received GetInventoryResponse from {} with invalid nonce {}. Request nonce was {}. " +
+                                "Connection={}",
                         node, connection.getPeerAddress(), response.requestNonce(), nonce, connection.getId());
             }
         }
@@ -84,11 +146,38 @@ class InventoryHandler implements Connection.Listener {
     }
 
     void dispose() {
+        stopTimeout();
         removeListeners();
         future.cancel(true);
     }
 
+    private void sendRequest(@Nullable InventoryCursor cursor) {
+        ts = System.currentTimeMillis();
+        timeoutScheduler = Scheduler.run(() -> {
+            future.completeExceptionally(new TimeoutException("Inventory request timed out after " + numPages + " pages"));
+            dispose();
+        }).after(timeout);
+        // The peer keeps the filtered inventory for the following pages, so we send the filter only with the first one
+        InventoryRequest request = bloomFilter != null ?
+                new InventoryRequest(cursor == null ? bloomFilter : null, nonce, maxPageSize, cursor, partition) :
+                new InventoryRequest(dataFilter, nonce);
+        supplyAsync(() -> node.send(request, connection), NetworkService.NETWORK_IO_POOL)
+                .whenComplete((c, throwable) -> {
+                    if (throwable != null) {
+                        future.completeExceptionally(throwable);
+                        dispose();
+                    }
+                });
+    }
+
+    private void stopTimeout() {
+        Scheduler scheduler = timeoutScheduler;
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+    }
+
     private void removeListeners() {
         connection.removeListener(this);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,154 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.data.inventory;
+
+import bisq.network.p2p.services.data.DataRequest;
+import bisq.network.p2p.services.data.filter.InventoryFilter;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Creates the pages of paged inventory responses. The ordered inventory is computed once per request and kept per
+ * connection until the last page has been sent, so that following pages do not need to scan and sort the stores again.
+ * If the continuation is not available anymore (e.g. the requester took too long), the ordered inventory is computed
+ * again and the page starts after the requested cursor. Requests for the following pages do not carry the filter, so
+ * in that case the remaining pages are not filtered and the requester drops the entries it has already.
+ * Is expected to be called on the dispatcher thread of the connection.
+ */
+@Slf4j
+class InventoryPageProvider {
+    // Limits for the byte budget requested by the peer
+    static final int MIN_PAGE_SIZE = 16 * 1024;
+    static final int MAX_PAGE_SIZE = 4 * 1024 * 1024;
+
+    private static class Continuation {
+        private final int nonce;
+        private final List<InventoryItem> items;
+        private int position;
+
+        private Continuation(int nonce, List<InventoryItem> items, int position) {
+            this.nonce = nonce;
+            this.items = items;
+            this.position = position;
+        }
+
+        @Nullable
+        private InventoryCursor getLastCursor() {
+            return position > 0 ? items.get(position - 1).cursor() : null;
+        }
+    }
+
+    private final Function<InventoryFilter, List<InventoryItem>> orderedInventoryProvider;
+    private final Map<String, Continuation> continuationByConnectionId = new ConcurrentHashMap<>();
+
+    /**
+     * @param orderedInventoryProvider Provides the entries not contained in the filter, ordered by
+     *                                 InventoryCursor.COMPARATOR.
+     */
+    InventoryPageProvider(Function<InventoryFilter, List<InventoryItem>> orderedInventoryProvider) {
+        this.orderedInventoryProvider = orderedInventoryProvider;
+    }
+
+    InventoryResponse getPage(String connectionId, InventoryRequest request) {
+        Continuation continuation = continuationByConnectionId.get(connectionId);
+        if (continuation == null ||
+                continuation.nonce != request.nonce() ||
+                request.cursor() == null ||
+                !request.cursor().equals(continuation.getLastCursor())) {
+            continuation = createContinuation(request);
+        }
+
+        int maxPageSize = Math.max(MIN_PAGE_SIZE, Math.min(MAX_PAGE_SIZE, request.maxPageSize()));
+        HashSet<DataRequest> page = new HashSet<>();
+        // We measure the size with the same serialization as used for the message. Shared class descriptors are
+        // only counted once, as in the serialized page.
+        try (CountingOutputStream countingOutputStream = new CountingOutputStream(ByteStreams.nullOutputStream());
+             ObjectOutputStream objectOutputStream = new ObjectOutputStream(countingOutputStream)) {
+            List<InventoryItem> items = continuation.items;
+            while (continuation.position < items.size()) {
+                DataRequest dataRequest = items.get(continuation.position).dataRequest();
+                objectOutputStream.writeObject(dataRequest);
+                objectOutputStream.flush();
+                // A page contains at least one entry, even if it exceeds the budget
+                if (countingOutputStream.getCount() > maxPageSize && !page.isEmpty()) {
+                    break;
+                }
+                page.add(dataRequest);
+                continuation.position++;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        InventoryCursor nextCursor = null;
+        if (continuation.position < continuation.items.size()) {
+            nextCursor = continuation.getLastCursor();
+            continuationByConnectionId.put(connectionId, continuation);
+        } else {
+            continuationByConnectionId.remove(connectionId);
+        }
+        return new InventoryResponse(new Inventory(page, 0), request.nonce(), nextCursor);
+    }
+
+    void onDisconnect(String connectionId) {
+        continuationByConnectionId.remove(connectionId);
+    }
+
+    void clear() {
+        continuationByConnectionId.clear();
+    }
+
+    private Continuation createContinuation(InventoryRequest request) {
+        List<InventoryItem> items = orderedInventoryProvider.apply(request.filter());
+        InventoryPartition partition = request.partition();
+        if (partition != null) {
+            items = items.stream()
+                    .filter(item -> partition.contains(item.cursor().key()))
+                    .toList();
+        }
+        int position = 0;
+        InventoryCursor cursor = request.cursor();
+        if (cursor != null) {
+            // Index of the first item after the cursor
+            int low = 0;
+            int high = items.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (InventoryCursor.COMPARATOR.compare(items.get(mid).cursor(), cursor) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            position = low;
+            log.debug("Continuation for nonce {} not found. We start after the requested cursor at position {} of {}",
+                    request.nonce(), position, items.size());
+        }
+        return new Continuation(request.nonce(), items, position);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.data.inventory;
+
+import bisq.common.data.ByteArray;
+import bisq.network.p2p.message.Proto;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Part of the keyspace of the inventory. The map keys are hashes of the payloads, so the first bytes of the key
+ * distribute the entries evenly across the partitions.
+ */
+public record InventoryPartition(int index, int numPartitions) implements Proto {
+    public InventoryPartition {
+        checkArgument(numPartitions > 0 && index >= 0 && index < numPartitions,
+                "Invalid partition %s of %s", index, numPartitions);
+    }
+
+    public boolean contains(ByteArray key) {
+        byte[] bytes = key.getBytes();
+        int prefix = 0;
+        for (int i = 0; i < Math.min(4, bytes.length); i++) {
+            prefix = (prefix << 8) | (bytes[i] & 0xFF);
+        }
+        return Integer.remainderUnsigned(prefix, numPartitions) == index;
+    }
+}
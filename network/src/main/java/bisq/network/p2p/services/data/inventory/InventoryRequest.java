@@ -18,7 +18,47 @@
 package bisq.network.p2p.services.data.inventory;
 
 import bisq.network.p2p.services.data.broadcast.BroadcastMessage;
+import bisq.network.p2p.services.data.filter.BloomDataFilter;
 import bisq.network.p2p.services.data.filter.DataFilter;
+import bisq.network.p2p.services.data.filter.InventoryFilter;
 
-public record InventoryRequest(DataFilter dataFilter, int nonce) implements BroadcastMessage {
+import javax.annotation.Nullable;
+import java.util.HashSet;
+
+/**
+ * Peers on older versions only know the dataFilter and the nonce. Requests to peers not supporting
+ * Feature.INVENTORY_V2 must leave the other fields at their defaults, as those peers cannot deserialize the new types.
+ *
+ * @param dataFilter  Filter for peers on older versions. Empty if the bloomFilter is set.
+ * @param bloomFilter Filter for peers supporting Feature.INVENTORY_V2. Only sent with the request for the first page.
+ * @param maxPageSize Byte budget for the response. If 0 the whole inventory is sent in one response, as expected by
+ *                    peers on older versions which do not send that field.
+ * @param cursor      Position after which the next page starts. Null for the first page.
+ * @param partition   Part of the keyspace requested. Null for the whole inventory.
+ */
+public record InventoryRequest(DataFilter dataFilter,
+                               int nonce,
+                               @Nullable BloomDataFilter bloomFilter,
+                               int maxPageSize,
+                               @Nullable InventoryCursor cursor,
+                               @Nullable InventoryPartition partition) implements BroadcastMessage {
+    public InventoryRequest(DataFilter dataFilter, int nonce) {
+        this(dataFilter, nonce, null, 0, null, null);
+    }
+
+    public InventoryRequest(@Nullable BloomDataFilter bloomFilter,
+                            int nonce,
+                            int maxPageSize,
+                            @Nullable InventoryCursor cursor,
+                            @Nullable InventoryPartition partition) {
+        this(new DataFilter(new HashSet<>()), nonce, bloomFilter, maxPageSize, cursor, partition);
+    }
+
+    public InventoryFilter filter() {
+        return bloomFilter != null ? bloomFilter : dataFilter;
+    }
+
+    public boolean isPaged() {
+        return maxPageSize > 0;
+    }
 }
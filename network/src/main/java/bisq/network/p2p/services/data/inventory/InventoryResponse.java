@@ -19,5 +19,16 @@ package bisq.network.p2p.services.data.inventory;
 
 import bisq.network.p2p.services.data.broadcast.BroadcastMessage;
 
-public record InventoryResponse(Inventory inventory, int requestNonce) implements BroadcastMessage {
+import javax.annotation.Nullable;
+
+/**
+ * @param nextCursor Cursor for requesting the next page. Null if that was the last page or if the inventory was not
+ *                   paged. Peers on older versions do not send that field.
+ */
+public record InventoryResponse(Inventory inventory,
+                                int requestNonce,
+                                @Nullable InventoryCursor nextCursor) implements BroadcastMessage {
+    public InventoryResponse(Inventory inventory, int requestNonce) {
+        this(inventory, requestNonce, null);
+    }
 }
@@ -22,67 +22,113 @@ import bisq.network.p2p.message.Message;
 import bisq.network.p2p.node.CloseReason;
 import bisq.network.p2p.node.Connection;
 import bisq.network.p2p.node.Node;
-import bisq.network.p2p.services.data.filter.DataFilter;
+import bisq.network.p2p.services.data.filter.FilterEntry;
+import bisq.network.p2p.services.data.filter.InventoryFilter;
 import bisq.network.p2p.services.peergroup.PeerGroup;
 import lombok.extern.slf4j.Slf4j;
 
+import javax.annotation.Nullable;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+/**
+ * The inventory is requested in pages with a byte budget, so that neither side needs to hold and serialize the whole
+ * inventory at once. Peers on older versions do not know about paging and respond with the whole inventory in one
+ * response, which is handled like a last page.
+ * <p>
+ * Which peers get requested for which part of the inventory is decided by the InventorySyncPlanner.
+ */
 @Slf4j
 public class InventoryService implements Node.Listener {
-    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    // Timeout for each page
+    static final long TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    // Byte budget we request per page. With Tor that takes a few seconds.
+    static final int MAX_PAGE_SIZE = 1024 * 1024;
 
 
     private final Node node;
     private final PeerGroup peerGroup;
     private final Map<String, InventoryHandler> requestHandlerMap = new ConcurrentHashMap<>();
-    private final Function<DataFilter, Inventory> inventoryProvider;
+    private final Function<InventoryFilter, Inventory> inventoryProvider;
+    private final InventoryPageProvider inventoryPageProvider;
 
-    public InventoryService(Node node, PeerGroup peerGroup, Function<DataFilter, Inventory> inventoryProvider) {
+    /**
+     * @param inventoryProvider        Provides the whole inventory for requests from peers on older versions.
+     * @param orderedInventoryProvider Provides the entries not contained in the filter, ordered by
+     *                                 InventoryCursor.COMPARATOR.
+     */
+    public InventoryService(Node node,
+                            PeerGroup peerGroup,
+                            Function<InventoryFilter, Inventory> inventoryProvider,
+                            Function<InventoryFilter, List<InventoryItem>> orderedInventoryProvider) {
         this.node = node;
         this.peerGroup = peerGroup;
         this.inventoryProvider = inventoryProvider;
+        inventoryPageProvider = new InventoryPageProvider(orderedInventoryProvider);
         this.node.addListener(this);
     }
 
     public void initialize() {
     }
 
-    public List<CompletableFuture<Inventory>> request(DataFilter dataFilter) {
-        int maxRequests = 400;
-        return peerGroup.getAllConnections()
+    /**
+     * @param filterEntriesProvider Provides the filter entries of the data we have. Called for each request, so that
+     *                              later requests do not deliver data we have received from earlier requests.
+     * @param pageHandler        Applies a received page. The next page is requested once the returned future
+     *                           completed.
+     * @return Future which completes once all requests of the sync have been completed.
+     */
+    public CompletableFuture<Void> request(Supplier<Set<FilterEntry>> filterEntriesProvider,
+                                           Function<Inventory, CompletableFuture<?>> pageHandler) {
+        // Peers without RTT samples come last
+        List<Connection> connections = peerGroup.getAllConnections()
                 .filter(connection -> !requestHandlerMap.containsKey(connection.getId()))
-                .limit(maxRequests)
-                .map(connection -> {
-                    String key = connection.getId();
-                    InventoryHandler handler = new InventoryHandler(node, connection);
-                    requestHandlerMap.put(key, handler);
-                    return handler.request(dataFilter)
-                            .orTimeout(TIMEOUT, TimeUnit.SECONDS)
-                            .whenComplete((__, throwable) -> requestHandlerMap.remove(key));
-                })
+                .sorted(Comparator.comparingDouble(connection -> {
+                    double rtt = connection.getMetrics().getAverageRtt();
+                    return rtt > 0 ? rtt : Double.MAX_VALUE;
+                }))
                 .collect(Collectors.toList());
+        return new InventorySyncPlanner<Connection>(connections,
+                (connection, partition) -> request(connection, filterEntriesProvider.get(), partition, pageHandler))
+                .start();
+    }
+
+    private CompletableFuture<Void> request(Connection connection,
+                                            Set<FilterEntry> filterEntries,
+                                            @Nullable InventoryPartition partition,
+                                            Function<Inventory, CompletableFuture<?>> pageHandler) {
+        String key = connection.getId();
+        InventoryHandler handler = new InventoryHandler(node, connection, pageHandler);
+        requestHandlerMap.put(key, handler);
+        CompletableFuture<Void> future = handler.request(filterEntries, partition, MAX_PAGE_SIZE, TIMEOUT);
+        future.whenComplete((__, throwable) -> requestHandlerMap.remove(key));
+        return future;
     }
 
     public void shutdown() {
         requestHandlerMap.values().forEach(InventoryHandler::dispose);
         requestHandlerMap.clear();
+        inventoryPageProvider.clear();
     }
 
     @Override
     public void onMessage(Message message, Connection connection, String nodeId) {
         if (message instanceof InventoryRequest request) {
             log.debug("Node {} received GetInventoryRequest with nonce {} from {}", node, request.nonce(), connection.getPeerAddress());
-            Inventory inventory = inventoryProvider.apply(request.dataFilter());
-            NetworkService.NETWORK_IO_POOL.submit(() -> node.send(new InventoryResponse(inventory, request.nonce()), connection));
+            InventoryResponse response = request.isPaged() ?
+                    inventoryPageProvider.getPage(connection.getId(), request) :
+                    new InventoryResponse(inventoryProvider.apply(request.filter()), request.nonce());
+            NetworkService.NETWORK_IO_POOL.submit(() -> node.send(response, connection));
             log.debug("Node {} sent GetInventoryResponse with inventory {} and nonce {} to {}. Connection={}",
-                    node, inventory, request.nonce(), connection.getPeerAddress(), connection.getId());
+                    node, response.inventory(), request.nonce(), connection.getPeerAddress(), connection.getId());
         }
     }
 
@@ -93,6 +139,7 @@ public class InventoryService implements Node.Listener {
     @Override
     public void onDisconnect(Connection connection, CloseReason closeReason) {
         String key = connection.getId();
+        inventoryPageProvider.onDisconnect(key);
         if (requestHandlerMap.containsKey(key)) {
             requestHandlerMap.get(key).dispose();
             requestHandlerMap.remove(key);
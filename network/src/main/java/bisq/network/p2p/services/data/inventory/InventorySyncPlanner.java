@@ -0,0 +1,182 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.data.inventory;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Plans the requests of one inventory sync, so that we do not receive the same inventory from all our peers.
+ * <p>
+ * We request the whole inventory from the NUM_FULL_REQUESTS fastest peers. Once the first of them has delivered, the
+ * other full requests get cancelled and the keyspace gets split into partitions, which are requested from the next
+ * peers. Those requests use a new filter containing the data we have received, so they only deliver data the first
+ * peer did not have and are cheap if our peers are in sync.
+ * <p>
+ * A failed full request gets repeated at the next peer. If NUM_FULL_REQUESTS full requests failed, we fall back to
+ * request the whole inventory from up to MAX_FALLBACK_REQUESTS peers at once. A failed partition request gets
+ * repeated at the next peer we have not requested yet.
+ *
+ * @param <P> The peer type. The peers are expected to be ordered by preference.
+ */
+@Slf4j
+class InventorySyncPlanner<P> {
+    static final int NUM_FULL_REQUESTS = 2;
+    static final int NUM_PARTITIONS = 4;
+    static final int MAX_FALLBACK_REQUESTS = 10;
+
+    interface Requester<P> {
+        /**
+         * @param partition Null for the whole inventory.
+         * @return Future which completes once the response has been applied. Cancelling it cancels the request.
+         * Is expected to complete asynchronously.
+         */
+        CompletableFuture<Void> request(P peer, @Nullable InventoryPartition partition);
+    }
+
+    private final List<P> peers;
+    private final Requester<P> requester;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private final Set<CompletableFuture<Void>> pendingFullRequests = new HashSet<>();
+    private final Set<CompletableFuture<Void>> pendingPartitionRequests = new HashSet<>();
+    private int nextPeerIndex;
+    private int numFailedFullRequests;
+    private boolean fullInventoryReceived;
+    private boolean fallbackStarted;
+
+    InventorySyncPlanner(List<P> peers, Requester<P> requester) {
+        this.peers = new ArrayList<>(peers);
+        this.requester = requester;
+    }
+
+    /**
+     * @return Future which completes once all requests have been completed. Completes exceptionally if we did not
+     * receive the whole inventory from any peer.
+     */
+    synchronized CompletableFuture<Void> start() {
+        int numRequests = Math.min(NUM_FULL_REQUESTS, peers.size());
+        if (numRequests == 0) {
+            log.info("No peers available for requesting the inventory");
+            future.complete(null);
+            return future;
+        }
+        for (int i = 0; i < numRequests; i++) {
+            requestFull(peers.get(nextPeerIndex++));
+        }
+        return future;
+    }
+
+    private void requestFull(P peer) {
+        CompletableFuture<Void> request = requester.request(peer, null);
+        pendingFullRequests.add(request);
+        request.whenComplete((__, throwable) -> onFullRequestCompleted(request, peer, throwable));
+    }
+
+    private void requestPartition(P peer, InventoryPartition partition) {
+        CompletableFuture<Void> request = requester.request(peer, partition);
+        pendingPartitionRequests.add(request);
+        request.whenComplete((__, throwable) -> onPartitionRequestCompleted(request, peer, partition, throwable));
+    }
+
+    private synchronized void onFullRequestCompleted(CompletableFuture<Void> request,
+                                                     P peer,
+                                                     @Nullable Throwable throwable) {
+        pendingFullRequests.remove(request);
+        if (throwable == null) {
+            if (!fullInventoryReceived) {
+                fullInventoryReceived = true;
+                log.info("Received the whole inventory from {}. We request {} partitions from other peers",
+                        peer, Math.min(NUM_PARTITIONS, getNumUnusedPeers()));
+                requestPartitions();
+                // The other full requests would mostly deliver duplicates
+                new ArrayList<>(pendingFullRequests).forEach(pending -> pending.cancel(true));
+            }
+        } else if (!isCancellation(throwable) && !fullInventoryReceived) {
+            numFailedFullRequests++;
+            log.info("Request for the whole inventory to {} failed. {}", peer, throwable.toString());
+            if (numFailedFullRequests < NUM_FULL_REQUESTS) {
+                if (getNumUnusedPeers() > 0) {
+                    requestFull(peers.get(nextPeerIndex++));
+                }
+            } else if (!fallbackStarted) {
+                fallbackStarted = true;
+                int numRequests = Math.min(MAX_FALLBACK_REQUESTS, getNumUnusedPeers());
+                log.info("{} requests for the whole inventory failed. We request it from {} other peers",
+                        numFailedFullRequests, numRequests);
+                for (int i = 0; i < numRequests; i++) {
+                    requestFull(peers.get(nextPeerIndex++));
+                }
+            }
+        }
+        maybeComplete();
+    }
+
+    private synchronized void onPartitionRequestCompleted(CompletableFuture<Void> request,
+                                                          P peer,
+                                                          InventoryPartition partition,
+                                                          @Nullable Throwable throwable) {
+        pendingPartitionRequests.remove(request);
+        if (throwable != null && !isCancellation(throwable)) {
+            if (getNumUnusedPeers() > 0) {
+                log.info("Request for inventory partition {} to {} failed. We request it from another peer. {}",
+                        partition, peer, throwable.toString());
+                requestPartition(peers.get(nextPeerIndex++), partition);
+            } else {
+                log.info("Request for inventory partition {} to {} failed and we have no other peer left. {}",
+                        partition, peer, throwable.toString());
+            }
+        }
+        maybeComplete();
+    }
+
+    private void requestPartitions() {
+        int numPartitions = Math.min(NUM_PARTITIONS, getNumUnusedPeers());
+        for (int i = 0; i < numPartitions; i++) {
+            requestPartition(peers.get(nextPeerIndex++), new InventoryPartition(i, numPartitions));
+        }
+    }
+
+    private void maybeComplete() {
+        if (!pendingFullRequests.isEmpty() || !pendingPartitionRequests.isEmpty() || future.isDone()) {
+            return;
+        }
+        if (fullInventoryReceived) {
+            future.complete(null);
+        } else {
+            future.completeExceptionally(new RuntimeException("We did not receive the whole inventory from any of " +
+                    nextPeerIndex + " peers"));
+        }
+    }
+
+    private int getNumUnusedPeers() {
+        return peers.size() - nextPeerIndex;
+    }
+
+    private static boolean isCancellation(Throwable throwable) {
+        return throwable instanceof CancellationException ||
+                (throwable instanceof CompletionException && throwable.getCause() instanceof CancellationException);
+    }
+}
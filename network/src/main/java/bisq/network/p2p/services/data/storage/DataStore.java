@@ -19,40 +19,115 @@ package bisq.network.p2p.services.data.storage;
 
 import bisq.common.data.ByteArray;
 import bisq.network.p2p.services.data.DataRequest;
+import bisq.persistence.MapJournal;
 import bisq.persistence.Persistence;
+import bisq.persistence.PersistenceClient;
 import bisq.persistence.PersistenceService;
-import bisq.persistence.RateLimitedPersistenceClient;
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
-import java.util.HashMap;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
-public abstract class DataStore<T extends DataRequest> extends RateLimitedPersistenceClient<HashMap<ByteArray, T>> {
+/**
+ * Base class for the network data stores. Map mutations are written to a MapJournal instead of persisting the whole
+ * map. Subclasses must use put and putIfAbsent inside a synchronized block on the map, so that the journal has the
+ * same order as the map mutations. The PayloadIndex and the ExpiryIndex are updated at the same place.
+ * <p>
+ * Expired entries are removed by the sweeper of the StorageService via removeExpired.
+ */
+@Slf4j
+public abstract class DataStore<T extends DataRequest> implements PersistenceClient<HashMap<ByteArray, T>> {
     public static final String SUB_PATH = "db" + File.separator + "network";
     @Getter
     protected final Persistence<HashMap<ByteArray, T>> persistence;
     protected final ConcurrentHashMap<ByteArray, T> map = new ConcurrentHashMap<>();
+    private final MapJournal<ByteArray, T> journal;
+    @Getter
+    private final PayloadIndex payloadIndex = new PayloadIndex();
+    private final ExpiryIndex expiryIndex = new ExpiryIndex();
     @Getter
     private final String fileName;
     @Getter
     private final String subDirectory;
 
     public DataStore(PersistenceService persistenceService, String storeName, String fileName) {
-        super();
         this.fileName = fileName;
         subDirectory = SUB_PATH + File.separator + storeName;
         persistence = persistenceService.getOrCreatePersistence(this, subDirectory, fileName);
+        journal = new MapJournal<>(new File(persistence.getStoragePath()).getParent(),
+                fileName,
+                this::getClone,
+                this::isRetainedAtRead);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            Thread.currentThread().setName("DataStore-shutdownHook-" + fileName);
+            journal.close(1000);
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Optional<HashMap<ByteArray, T>>> readPersisted() {
+        return journal.readAsync().whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                log.error("Reading persisted data of {} failed", fileName, throwable);
+                return;
+            }
+            result.ifPresent(persisted -> {
+                applyPersisted(persisted);
+                // If entries got pruned at read or at applyPersisted we write a new snapshot
+                if (journal.getNumPrunedAtRead() > 0 || map.size() < persisted.size()) {
+                    journal.compact();
+                }
+            });
+        });
+    }
+
+    /**
+     * @return The time in ms after which the entry gets removed, or Long.MAX_VALUE if it never expires.
+     */
+    protected long getExpireAt(T value) {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Called outside the lock with the entries removed by removeExpired.
+     */
+    protected void onExpired(List<T> expired) {
+    }
+
+    /**
+     * Applied to each entry while reading the persisted data, so we do not load data which would get pruned anyway.
+     */
+    protected boolean isRetainedAtRead(ByteArray key, T value) {
+        return true;
     }
 
     @Override
     public void applyPersisted(HashMap<ByteArray, T> persisted) {
         synchronized (map) {
-            map.clear();
-            map.putAll(persisted);
+            replaceAll(persisted);
         }
     }
 
+    /**
+     * Writes a snapshot of the map and starts a new journal. Mutations are persisted via the journal, so there is
+     * usually no need to call that.
+     */
+    @Override
+    public CompletableFuture<Boolean> persist() {
+        return journal.compact();
+    }
+
+    /**
+     * @return A read-only live view of the map. Iteration is weakly consistent and does not require a copy, thus it
+     * should be preferred over getClone if no snapshot is needed.
+     */
+    public Map<ByteArray, T> getMap() {
+        return Collections.unmodifiableMap(map);
+    }
+
     @Override
     public HashMap<ByteArray, T> getClone() {
         synchronized (map) {
@@ -60,6 +135,76 @@ public abstract class DataStore<T extends DataRequest> extends RateLimitedPersis
         }
     }
 
+    /**
+     * Removes up to maxEntries entries which have expired before now. The removals are written to the journal in
+     * one go, so they get flushed as one batch.
+     *
+     * @return The removed entries. If the list has maxEntries elements there might be more expired entries left.
+     */
+    public List<T> removeExpired(long now, int maxEntries) {
+        List<T> expired = new ArrayList<>();
+        synchronized (map) {
+            for (ByteArray key : expiryIndex.pollExpired(now, maxEntries)) {
+                T value = map.remove(key);
+                if (value != null) {
+                    payloadIndex.update(key, value, null);
+                    journal.remove(key);
+                    expired.add(value);
+                }
+            }
+        }
+        if (!expired.isEmpty()) {
+            onExpired(expired);
+        }
+        return expired;
+    }
+
+    public Optional<Long> getNextExpiry() {
+        synchronized (map) {
+            return expiryIndex.getNextExpiry();
+        }
+    }
+
+    // Needs to be called inside synchronized(map)
+    protected void put(ByteArray key, T value) {
+        T previous = map.put(key, value);
+        payloadIndex.update(key, previous, value);
+        updateExpiryIndex(key, value);
+        journal.put(key, value);
+    }
+
+    // Needs to be called inside synchronized(map)
+    protected boolean putIfAbsent(ByteArray key, T value) {
+        if (map.putIfAbsent(key, value) == null) {
+            payloadIndex.update(key, null, value);
+            updateExpiryIndex(key, value);
+            journal.put(key, value);
+            return true;
+        }
+        return false;
+    }
+
+    // Needs to be called inside synchronized(map). Not written to the journal, used for applying persisted data.
+    protected void replaceAll(Map<ByteArray, T> entries) {
+        map.clear();
+        payloadIndex.clear();
+        expiryIndex.clear();
+        map.putAll(entries);
+        entries.forEach((key, value) -> {
+            payloadIndex.update(key, null, value);
+            updateExpiryIndex(key, value);
+        });
+    }
+
+    private void updateExpiryIndex(ByteArray key, T value) {
+        long expireAt = getExpireAt(value);
+        if (expireAt == Long.MAX_VALUE) {
+            expiryIndex.remove(key);
+        } else {
+            expiryIndex.put(key, expireAt);
+        }
+    }
+
   /*  public Inventory getInventory(DataFilter dataFilter) {
         Map<ByteArray, T> mapClone = getClone();
         List<T> result = mapClone.entrySet().stream()
@@ -0,0 +1,97 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.data.storage;
+
+import bisq.common.data.ByteArray;
+
+import java.util.*;
+
+/**
+ * Keeps the keys of a DataStore ordered by their expiry time, so expired entries can be found without scanning the
+ * map. Keys with the same expiry time share a bucket.
+ * <p>
+ * Not thread safe. It is only accessed inside the lock of the DataStore.
+ */
+class ExpiryIndex {
+    private final TreeMap<Long, Set<ByteArray>> keysByExpiry = new TreeMap<>();
+    private final Map<ByteArray, Long> expiryByKey = new HashMap<>();
+
+    void put(ByteArray key, long expireAt) {
+        Long previous = expiryByKey.put(key, expireAt);
+        if (previous != null) {
+            if (previous == expireAt) {
+                return;
+            }
+            removeFromBucket(previous, key);
+        }
+        keysByExpiry.computeIfAbsent(expireAt, k -> new HashSet<>()).add(key);
+    }
+
+    void remove(ByteArray key) {
+        Long expireAt = expiryByKey.remove(key);
+        if (expireAt != null) {
+            removeFromBucket(expireAt, key);
+        }
+    }
+
+    /**
+     * Removes and returns the keys which expired before now, the earliest first.
+     *
+     * @param maxKeys Limits the number of keys returned. Remaining expired keys are returned at the next call.
+     */
+    List<ByteArray> pollExpired(long now, int maxKeys) {
+        List<ByteArray> result = new ArrayList<>();
+        while (result.size() < maxKeys && !keysByExpiry.isEmpty() && keysByExpiry.firstKey() < now) {
+            Set<ByteArray> bucket = keysByExpiry.firstEntry().getValue();
+            Iterator<ByteArray> iterator = bucket.iterator();
+            while (result.size() < maxKeys && iterator.hasNext()) {
+                ByteArray key = iterator.next();
+                iterator.remove();
+                expiryByKey.remove(key);
+                result.add(key);
+            }
+            if (bucket.isEmpty()) {
+                keysByExpiry.pollFirstEntry();
+            }
+        }
+        return result;
+    }
+
+    Optional<Long> getNextExpiry() {
+        return keysByExpiry.isEmpty() ? Optional.empty() : Optional.of(keysByExpiry.firstKey());
+    }
+
+    int size() {
+        return expiryByKey.size();
+    }
+
+    void clear() {
+        keysByExpiry.clear();
+        expiryByKey.clear();
+    }
+
+    private void removeFromBucket(long expireAt, ByteArray key) {
+        Set<ByteArray> bucket = keysByExpiry.get(expireAt);
+        if (bucket != null) {
+            bucket.remove(key);
+            if (bucket.isEmpty()) {
+                keysByExpiry.remove(expireAt);
+            }
+        }
+    }
+}
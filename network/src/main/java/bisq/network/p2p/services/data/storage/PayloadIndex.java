@@ -0,0 +1,163 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.data.storage;
+
+import bisq.common.data.ByteArray;
+import bisq.network.p2p.services.data.DataRequest;
+import bisq.network.p2p.services.data.NetworkPayload;
+import bisq.network.p2p.services.data.storage.append.AddAppendOnlyDataRequest;
+import bisq.network.p2p.services.data.storage.auth.AddAuthenticatedDataRequest;
+import bisq.network.p2p.services.data.storage.auth.AuthenticatedData;
+import bisq.network.p2p.services.data.storage.auth.AuthenticatedPayload;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Indexes the payloads of the add requests of a DataStore by payload class and by the hash of the owner's public key.
+ * Remove requests are not indexed, as their payload is gone.
+ * <p>
+ * The index is updated by the DataStore inside its lock at each map mutation. Reads do not lock. The returned
+ * collections are read-only live views backed by concurrent maps. Their iterators are weakly consistent, thus
+ * iterating does not require a snapshot of the store.
+ */
+public class PayloadIndex {
+    private final Map<ByteArray, NetworkPayload> payloadByHash = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Map<ByteArray, NetworkPayload>> payloadsByClass = new ConcurrentHashMap<>();
+    private final Map<ByteArray, Map<ByteArray, NetworkPayload>> payloadsByOwner = new ConcurrentHashMap<>();
+
+    /**
+     * @return All indexed payloads.
+     */
+    public Collection<NetworkPayload> getPayloads() {
+        return Collections.unmodifiableCollection(payloadByHash.values());
+    }
+
+    /**
+     * @param type The exact class of the payload. For AuthenticatedPayloads the class of the wrapped data can be used
+     *             as well.
+     */
+    public Collection<NetworkPayload> getPayloadsByClass(Class<?> type) {
+        return liveView(() -> payloadsByClass.getOrDefault(type, Map.of()));
+    }
+
+    /**
+     * @param hashOfPublicKey The hash of the owner's public key as used in AuthenticatedData.
+     */
+    public Collection<NetworkPayload> getPayloadsByOwner(byte[] hashOfPublicKey) {
+        ByteArray owner = new ByteArray(hashOfPublicKey);
+        return liveView(() -> payloadsByOwner.getOrDefault(owner, Map.of()));
+    }
+
+    // Needs to be called inside the lock of the DataStore
+    void update(ByteArray key, @Nullable DataRequest previous, @Nullable DataRequest current) {
+        if (previous != null) {
+            remove(key, previous);
+        }
+        if (current != null) {
+            add(key, current);
+        }
+    }
+
+    // Needs to be called inside the lock of the DataStore
+    void clear() {
+        payloadByHash.clear();
+        payloadsByClass.clear();
+        payloadsByOwner.clear();
+    }
+
+    private void add(ByteArray key, DataRequest request) {
+        NetworkPayload payload = getPayload(request);
+        if (payload == null) {
+            return;
+        }
+        payloadByHash.put(key, payload);
+        getIndexedClasses(payload).forEach(type ->
+                payloadsByClass.computeIfAbsent(type, k -> new ConcurrentHashMap<>()).put(key, payload));
+        ByteArray owner = getOwner(request);
+        if (owner != null) {
+            payloadsByOwner.computeIfAbsent(owner, k -> new ConcurrentHashMap<>()).put(key, payload);
+        }
+    }
+
+    private void remove(ByteArray key, DataRequest request) {
+        NetworkPayload payload = getPayload(request);
+        if (payload == null) {
+            return;
+        }
+        payloadByHash.remove(key);
+        getIndexedClasses(payload).forEach(type -> removeFromBucket(payloadsByClass, type, key));
+        ByteArray owner = getOwner(request);
+        if (owner != null) {
+            removeFromBucket(payloadsByOwner, owner, key);
+        }
+    }
+
+    private static <K> void removeFromBucket(Map<K, Map<ByteArray, NetworkPayload>> buckets, K bucketKey, ByteArray key) {
+        buckets.computeIfPresent(bucketKey, (k, bucket) -> {
+            bucket.remove(key);
+            return bucket.isEmpty() ? null : bucket;
+        });
+    }
+
+    @Nullable
+    private static NetworkPayload getPayload(DataRequest request) {
+        // AddMailboxRequest extends AddAuthenticatedDataRequest so its covered here as well
+        if (request instanceof AddAuthenticatedDataRequest addAuthenticatedDataRequest) {
+            return addAuthenticatedDataRequest.getAuthenticatedData().getPayload();
+        } else if (request instanceof AddAppendOnlyDataRequest addAppendOnlyDataRequest) {
+            return addAppendOnlyDataRequest.payload();
+        }
+        return null;
+    }
+
+    @Nullable
+    private static ByteArray getOwner(DataRequest request) {
+        if (request instanceof AddAuthenticatedDataRequest addAuthenticatedDataRequest) {
+            AuthenticatedData authenticatedData = addAuthenticatedDataRequest.getAuthenticatedData();
+            return new ByteArray(authenticatedData.getHashOfPublicKey());
+        }
+        return null;
+    }
+
+    private static Set<Class<?>> getIndexedClasses(NetworkPayload payload) {
+        if (payload instanceof AuthenticatedPayload authenticatedPayload &&
+                authenticatedPayload.getData() != null &&
+                authenticatedPayload.getData().getClass() != payload.getClass()) {
+            return Set.of(payload.getClass(), authenticatedPayload.getData().getClass());
+        }
+        return Set.of(payload.getClass());
+    }
+
+    // The bucket is resolved at each access, so the view stays valid if the bucket got removed and added again.
+    private static Collection<NetworkPayload> liveView(Supplier<Map<ByteArray, NetworkPayload>> bucketSupplier) {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<NetworkPayload> iterator() {
+                return Collections.unmodifiableCollection(bucketSupplier.get().values()).iterator();
+            }
+
+            @Override
+            public int size() {
+                return bucketSupplier.get().size();
+            }
+        };
+    }
+}
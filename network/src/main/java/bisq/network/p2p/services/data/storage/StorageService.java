@@ -19,15 +19,19 @@ package bisq.network.p2p.services.data.storage;
 
 
 import bisq.common.data.ByteArray;
+import bisq.common.threading.ExecutorFactory;
+import bisq.common.timer.Scheduler;
 import bisq.common.util.FileUtils;
 import bisq.network.NetworkService;
 import bisq.network.p2p.services.data.AddDataRequest;
 import bisq.network.p2p.services.data.DataRequest;
 import bisq.network.p2p.services.data.NetworkPayload;
 import bisq.network.p2p.services.data.RemoveDataRequest;
-import bisq.network.p2p.services.data.filter.DataFilter;
+import bisq.network.p2p.services.data.filter.InventoryFilter;
 import bisq.network.p2p.services.data.filter.FilterEntry;
 import bisq.network.p2p.services.data.inventory.Inventory;
+import bisq.network.p2p.services.data.inventory.InventoryCursor;
+import bisq.network.p2p.services.data.inventory.InventoryItem;
 import bisq.network.p2p.services.data.storage.append.AddAppendOnlyDataRequest;
 import bisq.network.p2p.services.data.storage.append.AppendOnlyDataStore;
 import bisq.network.p2p.services.data.storage.append.AppendOnlyPayload;
@@ -39,7 +43,9 @@ import bisq.network.p2p.services.data.storage.mailbox.AddMailboxRequest;
 import bisq.network.p2p.services.data.storage.mailbox.MailboxDataStore;
 import bisq.network.p2p.services.data.storage.mailbox.MailboxPayload;
 import bisq.network.p2p.services.data.storage.mailbox.RemoveMailboxRequest;
+import bisq.persistence.MapJournal;
 import bisq.persistence.PersistenceService;
+import com.google.common.annotations.VisibleForTesting;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -48,6 +54,10 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -55,6 +65,24 @@ import static bisq.network.p2p.services.data.storage.StorageService.StoreType.*;
 
 @Slf4j
 public class StorageService {
+    // Signature verification is CPU bound. We apply received data requests to the stores on that pool, so that
+    // requests can be verified in parallel. The stores only hold their lock for the map update.
+    public static final ExecutorService VERIFICATION_POOL = ExecutorFactory.newFixedThreadPool("StorageService.verification-pool");
+    // Expired entries are removed by one sweeper for all stores. We limit the number of entries removed per store and
+    // run, so that a large number of entries expiring at the same time does not block the store for long.
+    private static final long SWEEP_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    private static final int MAX_EXPIRED_PER_SWEEP = 500;
+    // Priority of a store for paged inventory responses. Stores with higher priority are sent first.
+    public static final int DEFAULT_INVENTORY_PRIORITY = 0;
+    public static final int LOW_INVENTORY_PRIORITY = -1;
+
+    public interface Listener {
+        /**
+         * Called on the {@link NetworkService#DISPATCHER} thread.
+         */
+        void onExpired(NetworkPayload networkPayload);
+    }
+
     public enum StoreType {
         ALL(""), //todo remove
         AUTHENTICATED_DATA_STORE("AuthenticatedDataStore"),
@@ -72,6 +100,10 @@ public class StorageService {
     final Map<String, MailboxDataStore> mailboxStores = new ConcurrentHashMap<>();
     final Map<String, AppendOnlyDataStore> appendOnlyDataStores = new ConcurrentHashMap<>();
     private final PersistenceService persistenceService;
+    private final Set<Listener> listeners = new CopyOnWriteArraySet<>();
+    // Not part of the MetaData as that would change the serialized payloads and their hashes
+    private final Map<String, Integer> inventoryPriorityByFileName = new ConcurrentHashMap<>();
+    private final Scheduler sweeper;
 
     public StorageService(PersistenceService persistenceService) {
         this.persistenceService = persistenceService;
@@ -83,7 +115,7 @@ public class StorageService {
             String authStoreName = AUTHENTICATED_DATA_STORE.getStoreName();
             String directory = subPath + File.separator + authStoreName;
             if (new File(directory).exists()) {
-                FileUtils.listFilesInDirectory(directory, 1)
+                listStoreFiles(directory)
                         .forEach(fileName -> {
                             AuthenticatedDataStore dataStore = new AuthenticatedDataStore(persistenceService, authStoreName, fileName);
                             authenticatedDataStores.put(fileName, dataStore);
@@ -92,7 +124,7 @@ public class StorageService {
             String mailboxStoreName = MAILBOX_DATA_STORE.getStoreName();
             directory = subPath + File.separator + mailboxStoreName;
             if (new File(directory).exists()) {
-                FileUtils.listFilesInDirectory(directory, 1)
+                listStoreFiles(directory)
                         .forEach(fileName -> {
                             MailboxDataStore dataStore = new MailboxDataStore(persistenceService, mailboxStoreName, fileName);
                             mailboxStores.put(fileName, dataStore);
@@ -102,7 +134,7 @@ public class StorageService {
             String appendStoreName = APPEND_ONLY_DATA_STORE.getStoreName();
             directory = subPath + File.separator + appendStoreName;
             if (new File(directory).exists()) {
-                FileUtils.listFilesInDirectory(directory, 1)
+                listStoreFiles(directory)
                         .forEach(fileName -> {
                             AppendOnlyDataStore dataStore = new AppendOnlyDataStore(persistenceService, appendStoreName, fileName);
                             appendOnlyDataStores.put(fileName, dataStore);
@@ -111,19 +143,73 @@ public class StorageService {
         } catch (IOException e) {
             e.printStackTrace();
         }
+
+        sweeper = Scheduler.run(this::removeExpired)
+                .name("StorageService.sweeper")
+                .periodically(SWEEP_INTERVAL);
+    }
+
+    private static Stream<String> listStoreFiles(String directory) throws IOException {
+        // The directory contains the journal files of the stores as well. A store might only have a journal if no
+        // snapshot has been written yet.
+        return FileUtils.listFilesInDirectory(directory, 1).stream()
+                .map(fileName -> fileName.endsWith(MapJournal.JOURNAL_POSTFIX) ?
+                        fileName.substring(0, fileName.length() - MapJournal.JOURNAL_POSTFIX.length()) :
+                        fileName)
+                .distinct();
     }
 
     public void shutdown() {
+        sweeper.stop();
+        listeners.clear();
         authenticatedDataStores.values().forEach(DataStore::shutdown);
         mailboxStores.values().forEach(DataStore::shutdown);
         appendOnlyDataStores.values().forEach(DataStore::shutdown);
     }
 
 
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+    // Expiry
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+
+    @VisibleForTesting
+    void removeExpired() {
+        long now = System.currentTimeMillis();
+        Stream.<DataStore<? extends DataRequest>>concat(authenticatedDataStores.values().stream(),
+                        mailboxStores.values().stream())
+                .forEach(store -> {
+                    List<? extends DataRequest> expired = store.removeExpired(now, MAX_EXPIRED_PER_SWEEP);
+                    if (expired.isEmpty()) {
+                        return;
+                    }
+                    log.info("Removed {} expired entries from {}", expired.size(), store.getFileName());
+                    List<NetworkPayload> payloads = expired.stream()
+                            .filter(request -> request instanceof AddAuthenticatedDataRequest)
+                            .map(request -> (NetworkPayload) ((AddAuthenticatedDataRequest) request).getAuthenticatedData().getPayload())
+                            .toList();
+                    // The sweep runs on a scheduler thread. We notify our listeners on the dispatcher thread as we
+                    // do for payloads removed by a network request.
+                    NetworkService.DISPATCHER.execute(() ->
+                            payloads.forEach(payload -> listeners.forEach(listener -> listener.onExpired(payload))));
+                });
+    }
+
+
     ///////////////////////////////////////////////////////////////////////////////////////////////////
     // Get data
     ///////////////////////////////////////////////////////////////////////////////////////////////////
 
+    // The payload streams are backed by the live PayloadIndex of the stores, so no copy of the store maps is created.
+
     public Stream<AuthenticatedPayload> getAllAuthenticatedPayload() {
         return authenticatedDataStores.values().stream().flatMap(this::getAuthenticatedPayloadStream);
     }
@@ -136,11 +222,22 @@ public class StorageService {
         return stores.flatMap(this::getAuthenticatedPayloadStream);
     }
 
+    /**
+     * @param type The class of the payload or for AuthenticatedPayloads the class of the wrapped data.
+     */
+    public Stream<NetworkPayload> getPayloadsByClass(Class<?> type) {
+        return getAllStores().flatMap(store -> store.getPayloadIndex().getPayloadsByClass(type).stream());
+    }
+
+    public Stream<NetworkPayload> getPayloadsByOwner(byte[] hashOfPublicKey) {
+        return getAllStores().flatMap(store -> store.getPayloadIndex().getPayloadsByOwner(hashOfPublicKey).stream());
+    }
+
     private Stream<AuthenticatedPayload> getAuthenticatedPayloadStream(DataStore<? extends DataRequest> store) {
-        return store.getClone().values().stream()
-                .filter(e -> e instanceof AddAuthenticatedDataRequest)
-                .map(e -> (AddAuthenticatedDataRequest) e)
-                .map(e -> e.getAuthenticatedData().getPayload());
+        // Payloads of AppendOnlyDataStores are not AuthenticatedPayloads
+        return store.getPayloadIndex().getPayloads().stream()
+                .filter(payload -> payload instanceof AuthenticatedPayload)
+                .map(payload -> (AuthenticatedPayload) payload);
     }
 
 
@@ -162,10 +259,75 @@ public class StorageService {
         }
     }
 
+    /**
+     * Batch version of onAddDataRequest used for inventory data. Requests are grouped by store and deduplicated by
+     * hash. The remaining ones are verified in parallel on the VERIFICATION_POOL and the valid ones get added to
+     * their store in one batch, so that each store persists only once.
+     *
+     * @return The payloads which have been added.
+     */
+    public CompletableFuture<List<NetworkPayload>> onAddDataRequests(Collection<? extends AddDataRequest> addDataRequests) {
+        Map<MetaData, List<AddMailboxRequest>> mailboxRequests = new HashMap<>();
+        Map<MetaData, List<AddAuthenticatedDataRequest>> authenticatedDataRequests = new HashMap<>();
+        Map<MetaData, List<AddAppendOnlyDataRequest>> appendOnlyDataRequests = new HashMap<>();
+        addDataRequests.forEach(addDataRequest -> {
+            if (addDataRequest instanceof AddMailboxRequest request) {
+                mailboxRequests.computeIfAbsent(request.getMetaData(), k -> new ArrayList<>()).add(request);
+            } else if (addDataRequest instanceof AddAuthenticatedDataRequest request) {
+                authenticatedDataRequests.computeIfAbsent(request.getMetaData(), k -> new ArrayList<>()).add(request);
+            } else if (addDataRequest instanceof AddAppendOnlyDataRequest request) {
+                appendOnlyDataRequests.computeIfAbsent(request.payload().getMetaData(), k -> new ArrayList<>()).add(request);
+            } else {
+                log.warn("onAddDataRequests called with invalid addDataRequest: {}", addDataRequest.getClass().getSimpleName());
+            }
+        });
+
+        List<CompletableFuture<? extends List<? extends NetworkPayload>>> futures = new ArrayList<>();
+        mailboxRequests.forEach((metaData, requests) ->
+                futures.add(getOrCreateMailboxDataStore(metaData)
+                        .thenComposeAsync(store -> verifyAndAddAll(store.filterNewRequests(requests),
+                                store::verify,
+                                store::addAll), VERIFICATION_POOL)));
+        authenticatedDataRequests.forEach((metaData, requests) ->
+                futures.add(getOrCreateAuthenticatedDataStore(metaData)
+                        .thenComposeAsync(store -> verifyAndAddAll(store.filterNewRequests(requests),
+                                store::verify,
+                                store::addAll), VERIFICATION_POOL)));
+        appendOnlyDataRequests.forEach((metaData, requests) ->
+                futures.add(getOrCreateAppendOnlyDataStore(metaData)
+                        .thenApplyAsync(store -> store.addAll(requests), VERIFICATION_POOL)));
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(__ -> futures.stream()
+                        .flatMap(future -> future.join().stream())
+                        .collect(Collectors.toList()));
+    }
+
+    private <R extends AddDataRequest, P extends NetworkPayload> CompletableFuture<List<P>> verifyAndAddAll(
+            Collection<R> requests,
+            Function<R, Optional<Result>> verifier,
+            Function<List<R>, List<P>> batchAdder) {
+        List<CompletableFuture<Optional<R>>> futures = requests.stream()
+                .map(request -> CompletableFuture.supplyAsync(() ->
+                        verifier.apply(request).isEmpty() ? Optional.of(request) : Optional.<R>empty(), VERIFICATION_POOL))
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApplyAsync(__ -> {
+                    List<R> verifiedRequests = futures.stream()
+                            .map(CompletableFuture::join)
+                            .flatMap(Optional::stream)
+                            .collect(Collectors.toList());
+                    if (verifiedRequests.size() < requests.size()) {
+                        log.warn("{} of {} requests failed verification", requests.size() - verifiedRequests.size(), requests.size());
+                    }
+                    return batchAdder.apply(verifiedRequests);
+                }, VERIFICATION_POOL);
+    }
+
     private CompletableFuture<Optional<NetworkPayload>> onAddMailboxRequest(AddMailboxRequest request) {
         MailboxPayload payload = request.getMailboxData().getMailboxPayload();
         return getOrCreateMailboxDataStore(payload.getMetaData())
-                .thenApply(store -> {
+                .thenApplyAsync(store -> {
                     Result result = store.add(request);
                     if (result.isSuccess()) {
                         return Optional.of(payload);
@@ -175,13 +337,13 @@ public class StorageService {
                         }
                         return Optional.empty();
                     }
-                });
+                }, VERIFICATION_POOL);
     }
 
     private CompletableFuture<Optional<NetworkPayload>> onAddAuthenticatedDataRequest(AddAuthenticatedDataRequest request) {
         AuthenticatedPayload payload = request.getAuthenticatedData().getPayload();
         return getOrCreateAuthenticatedDataStore(payload.getMetaData())
-                .thenApply(store -> {
+                .thenApplyAsync(store -> {
                     Result result = store.add(request);
                     if (result.isSuccess()) {
                         return Optional.of(payload);
@@ -191,13 +353,13 @@ public class StorageService {
                         }
                         return Optional.empty();
                     }
-                });
+                }, VERIFICATION_POOL);
     }
 
     private CompletableFuture<Optional<NetworkPayload>> onAddAppendOnlyDataRequest(AddAppendOnlyDataRequest request) {
         AppendOnlyPayload payload = request.payload();
         return getOrCreateAppendOnlyDataStore(payload.getMetaData())
-                .thenApply(store -> {
+                .thenApplyAsync(store -> {
                     Result result = store.add(request);
                     if (result.isSuccess()) {
                         return Optional.of(payload);
@@ -207,7 +369,7 @@ public class StorageService {
                         }
                         return Optional.empty();
                     }
-                });
+                }, VERIFICATION_POOL);
     }
 
 
@@ -229,7 +391,7 @@ public class StorageService {
 
     private CompletableFuture<Optional<NetworkPayload>> onRemoveMailboxRequest(RemoveMailboxRequest request) {
         return getOrCreateMailboxDataStore(request.getMetaData())
-                .thenApply(store -> {
+                .thenApplyAsync(store -> {
                     Result result = store.remove(request);
                     if (result.isSuccess()) {
                         return Optional.of(result.getRemovedPayload());
@@ -239,12 +401,12 @@ public class StorageService {
                         }
                         return Optional.empty();
                     }
-                });
+                }, VERIFICATION_POOL);
     }
 
     private CompletableFuture<Optional<NetworkPayload>> onRemoveAuthenticatedDataRequest(RemoveAuthenticatedDataRequest request) {
         return getOrCreateAuthenticatedDataStore(request.getMetaData())
-                .thenApply(store -> {
+                .thenApplyAsync(store -> {
                     Result result = store.remove(request);
                     if (result.isSuccess()) {
                         return Optional.of(result.getRemovedPayload());
@@ -254,7 +416,7 @@ public class StorageService {
                         }
                         return Optional.empty();
                     }
-                });
+                }, VERIFICATION_POOL);
     }
 
 
@@ -262,22 +424,54 @@ public class StorageService {
     // Inventory
     ///////////////////////////////////////////////////////////////////////////////////////////////////
 
-    public Inventory getInventoryOfAllStores(DataFilter dataFilter) {
-        return getInventory(dataFilter, getAllStores()
-                .flatMap(store -> store.getClone().entrySet().stream()).collect(Collectors.toSet()));
+    public Inventory getInventoryOfAllStores(InventoryFilter dataFilter) {
+        return getInventory(dataFilter, getAllStores().collect(Collectors.toList()));
+    }
+
+    /**
+     * @return The entries of all stores not contained in the filter, ordered by InventoryCursor.COMPARATOR.
+     */
+    public List<InventoryItem> getOrderedInventory(InventoryFilter dataFilter) {
+        List<InventoryItem> result = new ArrayList<>();
+        getAllStores().forEach(store -> {
+            String fileName = store.getFileName();
+            int priority = getInventoryPriority(fileName);
+            for (Map.Entry<ByteArray, ? extends DataRequest> mapEntry : store.getMap().entrySet()) {
+                if (!dataFilter.mightContain(getFilterEntry(mapEntry))) {
+                    InventoryCursor cursor = new InventoryCursor(priority, fileName, mapEntry.getKey());
+                    result.add(new InventoryItem(cursor, mapEntry.getValue()));
+                }
+            }
+        });
+        result.sort(Comparator.comparing(InventoryItem::cursor, InventoryCursor.COMPARATOR));
+        return result;
+    }
+
+    public void setInventoryPriority(String fileName, int priority) {
+        inventoryPriorityByFileName.put(fileName, priority);
+    }
+
+    public int getInventoryPriority(String fileName) {
+        return inventoryPriorityByFileName.getOrDefault(fileName, DEFAULT_INVENTORY_PRIORITY);
     }
 
-    public Inventory getInventoryFromStore(DataFilter dataFilter, DataStore<? extends DataRequest> store) {
-        return getInventory(dataFilter, store.getClone().entrySet());
+    public Inventory getInventoryFromStore(InventoryFilter dataFilter, DataStore<? extends DataRequest> store) {
+        return getInventory(dataFilter, List.of(store));
     }
 
-    private Inventory getInventory(DataFilter dataFilter,
-                                   Set<? extends Map.Entry<ByteArray, ? extends DataRequest>> entrySet) {
-        HashSet<? extends DataRequest> result = entrySet.stream()
-                .filter(mapEntry -> !dataFilter.filterEntries().contains(getFilterEntry(mapEntry)))
-                .map(Map.Entry::getValue)
-                .collect(Collectors.toCollection(HashSet::new));
-        return new Inventory(result, entrySet.size() - result.size());
+    // We iterate the live maps of the stores instead of copying them.
+    private Inventory getInventory(InventoryFilter dataFilter, List<DataStore<? extends DataRequest>> stores) {
+        HashSet<DataRequest> result = new HashSet<>();
+        int numEntries = 0;
+        for (DataStore<? extends DataRequest> store : stores) {
+            for (Map.Entry<ByteArray, ? extends DataRequest> mapEntry : store.getMap().entrySet()) {
+                numEntries++;
+                if (!dataFilter.mightContain(getFilterEntry(mapEntry))) {
+                    result.add(mapEntry.getValue());
+                }
+            }
+        }
+        return new Inventory(result, numEntries - result.size());
     }
 
 
@@ -294,7 +488,7 @@ public class StorageService {
     }
 
     private Set<FilterEntry> getFilterEntries(Stream<DataStore<? extends DataRequest>> stores) {
-        return stores.flatMap(store -> store.getClone().entrySet().stream())
+        return stores.flatMap(store -> store.getMap().entrySet().stream())
                 .map(this::getFilterEntry)
                 .collect(Collectors.toSet());
     }
@@ -387,7 +581,10 @@ public class StorageService {
     }
 
     private Stream<DataStore<? extends DataRequest>> getStoreByStoreName(String storeName) {
-        return getAllStores()
-                .filter(store -> storeName.equals(store.getFileName()));
+        // The stores are mapped by their file name (see getStoreKey)
+        return Stream.<DataStore<? extends DataRequest>>of(authenticatedDataStores.get(storeName),
+                        mailboxStores.get(storeName),
+                        appendOnlyDataStores.get(storeName))
+                .filter(Objects::nonNull);
     }
 }
@@ -21,9 +21,11 @@ import bisq.common.data.ByteArray;
 import bisq.network.p2p.services.data.storage.DataStore;
 import bisq.network.p2p.services.data.storage.Result;
 import bisq.persistence.PersistenceService;
-import bisq.security.DigestUtil;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 
@@ -45,11 +47,6 @@ public class AppendOnlyDataStore extends DataStore<AddAppendOnlyDataRequest> {
         super(persistenceService, storeName, fileName);
     }
 
-    @Override
-    protected long getMaxWriteRateInMs() {
-        return 1000;
-    }
-
     public Result add(AddAppendOnlyDataRequest addAppendOnlyDataRequest) {
         AppendOnlyPayload appendOnlyPayload = addAppendOnlyDataRequest.payload();
         synchronized (map) {
@@ -57,19 +54,40 @@ public class AppendOnlyDataStore extends DataStore<AddAppendOnlyDataRequest> {
                 return new Result(false).maxMapSizeReached();
             }
 
-            byte[] hash = DigestUtil.hash(appendOnlyPayload.serialize());
-            ByteArray byteArray = new ByteArray(hash);
+            ByteArray byteArray = new ByteArray(appendOnlyPayload.getHash());
             if (map.containsKey(byteArray)) {
                 return new Result(false).payloadAlreadyStored();
             }
 
-            map.put(byteArray, addAppendOnlyDataRequest);
+            put(byteArray, addAppendOnlyDataRequest);
         }
-        persist();
         listeners.forEach(listener -> listener.onAppended(appendOnlyPayload));
         return new Result(true);
     }
 
+    /**
+     * Adds all requests inside one lock. Listeners are notified after the lock got released.
+     *
+     * @return The payloads which have been added.
+     */
+    public List<AppendOnlyPayload> addAll(Collection<AddAppendOnlyDataRequest> requests) {
+        List<AppendOnlyPayload> added = new ArrayList<>();
+        synchronized (map) {
+            for (AddAppendOnlyDataRequest request : requests) {
+                if (map.size() > MAX_MAP_SIZE) {
+                    break;
+                }
+                AppendOnlyPayload appendOnlyPayload = request.payload();
+                ByteArray byteArray = new ByteArray(appendOnlyPayload.getHash());
+                if (putIfAbsent(byteArray, request)) {
+                    added.add(appendOnlyPayload);
+                }
+            }
+        }
+        added.forEach(payload -> listeners.forEach(listener -> listener.onAppended(payload)));
+        return added;
+    }
+
     @Override
     public void shutdown() {
     }
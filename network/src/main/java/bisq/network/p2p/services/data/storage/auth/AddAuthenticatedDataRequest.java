@@ -41,7 +41,7 @@ public class AddAuthenticatedDataRequest implements AuthenticatedDataRequest, Ad
 
     public static AddAuthenticatedDataRequest from(AuthenticatedDataStore store, AuthenticatedPayload payload, KeyPair keyPair)
             throws GeneralSecurityException {
-        byte[] hash = DigestUtil.hash(payload.serialize());
+        byte[] hash = payload.getHash();
         byte[] hashOfPublicKey = DigestUtil.hash(keyPair.getPublic().getEncoded());
         int sequenceNumber = store.getSequenceNumber(hash) + 1;
         AuthenticatedData data = new AuthenticatedData(payload, sequenceNumber, hashOfPublicKey, System.currentTimeMillis());
@@ -20,12 +20,16 @@ package bisq.network.p2p.services.data.storage.auth;
 import bisq.common.ObjectSerializer;
 import bisq.common.encoding.Hex;
 import bisq.network.p2p.message.Proto;
+import com.google.common.math.LongMath;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 
 @Getter
 @EqualsAndHashCode
 public class AuthenticatedData implements Proto {
+    // Pinned to the implicit serialVersionUID of the release before getExpireAt() was added, as the stores persist
+    // AuthenticatedData and peers running that release still send it.
+    private static final long serialVersionUID = -5375248428305692779L;
 
     public static AuthenticatedData from(AuthenticatedData data, int sequenceNumber) {
         return new AuthenticatedData(data.getPayload(),
@@ -50,7 +54,11 @@ public class AuthenticatedData implements Proto {
     }
 
     public boolean isExpired() {
-        return (System.currentTimeMillis() - created) > payload.getMetaData().getTtl();
+        return System.currentTimeMillis() > getExpireAt();
+    }
+
+    public long getExpireAt() {
+        return LongMath.saturatedAdd(created, payload.getMetaData().getTtl());
     }
 
     public boolean isSequenceNrInvalid(long seqNumberFromMap) {
@@ -21,13 +21,13 @@ import bisq.common.data.ByteArray;
 import bisq.network.p2p.services.data.storage.DataStore;
 import bisq.network.p2p.services.data.storage.Result;
 import bisq.persistence.PersistenceService;
-import bisq.security.DigestUtil;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Comparators;
+import com.google.common.math.LongMath;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import javax.annotation.Nullable;
+import java.util.*;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -60,59 +60,72 @@ public class AuthenticatedDataStore extends DataStore<AuthenticatedDataRequest>
         super(persistenceService, storeName, fileName);
     }
 
+    @Override
+    protected boolean isRetainedAtRead(ByteArray key, AuthenticatedDataRequest request) {
+        // Remove entries older than MAX_AGE
+        // Remove expired data in case value is of type AddAuthenticatedDataRequest
+        return System.currentTimeMillis() - request.getCreated() < MAX_AGE &&
+                (request instanceof RemoveAuthenticatedDataRequest ||
+                        !((AddAuthenticatedDataRequest) request).getAuthenticatedData().isExpired());
+    }
+
     @Override
     public void applyPersisted(HashMap<ByteArray, AuthenticatedDataRequest> persisted) {
         maybePruneMap(persisted);
     }
 
     @Override
-    protected long getMaxWriteRateInMs() {
-        return 1000;
+    protected long getExpireAt(AuthenticatedDataRequest request) {
+        // Same rules as in isRetainedAtRead
+        long maxAgeReached = LongMath.saturatedAdd(request.getCreated(), MAX_AGE);
+        if (request instanceof AddAuthenticatedDataRequest addRequest) {
+            return Math.min(maxAgeReached, addRequest.getAuthenticatedData().getExpireAt());
+        }
+        return maxAgeReached;
+    }
+
+    @Override
+    protected void onExpired(List<AuthenticatedDataRequest> expired) {
+        expired.stream()
+                .filter(request -> request instanceof AddAuthenticatedDataRequest)
+                .map(request -> ((AddAuthenticatedDataRequest) request).getAuthenticatedData().getPayload())
+                .forEach(payload -> listeners.forEach(listener -> listener.onRemoved(payload)));
     }
 
+    /**
+     * Verification is done in 2 phases. First we do the checks which do not depend on the map state like the
+     * signature verification outside the lock, so that concurrent calls can verify in parallel. Only the checks
+     * depending on the map state (duplicates, sequence number) and the map update are done inside the lock.
+     * To avoid verifying requests we would reject anyway, we do a lock-free pre-check against the map before.
+     */
     public Result add(AddAuthenticatedDataRequest request) {
         AuthenticatedData data = request.getAuthenticatedData();
         AuthenticatedPayload payload = data.getPayload();
-        byte[] hash = DigestUtil.hash(payload.serialize());
-        ByteArray byteArray = new ByteArray(hash);
+        ByteArray byteArray = new ByteArray(payload.getHash());
+        Optional<Result> preCheckResult = checkAgainstMap(request, map.get(byteArray));
+        if (preCheckResult.isPresent()) {
+            return preCheckResult.get();
+        }
+
+        Optional<Result> verificationResult = verify(request);
+        if (verificationResult.isPresent()) {
+            return verificationResult.get();
+        }
+
         AuthenticatedDataRequest requestFromMap;
         synchronized (map) {
             if (map.size() > MAX_MAP_SIZE) {
                 return new Result(false).maxMapSizeReached();
             }
+            // The map might have changed since our pre-check
             requestFromMap = map.get(byteArray);
-            if (request.equals(requestFromMap)) {
-                return new Result(false).requestAlreadyReceived();
-            }
-
-            if (requestFromMap != null && data.isSequenceNrInvalid(requestFromMap.getSequenceNumber())) {
-                return new Result(false).sequenceNrInvalid();
+            Optional<Result> result = checkAgainstMap(request, requestFromMap);
+            if (result.isPresent()) {
+                return result.get();
             }
-
-            if (data.isExpired()) {
-                log.warn("Data is expired at add. request={}", request);
-                return new Result(false).expired();
-            }
-
-            if (payload.isDataInvalid()) {
-                log.warn("Data is invalid at add. request={}", request);
-                return new Result(false).dataInvalid();
-            }
-
-            if (request.isPublicKeyInvalid()) {
-                log.warn("PublicKey is invalid at add. request={}", request);
-                return new Result(false).publicKeyHashInvalid();
-            }
-
-            if (request.isSignatureInvalid()) {
-                log.warn("Signature is invalid at add. request={}", request);
-                return new Result(false).signatureInvalid();
-            }
-            map.put(byteArray, request);
+            put(byteArray, request);
         }
 
-        persist();
-
         // If we had already the data (only updated seq nr) we return false as well and do not notify listeners.
         if (requestFromMap != null) {
             return new Result(false).payloadAlreadyStored();
@@ -122,8 +135,96 @@ public class AuthenticatedDataStore extends DataStore<AuthenticatedDataRequest>
         return new Result(true);
     }
 
+    /**
+     * Checks which do not depend on the map state. Can be called from any thread.
+     *
+     * @return The failure result if the request is invalid, otherwise an empty Optional.
+     */
+    public Optional<Result> verify(AddAuthenticatedDataRequest request) {
+        AuthenticatedData data = request.getAuthenticatedData();
+        if (data.isExpired()) {
+            log.warn("Data is expired at add. request={}", request);
+            return Optional.of(new Result(false).expired());
+        }
+
+        if (data.getPayload().isDataInvalid()) {
+            log.warn("Data is invalid at add. request={}", request);
+            return Optional.of(new Result(false).dataInvalid());
+        }
+
+        if (request.isPublicKeyInvalid()) {
+            log.warn("PublicKey is invalid at add. request={}", request);
+            return Optional.of(new Result(false).publicKeyHashInvalid());
+        }
+
+        if (request.isSignatureInvalid()) {
+            log.warn("Signature is invalid at add. request={}", request);
+            return Optional.of(new Result(false).signatureInvalid());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Used for batch processing of inventory data. Removes duplicates by keeping the request with the highest
+     * sequence number per hash and drops requests which would get rejected by the map state, so that we do not
+     * verify them.
+     */
+    public Collection<AddAuthenticatedDataRequest> filterNewRequests(Collection<AddAuthenticatedDataRequest> requests) {
+        Map<ByteArray, AddAuthenticatedDataRequest> requestsByHash = new HashMap<>();
+        requests.forEach(request -> {
+            ByteArray byteArray = new ByteArray(request.getAuthenticatedData().getPayload().getHash());
+            requestsByHash.merge(byteArray, request,
+                    (r1, r2) -> r1.getSequenceNumber() >= r2.getSequenceNumber() ? r1 : r2);
+        });
+        requestsByHash.entrySet().removeIf(entry -> checkAgainstMap(entry.getValue(), map.get(entry.getKey())).isPresent());
+        return requestsByHash.values();
+    }
+
+    /**
+     * Adds already verified requests (see verify) inside one lock. Listeners are notified after the lock got released.
+     *
+     * @return The payloads which have been added.
+     */
+    public List<AuthenticatedPayload> addAll(Collection<AddAuthenticatedDataRequest> verifiedRequests) {
+        List<AuthenticatedPayload> added = new ArrayList<>();
+        synchronized (map) {
+            for (AddAuthenticatedDataRequest request : verifiedRequests) {
+                if (map.size() > MAX_MAP_SIZE) {
+                    log.warn("Max map size reached. We drop the remaining requests.");
+                    break;
+                }
+                AuthenticatedPayload payload = request.getAuthenticatedData().getPayload();
+                ByteArray byteArray = new ByteArray(payload.getHash());
+                AuthenticatedDataRequest requestFromMap = map.get(byteArray);
+                if (checkAgainstMap(request, requestFromMap).isEmpty()) {
+                    put(byteArray, request);
+                    // If we had already the data (only updated seq nr) we do not notify listeners.
+                    if (requestFromMap == null) {
+                        added.add(payload);
+                    }
+                }
+            }
+        }
+        added.forEach(payload -> listeners.forEach(listener -> listener.onAdded(payload)));
+        return added;
+    }
+
     public Result remove(RemoveAuthenticatedDataRequest request) {
         ByteArray byteArray = new ByteArray(request.getHash());
+        // Lock-free pre-check to not verify the signature of outdated requests
+        AuthenticatedDataRequest peekedRequest = map.get(byteArray);
+        if (peekedRequest != null && request.isSequenceNrInvalid(peekedRequest.getSequenceNumber())) {
+            return peekedRequest instanceof RemoveAuthenticatedDataRequest ?
+                    new Result(false).alreadyRemoved() :
+                    new Result(false).sequenceNrInvalid();
+        }
+
+        // The signature does not depend on the map state, so we verify it outside the lock.
+        if (request.isSignatureInvalid()) {
+            log.warn("Signature is invalid at remove. request={}", request);
+            return new Result(false).signatureInvalid();
+        }
+
         AuthenticatedPayload payloadFromMap;
         synchronized (map) {
             AuthenticatedDataRequest requestFromMap = map.get(byteArray);
@@ -131,8 +232,7 @@ public class AuthenticatedDataStore extends DataStore<AuthenticatedDataRequest>
                 log.debug("No entry at remove. hash={}", byteArray);
                 // We don't have any entry, but it might be that we would receive later an add request, so we need to keep
                 // track of the sequence number
-                map.put(byteArray, request);
-                persist();
+                put(byteArray, request);
                 return new Result(false).noEntry();
             }
 
@@ -141,8 +241,7 @@ public class AuthenticatedDataStore extends DataStore<AuthenticatedDataRequest>
                 // We have had the entry already removed.
                 if (!request.isSequenceNrInvalid(requestFromMap.getSequenceNumber())) {
                     // We update the map with the new request with the fresh sequence number.
-                    map.put(byteArray, request);
-                    persist();
+                    put(byteArray, request);
                 }
                 return new Result(false).alreadyRemoved();
             }
@@ -164,20 +263,32 @@ public class AuthenticatedDataStore extends DataStore<AuthenticatedDataRequest>
                 return new Result(false).publicKeyHashInvalid();
             }
 
-            if (request.isSignatureInvalid()) {
-                log.warn("Signature is invalid at remove. request={}", request);
-                return new Result(false).signatureInvalid();
-            }
-
-            map.put(byteArray, request);
+            put(byteArray, request);
         }
-        persist();
         listeners.forEach(listener -> listener.onRemoved(payloadFromMap));
         return new Result(true).removedPayload(payloadFromMap);
     }
 
     public Result refresh(RefreshRequest request) {
         ByteArray byteArray = new ByteArray(request.getHash());
+        // Lock-free pre-check to not verify the signature of requests we would reject anyway
+        AuthenticatedDataRequest peekedRequest = map.get(byteArray);
+        if (peekedRequest == null) {
+            return new Result(false).noEntry();
+        }
+        if (peekedRequest instanceof RemoveAuthenticatedDataRequest) {
+            return new Result(false).alreadyRemoved();
+        }
+        if (request.isSequenceNrInvalid(peekedRequest.getSequenceNumber())) {
+            return new Result(false).sequenceNrInvalid();
+        }
+
+        // The signature does not depend on the map state, so we verify it outside the lock.
+        if (request.isSignatureInvalid()) {
+            log.warn("Signature is invalid at refresh. request={}", request);
+            return new Result(false).signatureInvalid();
+        }
+
         AddAuthenticatedDataRequest updatedRequest;
         synchronized (map) {
             AuthenticatedDataRequest requestFromMap = map.get(byteArray);
@@ -208,19 +319,13 @@ public class AuthenticatedDataStore extends DataStore<AuthenticatedDataRequest>
                 return new Result(false).publicKeyHashInvalid();
             }
 
-            if (request.isSignatureInvalid()) {
-                log.warn("Signature is invalid at refresh. request={}", request);
-                return new Result(false).signatureInvalid();
-            }
-
             AuthenticatedData updatedData = AuthenticatedData.from(dataFromMap, request.getSequenceNumber());
             updatedRequest = new AddAuthenticatedDataRequest(updatedData,
                     addRequestFromMap.getSignature(),
                     addRequestFromMap.getOwnerPublicKey());
 
-            map.put(byteArray, updatedRequest);
+            put(byteArray, updatedRequest);
         }
-        persist();
         listeners.forEach(listener -> listener.onRefreshed(updatedRequest.getAuthenticatedData().payload));
         return new Result(true);
     }
@@ -254,22 +359,31 @@ public class AuthenticatedDataStore extends DataStore<AuthenticatedDataRequest>
     // Private
     ///////////////////////////////////////////////////////////////////////////////////////////////////
 
+    private Optional<Result> checkAgainstMap(AddAuthenticatedDataRequest request,
+                                             @Nullable AuthenticatedDataRequest requestFromMap) {
+        if (request.equals(requestFromMap)) {
+            return Optional.of(new Result(false).requestAlreadyReceived());
+        }
+        if (requestFromMap != null &&
+                request.getAuthenticatedData().isSequenceNrInvalid(requestFromMap.getSequenceNumber())) {
+            return Optional.of(new Result(false).sequenceNrInvalid());
+        }
+        return Optional.empty();
+    }
+
     private void maybePruneMap(Map<ByteArray, AuthenticatedDataRequest> persisted) {
-        long now = System.currentTimeMillis();
-        // Remove entries older than MAX_AGE
-        // Remove expired data in case value is of type AddProtectedDataRequest
-        // Sort by created date
-        // Limit to MAX_MAP_SIZE
-        Map<ByteArray, AuthenticatedDataRequest> pruned = persisted.entrySet().stream()
-                .filter(entry -> now - entry.getValue().getCreated() < MAX_AGE)
-                .filter(entry -> entry.getValue() instanceof RemoveAuthenticatedDataRequest ||
-                        !((AddAuthenticatedDataRequest) entry.getValue()).getAuthenticatedData().isExpired())
-                .sorted((o1, o2) -> Long.compare(o2.getValue().getCreated(), o1.getValue().getCreated()))
-                .limit(MAX_MAP_SIZE)
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        // Entries older than MAX_AGE and expired data got already removed at read (see isRetainedAtRead).
+        // If we exceed MAX_MAP_SIZE we keep the most recent entries.
+        // Selecting the most recent entries does not require sorting the whole map.
+        Comparator<Map.Entry<ByteArray, AuthenticatedDataRequest>> byCreated =
+                Comparator.comparingLong(entry -> entry.getValue().getCreated());
+        Map<ByteArray, AuthenticatedDataRequest> pruned = persisted.size() <= MAX_MAP_SIZE ?
+                persisted :
+                persisted.entrySet().stream()
+                        .collect(Comparators.greatest(MAX_MAP_SIZE, byCreated)).stream()
+                        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
         synchronized (map) {
-            map.clear();
-            map.putAll(pruned);
+            replaceAll(pruned);
         }
     }
 }
@@ -24,14 +24,24 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 
+import javax.annotation.Nullable;
 import java.util.concurrent.TimeUnit;
 
 @ToString
 @EqualsAndHashCode
 public class AuthenticatedPayload implements NetworkPayload {
+    // The value computed by the JVM for the previous version of this class. Keeps persisted and received payloads of
+    // that version readable after we added getHash().
+    private static final long serialVersionUID = -4302504587637873524L;
+
     @Getter
     protected final Proto data;
     protected final MetaData metaData;
+    // Not serialized, thus it gets computed once after deserialization
+    @Nullable
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient volatile byte[] hash;
 
     public AuthenticatedPayload(Proto data) {
         // 463 is overhead of sig/pubkeys,...
@@ -53,4 +63,15 @@ public class AuthenticatedPayload implements NetworkPayload {
     public boolean isDataInvalid() {
         return false;
     }
+
+    @Override
+    public byte[] getHash() {
+        byte[] hash = this.hash;
+        if (hash == null) {
+            // Concurrent callers might compute it twice, but with the same result
+            hash = NetworkPayload.super.getHash();
+            this.hash = hash;
+        }
+        return hash.clone();
+    }
 }
@@ -39,7 +39,7 @@ public class RefreshRequest implements BroadcastMessage {
 
     public static RefreshRequest from(AuthenticatedDataStore store, NetworkPayload networkPayload, KeyPair keyPair)
             throws GeneralSecurityException {
-        byte[] hash = DigestUtil.hash(networkPayload.serialize());
+        byte[] hash = networkPayload.getHash();
         byte[] signature = SignatureUtil.sign(hash, keyPair.getPrivate());
         int newSequenceNumber = store.getSequenceNumber(hash) + 1;
         return new RefreshRequest(networkPayload.getMetaData(), hash, keyPair.getPublic(), newSequenceNumber, signature);
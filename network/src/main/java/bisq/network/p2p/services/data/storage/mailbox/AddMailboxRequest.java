@@ -42,7 +42,7 @@ public class AddMailboxRequest extends AddAuthenticatedDataRequest implements Ma
                                          PublicKey receiverPublicKey)
             throws GeneralSecurityException {
         PublicKey senderPublicKey = senderKeyPair.getPublic();
-        byte[] hash = DigestUtil.hash(payload.serialize());
+        byte[] hash = payload.getHash();
         checkArgument(!store.contains(hash), "We expect to not have already an entry for that hash.");
         byte[] hashOfSendersPublicKey = DigestUtil.hash(senderPublicKey.getEncoded());
         byte[] hashOfReceiversPublicKey = DigestUtil.hash(receiverPublicKey.getEncoded());
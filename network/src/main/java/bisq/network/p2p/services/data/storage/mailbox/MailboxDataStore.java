@@ -21,12 +21,12 @@ import bisq.common.data.ByteArray;
 import bisq.network.p2p.services.data.storage.DataStore;
 import bisq.network.p2p.services.data.storage.Result;
 import bisq.persistence.PersistenceService;
-import bisq.security.DigestUtil;
+import com.google.common.collect.Comparators;
+import com.google.common.math.LongMath;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import javax.annotation.Nullable;
+import java.util.*;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -48,55 +48,67 @@ public class MailboxDataStore extends DataStore<MailboxRequest> {
         super(persistenceService, storeName, fileName);
     }
 
+    @Override
+    protected boolean isRetainedAtRead(ByteArray key, MailboxRequest request) {
+        // Remove entries older than MAX_AGE
+        // Remove expired data in case value is of type AddMailboxRequest
+        return System.currentTimeMillis() - request.getCreated() < MAX_AGE &&
+                (request instanceof RemoveMailboxRequest || !((AddMailboxRequest) request).getMailboxData().isExpired());
+    }
+
     @Override
     public void applyPersisted(HashMap<ByteArray, MailboxRequest> persisted) {
         maybePruneMap(persisted);
     }
 
     @Override
-    protected long getMaxWriteRateInMs() {
-        return 1000;
+    protected long getExpireAt(MailboxRequest request) {
+        // Same rules as in isRetainedAtRead
+        long maxAgeReached = LongMath.saturatedAdd(request.getCreated(), MAX_AGE);
+        if (request instanceof AddMailboxRequest addMailboxRequest) {
+            return Math.min(maxAgeReached, addMailboxRequest.getMailboxData().getExpireAt());
+        }
+        return maxAgeReached;
+    }
+
+    @Override
+    protected void onExpired(List<MailboxRequest> expired) {
+        expired.stream()
+                .filter(request -> request instanceof AddMailboxRequest)
+                .map(request -> ((AddMailboxRequest) request).getMailboxData().getMailboxPayload())
+                .forEach(payload -> listeners.forEach(listener -> listener.onRemoved(payload)));
     }
 
+    /**
+     * Signature and data verification is done outside the lock, see AuthenticatedDataStore.add.
+     */
     public Result add(AddMailboxRequest request) {
         MailboxData data = request.getMailboxData();
         MailboxPayload payload = data.getMailboxPayload();
-        byte[] hash = DigestUtil.hash(payload.serialize());
-        ByteArray byteArray = new ByteArray(hash);
+        ByteArray byteArray = new ByteArray(payload.getHash());
+        Optional<Result> preCheckResult = checkAgainstMap(request, map.get(byteArray));
+        if (preCheckResult.isPresent()) {
+            return preCheckResult.get();
+        }
+
+        Optional<Result> verificationResult = verify(request);
+        if (verificationResult.isPresent()) {
+            return verificationResult.get();
+        }
+
         MailboxRequest requestFromMap;
         synchronized (map) {
             if (map.size() > MAX_MAP_SIZE) {
                 return new Result(false).maxMapSizeReached();
             }
+            // The map might have changed since our pre-check
             requestFromMap = map.get(byteArray);
-            int sequenceNumberFromMap = requestFromMap != null ? requestFromMap.getSequenceNumber() : 0;
-
-            if (request.equals(requestFromMap)) {
-                return new Result(false).requestAlreadyReceived();
+            Optional<Result> result = checkAgainstMap(request, requestFromMap);
+            if (result.isPresent()) {
+                return result.get();
             }
-
-            if (requestFromMap != null && data.isSequenceNrInvalid(sequenceNumberFromMap)) {
-                return new Result(false).sequenceNrInvalid();
-            }
-
-            if (data.isExpired()) {
-                return new Result(false).expired();
-            }
-
-            if (payload.isDataInvalid()) {
-                return new Result(false).dataInvalid();
-            }
-
-            if (request.isPublicKeyInvalid()) {
-                return new Result(false).publicKeyHashInvalid();
-            }
-
-            if (request.isSignatureInvalid()) {
-                return new Result(false).signatureInvalid();
-            }
-            map.put(byteArray, request);
+            put(byteArray, request);
         }
-        persist();
 
         // If we had already the data (only updated seq nr) we return false as well and do not notify listeners.
         // This should only happen if client re-publishes mailbox data 
@@ -108,16 +120,93 @@ public class MailboxDataStore extends DataStore<MailboxRequest> {
         return new Result(true);
     }
 
+    /**
+     * Checks which do not depend on the map state. Can be called from any thread.
+     *
+     * @return The failure result if the request is invalid, otherwise an empty Optional.
+     */
+    public Optional<Result> verify(AddMailboxRequest request) {
+        MailboxData data = request.getMailboxData();
+        if (data.isExpired()) {
+            return Optional.of(new Result(false).expired());
+        }
+
+        if (data.getMailboxPayload().isDataInvalid()) {
+            return Optional.of(new Result(false).dataInvalid());
+        }
+
+        if (request.isPublicKeyInvalid()) {
+            return Optional.of(new Result(false).publicKeyHashInvalid());
+        }
+
+        if (request.isSignatureInvalid()) {
+            return Optional.of(new Result(false).signatureInvalid());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * See AuthenticatedDataStore.filterNewRequests
+     */
+    public Collection<AddMailboxRequest> filterNewRequests(Collection<AddMailboxRequest> requests) {
+        Map<ByteArray, AddMailboxRequest> requestsByHash = new HashMap<>();
+        requests.forEach(request -> {
+            ByteArray byteArray = new ByteArray(request.getMailboxData().getMailboxPayload().getHash());
+            requestsByHash.merge(byteArray, request,
+                    (r1, r2) -> r1.getSequenceNumber() >= r2.getSequenceNumber() ? r1 : r2);
+        });
+        requestsByHash.entrySet().removeIf(entry -> checkAgainstMap(entry.getValue(), map.get(entry.getKey())).isPresent());
+        return requestsByHash.values();
+    }
+
+    /**
+     * See AuthenticatedDataStore.addAll
+     */
+    public List<MailboxPayload> addAll(Collection<AddMailboxRequest> verifiedRequests) {
+        List<MailboxPayload> added = new ArrayList<>();
+        synchronized (map) {
+            for (AddMailboxRequest request : verifiedRequests) {
+                if (map.size() > MAX_MAP_SIZE) {
+                    log.warn("Max map size reached. We drop the remaining requests.");
+                    break;
+                }
+                MailboxPayload payload = request.getMailboxData().getMailboxPayload();
+                ByteArray byteArray = new ByteArray(payload.getHash());
+                MailboxRequest requestFromMap = map.get(byteArray);
+                if (checkAgainstMap(request, requestFromMap).isEmpty()) {
+                    put(byteArray, request);
+                    if (requestFromMap == null) {
+                        added.add(payload);
+                    }
+                }
+            }
+        }
+        added.forEach(payload -> listeners.forEach(listener -> listener.onAdded(payload)));
+        return added;
+    }
+
     public Result remove(RemoveMailboxRequest request) {
         ByteArray byteArray = new ByteArray(request.getHash());
-        MailboxRequest requestFromMap = map.get(byteArray);
+        // Lock-free pre-check to not verify the signature of outdated requests
+        MailboxRequest peekedRequest = map.get(byteArray);
+        if (peekedRequest != null && request.isSequenceNrInvalid(peekedRequest.getSequenceNumber())) {
+            return peekedRequest instanceof RemoveMailboxRequest ?
+                    new Result(false).alreadyRemoved() :
+                    new Result(false).sequenceNrInvalid();
+        }
+
+        // The signature does not depend on the map state, so we verify it outside the lock.
+        if (request.isSignatureInvalid()) {
+            return new Result(false).signatureInvalid();
+        }
+
         MailboxData dataFromMap;
         synchronized (map) {
+            MailboxRequest requestFromMap = map.get(byteArray);
             if (requestFromMap == null) {
                 // We don't have any entry, but it might be that we would receive later an add request, so we need to keep
                 // track of the sequence number
-                map.put(byteArray, request);
-                persist();
+                put(byteArray, request);
                 return new Result(false).noEntry();
             }
 
@@ -125,8 +214,7 @@ public class MailboxDataStore extends DataStore<MailboxRequest> {
                 // We have had the entry already removed.
                 if (!request.isSequenceNrInvalid(requestFromMap.getSequenceNumber())) {
                     // We update the request, so we have the latest sequence number.
-                    map.put(byteArray, request);
-                    persist();
+                    put(byteArray, request);
                 }
                 return new Result(false).alreadyRemoved();
             }
@@ -145,15 +233,10 @@ public class MailboxDataStore extends DataStore<MailboxRequest> {
                 return new Result(false).publicKeyHashInvalid();
             }
 
-            if (request.isSignatureInvalid()) {
-                return new Result(false).signatureInvalid();
-            }
-
-            map.put(byteArray, request);
-            listeners.forEach(listener -> listener.onRemoved(dataFromMap.getMailboxPayload()));
+            put(byteArray, request);
         }
 
-        persist();
+        listeners.forEach(listener -> listener.onRemoved(dataFromMap.getMailboxPayload()));
         return new Result(true).removedPayload(dataFromMap.getMailboxPayload());
     }
 
@@ -192,26 +275,33 @@ public class MailboxDataStore extends DataStore<MailboxRequest> {
     }
 
     boolean canAddMailboxMessage(MailboxPayload mailboxPayload) {
-        byte[] hash = DigestUtil.hash(mailboxPayload.serialize());
-        return getSequenceNumber(hash) < Integer.MAX_VALUE;
+        return getSequenceNumber(mailboxPayload.getHash()) < Integer.MAX_VALUE;
+    }
+
+    private Optional<Result> checkAgainstMap(AddMailboxRequest request, @Nullable MailboxRequest requestFromMap) {
+        if (request.equals(requestFromMap)) {
+            return Optional.of(new Result(false).requestAlreadyReceived());
+        }
+        if (requestFromMap != null &&
+                request.getMailboxData().isSequenceNrInvalid(requestFromMap.getSequenceNumber())) {
+            return Optional.of(new Result(false).sequenceNrInvalid());
+        }
+        return Optional.empty();
     }
 
     private void maybePruneMap(HashMap<ByteArray, MailboxRequest> persisted) {
-        long now = System.currentTimeMillis();
-        // Remove entries older than MAX_AGE
-        // Remove expired ProtectedEntry in case value is of type AddProtectedDataRequest
-        // Sort by created date
-        // Limit to MAX_MAP_SIZE
-        Map<ByteArray, MailboxRequest> pruned = persisted.entrySet().stream()
-                .filter(entry -> now - entry.getValue().getCreated() < MAX_AGE)
-                .filter(entry -> entry.getValue() instanceof RemoveMailboxRequest ||
-                        !((AddMailboxRequest) entry.getValue()).getMailboxData().isExpired())
-                .sorted((o1, o2) -> Long.compare(o2.getValue().getCreated(), o1.getValue().getCreated()))
-                .limit(MAX_MAP_SIZE)
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        // Entries older than MAX_AGE and expired data got already removed at read (see isRetainedAtRead).
+        // If we exceed MAX_MAP_SIZE we keep the most recent entries.
+        // Selecting the most recent entries does not require sorting the whole map.
+        Comparator<Map.Entry<ByteArray, MailboxRequest>> byCreated =
+                Comparator.comparingLong(entry -> entry.getValue().getCreated());
+        Map<ByteArray, MailboxRequest> pruned = persisted.size() <= MAX_MAP_SIZE ?
+                persisted :
+                persisted.entrySet().stream()
+                        .collect(Comparators.greatest(MAX_MAP_SIZE, byCreated)).stream()
+                        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
         synchronized (map) {
-            map.clear();
-            map.putAll(pruned);
+            replaceAll(pruned);
         }
     }
 }
@@ -38,7 +38,7 @@ public class RemoveMailboxRequest extends RemoveAuthenticatedDataRequest impleme
 
     public static RemoveMailboxRequest from(MailboxPayload mailboxPayload, KeyPair receiverKeyPair)
             throws GeneralSecurityException {
-        byte[] hash = DigestUtil.hash(mailboxPayload.serialize());
+        byte[] hash = mailboxPayload.getHash();
         byte[] signature = SignatureUtil.sign(hash, receiverKeyPair.getPrivate());
         return new RemoveMailboxRequest(mailboxPayload.getMetaData(), hash, receiverKeyPair.getPublic(),  signature);
     }
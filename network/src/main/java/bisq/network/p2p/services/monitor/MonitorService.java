@@ -20,6 +20,7 @@ package bisq.network.p2p.services.monitor;
 import bisq.network.p2p.node.Address;
 import bisq.network.p2p.node.Connection;
 import bisq.network.p2p.node.Node;
+import bisq.network.p2p.node.RttStats;
 import bisq.network.p2p.services.peergroup.Peer;
 import bisq.network.p2p.services.peergroup.PeerGroup;
 import bisq.network.p2p.services.peergroup.PeerGroupService;
@@ -72,6 +73,10 @@ public class MonitorService {
         String peerAddressVerified = connection.isPeerAddressVerified() ? " !]" : " ?]";
         String peerAddress = connection.getPeerAddress().toString().replace("]", peerAddressVerified);
         String dir = isOutbound ? " --> " : " <-- ";
-        sb.append(node).append(dir).append(peerAddress).append(date).append("\n");
+        RttStats rttStats = connection.getMetrics().getRttStats();
+        String rtt = rttStats.hasSamples() ?
+                " RTT p50/p99/ewma: " + rttStats.getP50() + "/" + rttStats.getP99() + "/" + Math.round(rttStats.getEwma()) + " ms" :
+                "";
+        sb.append(node).append(dir).append(peerAddress).append(date).append(rtt).append("\n");
     }
 }
\ No newline at end of file
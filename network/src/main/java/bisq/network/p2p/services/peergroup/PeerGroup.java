@@ -132,6 +132,14 @@ public class PeerGroup {
         return Comparator.comparing(connection -> connection.getMetrics().getCreationDate());
     }
 
+    // Connections with lower latency first. Connections without any RTT sample are put at the end.
+    public Comparator<Connection> getRttComparator() {
+        return Comparator.comparingDouble(connection -> {
+            RttStats rttStats = connection.getMetrics().getRttStats();
+            return rttStats.hasSamples() ? rttStats.getEwma() : Double.MAX_VALUE;
+        });
+    }
+
 
     ///////////////////////////////////////////////////////////////////////////////////////////////////
     // Peers
@@ -143,7 +151,11 @@ public class PeerGroup {
     }
 
     public boolean isNotInQuarantine(Peer peer) {
-        return banList.isNotBanned(peer.getAddress());
+        return isNotInQuarantine(peer.getAddress());
+    }
+
+    public boolean isNotInQuarantine(Address address) {
+        return banList.isNotBanned(address);
     }
 
     public boolean notMyself(Peer peer) {
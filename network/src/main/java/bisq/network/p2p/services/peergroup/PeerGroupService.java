@@ -114,8 +114,9 @@ public class PeerGroupService {
         log.info("Node {} completed doInitialPeerExchange. Start periodic tasks with interval: {} ms",
                 node, config.interval());
         scheduler = Optional.of(Scheduler.run(this::runBlockingTasks)
-                .periodically(config.interval())
-                .name("PeerGroupService.scheduler-" + node));
+                .executor(NetworkService.NETWORK_IO_POOL)
+                .name("PeerGroupService.scheduler-" + node)
+                .periodically(config.interval()));
         keepAliveService.initialize();
         setState(State.RUNNING);
     }
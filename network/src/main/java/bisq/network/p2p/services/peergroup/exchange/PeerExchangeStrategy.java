@@ -18,6 +18,7 @@
 package bisq.network.p2p.services.peergroup.exchange;
 
 import bisq.network.p2p.node.Address;
+import bisq.network.p2p.node.Connection;
 import bisq.network.p2p.services.peergroup.Peer;
 import bisq.network.p2p.services.peergroup.PeerGroup;
 import lombok.Getter;
@@ -168,7 +169,7 @@ public class PeerExchangeStrategy {
         Set<Address> reported = getReported();
         priorityList.addAll(reported);
         priorityList.addAll(getPersisted());
-        Set<Address> connected = getConnected();
+        List<Address> connected = getConnected();
         priorityList.addAll(connected);
 
         // log.error("seeds {}", seeds);
@@ -212,15 +213,16 @@ public class PeerExchangeStrategy {
                 .collect(Collectors.toSet());
     }
 
-    private Set<Address> getConnected() {
-        return peerGroup.getAllConnectedPeers()
+    // We prefer the connections with the lowest latency
+    private List<Address> getConnected() {
+        return peerGroup.getAllConnections()
+                .sorted(Comparator.comparing((Connection connection) -> connection.getPeersLoad().numConnections()))
+                .sorted(peerGroup.getRttComparator())
+                .map(Connection::getPeerAddress)
                 .filter(peerGroup::isNotInQuarantine)
-                .sorted(Comparator.comparing(peer -> peer.getLoad().numConnections()))
-                .sorted(Comparator.comparing(Peer::getDate))
-                .map(Peer::getAddress)
                 .filter(this::notASeed)
                 .filter(this::isNotUsed)
-                .collect(Collectors.toSet());
+                .collect(Collectors.toList());
     }
 
     private List<Address> getCandidates(List<Address> priorityList) {
@@ -0,0 +1,71 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.node;
+
+import bisq.network.p2p.MockMessage;
+import bisq.network.p2p.node.authorization.AuthorizationToken;
+import bisq.network.p2p.node.authorization.AuthorizedMessage;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MetricsTest {
+    @Test
+    public void testByteAccounting() {
+        Metrics metrics = new Metrics();
+        metrics.onSent(new AuthorizedMessage(new MockMessage("a"), new AuthorizationToken()), 100);
+        metrics.onSent(new MockMessage("b"), 50);
+        metrics.onReceived(new AuthorizedMessage(new MockMessage("c"), new AuthorizationToken()), 30);
+
+        assertEquals(150, metrics.getSentBytes().get());
+        assertEquals(2, metrics.getNumMessagesSent().get());
+        assertEquals(30, metrics.getReceivedBytes().get());
+        assertEquals(1, metrics.getNumMessagesReceived().get());
+
+        Metrics.MessageTypeMetrics sent = metrics.getSentByMessageType().get(MockMessage.class.getSimpleName());
+        assertEquals(2, sent.getNumMessages().sum());
+        assertEquals(150, sent.getNumBytes().sum());
+        Metrics.MessageTypeMetrics received = metrics.getReceivedByMessageType().get(MockMessage.class.getSimpleName());
+        assertEquals(1, received.getNumMessages().sum());
+        assertEquals(30, received.getNumBytes().sum());
+    }
+
+    @Test
+    public void testRttStats() {
+        RttStats rttStats = new RttStats();
+        assertFalse(rttStats.hasSamples());
+        assertEquals(0, rttStats.getP50());
+
+        for (int i = 1; i <= 100; i++) {
+            rttStats.add(i);
+        }
+        assertEquals(50, rttStats.getP50());
+        assertEquals(99, rttStats.getP99());
+        assertEquals(50.5, rttStats.getAverage());
+
+        // Only the most recent samples are kept
+        for (int i = 0; i < 1000; i++) {
+            rttStats.add(1000);
+        }
+        assertEquals(1000, rttStats.getP50());
+        assertEquals(1100, rttStats.getCount());
+        assertTrue(rttStats.getEwma() > 999);
+    }
+}
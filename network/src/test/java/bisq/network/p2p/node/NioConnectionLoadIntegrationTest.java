@@ -0,0 +1,96 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.node;
+
+import bisq.network.p2p.MockMessage;
+import bisq.network.p2p.message.Envelope;
+import bisq.network.p2p.message.Version;
+import bisq.network.p2p.node.codec.FrameDecoder;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Opens many clear-net connections which are all handled by the shared event loops and reports the number of threads
+ * and the heap used. Requires a file descriptor limit of at least 2 * numConnections.
+ */
+@Slf4j
+public class NioConnectionLoadIntegrationTest {
+    @Test
+    public void testManyConnections() throws IOException, InterruptedException {
+        int numConnections = 2000;
+        int numThreadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        long usedMemoryBefore = getUsedMemory();
+
+        CountDownLatch latch = new CountDownLatch(2 * numConnections);
+        FrameDecoder.RawFrameHandler frameHandler = (frame, numBytes) -> latch.countDown();
+        Runnable drainedHandler = () -> {
+        };
+        List<SocketChannel> channels = new ArrayList<>();
+        List<NioConnectionChannel> nioChannels = new ArrayList<>();
+        try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
+            serverSocketChannel.bind(new InetSocketAddress("127.0.0.1", 0), numConnections);
+            long ts = System.currentTimeMillis();
+            for (int i = 0; i < numConnections; i++) {
+                SocketChannel client = SocketChannel.open(serverSocketChannel.getLocalAddress());
+                SocketChannel server = serverSocketChannel.accept();
+                channels.add(client);
+                channels.add(server);
+                nioChannels.add(new NioConnectionChannel(client, frameHandler, Throwable::printStackTrace, drainedHandler));
+                nioChannels.add(new NioConnectionChannel(server, frameHandler, Throwable::printStackTrace, drainedHandler));
+            }
+            log.info("Opening {} connections took {} ms", numConnections, System.currentTimeMillis() - ts);
+
+            ts = System.currentTimeMillis();
+            Envelope envelope = new Envelope(new MockMessage("x".repeat(1000)), Version.VERSION);
+            for (NioConnectionChannel nioChannel : nioChannels) {
+                nioChannel.write(FrameDecoder.encode(envelope));
+            }
+            assertTrue(latch.await(30, TimeUnit.SECONDS));
+            log.info("Sending a message on both sides of {} connections took {} ms",
+                    numConnections, System.currentTimeMillis() - ts);
+
+            int numAdditionalThreads = ManagementFactory.getThreadMXBean().getThreadCount() - numThreadsBefore;
+            log.info("Additional threads: {}; Additional used memory: {} MB",
+                    numAdditionalThreads, (getUsedMemory() - usedMemoryBefore) / 1024 / 1024);
+            // Only the event loop threads got added
+            assertTrue(numAdditionalThreads < 100);
+        } finally {
+            for (SocketChannel channel : channels) {
+                channel.close();
+            }
+        }
+    }
+
+    private static long getUsedMemory() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
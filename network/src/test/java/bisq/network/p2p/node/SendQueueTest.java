@@ -0,0 +1,192 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.node;
+
+import bisq.network.p2p.MockMessage;
+import bisq.network.p2p.message.Envelope;
+import bisq.network.p2p.message.Version;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SendQueueTest {
+    @Test
+    public void testPriorityAndBatching() throws Exception {
+        CountDownLatch writerBlocked = new CountDownLatch(1);
+        CountDownLatch releaseWriter = new CountDownLatch(1);
+        List<List<Envelope>> batches = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        SendQueue sendQueue = new SendQueue(envelopes -> {
+            batches.add(envelopes);
+            writerBlocked.countDown();
+            releaseWriter.await();
+            return true;
+        }, executor, e -> {
+        });
+
+        Envelope first = createEnvelope("first");
+        sendQueue.add(first, false, RuntimeException::new);
+        assertTrue(writerBlocked.await(1, TimeUnit.SECONDS));
+
+        // Get queued while the writer is busy and are written with the next batch
+        Envelope bulk = createEnvelope("bulk");
+        Envelope control = createEnvelope("control");
+        sendQueue.add(bulk, false, RuntimeException::new);
+        CompletableFuture<Void> controlFuture = sendQueue.add(control, true, RuntimeException::new);
+        releaseWriter.countDown();
+        controlFuture.get(1, TimeUnit.SECONDS);
+
+        assertEquals(List.of(List.of(first), List.of(control, bulk)), batches);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        CountDownLatch writerBlocked = new CountDownLatch(1);
+        CountDownLatch releaseWriter = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        SendQueue sendQueue = new SendQueue(envelopes -> {
+            writerBlocked.countDown();
+            releaseWriter.await();
+            return true;
+        }, executor, e -> {
+        });
+
+        sendQueue.add(createEnvelope("first"), false, RuntimeException::new);
+        assertTrue(writerBlocked.await(1, TimeUnit.SECONDS));
+        for (int i = 0; i < SendQueue.MAX_QUEUE_SIZE; i++) {
+            sendQueue.add(createEnvelope("bulk"), false, RuntimeException::new);
+        }
+        assertTrue(sendQueue.isFull());
+        CompletableFuture<Void> rejected = sendQueue.add(createEnvelope("bulk"), false, IllegalStateException::new);
+        assertTrue(rejected.isCompletedExceptionally());
+        // High priority messages are not limited
+        CompletableFuture<Void> control = sendQueue.add(createEnvelope("control"), true, IllegalStateException::new);
+        assertFalse(control.isCompletedExceptionally());
+
+        releaseWriter.countDown();
+        control.get(1, TimeUnit.SECONDS);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testPauseAndResume() throws Exception {
+        AtomicBoolean canContinue = new AtomicBoolean(false);
+        AtomicReference<SendQueue> sendQueue = new AtomicReference<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        sendQueue.set(new SendQueue(envelopes -> canContinue.get(), executor, e -> {
+        }));
+
+        sendQueue.get().add(createEnvelope("first"), false, RuntimeException::new).get(1, TimeUnit.SECONDS);
+        CompletableFuture<Void> second = sendQueue.get().add(createEnvelope("second"), false, RuntimeException::new);
+        Thread.sleep(100);
+        // Writer is paused
+        assertFalse(second.isDone());
+
+        canContinue.set(true);
+        sendQueue.get().resume();
+        second.get(1, TimeUnit.SECONDS);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testStaleResume() throws Exception {
+        AtomicBoolean canContinue = new AtomicBoolean(false);
+        CountDownLatch writerBlocked = new CountDownLatch(1);
+        CountDownLatch releaseWriter = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        SendQueue sendQueue = new SendQueue(envelopes -> {
+            writerBlocked.countDown();
+            releaseWriter.await();
+            return canContinue.get();
+        }, executor, e -> {
+        });
+
+        // A resume while the writer is idle must not skip the next pause
+        sendQueue.resume();
+        sendQueue.add(createEnvelope("first"), false, RuntimeException::new);
+        assertTrue(writerBlocked.await(1, TimeUnit.SECONDS));
+        CompletableFuture<Void> second = sendQueue.add(createEnvelope("second"), false, RuntimeException::new);
+        releaseWriter.countDown();
+        Thread.sleep(100);
+        // Writer is paused after the first write
+        assertFalse(second.isDone());
+
+        canContinue.set(true);
+        sendQueue.resume();
+        second.get(1, TimeUnit.SECONDS);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testAddWhileClosing() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ExecutorService senders = Executors.newFixedThreadPool(4);
+        SendQueue sendQueue = new SendQueue(envelopes -> true, executor, e -> {
+        });
+        IllegalStateException closeException = new IllegalStateException("closed");
+
+        // Like Connection.sendAsync, which can pass its isStopped check before close is called
+        List<CompletableFuture<CompletableFuture<Void>>> results = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < 1000; i++) {
+            results.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return sendQueue.add(createEnvelope("msg"), false, RuntimeException::new);
+            }, senders));
+        }
+        start.countDown();
+        sendQueue.close(closeException);
+
+        // Every future completes, either written or failed with the close exception
+        for (CompletableFuture<CompletableFuture<Void>> result : results) {
+            CompletableFuture<Void> future = result.get(1, TimeUnit.SECONDS);
+            try {
+                future.get(1, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertSame(closeException, e.getCause());
+            }
+        }
+        assertTrue(sendQueue.add(createEnvelope("late"), false, RuntimeException::new).isCompletedExceptionally());
+        senders.shutdown();
+        executor.shutdown();
+    }
+
+    private static Envelope createEnvelope(String text) {
+        return new Envelope(new MockMessage(text), Version.VERSION);
+    }
+}
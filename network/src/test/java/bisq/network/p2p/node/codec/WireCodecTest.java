@@ -0,0 +1,225 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.node.codec;
+
+import bisq.network.p2p.MockMessage;
+import bisq.network.p2p.message.Envelope;
+import bisq.network.p2p.message.Version;
+import bisq.network.p2p.node.ConnectionException;
+import bisq.network.p2p.node.authorization.AuthorizationToken;
+import bisq.network.p2p.node.authorization.AuthorizedMessage;
+import bisq.network.p2p.services.data.DataRequest;
+import bisq.network.p2p.services.data.SeenMessageCache;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WireCodecTest {
+    private static final int PIPE_SIZE = 1024 * 1024;
+
+    record MockDataRequest(String data) implements DataRequest {
+    }
+
+    @Test
+    public void testNegotiate() {
+        assertEquals(WireCodec.Type.LENGTH_PREFIXED, WireCodec.negotiate(WireCodec.Type.SUPPORTED, WireCodec.Type.SUPPORTED));
+        assertEquals(WireCodec.Type.JAVA_SERIALIZATION, WireCodec.negotiate(WireCodec.Type.SUPPORTED, null));
+        assertEquals(WireCodec.Type.JAVA_SERIALIZATION, WireCodec.negotiate(WireCodec.Type.SUPPORTED,
+                Set.of(WireCodec.Type.JAVA_SERIALIZATION)));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (WireCodec.Type type : WireCodec.Type.values()) {
+            WireCodec[] pair = createPair(type);
+            Envelope authorized = new Envelope(new AuthorizedMessage(new MockMessage("test"), new AuthorizationToken()),
+                    Version.VERSION);
+            pair[0].write(authorized);
+            pair[0].flush();
+            assertEquals(authorized, pair[1].read());
+
+            Envelope plain = new Envelope(new MockMessage("plain"), Version.VERSION);
+            pair[1].write(plain);
+            pair[1].flush();
+            assertEquals(plain, pair[0].read());
+        }
+    }
+
+    @Test
+    public void testFrameDecoder() throws IOException {
+        Envelope first = new Envelope(new MockMessage("first"), Version.VERSION);
+        Envelope second = new Envelope(new AuthorizedMessage(new MockMessage("second"), new AuthorizationToken()),
+                Version.VERSION);
+        ByteBuffer firstFrame = FrameDecoder.encode(first);
+        ByteBuffer secondFrame = FrameDecoder.encode(second);
+        ByteBuffer both = ByteBuffer.allocate(firstFrame.remaining() + secondFrame.remaining())
+                .put(firstFrame.duplicate())
+                .put(secondFrame.duplicate())
+                .flip();
+
+        // Frames received in one read
+        List<Envelope> received = new ArrayList<>();
+        FrameDecoder frameDecoder = new FrameDecoder();
+        frameDecoder.decode(both.duplicate(), (envelope, numBytes) -> received.add(envelope));
+        assertEquals(List.of(first, second), received);
+
+        // Frames split over many reads
+        received.clear();
+        int numBytesTotal = both.remaining();
+        List<Integer> frameSizes = new ArrayList<>();
+        for (int i = 0; i < numBytesTotal; i++) {
+            frameDecoder.decode(ByteBuffer.wrap(new byte[]{both.get(i)}), (envelope, numBytes) -> {
+                received.add(envelope);
+                frameSizes.add(numBytes);
+            });
+        }
+        assertEquals(List.of(first, second), received);
+        assertEquals(List.of(firstFrame.remaining(), secondFrame.remaining()), frameSizes);
+    }
+
+    @Test
+    public void testSeenDataRequestDropped() throws IOException {
+        SeenMessageCache seenMessageCache = new SeenMessageCache(100, 4);
+        FrameDecoder frameDecoder = new FrameDecoder(seenMessageCache);
+        List<Envelope> received = new ArrayList<>();
+        List<Envelope> expected = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            // Each peer uses its own authorization token, only the contained message is the same
+            Envelope dataRequest = new Envelope(new AuthorizedMessage(new MockDataRequest("data"),
+                    new AuthorizationToken()), Version.VERSION);
+            Envelope message = new Envelope(new AuthorizedMessage(new MockMessage("message"),
+                    new AuthorizationToken()), Version.VERSION);
+            frameDecoder.decode(FrameDecoder.encode(dataRequest), (envelope, numBytes) -> {
+                received.add(envelope);
+                // Done by the node once the token is authorized
+                if (envelope != null) {
+                    seenMessageCache.onAuthorized(envelope.payload());
+                }
+            });
+            frameDecoder.decode(FrameDecoder.encode(message), (envelope, numBytes) -> received.add(envelope));
+            expected.addAll(Arrays.asList(i == 0 ? dataRequest : null, message));
+        }
+        // Only data requests are added to the cache
+        assertEquals(expected, received);
+        assertEquals(1, seenMessageCache.getNumHits());
+    }
+
+    @Test
+    public void testUnauthorizedDataRequestNotMarkedSeen() throws IOException {
+        SeenMessageCache seenMessageCache = new SeenMessageCache(100, 4);
+        FrameDecoder frameDecoder = new FrameDecoder(seenMessageCache);
+        List<Envelope> received = new ArrayList<>();
+        // A copy with an invalid token, which the node rejects, must not get the valid copy dropped
+        Envelope invalid = new Envelope(new AuthorizedMessage(new MockDataRequest("data"),
+                new AuthorizationToken()), Version.VERSION);
+        Envelope valid = new Envelope(new AuthorizedMessage(new MockDataRequest("data"),
+                new AuthorizationToken()), Version.VERSION);
+        frameDecoder.decode(FrameDecoder.encode(invalid), (envelope, numBytes) -> received.add(envelope));
+        frameDecoder.decode(FrameDecoder.encode(valid), (envelope, numBytes) -> received.add(envelope));
+        assertEquals(List.of(invalid, valid), received);
+        assertEquals(0, seenMessageCache.getNumHits());
+    }
+
+    @Test
+    public void testNegotiateCompression() {
+        assertEquals(Compression.DEFLATE, Compression.negotiate(Compression.SUPPORTED, Compression.SUPPORTED));
+        assertEquals(Compression.NONE, Compression.negotiate(Compression.SUPPORTED, null));
+        assertEquals(Compression.NONE, Compression.negotiate(Compression.SUPPORTED, Set.of()));
+    }
+
+    @Test
+    public void testDeflateCompressor() throws Exception {
+        byte[] bytes = new MockMessage("bisq.network.p2p.services.data.storage.auth.AuthenticatedData".repeat(50)).serialize();
+        byte[] compressed = DeflateCompressor.compress(bytes).orElseThrow();
+        assertTrue(compressed.length < bytes.length / 10);
+        assertArrayEquals(bytes, DeflateCompressor.decompress(compressed, bytes.length));
+
+        // Decompressed size above limit
+        assertThrows(ConnectionException.class, () -> DeflateCompressor.decompress(compressed, bytes.length - 1));
+
+        // Random data does not get smaller
+        byte[] random = new byte[2000];
+        new Random(1).nextBytes(random);
+        assertTrue(DeflateCompressor.compress(random).isEmpty());
+    }
+
+    @Test
+    public void testCompressedFrames() throws IOException {
+        CompressionStats compressionStats = new CompressionStats();
+        Envelope small = new Envelope(new MockMessage("small"), Version.VERSION);
+        Envelope large = new Envelope(new AuthorizedMessage(new MockMessage("x".repeat(10_000)),
+                new AuthorizationToken()), Version.VERSION);
+        ByteBuffer smallFrame = FrameDecoder.encode(small, Compression.DEFLATE, compressionStats);
+        ByteBuffer largeFrame = FrameDecoder.encode(large, Compression.DEFLATE, compressionStats);
+
+        // Small messages are not compressed
+        assertEquals(FrameDecoder.encode(small).remaining(), smallFrame.remaining());
+        assertTrue(largeFrame.remaining() < FrameDecoder.encode(large).remaining() / 10);
+        assertEquals(1, compressionStats.getNumCompressed().sum());
+        assertTrue(compressionStats.getCompressionRatio() < 0.1);
+
+        List<Envelope> received = new ArrayList<>();
+        new FrameDecoder().decode(largeFrame, (envelope, numBytes) -> received.add(envelope));
+        assertEquals(List.of(large), received);
+    }
+
+    @Test
+    public void testSeenDataRequestDroppedIndependentOfCompression() throws IOException {
+        SeenMessageCache seenMessageCache = new SeenMessageCache(100, 4);
+        FrameDecoder frameDecoder = new FrameDecoder(seenMessageCache);
+        List<Envelope> received = new ArrayList<>();
+        Envelope compressed = new Envelope(new AuthorizedMessage(new MockDataRequest("data".repeat(1000)),
+                new AuthorizationToken()), Version.VERSION);
+        Envelope uncompressed = new Envelope(new AuthorizedMessage(new MockDataRequest("data".repeat(1000)),
+                new AuthorizationToken()), Version.VERSION);
+        frameDecoder.decode(FrameDecoder.encode(compressed, Compression.DEFLATE, null), (envelope, numBytes) -> received.add(envelope));
+        frameDecoder.decode(FrameDecoder.encode(uncompressed), (envelope, numBytes) -> received.add(envelope));
+        assertEquals(Arrays.asList(compressed, null), received);
+    }
+
+    private WireCodec[] createPair(WireCodec.Type type) throws IOException {
+        PipedInputStream inA = new PipedInputStream(PIPE_SIZE);
+        PipedInputStream inB = new PipedInputStream(PIPE_SIZE);
+        PipedOutputStream outA = new PipedOutputStream(inB);
+        PipedOutputStream outB = new PipedOutputStream(inA);
+        // The JAVA_SERIALIZATION codec blocks at creation until the peers stream header has been received
+        CompletableFuture<WireCodec> codecA = CompletableFuture.supplyAsync(() -> {
+            try {
+                return WireCodec.create(type, inA, outA);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        WireCodec codecB = WireCodec.create(type, inB, outB);
+        return new WireCodec[]{codecA.join(), codecB};
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.confidential;
+
+import bisq.network.p2p.MockMessage;
+import bisq.network.p2p.message.Message;
+import bisq.security.KeyGeneration;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.AEADBadTagException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionChannelsTest {
+    private static final byte[] BINDING = new byte[32];
+    private static final byte[] OTHER_BINDING = new byte[32];
+
+    static {
+        OTHER_BINDING[0] = 1;
+    }
+
+    @Test
+    public void testSession() throws GeneralSecurityException {
+        KeyPair senderKeyPair = KeyGeneration.generateKeyPair();
+        SessionChannels sender = new SessionChannels();
+        SessionChannels receiver = new SessionChannels();
+
+        SessionChannels.OutboundSession session = sender.createOutbound("connection", BINDING, senderKeyPair.getPublic(), "keyId").orElseThrow();
+        // Not usable before the peer accepted it and no second session while it is pending
+        assertTrue(sender.findOutbound("connection", senderKeyPair.getPublic(), "keyId").isEmpty());
+        assertTrue(sender.createOutbound("connection", BINDING, senderKeyPair.getPublic(), "keyId").isEmpty());
+
+        SessionInit sessionInit = new SessionInit(session.getSessionId(),
+                session.getSecretKey().getEncoded(),
+                session.getChannelBinding(),
+                new MockMessage("init"));
+        assertEquals(SessionChannels.InboundResult.ACCEPTED,
+                receiver.addInbound("connection", BINDING, sessionInit, senderKeyPair.getPublic().getEncoded(), "keyId"));
+        // Response for another connection
+        sender.onResponse("otherConnection", new SessionResponse(session.getSessionId(), true));
+        assertTrue(sender.findOutbound("connection", senderKeyPair.getPublic(), "keyId").isEmpty());
+        sender.onResponse("connection", new SessionResponse(session.getSessionId(), true));
+        assertSame(session, sender.findOutbound("connection", senderKeyPair.getPublic(), "keyId").orElseThrow());
+
+        SessionMessage message1 = sender.encrypt(session, new MockMessage("1")).orElseThrow();
+        SessionMessage message2 = sender.encrypt(session, new MockMessage("2")).orElseThrow();
+        assertEquals(1, message2.getCounter());
+
+        // Out of order delivery within the replay window is accepted, replays are not
+        assertEquals(Optional.of(new MockMessage("2")), receiver.decrypt("connection", message2));
+        assertEquals(Optional.of(new MockMessage("1")), receiver.decrypt("connection", message1));
+        assertEquals(Optional.empty(), receiver.decrypt("connection", message1));
+
+        // Session is bound to the connection
+        SessionMessage message3 = sender.encrypt(session, new MockMessage("3")).orElseThrow();
+        assertThrows(GeneralSecurityException.class, () -> receiver.decrypt("otherConnection", message3));
+
+        // Modified cypherText or counter
+        SessionMessage message4 = sender.encrypt(session, new MockMessage("4")).orElseThrow();
+        byte[] cypherText = message4.getCypherText().clone();
+        cypherText[0] ^= 1;
+        assertThrows(AEADBadTagException.class,
+                () -> receiver.decrypt("connection", new SessionMessage(message4.getSessionId(), message4.getCounter(), cypherText)));
+        assertThrows(AEADBadTagException.class,
+                () -> receiver.decrypt("connection", new SessionMessage(message4.getSessionId(), 100, message4.getCypherText())));
+        assertEquals(Optional.of(new MockMessage("4")), receiver.decrypt("connection", message4));
+
+        sender.onDisconnect("connection");
+        receiver.onDisconnect("connection");
+        assertEquals(0, sender.getNumOutbound());
+        assertEquals(0, receiver.getNumInbound());
+    }
+
+    @Test
+    public void testSessionBoundToKeys() throws GeneralSecurityException {
+        KeyPair senderKeyPair = KeyGeneration.generateKeyPair();
+        KeyPair otherKeyPair = KeyGeneration.generateKeyPair();
+        SessionChannels sender = new SessionChannels();
+        SessionChannels receiver = new SessionChannels();
+
+        SessionChannels.OutboundSession session = sender.createOutbound("connection", BINDING, senderKeyPair.getPublic(), "keyId").orElseThrow();
+        SessionInit sessionInit = new SessionInit(session.getSessionId(),
+                session.getSecretKey().getEncoded(),
+                session.getChannelBinding(),
+                new MockMessage("init"));
+        // Receiver got the session key from a SessionInit signed by another key
+        SessionChannels receiver1 = new SessionChannels();
+        receiver1.addInbound("connection", BINDING, sessionInit, otherKeyPair.getPublic().getEncoded(), "keyId");
+        assertThrows(AEADBadTagException.class, () -> receiver1.decrypt("connection", sender.encrypt(session, new MockMessage("1")).orElseThrow()));
+
+        // Other receiver keyId
+        SessionChannels receiver2 = new SessionChannels();
+        receiver2.addInbound("connection", BINDING, sessionInit, senderKeyPair.getPublic().getEncoded(), "otherKeyId");
+        assertThrows(AEADBadTagException.class, () -> receiver2.decrypt("connection", sender.encrypt(session, new MockMessage("2")).orElseThrow()));
+
+        receiver.addInbound("connection", BINDING, sessionInit, senderKeyPair.getPublic().getEncoded(), "keyId");
+        Optional<Message> decrypted = receiver.decrypt("connection", sender.encrypt(session, new MockMessage("3")).orElseThrow());
+        assertEquals(Optional.of(new MockMessage("3")), decrypted);
+    }
+
+    @Test
+    public void testReplayedSessionInit() throws GeneralSecurityException {
+        KeyPair senderKeyPair = KeyGeneration.generateKeyPair();
+        byte[] encodedSenderPublicKey = senderKeyPair.getPublic().getEncoded();
+        SessionChannels sender = new SessionChannels();
+        SessionChannels receiver = new SessionChannels();
+
+        SessionChannels.OutboundSession session = sender.createOutbound("connection", BINDING, senderKeyPair.getPublic(), "keyId").orElseThrow();
+        SessionInit sessionInit = new SessionInit(session.getSessionId(),
+                session.getSecretKey().getEncoded(),
+                session.getChannelBinding(),
+                new MockMessage("init"));
+        SessionMessage message = sender.encrypt(session, new MockMessage("1")).orElseThrow();
+
+        // Replayed over another connection, which has another channelBinding
+        assertEquals(SessionChannels.InboundResult.INVALID,
+                receiver.addInbound("otherConnection", OTHER_BINDING, sessionInit, encodedSenderPublicKey, "keyId"));
+        // Peer running an older version has no channelBinding
+        assertEquals(SessionChannels.InboundResult.INVALID,
+                receiver.addInbound("oldConnection", null, sessionInit, encodedSenderPublicKey, "keyId"));
+        assertThrows(GeneralSecurityException.class, () -> receiver.decrypt("otherConnection", message));
+
+        assertEquals(SessionChannels.InboundResult.ACCEPTED,
+                receiver.addInbound("connection", BINDING, sessionInit, encodedSenderPublicKey, "keyId"));
+        assertEquals(Optional.of(new MockMessage("1")), receiver.decrypt("connection", message));
+
+        // Replayed over the same connection must not reset the replay window
+        assertEquals(SessionChannels.InboundResult.INVALID,
+                receiver.addInbound("connection", BINDING, sessionInit, encodedSenderPublicKey, "keyId"));
+        assertEquals(Optional.empty(), receiver.decrypt("connection", message));
+
+        // Still rejected after the connection got closed
+        receiver.onDisconnect("connection");
+        assertEquals(SessionChannels.InboundResult.INVALID,
+                receiver.addInbound("connection", BINDING, sessionInit, encodedSenderPublicKey, "keyId"));
+    }
+
+    @Test
+    public void testSessionLimits() throws GeneralSecurityException {
+        KeyPair senderKeyPair = KeyGeneration.generateKeyPair();
+        SessionChannels sender = new SessionChannels();
+        SessionChannels receiver = new SessionChannels();
+
+        for (int i = 0; i <= SessionChannels.MAX_INBOUND_SESSIONS_PER_CONNECTION; i++) {
+            SessionChannels.OutboundSession session = sender.createOutbound("connection", BINDING, senderKeyPair.getPublic(), "keyId" + i).orElseThrow();
+            SessionInit sessionInit = new SessionInit(session.getSessionId(),
+                    session.getSecretKey().getEncoded(),
+                    session.getChannelBinding(),
+                    new MockMessage("init"));
+            SessionChannels.InboundResult result = receiver.addInbound("connection",
+                    BINDING,
+                    sessionInit,
+                    senderKeyPair.getPublic().getEncoded(),
+                    "keyId" + i);
+            // Live sessions do not get evicted, the new session gets rejected instead
+            assertEquals(i < SessionChannels.MAX_INBOUND_SESSIONS_PER_CONNECTION ?
+                    SessionChannels.InboundResult.ACCEPTED :
+                    SessionChannels.InboundResult.REJECTED, result);
+            sender.onResponse("connection", new SessionResponse(session.getSessionId(),
+                    result == SessionChannels.InboundResult.ACCEPTED));
+        }
+        assertEquals(SessionChannels.MAX_INBOUND_SESSIONS_PER_CONNECTION, receiver.getNumInbound());
+        assertEquals(SessionChannels.MAX_INBOUND_SESSIONS_PER_CONNECTION, sender.getNumOutbound());
+        int lastIndex = SessionChannels.MAX_INBOUND_SESSIONS_PER_CONNECTION;
+        assertTrue(sender.findOutbound("connection", senderKeyPair.getPublic(), "keyId" + lastIndex).isEmpty());
+
+        // Established session rejected by the receiver, e.g. after it lost it
+        SessionChannels.OutboundSession firstSession = sender.findOutbound("connection", senderKeyPair.getPublic(), "keyId0").orElseThrow();
+        sender.onResponse("connection", new SessionResponse(firstSession.getSessionId(), false));
+        assertTrue(sender.findOutbound("connection", senderKeyPair.getPublic(), "keyId0").isEmpty());
+        assertTrue(sender.createOutbound("connection", BINDING, senderKeyPair.getPublic(), "keyId0").isPresent());
+
+        // Counter must not go past the limit with concurrent senders
+        SessionChannels.OutboundSession usedUp = sender.findOutbound("connection", senderKeyPair.getPublic(), "keyId1").orElseThrow();
+        for (long i = 0; i < SessionChannels.MAX_MESSAGES_PER_SESSION - 1; i++) {
+            sender.encrypt(usedUp, new MockMessage("message"));
+        }
+        assertTrue(sender.encrypt(usedUp, new MockMessage("last")).isPresent());
+        assertTrue(sender.encrypt(usedUp, new MockMessage("too many")).isEmpty());
+    }
+}
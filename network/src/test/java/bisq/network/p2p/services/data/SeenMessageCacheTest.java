@@ -0,0 +1,84 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.data;
+
+import bisq.network.p2p.MockMessage;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SeenMessageCacheTest {
+    @Test
+    public void testSeen() {
+        SeenMessageCache seenMessageCache = new SeenMessageCache(100, 4);
+        long digest = seenMessageCache.digest(wrap("message"));
+        assertEquals(digest, seenMessageCache.digest(wrap("message")));
+        assertNotEquals(digest, seenMessageCache.digest(wrap("other message")));
+
+        assertFalse(seenMessageCache.isSeen(digest));
+        seenMessageCache.markSeen(digest);
+        assertTrue(seenMessageCache.isSeen(digest));
+        assertTrue(seenMessageCache.isSeen(digest));
+        assertFalse(seenMessageCache.isSeen(seenMessageCache.digest(wrap("other message"))));
+
+        assertEquals(4, seenMessageCache.getNumLookups());
+        assertEquals(2, seenMessageCache.getNumHits());
+        assertEquals(0.5, seenMessageCache.getHitRate());
+    }
+
+    @Test
+    public void testBounded() {
+        SeenMessageCache seenMessageCache = new SeenMessageCache(100, 4);
+        for (int i = 0; i < 1000; i++) {
+            seenMessageCache.markSeen(seenMessageCache.digest(wrap("message " + i)));
+        }
+        assertTrue(seenMessageCache.size() <= 100);
+
+        // The latest ones are still present
+        assertTrue(seenMessageCache.isSeen(seenMessageCache.digest(wrap("message 999"))));
+        assertFalse(seenMessageCache.isSeen(seenMessageCache.digest(wrap("message 0"))));
+    }
+
+    @Test
+    public void testPendingUntilAuthorized() {
+        SeenMessageCache seenMessageCache = new SeenMessageCache(100, 4);
+        long digest = seenMessageCache.digest(wrap("message"));
+        // Equal messages are still different pending entries
+        MockMessage rejected = new MockMessage("message");
+        MockMessage authorized = new MockMessage("message");
+        seenMessageCache.addPending(rejected, digest);
+        seenMessageCache.addPending(authorized, digest);
+        assertFalse(seenMessageCache.isSeen(digest));
+
+        seenMessageCache.onAuthorized(authorized);
+        assertTrue(seenMessageCache.isSeen(digest));
+        // Only marked once
+        seenMessageCache.onAuthorized(authorized);
+        assertEquals(1, seenMessageCache.size());
+    }
+
+    private static ByteBuffer wrap(String message) {
+        return ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8));
+    }
+}
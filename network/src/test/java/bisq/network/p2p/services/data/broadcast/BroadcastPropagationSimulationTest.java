@@ -0,0 +1,176 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.data.broadcast;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Discrete event simulation of broadcast propagation in a network of 100 nodes. Most nodes have about 8 connections,
+ * a few seed like nodes have about 40. 10% of the links are slow (like a Tor peer with a bad circuit).
+ * Compares the previous sequential sends with a fixed distribution factor to parallel sends with a fixed and with an
+ * adaptive fan-out.
+ */
+@Slf4j
+public class BroadcastPropagationSimulationTest {
+    private static final int NUM_NODES = 100;
+    private static final int NUM_SEEDS = 5;
+    private static final int NUM_OUTBOUND = 4;
+    private static final int NUM_WARM_UP_BROADCASTS = 200;
+    private static final int NUM_BROADCASTS = 200;
+    private static final long RE_BROADCAST_DELAY = 100;
+
+    private enum Mode {
+        SEQUENTIAL_FIXED,
+        PARALLEL_FIXED,
+        PARALLEL_ADAPTIVE
+    }
+
+    private record Event(long time, int node) {
+    }
+
+    private record Stats(double coverage, double messagesPerBroadcast, long p50, long p90, long max) {
+    }
+
+    @Test
+    public void simulate() {
+        Stats sequential = run(Mode.SEQUENTIAL_FIXED);
+        Stats parallel = run(Mode.PARALLEL_FIXED);
+        Stats adaptive = run(Mode.PARALLEL_ADAPTIVE);
+        log.info("{}: {}", Mode.SEQUENTIAL_FIXED, sequential);
+        log.info("{}: {}", Mode.PARALLEL_FIXED, parallel);
+        log.info("{}: {}", Mode.PARALLEL_ADAPTIVE, adaptive);
+
+        assertTrue(parallel.p90() < sequential.p90());
+        assertTrue(adaptive.messagesPerBroadcast() < parallel.messagesPerBroadcast());
+        assertTrue(adaptive.coverage() > 0.99);
+    }
+
+    private Stats run(Mode mode) {
+        // Same network for all modes
+        Random random = new Random(42);
+        List<List<Integer>> connections = createNetwork(random);
+        long[][] linkLatency = new long[NUM_NODES][NUM_NODES];
+        for (int i = 0; i < NUM_NODES; i++) {
+            for (int j = 0; j < NUM_NODES; j++) {
+                linkLatency[i][j] = random.nextDouble() < 0.1 ? 2000 + random.nextInt(8000) : 50 + random.nextInt(250);
+            }
+        }
+        AdaptiveFanOut[] adaptiveFanOuts = IntStream.range(0, NUM_NODES)
+                .mapToObj(i -> new AdaptiveFanOut())
+                .toArray(AdaptiveFanOut[]::new);
+
+        List<Long> latencies = new ArrayList<>();
+        long numReached = 0;
+        long numMessages = 0;
+        for (int i = 0; i < NUM_WARM_UP_BROADCASTS + NUM_BROADCASTS; i++) {
+            long[] receivedAt = new long[NUM_NODES];
+            Arrays.fill(receivedAt, -1);
+            int origin = random.nextInt(NUM_NODES);
+            receivedAt[origin] = 0;
+            PriorityQueue<Event> events = new PriorityQueue<>((a, b) -> Long.compare(a.time(), b.time()));
+            // The origin sends to all its peers
+            int numSent = send(origin, 0, connections.get(origin).size(), mode, connections, linkLatency, random, events);
+            while (!events.isEmpty()) {
+                Event event = events.poll();
+                int node = event.node();
+                boolean isDuplicate = receivedAt[node] >= 0;
+                adaptiveFanOuts[node].onBroadcastReceived(isDuplicate);
+                if (isDuplicate) {
+                    continue;
+                }
+                receivedAt[node] = event.time();
+                int numConnections = connections.get(node).size();
+                int fanOut = mode == Mode.PARALLEL_ADAPTIVE ?
+                        adaptiveFanOuts[node].getFanOut(numConnections) :
+                        (int) Math.round(numConnections * 0.75);
+                numSent += send(node, event.time() + RE_BROADCAST_DELAY, fanOut, mode, connections, linkLatency,
+                        random, events);
+            }
+            if (i >= NUM_WARM_UP_BROADCASTS) {
+                numMessages += numSent;
+                for (long time : receivedAt) {
+                    if (time >= 0) {
+                        numReached++;
+                        latencies.add(time);
+                    }
+                }
+            }
+        }
+        Collections.sort(latencies);
+        return new Stats(numReached / (double) (NUM_BROADCASTS * NUM_NODES),
+                numMessages / (double) NUM_BROADCASTS,
+                latencies.get(latencies.size() / 2),
+                latencies.get(latencies.size() * 9 / 10),
+                latencies.get(latencies.size() - 1));
+    }
+
+    private static int send(int node,
+                            long startTime,
+                            int fanOut,
+                            Mode mode,
+                            List<List<Integer>> connections,
+                            long[][] linkLatency,
+                            Random random,
+                            PriorityQueue<Event> events) {
+        List<Integer> peers = new ArrayList<>(connections.get(node));
+        Collections.shuffle(peers, random);
+        long time = startTime;
+        for (int peer : peers.subList(0, fanOut)) {
+            if (mode == Mode.SEQUENTIAL_FIXED) {
+                // Each send blocks until the previous one has been completed
+                time += linkLatency[node][peer];
+                events.add(new Event(time, peer));
+            } else {
+                events.add(new Event(startTime + linkLatency[node][peer], peer));
+            }
+        }
+        return fanOut;
+    }
+
+    private static List<List<Integer>> createNetwork(Random random) {
+        List<Set<Integer>> peers = new ArrayList<>();
+        for (int i = 0; i < NUM_NODES; i++) {
+            peers.add(new HashSet<>());
+        }
+        for (int node = 0; node < NUM_NODES; node++) {
+            // All nodes connect to some seeds, the seeds thereby get many connections
+            int numOutbound = node < NUM_SEEDS ? NUM_OUTBOUND : NUM_OUTBOUND + 2;
+            while (peers.get(node).size() < numOutbound) {
+                int peer = peers.get(node).size() < 2 ? random.nextInt(NUM_SEEDS) : random.nextInt(NUM_NODES);
+                if (peer != node) {
+                    peers.get(node).add(peer);
+                    peers.get(peer).add(node);
+                }
+            }
+        }
+        return peers.stream().<List<Integer>>map(ArrayList::new).toList();
+    }
+}
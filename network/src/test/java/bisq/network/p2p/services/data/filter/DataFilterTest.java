@@ -0,0 +1,135 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.data.filter;
+
+import bisq.common.ObjectSerializer;
+import bisq.network.p2p.services.data.inventory.Inventory;
+import bisq.network.p2p.services.data.inventory.InventoryRequest;
+import bisq.network.p2p.services.data.storage.StorageService;
+import bisq.network.p2p.services.data.storage.append.AddAppendOnlyDataRequest;
+import bisq.network.p2p.services.data.storage.append.AppendOnlyDataStore;
+import bisq.network.p2p.services.data.storage.append.MockAppendOnlyPayload;
+import bisq.persistence.PersistenceService;
+import bisq.security.DigestUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+public class DataFilterTest {
+
+    @Test
+    public void testFilterEntryEquals() {
+        byte[] hash = DigestUtil.hash("test".getBytes());
+        assertEquals(new FilterEntry(hash, 1), new FilterEntry(hash.clone(), 1));
+        assertEquals(new FilterEntry(hash, 1).hashCode(), new FilterEntry(hash.clone(), 1).hashCode());
+        assertNotEquals(new FilterEntry(hash, 1), new FilterEntry(hash, 2));
+    }
+
+    @Test
+    public void testMightContain() {
+        int numEntries = 10_000;
+        List<FilterEntry> filterEntries = createFilterEntries(numEntries);
+        BloomDataFilter dataFilter = BloomDataFilter.from(filterEntries);
+        // No false negatives
+        filterEntries.forEach(filterEntry -> assertTrue(dataFilter.mightContain(filterEntry)));
+        // Higher sequence number must not match
+        FilterEntry first = filterEntries.get(0);
+        assertFalse(dataFilter.mightContain(new FilterEntry(first.hash(), first.sequenceNumber() + 1)));
+
+        long numFalsePositives = createFilterEntries(numEntries).stream().filter(dataFilter::mightContain).count();
+        log.info("numFalsePositives={} of {}", numFalsePositives, numEntries);
+        // We allow 3 times the expected rate to not get a flaky test
+        assertTrue(numFalsePositives <= 3 * numEntries * BloomDataFilter.FALSE_POSITIVE_PROBABILITY);
+    }
+
+    @Test
+    public void testRequestAndResponseSize() throws IOException {
+        for (int numEntries : new int[]{10_000, 100_000}) {
+            PersistenceService persistenceService = new PersistenceService(Files.createTempDirectory("bisq_DataFilterTest").toString());
+            StorageService storageService = new StorageService(persistenceService);
+            int numMissing = numEntries / 100;
+            List<AddAppendOnlyDataRequest> requests = new ArrayList<>();
+            for (int i = 0; i < numEntries; i++) {
+                requests.add(new AddAppendOnlyDataRequest(new MockAppendOnlyPayload("test" + UUID.randomUUID())));
+            }
+            AppendOnlyDataStore peersStore = storageService.getOrCreateAppendOnlyDataStore(requests.get(0).payload().getMetaData()).join();
+            peersStore.addAll(requests);
+
+            // We have all except numMissing entries
+            List<FilterEntry> ourFilterEntries = requests.subList(numMissing, numEntries).stream()
+                    .map(request -> new FilterEntry(DigestUtil.hash(request.payload().serialize()), 0))
+                    .toList();
+            InventoryRequest inventoryRequest = new InventoryRequest(BloomDataFilter.from(ourFilterEntries),
+                    0, 0, null, null);
+            int requestSize = ObjectSerializer.serialize(inventoryRequest).length;
+            InventoryRequest legacyRequest = new InventoryRequest(new DataFilter(new HashSet<>(ourFilterEntries)), 0);
+            int legacyRequestSize = ObjectSerializer.serialize(legacyRequest).length;
+
+            Inventory inventory = storageService.getInventoryFromStore(inventoryRequest.filter(), peersStore);
+            int responseSize = ObjectSerializer.serialize(inventory).length;
+            int fullResponseSize = ObjectSerializer.serialize(new HashSet<>(requests)).length;
+            log.info("numEntries={}, numMissing={}, numReceived={}: request {} bytes (HashSet filter {} bytes), " +
+                            "response {} bytes (full store {} bytes)",
+                    numEntries, numMissing, inventory.entries().size(),
+                    requestSize, legacyRequestSize, responseSize, fullResponseSize);
+
+            assertTrue(inventory.entries().size() <= numMissing);
+            // False positives only cause a few missing entries
+            assertTrue(inventory.entries().size() >= numMissing - 3 * numEntries * BloomDataFilter.FALSE_POSITIVE_PROBABILITY);
+            assertTrue(requestSize < legacyRequestSize / 10);
+            assertTrue(responseSize < fullResponseSize / 10);
+        }
+    }
+
+    @Test
+    public void testLegacyInventoryRequest() {
+        // InventoryRequest(DataFilter(Set.of(FilterEntry(new byte[]{1, 2, 3}, 5))), 42) serialized with the classes of
+        // the previous release
+        String serialized = "rO0ABXNyADliaXNxLm5ldHdvcmsucDJwLnNlcnZpY2VzLmRhdGEuaW52ZW50b3J5LkludmVudG9yeVJlcXVlc3QAAAAAAAAA" +
+                "AAIAAkkABW5vbmNlTAAKZGF0YUZpbHRlcnQAMkxiaXNxL25ldHdvcmsvcDJwL3NlcnZpY2VzL2RhdGEvZmlsdGVyL0RhdGFG" +
+                "aWx0ZXI7eHAAAAAqc3IAMGJpc3EubmV0d29yay5wMnAuc2VydmljZXMuZGF0YS5maWx0ZXIuRGF0YUZpbHRlcgAAAAAAAAAA" +
+                "AgABTAANZmlsdGVyRW50cmllc3QAE0xqYXZhL3V0aWwvSGFzaFNldDt4cHNyABFqYXZhLnV0aWwuSGFzaFNldLpEhZWWuLc0" +
+                "AwAAeHB3DAAAABA/QAAAAAAAAXNyADFiaXNxLm5ldHdvcmsucDJwLnNlcnZpY2VzLmRhdGEuZmlsdGVyLkZpbHRlckVudHJ5" +
+                "AAAAAAAAAAACAAJJAA5zZXF1ZW5jZU51bWJlclsABGhhc2h0AAJbQnhwAAAABXVyAAJbQqzzF/gGCFTgAgAAeHAAAAADAQID" +
+                "eA==";
+        InventoryRequest request = (InventoryRequest) ObjectSerializer.deserialize(Base64.getDecoder().decode(serialized));
+        assertEquals(42, request.nonce());
+        assertFalse(request.isPaged());
+        assertNull(request.bloomFilter());
+        assertTrue(request.filter().mightContain(new FilterEntry(new byte[]{1, 2, 3}, 5)));
+        assertFalse(request.filter().mightContain(new FilterEntry(new byte[]{1, 2, 3}, 6)));
+    }
+
+    private List<FilterEntry> createFilterEntries(int numEntries) {
+        List<FilterEntry> filterEntries = new ArrayList<>();
+        for (int i = 0; i < numEntries; i++) {
+            filterEntries.add(new FilterEntry(DigestUtil.hash(UUID.randomUUID().toString().getBytes()), 1));
+        }
+        return filterEntries;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.data.inventory;
+
+import bisq.common.data.ByteArray;
+import bisq.network.p2p.services.data.DataRequest;
+import bisq.network.p2p.services.data.filter.BloomDataFilter;
+import bisq.network.p2p.services.data.storage.append.AddAppendOnlyDataRequest;
+import bisq.network.p2p.services.data.storage.append.MockAppendOnlyPayload;
+import com.google.common.base.Strings;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InventoryPageProviderTest {
+    private static final String CONNECTION_ID = "connectionId";
+
+    @Test
+    public void testPagesAreBoundedAndComplete() {
+        List<InventoryItem> items = createItems(200, 1000);
+        AtomicInteger numProviderCalls = new AtomicInteger();
+        InventoryPageProvider provider = new InventoryPageProvider(dataFilter -> {
+            numProviderCalls.incrementAndGet();
+            return items;
+        });
+        BloomDataFilter dataFilter = BloomDataFilter.from(List.of());
+
+        Set<DataRequest> received = new HashSet<>();
+        InventoryCursor cursor = null;
+        int numPages = 0;
+        do {
+            // The filter is only sent with the first page
+            BloomDataFilter filter = cursor == null ? dataFilter : null;
+            InventoryResponse response = provider.getPage(CONNECTION_ID,
+                    new InventoryRequest(filter, 1, InventoryPageProvider.MIN_PAGE_SIZE, cursor, null));
+            int pageSize = response.inventory().entries().size();
+            assertTrue(pageSize > 0);
+            // Each entry has about 1 KB, so a page of 16 KB cannot hold much more than 16 entries
+            assertTrue(pageSize <= 16, "pageSize=" + pageSize);
+            received.addAll(response.inventory().entries());
+            cursor = response.nextCursor();
+            numPages++;
+        } while (cursor != null);
+
+        assertTrue(numPages > 10);
+        assertEquals(items.size(), received.size());
+        // The ordered inventory is only computed for the first page
+        assertEquals(1, numProviderCalls.get());
+    }
+
+    @Test
+    public void testPageOrder() {
+        List<InventoryItem> items = createItems(100, 1000);
+        InventoryPageProvider provider = new InventoryPageProvider(dataFilter -> items);
+        InventoryResponse response = provider.getPage(CONNECTION_ID,
+                new InventoryRequest(BloomDataFilter.from(List.of()), 1, InventoryPageProvider.MIN_PAGE_SIZE, null,
+                        null));
+        int pageSize = response.inventory().entries().size();
+        assertEquals(new HashSet<>(getDataRequests(items.subList(0, pageSize))), response.inventory().entries());
+        assertEquals(items.get(pageSize - 1).cursor(), response.nextCursor());
+    }
+
+    @Test
+    public void testRecomputeIfContinuationIsMissing() {
+        List<InventoryItem> items = createItems(100, 1000);
+        AtomicInteger numProviderCalls = new AtomicInteger();
+        InventoryPageProvider provider = new InventoryPageProvider(dataFilter -> {
+            numProviderCalls.incrementAndGet();
+            return items;
+        });
+        BloomDataFilter dataFilter = BloomDataFilter.from(List.of());
+        InventoryResponse first = provider.getPage(CONNECTION_ID,
+                new InventoryRequest(dataFilter, 1, InventoryPageProvider.MIN_PAGE_SIZE, null, null));
+        int firstPageSize = first.inventory().entries().size();
+
+        // E.g. after a reconnect the continuation is gone
+        provider.onDisconnect(CONNECTION_ID);
+        InventoryResponse second = provider.getPage(CONNECTION_ID,
+                new InventoryRequest(null, 1, InventoryPageProvider.MIN_PAGE_SIZE, first.nextCursor(), null));
+        assertEquals(2, numProviderCalls.get());
+        int secondPageSize = second.inventory().entries().size();
+        List<DataRequest> expected = getDataRequests(items.subList(firstPageSize, firstPageSize + secondPageSize));
+        assertEquals(new HashSet<>(expected), second.inventory().entries());
+    }
+
+    @Test
+    public void testPartitions() {
+        List<InventoryItem> items = createItems(300, 100);
+        InventoryPageProvider provider = new InventoryPageProvider(dataFilter -> items);
+        BloomDataFilter dataFilter = BloomDataFilter.from(List.of());
+        int numPartitions = 3;
+        Set<DataRequest> received = new HashSet<>();
+        for (int i = 0; i < numPartitions; i++) {
+            InventoryPartition partition = new InventoryPartition(i, numPartitions);
+            InventoryResponse response = provider.getPage(CONNECTION_ID,
+                    new InventoryRequest(dataFilter, i, InventoryPageProvider.MAX_PAGE_SIZE, null, partition));
+            assertNull(response.nextCursor());
+            Set<? extends DataRequest> entries = response.inventory().entries();
+            assertTrue(entries.size() > 50 && entries.size() < 150, "size=" + entries.size());
+            // Partitions do not overlap
+            entries.forEach(entry -> assertTrue(received.add(entry)));
+        }
+        assertEquals(items.size(), received.size());
+    }
+
+    @Test
+    public void testEntryLargerThanBudget() {
+        List<InventoryItem> items = createItems(2, 3 * InventoryPageProvider.MIN_PAGE_SIZE);
+        InventoryPageProvider provider = new InventoryPageProvider(dataFilter -> items);
+        BloomDataFilter dataFilter = BloomDataFilter.from(List.of());
+
+        InventoryResponse first = provider.getPage(CONNECTION_ID,
+                new InventoryRequest(dataFilter, 1, InventoryPageProvider.MIN_PAGE_SIZE, null, null));
+        assertEquals(1, first.inventory().entries().size());
+        assertNotNull(first.nextCursor());
+
+        InventoryResponse last = provider.getPage(CONNECTION_ID,
+                new InventoryRequest(null, 1, InventoryPageProvider.MIN_PAGE_SIZE, first.nextCursor(), null));
+        assertEquals(1, last.inventory().entries().size());
+        assertNull(last.nextCursor());
+    }
+
+    @Test
+    public void testCursorComparator() {
+        InventoryCursor high = new InventoryCursor(1, "b", new ByteArray(new byte[]{1}));
+        InventoryCursor low = new InventoryCursor(-1, "a", new ByteArray(new byte[]{0}));
+        InventoryCursor defaultA = new InventoryCursor(0, "a", new ByteArray(new byte[]{(byte) 0xFF}));
+        InventoryCursor defaultB = new InventoryCursor(0, "b", new ByteArray(new byte[]{0}));
+        InventoryCursor defaultB2 = new InventoryCursor(0, "b", new ByteArray(new byte[]{(byte) 0x80}));
+        List<InventoryCursor> cursors = new ArrayList<>(List.of(low, defaultB2, defaultA, high, defaultB));
+        cursors.sort(InventoryCursor.COMPARATOR);
+        assertEquals(List.of(high, defaultA, defaultB, defaultB2, low), cursors);
+    }
+
+    private static List<InventoryItem> createItems(int numItems, int payloadSize) {
+        List<InventoryItem> items = new ArrayList<>();
+        for (int i = 0; i < numItems; i++) {
+            String text = Strings.padEnd(String.valueOf(i), payloadSize, 'x');
+            byte[] key = new byte[]{(byte) (i >> 8), (byte) i};
+            InventoryCursor cursor = new InventoryCursor(0, "MockAppendOnlyPayload", new ByteArray(key));
+            items.add(new InventoryItem(cursor, new AddAppendOnlyDataRequest(new MockAppendOnlyPayload(text))));
+        }
+        return items;
+    }
+
+    private static List<DataRequest> getDataRequests(List<InventoryItem> items) {
+        return items.stream().map(InventoryItem::dataRequest).toList();
+    }
+}
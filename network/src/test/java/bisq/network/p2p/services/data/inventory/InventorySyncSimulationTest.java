@@ -0,0 +1,233 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.data.inventory;
+
+import bisq.common.data.ByteArray;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Discrete event simulation of the inventory sync of a new node with 12 connections. The peers are slightly out of
+ * sync, each misses 2% of the entries. Each link has its own RTT and bandwidth, and one peer does not respond at all.
+ * Received responses are processed one after the other at a fixed throughput, as deserialization and signature
+ * verification are limited by our CPU.
+ * Compares requesting the whole inventory from all connections with the requests of the InventorySyncPlanner.
+ */
+@Slf4j
+public class InventorySyncSimulationTest {
+    private static final int NUM_PEERS = 12;
+    private static final int NUM_ENTRIES = 20_000;
+    private static final int ENTRY_SIZE = 1000;
+    private static final double MISSING_PROBABILITY = 0.02;
+    private static final double FILTER_BYTES_PER_ENTRY = 1.8;
+    // Bytes per ms
+    private static final long LOCAL_THROUGHPUT = 2000;
+
+    private record Peer(String name, Set<Integer> entries, long rtt, long bandwidth, boolean isFailing) {
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private record Event(long time, Runnable runnable) {
+    }
+
+    // timeToComplete is the time until the last response has been processed
+    private record Stats(long numBytes, long timeToComplete, double coverage) {
+    }
+
+    @Test
+    public void simulate() {
+        Stats all = new Simulation().run(false);
+        Stats planned = new Simulation().run(true);
+        log.info("All connections: {}", all);
+        log.info("Planned: {}", planned);
+
+        assertEquals(1d, all.coverage());
+        assertTrue(planned.coverage() > 0.999, "coverage=" + planned.coverage());
+        assertTrue(planned.numBytes() * 4 < all.numBytes());
+        assertTrue(planned.timeToComplete() < all.timeToComplete());
+    }
+
+    @Test
+    public void testRequests() {
+        List<String> peers = List.of("a", "b", "c", "d", "e", "f", "g", "h");
+        List<String> requested = new ArrayList<>();
+        List<CompletableFuture<Void>> requests = new ArrayList<>();
+        InventorySyncPlanner<String> planner = new InventorySyncPlanner<>(peers, (peer, partition) -> {
+            requested.add(peer + (partition == null ? "" : partition.index() + "/" + partition.numPartitions()));
+            CompletableFuture<Void> request = new CompletableFuture<>();
+            requests.add(request);
+            return request;
+        });
+        CompletableFuture<Void> future = planner.start();
+        assertEquals(List.of("a", "b"), requested);
+
+        // A failed full request gets repeated at the next peer
+        requests.get(0).completeExceptionally(new TimeoutException());
+        assertEquals(List.of("a", "b", "c"), requested);
+
+        // Once we have the whole inventory, the other full request gets cancelled and the partitions get requested
+        requests.get(2).complete(null);
+        assertTrue(requests.get(1).isCancelled());
+        assertEquals(List.of("a", "b", "c", "d0/4", "e1/4", "f2/4", "g3/4"), requested);
+
+        // A failed partition request gets repeated at the next peer
+        requests.get(4).completeExceptionally(new TimeoutException());
+        assertEquals("h1/4", requested.get(7));
+
+        requests.get(3).complete(null);
+        requests.get(5).complete(null);
+        requests.get(6).complete(null);
+        assertTrue(!future.isDone());
+        requests.get(7).complete(null);
+        assertTrue(future.isDone() && !future.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testFallback() {
+        List<String> peers = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            peers.add("peer" + i);
+        }
+        List<CompletableFuture<Void>> requests = new ArrayList<>();
+        InventorySyncPlanner<String> planner = new InventorySyncPlanner<>(peers, (peer, partition) -> {
+            CompletableFuture<Void> request = new CompletableFuture<>();
+            requests.add(request);
+            return request;
+        });
+        CompletableFuture<Void> future = planner.start();
+        // The first failed request gets repeated at the next peer, the second one triggers the fallback
+        requests.get(0).completeExceptionally(new TimeoutException());
+        requests.get(1).completeExceptionally(new TimeoutException());
+        assertEquals(3 + InventorySyncPlanner.MAX_FALLBACK_REQUESTS, requests.size());
+
+        new ArrayList<>(requests).forEach(request -> request.completeExceptionally(new TimeoutException()));
+        assertTrue(future.isCompletedExceptionally());
+    }
+
+    private static class Simulation {
+        private final Random random = new Random(42);
+        private final List<Peer> peers = new ArrayList<>();
+        private final ByteArray[] keys = new ByteArray[NUM_ENTRIES];
+        private final Set<Integer> available = new HashSet<>();
+        private final Set<Integer> local = new HashSet<>();
+        private final PriorityQueue<Event> events = new PriorityQueue<>((a, b) -> Long.compare(a.time(), b.time()));
+        private long now;
+        private long localBusyUntil;
+        private long numBytes;
+        private long timeToComplete;
+
+        private Simulation() {
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                byte[] key = new byte[20];
+                random.nextBytes(key);
+                keys[i] = new ByteArray(key);
+            }
+            for (int i = 0; i < NUM_PEERS; i++) {
+                Set<Integer> entries = new HashSet<>();
+                for (int entry = 0; entry < NUM_ENTRIES; entry++) {
+                    if (random.nextDouble() >= MISSING_PROBABILITY) {
+                        entries.add(entry);
+                    }
+                }
+                boolean isFailing = i == 0;
+                // Bandwidth between 50 and 500 KB/s
+                Peer peer = new Peer("peer" + i, entries, 200 + random.nextInt(1800), 50 + random.nextInt(450), isFailing);
+                peers.add(peer);
+                if (!isFailing) {
+                    available.addAll(entries);
+                }
+            }
+            // The failing peer has the lowest RTT from earlier messages
+            peers.sort((a, b) -> a.isFailing() ? -1 : b.isFailing() ? 1 : Long.compare(a.rtt(), b.rtt()));
+        }
+
+        private Stats run(boolean usePlanner) {
+            CompletableFuture<Void> future;
+            if (usePlanner) {
+                future = new InventorySyncPlanner<>(peers, this::request).start();
+            } else {
+                List<CompletableFuture<Void>> requests = peers.stream().map(peer -> request(peer, null)).toList();
+                future = CompletableFuture.allOf(requests.toArray(new CompletableFuture[0]))
+                        .exceptionally(throwable -> null);
+            }
+            future.whenComplete((__, throwable) -> timeToComplete = now);
+            while (!events.isEmpty()) {
+                Event event = events.poll();
+                now = event.time();
+                event.runnable().run();
+            }
+            assertTrue(future.isDone());
+            return new Stats(numBytes, timeToComplete, local.size() / (double) available.size());
+        }
+
+        private CompletableFuture<Void> request(Peer peer, @Nullable InventoryPartition partition) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            long startTime = now;
+            numBytes += (long) (local.size() * FILTER_BYTES_PER_ENTRY);
+            if (peer.isFailing()) {
+                events.add(new Event(now + InventoryService.TIMEOUT,
+                        () -> future.completeExceptionally(new TimeoutException())));
+                return future;
+            }
+
+            Set<Integer> filter = new HashSet<>(local);
+            List<Integer> response = peer.entries().stream()
+                    .filter(entry -> !filter.contains(entry))
+                    .filter(entry -> partition == null || partition.contains(keys[entry]))
+                    .toList();
+            long responseSize = (long) response.size() * ENTRY_SIZE;
+            long numPages = Math.max(1, (responseSize + InventoryService.MAX_PAGE_SIZE - 1) / InventoryService.MAX_PAGE_SIZE);
+            long transferTime = numPages * peer.rtt() + responseSize / peer.bandwidth();
+            future.whenComplete((__, throwable) -> {
+                if (future.isCancelled()) {
+                    // We received the response up to the cancellation
+                    long received = Math.max(0, now - startTime - peer.rtt()) * peer.bandwidth();
+                    numBytes += Math.min(responseSize, received);
+                }
+            });
+            events.add(new Event(startTime + transferTime, () -> {
+                if (future.isDone()) {
+                    return;
+                }
+                numBytes += responseSize;
+                localBusyUntil = Math.max(now, localBusyUntil) + responseSize / LOCAL_THROUGHPUT;
+                events.add(new Event(localBusyUntil, () -> {
+                    local.addAll(response);
+                    future.complete(null);
+                }));
+            }));
+            return future;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.data.storage;
+
+import bisq.common.data.ByteArray;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExpiryIndexTest {
+    @Test
+    public void testPollExpired() {
+        ExpiryIndex expiryIndex = new ExpiryIndex();
+        ByteArray key1 = new ByteArray(new byte[]{1});
+        ByteArray key2 = new ByteArray(new byte[]{2});
+        ByteArray key3 = new ByteArray(new byte[]{3});
+        expiryIndex.put(key1, 300);
+        expiryIndex.put(key2, 100);
+        expiryIndex.put(key3, 200);
+        assertEquals(Optional.of(100L), expiryIndex.getNextExpiry());
+
+        // Nothing expired before 100
+        assertTrue(expiryIndex.pollExpired(100, 10).isEmpty());
+
+        // Earliest first, limited by maxKeys
+        assertEquals(List.of(key2), expiryIndex.pollExpired(1000, 1));
+        assertEquals(List.of(key3, key1), expiryIndex.pollExpired(1000, 10));
+        assertEquals(0, expiryIndex.size());
+        assertEquals(Optional.empty(), expiryIndex.getNextExpiry());
+    }
+
+    @Test
+    public void testUpdateAndRemove() {
+        ExpiryIndex expiryIndex = new ExpiryIndex();
+        ByteArray key1 = new ByteArray(new byte[]{1});
+        ByteArray key2 = new ByteArray(new byte[]{2});
+        expiryIndex.put(key1, 100);
+        expiryIndex.put(key2, 100);
+
+        // A refreshed entry moves to its new expiry time
+        expiryIndex.put(key1, 500);
+        assertEquals(List.of(key2), expiryIndex.pollExpired(200, 10));
+
+        expiryIndex.remove(key1);
+        assertTrue(expiryIndex.pollExpired(1000, 10).isEmpty());
+        assertEquals(0, expiryIndex.size());
+    }
+}
@@ -17,10 +17,13 @@
 
 package bisq.network.p2p.services.data.storage.auth;
 
+import bisq.common.ObjectSerializer;
 import bisq.common.data.ByteArray;
 import bisq.common.util.OsUtils;
+import bisq.network.p2p.services.data.NetworkPayload;
 import bisq.network.p2p.services.data.inventory.InventoryUtil;
 import bisq.network.p2p.services.data.storage.Result;
+import bisq.network.p2p.services.data.storage.StorageService;
 import bisq.persistence.PersistenceService;
 import bisq.security.DigestUtil;
 import bisq.security.KeyGeneration;
@@ -30,11 +33,16 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static bisq.network.p2p.services.data.storage.StorageService.StoreType.AUTHENTICATED_DATA_STORE;
 import static org.junit.jupiter.api.Assertions.*;
@@ -140,6 +148,11 @@ public class AuthenticatedDataStoreTest {
         AuthenticatedPayload payload = addRequest.getAuthenticatedData().getPayload();
         assertEquals(dataFromMap.getPayload(), payload);
 
+        // index
+        byte[] hashOfPublicKey = DigestUtil.hash(keyPair.getPublic().getEncoded());
+        assertTrue(store.getPayloadIndex().getPayloadsByClass(MockAuthenticatedTextPayload.class).contains(payload));
+        assertEquals(List.of(payload), List.copyOf(store.getPayloadIndex().getPayloadsByOwner(hashOfPublicKey)));
+
         // request inventory with old seqNum
      /*   String dataType = data.getMetaData().getFileName();
         Set<FilterItem> filterItems = new HashSet<>();
@@ -171,6 +184,8 @@ public class AuthenticatedDataStoreTest {
 
         RemoveAuthenticatedDataRequest removeAuthenticatedDataRequestFromMap = (RemoveAuthenticatedDataRequest) store.getClone().get(byteArray);
         assertEquals(initialSeqNum + 3, removeAuthenticatedDataRequestFromMap.getSequenceNumber());
+        assertFalse(store.getPayloadIndex().getPayloadsByClass(MockAuthenticatedTextPayload.class).contains(payload));
+        assertTrue(store.getPayloadIndex().getPayloadsByOwner(hashOfPublicKey).isEmpty());
 
         // refresh on removed fails
         RefreshRequest refreshAfterRemoveRequest = RefreshRequest.from(store, data, keyPair);
@@ -238,4 +253,103 @@ public class AuthenticatedDataStoreTest {
         // log.info("inventory size={}", ObjectSerializer.serialize(inventory).length); //inventory size=238601 for 333 items. 716 bytes per item
         // map with 1440 items: file: 1.068.599 bytes, inventory size=1000517 ,  maxItems=1400
     }
+
+    // Rough benchmark showing add throughput with increasing number of threads, as signature verification is done
+    // outside the stores lock.
+    @Test
+    public void testConcurrentAdd() throws GeneralSecurityException, IOException, InterruptedException {
+        int numRequests = 2000;
+        KeyPair keyPair = KeyGeneration.generateKeyPair();
+        PersistenceService persistenceService = new PersistenceService(Files.createTempDirectory("bisq_StorageTest").toString());
+        for (int numThreads : new int[]{1, OsUtils.availableProcessors()}) {
+            AuthenticatedDataStore store = new AuthenticatedDataStore(persistenceService,
+                    AUTHENTICATED_DATA_STORE.getStoreName(),
+                    "ConcurrentAddTest_" + numThreads);
+            List<AddAuthenticatedDataRequest> requests = new ArrayList<>();
+            for (int i = 0; i < numRequests; i++) {
+                MockAuthenticatedTextPayload data = new MockAuthenticatedTextPayload("test" + UUID.randomUUID());
+                requests.add(AddAuthenticatedDataRequest.from(store, data, keyPair));
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+            AtomicInteger numSuccess = new AtomicInteger();
+            long ts = System.currentTimeMillis();
+            requests.forEach(request -> executor.execute(() -> {
+                if (store.add(request).isSuccess()) {
+                    numSuccess.incrementAndGet();
+                }
+            }));
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES));
+            long duration = Math.max(1, System.currentTimeMillis() - ts);
+            log.info("Adding {} requests with {} threads took {} ms ({} adds/sec)",
+                    numRequests, numThreads, duration, numRequests * 1000L / duration);
+            assertEquals(numRequests, numSuccess.get());
+            assertEquals(numRequests, store.getClone().size());
+        }
+    }
+
+    // Received requests are deserialized, so their payload hash is computed once at first use and memoized.
+    @Test
+    public void testAddAndLookup() throws GeneralSecurityException, IOException {
+        int numRequests = 100;
+        KeyPair keyPair = KeyGeneration.generateKeyPair();
+        PersistenceService persistenceService = new PersistenceService(Files.createTempDirectory("bisq_StorageTest").toString());
+        AuthenticatedDataStore store = new AuthenticatedDataStore(persistenceService,
+                AUTHENTICATED_DATA_STORE.getStoreName(),
+                "AddAndLookupTest");
+        List<AddAuthenticatedDataRequest> requests = new ArrayList<>();
+        for (int i = 0; i < numRequests; i++) {
+            MockAuthenticatedTextPayload data = new MockAuthenticatedTextPayload("test" + UUID.randomUUID());
+            AddAuthenticatedDataRequest request = AddAuthenticatedDataRequest.from(store, data, keyPair);
+            requests.add((AddAuthenticatedDataRequest) ObjectSerializer.deserialize(request.serialize()));
+        }
+        requests.forEach(request -> assertTrue(store.add(request).isSuccess()));
+
+        requests.stream()
+                .map(request -> request.getAuthenticatedData().getPayload())
+                .forEach(payload -> {
+                    byte[] hash = payload.getHash();
+                    assertArrayEquals(hash, payload.getHash());
+                    assertArrayEquals(DigestUtil.hash(payload.serialize()), hash);
+                    assertEquals(1, store.getSequenceNumber(hash));
+                });
+    }
+
+    @Test
+    public void testBatchAdd() throws GeneralSecurityException, IOException {
+        int numRequests = 500;
+        KeyPair keyPair = KeyGeneration.generateKeyPair();
+        KeyPair otherKeyPair = KeyGeneration.generateKeyPair();
+        PersistenceService persistenceService = new PersistenceService(Files.createTempDirectory("bisq_StorageTest").toString());
+        StorageService storageService = new StorageService(persistenceService);
+        MockAuthenticatedTextPayload firstPayload = new MockAuthenticatedTextPayload("test" + UUID.randomUUID());
+        AuthenticatedDataStore store = storageService.getOrCreateAuthenticatedDataStore(firstPayload.getMetaData()).join();
+
+        List<AddAuthenticatedDataRequest> requests = new ArrayList<>();
+        for (int i = 0; i < numRequests; i++) {
+            MockAuthenticatedTextPayload data = i == 0 ? firstPayload : new MockAuthenticatedTextPayload("test" + UUID.randomUUID());
+            requests.add(AddAuthenticatedDataRequest.from(store, data, keyPair));
+        }
+        // Duplicates are filtered before verification
+        requests.add(requests.get(1));
+        // Invalid signature
+        AddAuthenticatedDataRequest validRequest = AddAuthenticatedDataRequest.from(store,
+                new MockAuthenticatedTextPayload("test" + UUID.randomUUID()), keyPair);
+        requests.add(new AddAuthenticatedDataRequest(validRequest.getAuthenticatedData(),
+                validRequest.getSignature(),
+                otherKeyPair.getPublic()));
+        assertEquals(numRequests + 1, store.filterNewRequests(requests).size());
+
+        long ts = System.currentTimeMillis();
+        List<NetworkPayload> added = storageService.onAddDataRequests(requests).join();
+        log.info("Batch add of {} requests took {} ms", requests.size(), System.currentTimeMillis() - ts);
+        assertEquals(numRequests, added.size());
+        assertEquals(numRequests, store.getClone().size());
+        assertTrue(store.getClone().containsKey(new ByteArray(DigestUtil.hash(firstPayload.serialize()))));
+
+        // Already stored requests are not verified again
+        assertTrue(store.filterNewRequests(requests.subList(0, numRequests)).isEmpty());
+        assertTrue(storageService.onAddDataRequests(requests).join().isEmpty());
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.services.data.storage.auth;
+
+import bisq.common.ObjectSerializer;
+import bisq.common.encoding.Hex;
+import bisq.network.p2p.message.Proto;
+import bisq.network.p2p.services.data.storage.MetaData;
+import bisq.security.DigestUtil;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The stores persist the Java serialized data and use the hash of the serialized payload as key. Data serialized by the
+ * previous release has to stay readable and has to result in the same hash.
+ */
+public class SerializationCompatibilityTest {
+    record TestData(String text) implements Proto {
+    }
+
+    // new AuthenticatedPayload(new TestData("test"), new MetaData(1000, 100, "TestData")) serialized by the previous
+    // release, before getHash() was added.
+    private static final String PAYLOAD =
+            "aced000573720040626973712e6e6574776f726b2e7032702e73657276696365732e646174612e73746f726167652e61" +
+            "7574682e41757468656e746963617465645061796c6f6164c44a6edf895b248c0200024c0004646174617400204c6269" +
+            "73712f6e6574776f726b2f7032702f6d6573736167652f50726f746f3b4c00086d657461446174617400314c62697371" +
+            "2f6e6574776f726b2f7032702f73657276696365732f646174612f73746f726167652f4d657461446174613b78707372" +
+            "0053626973712e6e6574776f726b2e7032702e73657276696365732e646174612e73746f726167652e617574682e5365" +
+            "7269616c697a6174696f6e436f6d7061746962696c697479546573742454657374446174610000000000000000020001" +
+            "4c0004746578747400124c6a6176612f6c616e672f537472696e673b7870740004746573747372002f626973712e6e65" +
+            "74776f726b2e7032702e73657276696365732e646174612e73746f726167652e4d657461446174610869f414295bd305" +
+            "02000349000e6d617853697a65496e42797465734a000374746c4c000866696c654e616d6571007e0005787000000064" +
+            "00000000000003e87400085465737444617461";
+
+    // new AuthenticatedData(payload, 1, new byte[]{1, 2, 3}, 1000) with above payload, serialized by the previous
+    // release, before getExpireAt() was added.
+    private static final String AUTHENTICATED_DATA =
+            "aced00057372003d626973712e6e6574776f726b2e7032702e73657276696365732e646174612e73746f726167652e61" +
+            "7574682e41757468656e7469636174656444617461b5674808a35cc7950200044a00076372656174656449000e736571" +
+            "75656e63654e756d6265725b000f686173684f665075626c69634b65797400025b424c00077061796c6f61647400424c" +
+            "626973712f6e6574776f726b2f7032702f73657276696365732f646174612f73746f726167652f617574682f41757468" +
+            "656e746963617465645061796c6f61643b787000000000000003e800000001757200025b42acf317f8060854e0020000" +
+            "78700000000301020373720040626973712e6e6574776f726b2e7032702e73657276696365732e646174612e73746f72" +
+            "6167652e617574682e41757468656e746963617465645061796c6f6164c44a6edf895b248c0200024c00046461746174" +
+            "00204c626973712f6e6574776f726b2f7032702f6d6573736167652f50726f746f3b4c00086d65746144617461740031" +
+            "4c626973712f6e6574776f726b2f7032702f73657276696365732f646174612f73746f726167652f4d65746144617461" +
+            "3b787073720053626973712e6e6574776f726b2e7032702e73657276696365732e646174612e73746f726167652e6175" +
+            "74682e53657269616c697a6174696f6e436f6d7061746962696c69747954657374245465737444617461000000000000" +
+            "00000200014c0004746578747400124c6a6176612f6c616e672f537472696e673b7870740004746573747372002f6269" +
+            "73712e6e6574776f726b2e7032702e73657276696365732e646174612e73746f726167652e4d657461446174610869f4" +
+            "14295bd30502000349000e6d617853697a65496e42797465734a000374746c4c000866696c654e616d6571007e000b78" +
+            "700000006400000000000003e87400085465737444617461";
+
+    @Test
+    public void testDeserializePayloadOfPreviousRelease() {
+        byte[] serialized = Hex.decode(PAYLOAD);
+        AuthenticatedPayload payload = (AuthenticatedPayload) ObjectSerializer.deserialize(serialized);
+        assertEquals(new TestData("test"), payload.getData());
+        assertEquals(new MetaData(1000, 100, "TestData"), payload.getMetaData());
+
+        // Same bytes, thus same key in the stores
+        assertArrayEquals(serialized, payload.serialize());
+        assertArrayEquals(DigestUtil.hash(serialized), payload.getHash());
+
+        // Callers get a copy of the memoized hash
+        payload.getHash()[0] ^= 1;
+        assertArrayEquals(DigestUtil.hash(serialized), payload.getHash());
+    }
+
+    @Test
+    public void testDeserializeAuthenticatedDataOfPreviousRelease() {
+        byte[] serialized = Hex.decode(AUTHENTICATED_DATA);
+        AuthenticatedData authenticatedData = (AuthenticatedData) ObjectSerializer.deserialize(serialized);
+        assertEquals(new TestData("test"), authenticatedData.getPayload().getData());
+        assertEquals(1, authenticatedData.getSequenceNumber());
+        assertArrayEquals(new byte[]{1, 2, 3}, authenticatedData.getHashOfPublicKey());
+        assertEquals(2000, authenticatedData.getExpireAt());
+        assertArrayEquals(serialized, authenticatedData.serialize());
+    }
+}
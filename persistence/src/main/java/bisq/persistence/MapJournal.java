@@ -0,0 +1,502 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.persistence;
+
+import bisq.common.ObjectSerializer;
+import bisq.common.util.FileUtils;
+import bisq.common.util.OsUtils;
+import com.google.common.util.concurrent.MoreExecutors;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Log-structured persistence for map based data. Instead of writing the whole map at each change, each put or remove
+ * is appended as record to a journal file. Once the journal has more records than the last snapshot had entries (but
+ * at least MIN_RECORDS_FOR_COMPACTION) we compact it in the background by writing a new snapshot and starting a new
+ * journal. At read we apply the snapshot and replay the journal.
+ * <p>
+ * The snapshot uses the same record format as the journal. It is read through a memory mapped buffer and the
+ * retainFilter is applied while scanning, so entries which would get pruned (e.g. expired data) are never added to
+ * the map, and we do not need to materialize the whole file as one object graph.
+ * <p>
+ * The snapshot carries a generation number which is written as header of the journal started after it, so a journal
+ * is only replayed on top of the snapshot it belongs to (e.g. if we crashed after writing the snapshot but before the
+ * new journal was started). If the snapshot is missing or corrupted we take the generation from the journal header and replay it
+ * anyway, as it is the most recent data we have. A journal we cannot use is moved to the corruptedFilesAtRead folder
+ * instead of being overwritten.
+ * <p>
+ * Records are length prefixed and carry a CRC32 checksum. A torn write at the end of the journal gets truncated at
+ * read. A record with a valid checksum which cannot be deserialized (e.g. after an incompatible class change) is
+ * skipped, so it does not cost us the records after it. The journal is flushed when there are no more pending
+ * records, but only synced to disk at compaction and close. So like with RateLimitedPersistenceClient it should only
+ * be used if data loss is not critical.
+ * <p>
+ * All file operations are done in order on a sequential executor backed by the PERSISTENCE_IO_POOL. To get the same
+ * order in the journal as in the map, put and remove need to be called while holding the lock used for the map
+ * mutation.
+ */
+@Slf4j
+public class MapJournal<K extends Serializable, V extends Serializable> {
+    public static final String JOURNAL_POSTFIX = ".journal";
+    private static final int MIN_RECORDS_FOR_COMPACTION = 1000;
+    private static final int MAX_RECORD_SIZE = 10_000_000;
+    private static final int SNAPSHOT_MAGIC = 0x42534d53;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_HEADER_SIZE = 16;
+    private static final short JAVA_SERIALIZATION_MAGIC = (short) 0xACED;
+
+    // A null value represents a remove
+    private record Record<K extends Serializable, V extends Serializable>(K key,
+                                                                          @Nullable V value) implements Serializable {
+    }
+
+    private final String directory;
+    private final String fileName;
+    private final File snapshotFile;
+    private final File journalFile;
+    private final Supplier<HashMap<K, V>> snapshotSupplier;
+    private final BiPredicate<K, V> retainFilter;
+    private final Executor executor = MoreExecutors.newSequentialExecutor(Persistence.PERSISTENCE_IO_POOL);
+    private final AtomicInteger numPendingRecords = new AtomicInteger();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    @Getter
+    private final AtomicInteger numRecords = new AtomicInteger();
+    // Number of entries filtered out by the retainFilter at the last read
+    @Getter
+    private volatile int numPrunedAtRead;
+    private volatile int compactionThreshold = MIN_RECORDS_FOR_COMPACTION;
+
+    // Only accessed from the executor
+    private boolean loaded;
+    private long generation;
+    @Nullable
+    private FileOutputStream fileOutputStream;
+    @Nullable
+    private DataOutputStream outputStream;
+
+    public MapJournal(String directory, String fileName, Supplier<HashMap<K, V>> snapshotSupplier) {
+        this(directory, fileName, snapshotSupplier, (key, value) -> true);
+    }
+
+    /**
+     * @param snapshotSupplier Provides a copy of the map at compaction.
+     * @param retainFilter     Applied at read. Entries not passing the filter are dropped.
+     */
+    public MapJournal(String directory,
+                      String fileName,
+                      Supplier<HashMap<K, V>> snapshotSupplier,
+                      BiPredicate<K, V> retainFilter) {
+        this.directory = directory;
+        this.fileName = fileName;
+        this.snapshotSupplier = snapshotSupplier;
+        this.retainFilter = retainFilter;
+        snapshotFile = new File(directory, fileName);
+        journalFile = new File(directory, fileName + JOURNAL_POSTFIX);
+    }
+
+    public CompletableFuture<Optional<HashMap<K, V>>> readAsync() {
+        return CompletableFuture.supplyAsync(this::load, executor);
+    }
+
+    public void put(K key, V value) {
+        append(new Record<>(key, value));
+    }
+
+    public void remove(K key) {
+        append(new Record<>(key, null));
+    }
+
+    /**
+     * Writes a snapshot and starts a new journal.
+     */
+    public CompletableFuture<Boolean> compact() {
+        compactionScheduled.set(true);
+        return CompletableFuture.supplyAsync(this::doCompact, executor);
+    }
+
+    /**
+     * Flushes and syncs the journal. Blocks until done or the timeout is reached. Used at shutdown.
+     */
+    public void close(long timeoutMs) {
+        try {
+            CompletableFuture.runAsync(this::closeOutputStream, executor).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.error("Closing journal {} failed", journalFile, e);
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+    // Write
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void append(Record<K, V> record) {
+        numPendingRecords.incrementAndGet();
+        executor.execute(() -> write(record));
+        if (numRecords.incrementAndGet() > compactionThreshold && compactionScheduled.compareAndSet(false, true)) {
+            executor.execute(this::doCompact);
+        }
+    }
+
+    private void write(Record<K, V> record) {
+        try {
+            if (!loaded) {
+                load();
+            }
+            if (outputStream == null) {
+                return;
+            }
+            writeRecord(outputStream, record);
+            // We flush only when no more records are queued
+            if (numPendingRecords.get() == 1) {
+                outputStream.flush();
+            }
+        } catch (IOException e) {
+            log.error("Writing to journal {} failed", journalFile, e);
+        } finally {
+            numPendingRecords.decrementAndGet();
+        }
+    }
+
+    private boolean doCompact() {
+        try {
+            if (!loaded) {
+                load();
+            }
+            HashMap<K, V> map = snapshotSupplier.get();
+            long newGeneration = generation + 1;
+            if (!writeSnapshot(newGeneration, map)) {
+                return false;
+            }
+            generation = newGeneration;
+            startNewJournal();
+            compactionThreshold = Math.max(MIN_RECORDS_FOR_COMPACTION, map.size());
+            log.debug("Compacted journal {}. Snapshot has {} entries.", journalFile, map.size());
+            return true;
+        } finally {
+            compactionScheduled.set(false);
+        }
+    }
+
+    private boolean writeSnapshot(long generation, HashMap<K, V> map) {
+        File tempFile = null;
+        try {
+            FileUtils.makeDirs(directory);
+            // We use a temp file to not risk data corruption in case the write operation fails.
+            // After write is done we rename the tempFile to our snapshotFile which is an atomic operation.
+            tempFile = File.createTempFile("temp_" + fileName, null, new File(directory));
+            FileUtils.deleteOnExit(tempFile);
+            try (FileOutputStream fileOutputStream = new FileOutputStream(tempFile);
+                 DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(fileOutputStream))) {
+                outputStream.writeInt(SNAPSHOT_MAGIC);
+                outputStream.writeInt(SNAPSHOT_VERSION);
+                outputStream.writeLong(generation);
+                for (Map.Entry<K, V> entry : map.entrySet()) {
+                    writeRecord(outputStream, new Record<>(entry.getKey(), entry.getValue()));
+                }
+                outputStream.flush();
+                fileOutputStream.getFD().sync();
+            }
+            FileUtils.renameFile(tempFile, snapshotFile);
+            return true;
+        } catch (IOException e) {
+            log.error("Writing snapshot {} failed. We keep the journal.", snapshotFile, e);
+            return false;
+        } finally {
+            if (tempFile != null) {
+                FileUtils.releaseTempFile(tempFile);
+            }
+        }
+    }
+
+    private void writeRecord(DataOutputStream outputStream, Record<K, V> record) throws IOException {
+        byte[] bytes = ObjectSerializer.serialize(record);
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes);
+        outputStream.writeInt(bytes.length);
+        outputStream.writeInt((int) crc32.getValue());
+        outputStream.write(bytes);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+    // Read
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private Optional<HashMap<K, V>> load() {
+        closeOutputStream();
+        HashMap<K, V> map = new HashMap<>();
+        generation = 0;
+        numPrunedAtRead = 0;
+        boolean hasPersistedData = false;
+        boolean hasValidSnapshot = false;
+        if (snapshotFile.exists()) {
+            hasPersistedData = true;
+            hasValidSnapshot = readSnapshot(map);
+        }
+
+        if (journalFile.exists()) {
+            hasPersistedData = true;
+            if (replay(map, hasValidSnapshot)) {
+                openOutputStream(true);
+            } else {
+                startNewJournal();
+            }
+        } else {
+            startNewJournal();
+        }
+        loaded = true;
+        if (numPrunedAtRead > 0) {
+            log.info("Pruned {} entries at read of {}", numPrunedAtRead, snapshotFile);
+        }
+        return hasPersistedData ? Optional.of(map) : Optional.empty();
+    }
+
+    /**
+     * @return false if the snapshot is corrupted
+     */
+    private boolean readSnapshot(HashMap<K, V> map) {
+        try {
+            ByteBuffer buffer = mapFile(snapshotFile);
+            if (buffer.remaining() >= 2 && buffer.getShort(0) == JAVA_SERIALIZATION_MAGIC) {
+                readLegacySnapshot(map);
+                return true;
+            }
+            if (buffer.remaining() < SNAPSHOT_HEADER_SIZE ||
+                    buffer.getInt() != SNAPSHOT_MAGIC ||
+                    buffer.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Invalid snapshot header");
+            }
+            generation = buffer.getLong();
+            while (buffer.hasRemaining()) {
+                Record<K, V> record = readRecord(buffer, snapshotFile);
+                if (record == null) {
+                    continue;
+                }
+                if (retainFilter.test(record.key(), record.value())) {
+                    map.put(record.key(), record.value());
+                } else {
+                    numPrunedAtRead++;
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            log.error("Reading snapshot {} failed", snapshotFile, e);
+            backupCorruptedFile(snapshotFile, fileName);
+            return false;
+        }
+    }
+
+    // Snapshot written by Persistence before we used the journal
+    private void readLegacySnapshot(HashMap<K, V> map) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream inputStream = new ObjectInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            //noinspection unchecked
+            HashMap<K, V> legacyMap = (HashMap<K, V>) inputStream.readObject();
+            legacyMap.forEach((key, value) -> {
+                if (retainFilter.test(key, value)) {
+                    map.put(key, value);
+                } else {
+                    numPrunedAtRead++;
+                }
+            });
+        }
+    }
+
+    /**
+     * @param hasValidSnapshot If false we replay the journal whatever generation it has.
+     * @return false if the journal cannot be used. It is moved away in case it could still contain data.
+     */
+    private boolean replay(HashMap<K, V> map, boolean hasValidSnapshot) {
+        long validLength = 0;
+        int numReplayed = 0;
+        try {
+            ByteBuffer buffer = mapFile(journalFile);
+            if (buffer.remaining() < 8) {
+                throw new EOFException("Incomplete journal header");
+            }
+            long journalGeneration = buffer.getLong();
+            if (!hasValidSnapshot) {
+                log.warn("We have no valid snapshot {}. We replay journal {} with generation {} on its own.",
+                        snapshotFile, journalFile, journalGeneration);
+                generation = journalGeneration;
+            } else if (journalGeneration < generation) {
+                // We crashed after writing the snapshot, so its content is already in the snapshot
+                log.info("Journal {} with generation {} is older than snapshot generation {}. We ignore it.",
+                        journalFile, journalGeneration, generation);
+                return false;
+            } else if (journalGeneration > generation) {
+                log.warn("Journal {} with generation {} is newer than snapshot generation {}. We back it up.",
+                        journalFile, journalGeneration, generation);
+                backupCorruptedFile(journalFile, fileName + JOURNAL_POSTFIX);
+                return false;
+            }
+            validLength = buffer.position();
+            while (buffer.hasRemaining()) {
+                Record<K, V> record = readRecord(buffer, journalFile);
+                validLength = buffer.position();
+                if (record == null) {
+                    continue;
+                }
+                // A put of data we would prune replaces the previous value, so we remove it.
+                if (record.value() == null || !retainFilter.test(record.key(), record.value())) {
+                    map.remove(record.key());
+                } else {
+                    map.put(record.key(), record.value());
+                }
+                numReplayed++;
+            }
+        } catch (IOException e) {
+            if (validLength == 0) {
+                log.warn("Journal {} has no valid header. We ignore it.", journalFile);
+                return false;
+            }
+            // Most likely a torn write at the last record
+            log.warn("Journal {} is corrupted after {} bytes. We truncate it. {}", journalFile, validLength, e.toString());
+            try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+                file.setLength(validLength);
+            } catch (IOException ioException) {
+                log.error("Truncating journal {} failed", journalFile, ioException);
+                backupCorruptedFile(journalFile, fileName + JOURNAL_POSTFIX);
+                return false;
+            }
+        }
+        numRecords.set(numReplayed);
+        log.debug("Replayed {} records from journal {}", numReplayed, journalFile);
+        return true;
+    }
+
+    private void backupCorruptedFile(File file, String backupFileName) {
+        try {
+            FileUtils.backupCorruptedFile(directory, file, backupFileName, "corruptedFilesAtRead");
+        } catch (IOException e) {
+            log.error("Backup of corrupted file {} failed", file, e);
+        }
+    }
+
+    /**
+     * @return null if the record is complete and has a valid checksum but cannot be deserialized (e.g. after a change
+     * of a class it contains). We skip such a record, as the records after it are still valid.
+     * @throws IOException if the record is incomplete or corrupted
+     */
+    @Nullable
+    private Record<K, V> readRecord(ByteBuffer buffer, File file) throws IOException {
+        if (buffer.remaining() < 8) {
+            throw new EOFException("Incomplete record header");
+        }
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length < 0 || length > MAX_RECORD_SIZE) {
+            throw new IOException("Invalid record size " + length);
+        }
+        if (buffer.remaining() < length) {
+            throw new EOFException("Incomplete record");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes);
+        if ((int) crc32.getValue() != checksum) {
+            throw new IOException("Checksum mismatch");
+        }
+        try {
+            //noinspection unchecked
+            return (Record<K, V>) ObjectSerializer.deserialize(bytes);
+        } catch (RuntimeException e) {
+            log.error("Record of {} bytes in {} cannot be deserialized. We skip it.", length, file, e);
+            return null;
+        }
+    }
+
+    private static ByteBuffer mapFile(File file) throws IOException {
+        if (OsUtils.isWindows()) {
+            // On Windows a mapped file cannot be renamed or truncated until the buffer got garbage collected.
+            return ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+    // Journal file
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void startNewJournal() {
+        closeOutputStream();
+        numRecords.set(0);
+        openOutputStream(false);
+        if (outputStream != null) {
+            try {
+                outputStream.writeLong(generation);
+                outputStream.flush();
+            } catch (IOException e) {
+                log.error("Writing journal header to {} failed", journalFile, e);
+            }
+        }
+    }
+
+    private void openOutputStream(boolean append) {
+        try {
+            FileUtils.makeDirs(journalFile.getParentFile());
+            fileOutputStream = new FileOutputStream(journalFile, append);
+            outputStream = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+        } catch (IOException e) {
+            log.error("Opening journal {} failed", journalFile, e);
+        }
+    }
+
+    private void closeOutputStream() {
+        if (outputStream == null) {
+            return;
+        }
+        try {
+            outputStream.flush();
+            fileOutputStream.getFD().sync();
+            outputStream.close();
+        } catch (IOException e) {
+            log.error("Closing journal {} failed", journalFile, e);
+        } finally {
+            outputStream = null;
+            fileOutputStream = null;
+        }
+    }
+}
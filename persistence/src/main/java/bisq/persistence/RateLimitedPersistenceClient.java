@@ -17,26 +17,66 @@
 
 package bisq.persistence;
 
+import bisq.common.timer.Scheduler;
 import lombok.Getter;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
+import javax.annotation.Nullable;
+import java.io.File;
 import java.io.Serializable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * This implementation of PersistenceClient drops persist requests if they happen too frequently.
- * It registers a shutdown hook and persists at shutdown. If the JVM got terminated non-gracefully
- * (e.g. kill signal or JVM crash) the shutdown hook is not executed (but any other approach to write in such cases
- * would fail as well).
- * As there is no guarantee that the last data are persisted in case of such unexpected terminations, it should be only
- * used if data loss is not critical (e.g. network data) and when write frequency is rather high.
+ * This implementation of PersistenceClient coalesces persist requests which happen too frequently. Instead of writing
+ * at each persist call the client gets marked as dirty and the shared Scheduler timer writes the latest state at the trailing
+ * edge of a burst of updates, i.e. after getMaxWriteRateInMs without further updates. To not delay the write
+ * infinitely at a steady stream of updates, we write latest after getMaxDelayInMs since the client got dirty. At most
+ * one write per getMaxWriteRateInMs interval hits the disk.
+ * <p>
+ * It registers a shutdown hook and persists pending changes at shutdown. If the JVM got terminated non-gracefully
+ * (e.g. kill signal or JVM crash) the shutdown hook is not executed, so changes since the last write are lost.
+ * It should be only used if data loss is not critical (e.g. network data) and when write frequency is rather high.
  */
 @Slf4j
 public abstract class RateLimitedPersistenceClient<T extends Serializable> implements PersistenceClient<T> {
-    private volatile long lastWrite;
     @Getter
-    private volatile boolean dropped;
-    private volatile boolean writeInProgress;
+    @ToString
+    public static class Metrics {
+        private final LongAdder numPersistCalls = new LongAdder();
+        private final LongAdder numWrites = new LongAdder();
+        private final LongAdder bytesWritten = new LongAdder();
+        // Time from getting dirty until the write started
+        private final LongAdder totalDirtyTime = new LongAdder();
+        private final AtomicLong maxDirtyTime = new AtomicLong();
+
+        private void onWrite(long dirtyTime) {
+            numWrites.increment();
+            totalDirtyTime.add(dirtyTime);
+            maxDirtyTime.accumulateAndGet(dirtyTime, Math::max);
+        }
+
+        public long getAverageDirtyTime() {
+            long numWrites = this.numWrites.sum();
+            return numWrites > 0 ? totalDirtyTime.sum() / numWrites : 0;
+        }
+    }
+
+    @Getter
+    private final Metrics metrics = new Metrics();
+    private final Object lock = new Object();
+    // All mutable fields are guarded by lock
+    @Getter
+    private boolean dirty;
+    private long dirtySince;
+    private long lastWrite;
+    private boolean writeInProgress;
+    @Nullable
+    private Scheduler scheduledFlush;
+    @Nullable
+    private CompletableFuture<Boolean> pendingWriteFuture;
 
     public RateLimitedPersistenceClient() {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -45,19 +85,24 @@ public abstract class RateLimitedPersistenceClient<T extends Serializable> imple
         }));
     }
 
+    /**
+     * @return A future which completes when the write containing the current state is done.
+     */
     @Override
     public CompletableFuture<Boolean> persist() {
-        boolean tooFast = System.currentTimeMillis() - lastWrite < getMaxWriteRateInMs();
-        dropped = tooFast || writeInProgress;
-        if (dropped) {
-            return CompletableFuture.completedFuture(false);
-        } else {
-            lastWrite = System.currentTimeMillis();
-            writeInProgress = true;
-            dropped = false;
-            return getPersistence().persistAsync(getClone()).whenComplete((r, t) -> {
-                writeInProgress = false;
-            });
+        metrics.numPersistCalls.increment();
+        synchronized (lock) {
+            long now = System.currentTimeMillis();
+            if (!dirty) {
+                dirty = true;
+                dirtySince = now;
+                pendingWriteFuture = new CompletableFuture<>();
+            }
+            if (!writeInProgress) {
+                scheduleFlush(now);
+            }
+            // If a write is in progress we schedule after it is completed
+            return pendingWriteFuture;
         }
     }
 
@@ -65,10 +110,92 @@ public abstract class RateLimitedPersistenceClient<T extends Serializable> imple
         return 1000;
     }
 
+    /**
+     * Max. time we delay a write after the client got dirty.
+     */
+    protected long getMaxDelayInMs() {
+        return 5 * getMaxWriteRateInMs();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+
+    // Called inside lock
+    private void scheduleFlush(long now) {
+        long maxWriteRate = getMaxWriteRateInMs();
+        // Trailing edge of the update burst, bounded by max delay
+        long flushTime = Math.min(now + maxWriteRate, dirtySince + getMaxDelayInMs());
+        // Not more than one write per interval
+        flushTime = Math.max(flushTime, lastWrite + maxWriteRate);
+        if (scheduledFlush != null) {
+            scheduledFlush.stop();
+        }
+        scheduledFlush = Scheduler.run(this::flush).after(Math.max(1, flushTime - now));
+    }
+
+    private void flush() {
+        CompletableFuture<Boolean> writeFuture;
+        synchronized (lock) {
+            if (!dirty || writeInProgress) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            metrics.onWrite(now - dirtySince);
+            dirty = false;
+            writeInProgress = true;
+            lastWrite = now;
+            scheduledFlush = null;
+            writeFuture = pendingWriteFuture;
+            pendingWriteFuture = null;
+        }
+        // We clone outside our lock as getClone might use the lock of the client. Any persist call from now on marks
+        // the client dirty again. In worst case that causes a write which would not have been needed.
+        boolean writeStarted = false;
+        try {
+            T clone = getClone();
+            getPersistence().persistAsync(clone).whenComplete((result, throwable) -> {
+                if (result != null && result) {
+                    metrics.bytesWritten.add(new File(getPersistence().getStoragePath()).length());
+                }
+                onWriteCompleted();
+                if (throwable != null) {
+                    writeFuture.completeExceptionally(throwable);
+                } else {
+                    writeFuture.complete(result);
+                }
+            });
+            writeStarted = true;
+        } catch (Throwable throwable) {
+            log.error("Creating the clone for {} failed", getPersistence().getFileName(), throwable);
+            writeFuture.completeExceptionally(throwable);
+        } finally {
+            if (!writeStarted) {
+                onWriteCompleted();
+            }
+        }
+    }
+
+    private void onWriteCompleted() {
+        synchronized (lock) {
+            writeInProgress = false;
+            if (dirty) {
+                scheduleFlush(System.currentTimeMillis());
+            }
+        }
+    }
+
     private void persistOnShutdown() {
-        if (dropped) {
-            dropped = false;
-            getPersistence().persist(getClone());
+        synchronized (lock) {
+            if (!dirty) {
+                return;
+            }
+            if (scheduledFlush != null) {
+                scheduledFlush.stop();
+            }
+            dirty = false;
         }
+        getPersistence().persist(getClone());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,212 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.persistence;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+public class MapJournalTest {
+    private final Map<String, String> map = new ConcurrentHashMap<>();
+
+    @Test
+    public void testReplay() throws IOException {
+        String directory = Files.createTempDirectory("bisq_MapJournalTest").toString();
+        MapJournal<String, String> journal = createJournal(directory);
+        assertTrue(journal.readAsync().join().isEmpty());
+
+        put(journal, "a", "1");
+        put(journal, "b", "1");
+        put(journal, "a", "2");
+        remove(journal, "b");
+        journal.close(1000);
+
+        Optional<HashMap<String, String>> persisted = createJournal(directory).readAsync().join();
+        assertTrue(persisted.isPresent());
+        assertEquals(Map.of("a", "2"), persisted.get());
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        String directory = Files.createTempDirectory("bisq_MapJournalTest").toString();
+        MapJournal<String, String> journal = createJournal(directory);
+        journal.readAsync().join();
+        for (int i = 0; i < 5000; i++) {
+            put(journal, String.valueOf(i % 100), String.valueOf(i));
+        }
+        assertTrue(journal.compact().join());
+        assertEquals(0, journal.getNumRecords().get());
+        put(journal, "x", "y");
+        journal.close(1000);
+
+        File journalFile = new File(directory, "test" + MapJournal.JOURNAL_POSTFIX);
+        // Header, and one record
+        assertTrue(journalFile.length() < 1000);
+        assertEquals(map, createJournal(directory).readAsync().join().orElseThrow());
+    }
+
+    @Test
+    public void testTruncatedRecord() throws IOException {
+        String directory = Files.createTempDirectory("bisq_MapJournalTest").toString();
+        MapJournal<String, String> journal = createJournal(directory);
+        journal.readAsync().join();
+        put(journal, "a", "1");
+        put(journal, "b", "2");
+        journal.close(1000);
+
+        // Simulate a torn write of the last record
+        File journalFile = new File(directory, "test" + MapJournal.JOURNAL_POSTFIX);
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        MapJournal<String, String> reopened = createJournal(directory);
+        assertEquals(Map.of("a", "1"), reopened.readAsync().join().orElseThrow());
+
+        // We can continue to append after the truncated record
+        reopened.put("c", "3");
+        reopened.close(1000);
+        assertEquals(Map.of("a", "1", "c", "3"), createJournal(directory).readAsync().join().orElseThrow());
+    }
+
+    @Test
+    public void testUndeserializableRecord() throws IOException {
+        // Journal with a single record we append later after the undeserializable record
+        String otherDirectory = Files.createTempDirectory("bisq_MapJournalTest").toString();
+        MapJournal<String, String> other = createJournal(otherDirectory);
+        other.readAsync().join();
+        other.put("b", "2");
+        other.close(1000);
+        byte[] otherJournal = Files.readAllBytes(new File(otherDirectory, "test" + MapJournal.JOURNAL_POSTFIX).toPath());
+
+        String directory = Files.createTempDirectory("bisq_MapJournalTest").toString();
+        MapJournal<String, String> journal = createJournal(directory);
+        journal.readAsync().join();
+        put(journal, "a", "1");
+        journal.close(1000);
+
+        // A complete record with a valid checksum, but which cannot be deserialized, followed by a valid record
+        File journalFile = new File(directory, "test" + MapJournal.JOURNAL_POSTFIX);
+        byte[] bytes = new byte[]{1, 2, 3};
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes);
+        try (DataOutputStream outputStream = new DataOutputStream(new FileOutputStream(journalFile, true))) {
+            outputStream.writeInt(bytes.length);
+            outputStream.writeInt((int) crc32.getValue());
+            outputStream.write(bytes);
+            // Skip the header with the generation
+            outputStream.write(otherJournal, 8, otherJournal.length - 8);
+        }
+
+        // The record gets skipped and the records after it are kept
+        MapJournal<String, String> reopened = createJournal(directory);
+        assertEquals(Map.of("a", "1", "b", "2"), reopened.readAsync().join().orElseThrow());
+        reopened.put("c", "3");
+        reopened.close(1000);
+        assertEquals(Map.of("a", "1", "b", "2", "c", "3"), createJournal(directory).readAsync().join().orElseThrow());
+    }
+
+    @Test
+    public void testCorruptedSnapshot() throws IOException {
+        String directory = Files.createTempDirectory("bisq_MapJournalTest").toString();
+        MapJournal<String, String> journal = createJournal(directory);
+        journal.readAsync().join();
+        put(journal, "a", "1");
+        assertTrue(journal.compact().join());
+        put(journal, "b", "2");
+        journal.close(1000);
+
+        File snapshotFile = new File(directory, "test");
+        Files.write(snapshotFile.toPath(), new byte[]{1, 2, 3});
+
+        // We lose the snapshot but keep the journal written after it
+        MapJournal<String, String> reopened = createJournal(directory);
+        assertEquals(Map.of("b", "2"), reopened.readAsync().join().orElseThrow());
+        assertTrue(new File(new File(directory, "corruptedFilesAtRead"), "test").exists());
+        reopened.put("c", "3");
+        reopened.close(1000);
+        assertEquals(Map.of("b", "2", "c", "3"), createJournal(directory).readAsync().join().orElseThrow());
+    }
+
+    @Test
+    public void testLegacySnapshot() throws IOException {
+        String directory = Files.createTempDirectory("bisq_MapJournalTest").toString();
+        HashMap<String, String> legacy = new HashMap<>(Map.of("a", "1"));
+        assertTrue(new Persistence<HashMap<String, String>>(directory, "test").persist(legacy));
+
+        MapJournal<String, String> journal = createJournal(directory);
+        assertEquals(legacy, journal.readAsync().join().orElseThrow());
+        journal.put("b", "2");
+        journal.close(1000);
+        assertEquals(Map.of("a", "1", "b", "2"), createJournal(directory).readAsync().join().orElseThrow());
+    }
+
+    @Test
+    public void testRetainFilterAtRead() throws IOException {
+        String directory = Files.createTempDirectory("bisq_MapJournalTest").toString();
+        MapJournal<String, String> journal = createJournal(directory);
+        journal.readAsync().join();
+        for (int i = 0; i < 100; i++) {
+            put(journal, String.valueOf(i), i % 2 == 0 ? "keep" : "expired");
+        }
+        assertTrue(journal.compact().join());
+        // Journal records for data we prune replace the previous value
+        put(journal, "0", "expired");
+        put(journal, "1", "keep");
+        journal.close(1000);
+
+        MapJournal<String, String> reopened = new MapJournal<>(directory, "test", () -> new HashMap<>(map),
+                (key, value) -> value.equals("keep"));
+        HashMap<String, String> persisted = reopened.readAsync().join().orElseThrow();
+        assertEquals(50, persisted.size());
+        assertFalse(persisted.containsKey("0"));
+        assertTrue(persisted.containsKey("1"));
+        assertEquals(50, reopened.getNumPrunedAtRead());
+    }
+
+    private MapJournal<String, String> createJournal(String directory) {
+        return new MapJournal<>(directory, "test", () -> new HashMap<>(map));
+    }
+
+    private void put(MapJournal<String, String> journal, String key, String value) {
+        synchronized (map) {
+            map.put(key, value);
+            journal.put(key, value);
+        }
+    }
+
+    private void remove(MapJournal<String, String> journal, String key) {
+        synchronized (map) {
+            map.remove(key);
+            journal.remove(key);
+        }
+    }
+}
@@ -27,6 +27,7 @@ import java.io.File;
 import java.io.Serializable;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -64,39 +65,51 @@ public class PersistenceIntegrationTest {
         FileUtils.deleteDirectory(new File(storageDirectory));
         int maxWriteRateInMs = 100;
         MockRateLimitedPersistenceClient mockClient = new MockRateLimitedPersistenceClient(maxWriteRateInMs);
-        assertFalse(mockClient.isDropped());
+        assertFalse(mockClient.isDirty());
+        CompletableFuture<Boolean> future = null;
         for (int i = 0; i < 9; i++) {
-            mockClient.updateAndPersist(i);
-            log.error("{}", i);
-            if (i == 0) {
-                assertFalse(mockClient.isDropped());
-            } else {
-                assertTrue(mockClient.isDropped());
-            }
+            future = mockClient.updateAndPersist(i);
+            assertTrue(mockClient.isDirty());
             try {
                 Thread.sleep(2);
             } catch (InterruptedException ignore) {
             }
         }
-        assertTrue(mockClient.isDropped());
-        try {
-            Thread.sleep(150);
-        } catch (InterruptedException ignore) {
-        }
-        mockClient.updateAndPersist(99);
-        assertFalse(mockClient.isDropped());
-
-        for (int i = 100; i < 103; i++) {
+        // The burst gets coalesced to one write at the trailing edge
+        assertTrue(future.join());
+        assertFalse(mockClient.isDirty());
+        assertEquals(1, mockClient.getMetrics().getNumWrites().sum());
+        assertEquals(9, mockClient.getMetrics().getNumPersistCalls().sum());
+        assertTrue(mockClient.getMetrics().getBytesWritten().sum() > 0);
+        assertEquals(new MockObject(8), mockClient.getPersistence().read().orElseThrow());
+
+        // At a steady stream of updates we write latest after max delay
+        long ts = System.currentTimeMillis();
+        future = mockClient.updateAndPersist(100);
+        for (int i = 101; !future.isDone(); i++) {
             mockClient.updateAndPersist(i);
             try {
-                Thread.sleep(2);
+                Thread.sleep(10);
             } catch (InterruptedException ignore) {
             }
         }
-        assertTrue(mockClient.isDropped());
-        // Cannot test shut down hook as test is terminated after System.exit, but with logs at Persistence and 
-        // RateLimitedPersistenceClient.persistOnShutdown it is visible if persistence at shutdown works as expected.
-        System.exit(0);
+        assertTrue(System.currentTimeMillis() - ts < mockClient.getMaxDelayInMs() + 2L * maxWriteRateInMs);
+        assertTrue(mockClient.getMetrics().getMaxDirtyTime().get() <= mockClient.getMaxDelayInMs() + maxWriteRateInMs);
+        log.info("Metrics: {}", mockClient.getMetrics());
+    }
+
+    @Test
+    public void testRateLimitedPersistenceClientWithFailingClone() {
+        FileUtils.deleteDirectory(new File(storageDirectory));
+        MockRateLimitedPersistenceClient mockClient = new MockRateLimitedPersistenceClient(10);
+        mockClient.failClone = true;
+        CompletableFuture<Boolean> failed = mockClient.updateAndPersist(1);
+        assertThrows(CompletionException.class, failed::join);
+
+        // Writes are not blocked by the failed one
+        mockClient.failClone = false;
+        assertTrue(mockClient.updateAndPersist(2).join());
+        assertEquals(new MockObject(2), mockClient.getPersistence().read().orElseThrow());
     }
 
     private class MockRateLimitedPersistenceClient extends RateLimitedPersistenceClient<MockObject> {
@@ -105,6 +118,7 @@ public class PersistenceIntegrationTest {
         private final int maxWriteRateInMs;
         @Getter
         MockObject mockObject = new MockObject(1);
+        volatile boolean failClone;
 
         public MockRateLimitedPersistenceClient(int maxWriteRateInMs) {
             this.maxWriteRateInMs = maxWriteRateInMs;
@@ -128,6 +142,9 @@ public class PersistenceIntegrationTest {
 
         @Override
         public MockObject getClone() {
+            if (failClone) {
+                throw new IllegalStateException("Clone failed");
+            }
             return new MockObject(mockObject.value);
         }
     }
@@ -0,0 +1,58 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.security;
+
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Symmetric authenticated encryption (AES-GCM) for callers which manage their own keys, like session channels.
+ * The caller is responsible for never using the same nonce twice with the same key. If a key is used for a sequence
+ * of messages, counterNonce can be used for deriving the nonce from the message counter.
+ */
+public class AeadEncryption {
+    public static SecretKey generateKey() throws NoSuchAlgorithmException {
+        return SymEncryption.generateAESKey();
+    }
+
+    public static SecretKey toKey(byte[] encoded) {
+        return SymEncryption.generateAESKey(encoded);
+    }
+
+    public static byte[] counterNonce(long counter) {
+        return ByteBuffer.allocate(SymEncryption.NONCE_SIZE)
+                .putInt(0)
+                .putLong(counter)
+                .array();
+    }
+
+    public static byte[] encrypt(byte[] message, SecretKey key, byte[] nonce, byte[] associatedData)
+            throws GeneralSecurityException {
+        return SymEncryption.encryptAead(message, key, nonce, associatedData);
+    }
+
+    /**
+     * @throws javax.crypto.AEADBadTagException if the cypherText or the associatedData have been modified.
+     */
+    public static byte[] decrypt(byte[] cypherText, SecretKey key, byte[] nonce, byte[] associatedData)
+            throws GeneralSecurityException {
+        return SymEncryption.decryptAead(cypherText, key, nonce, associatedData);
+    }
+}
@@ -19,9 +19,35 @@ package bisq.security;
 
 import java.io.Serializable;
 
-public record ConfidentialData(byte[] encodedSenderPublicKey,
+/**
+ * VERSION_1 uses AES-CBC and a separate HMAC. VERSION_2 uses AES-GCM, where the authentication tag is part of the
+ * cypherText, thus the hmac is empty and the iv holds the nonce.
+ * <p>
+ * Data serialized before the version field was added gets deserialized with version 0, which is handled as VERSION_1.
+ */
+public record ConfidentialData(int version,
+                               byte[] encodedSenderPublicKey,
                                byte[] hmac,
                                byte[] iv,
                                byte[] cypherText,
                                byte[] signature) implements Serializable {
+    public static final int VERSION_1 = 1;
+    public static final int VERSION_2 = 2;
+
+    public ConfidentialData(byte[] encodedSenderPublicKey,
+                            byte[] hmac,
+                            byte[] iv,
+                            byte[] cypherText,
+                            byte[] signature) {
+        this(VERSION_1, encodedSenderPublicKey, hmac, iv, cypherText, signature);
+    }
+
+    // Version 0 is data from before the version field was added
+    public static boolean isSupportedVersion(int version) {
+        return version == 0 || version == VERSION_1 || version == VERSION_2;
+    }
+
+    public boolean isAead() {
+        return version == VERSION_2;
+    }
 }
@@ -18,13 +18,19 @@
 package bisq.security;
 
 import bisq.common.data.Pair;
+import bisq.security.SharedKeyCache.DerivedKeys;
+import com.google.common.primitives.Ints;
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
+import javax.crypto.AEADBadTagException;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.Security;
 import java.util.Arrays;
@@ -38,9 +44,17 @@ import static com.google.common.base.Preconditions.checkArgument;
  * Follows roughly the schemes described here:
  * https://cryptobook.nakov.com/asymmetric-key-ciphers/ecies-public-key-encryption
  * https://www.nominet.uk/how-elliptic-curve-cryptography-encryption-works/
+ * <p>
+ * VERSION_2 (see ConfidentialData) uses AES-GCM, so encryption and authentication are done in one pass instead of
+ * AES-CBC followed by a HMAC. Both public keys and the version are authenticated as associated data like they have
+ * been part of the HMAC input in VERSION_1. Data of both versions can be decrypted. We encrypt with DEFAULT_VERSION
+ * unless the caller knows that the receiver supports VERSION_2, as older versions cannot decrypt it.
  */
 @Slf4j
 public class HybridEncryption {
+    public static final int DEFAULT_VERSION = ConfidentialData.VERSION_1;
+    private static final byte[] AEAD_KEY_LABEL = "AEAD".getBytes(StandardCharsets.UTF_8);
+
     static {
         if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
             Security.addProvider(new BouncyCastleProvider());
@@ -49,55 +63,172 @@ public class HybridEncryption {
 
     public static ConfidentialData encryptAndSign(byte[] message, PublicKey receiverPublicKey, KeyPair senderKeyPair)
             throws GeneralSecurityException {
-        // Create shared secret with our private key and receivers public key
-        byte[] sharedSecret = SymEncryption.generateSharedSecret(senderKeyPair.getPrivate(), receiverPublicKey);
+        byte[] encodedSenderPublicKey = senderKeyPair.getPublic().getEncoded();
+        byte[] encodedReceiverPublicKey = receiverPublicKey.getEncoded();
+        DerivedKeys derivedKeys = deriveKeys(senderKeyPair, receiverPublicKey);
+        return encryptAndSign(DEFAULT_VERSION,
+                message,
+                senderKeyPair,
+                encodedSenderPublicKey,
+                encodedReceiverPublicKey,
+                derivedKeys);
+    }
+
+    /**
+     * Uses the keys from the sharedKeyCache instead of doing the key agreement for each message.
+     */
+    public static ConfidentialData encryptAndSign(byte[] message,
+                                                  PublicKey receiverPublicKey,
+                                                  KeyPair senderKeyPair,
+                                                  SharedKeyCache sharedKeyCache) throws GeneralSecurityException {
+        return encryptAndSign(DEFAULT_VERSION, message, receiverPublicKey, senderKeyPair, sharedKeyCache);
+    }
+
+    /**
+     * @param version VERSION_1 or VERSION_2. VERSION_2 must only be used if the receiver supports it.
+     */
+    public static ConfidentialData encryptAndSign(int version,
+                                                  byte[] message,
+                                                  PublicKey receiverPublicKey,
+                                                  KeyPair senderKeyPair,
+                                                  SharedKeyCache sharedKeyCache) throws GeneralSecurityException {
+        byte[] encodedSenderPublicKey = senderKeyPair.getPublic().getEncoded();
+        byte[] encodedReceiverPublicKey = receiverPublicKey.getEncoded();
+        DerivedKeys derivedKeys = sharedKeyCache.getDerivedKeys(senderKeyPair,
+                encodedSenderPublicKey,
+                receiverPublicKey,
+                encodedReceiverPublicKey);
+        return encryptAndSign(version,
+                message,
+                senderKeyPair,
+                encodedSenderPublicKey,
+                encodedReceiverPublicKey,
+                derivedKeys);
+    }
+
+    public static byte[] decryptAndVerify(ConfidentialData confidentialData, KeyPair receiversKeyPair) throws GeneralSecurityException {
+        PublicKey senderPublicKey = KeyGeneration.generatePublic(confidentialData.encodedSenderPublicKey());
+        verifySignature(confidentialData, senderPublicKey);
+        byte[] encodedReceiverPublicKey = receiversKeyPair.getPublic().getEncoded();
+        DerivedKeys derivedKeys = deriveKeys(receiversKeyPair, senderPublicKey);
+        return decrypt(confidentialData, encodedReceiverPublicKey, derivedKeys);
+    }
+
+    /**
+     * Uses the decoded sender public key and the keys from the sharedKeyCache instead of decoding the key and doing
+     * the key agreement for each message.
+     */
+    public static byte[] decryptAndVerify(ConfidentialData confidentialData,
+                                          KeyPair receiversKeyPair,
+                                          SharedKeyCache sharedKeyCache) throws GeneralSecurityException {
+        byte[] encodedSenderPublicKey = confidentialData.encodedSenderPublicKey();
+        PublicKey senderPublicKey = sharedKeyCache.getPublicKey(encodedSenderPublicKey);
+        // We verify the signature before we use the cache for the derived keys, so that we do not add entries for
+        // messages with an invalid signature.
+        verifySignature(confidentialData, senderPublicKey);
+        byte[] encodedReceiverPublicKey = receiversKeyPair.getPublic().getEncoded();
+        DerivedKeys derivedKeys = sharedKeyCache.getDerivedKeys(receiversKeyPair,
+                encodedReceiverPublicKey,
+                senderPublicKey,
+                encodedSenderPublicKey);
+        return decrypt(confidentialData, encodedReceiverPublicKey, derivedKeys);
+    }
+
+    static DerivedKeys deriveKeys(KeyPair localKeyPair, PublicKey remotePublicKey) throws GeneralSecurityException {
+        // Create shared secret with our private key and the peers public key
+        byte[] sharedSecret = SymEncryption.generateSharedSecret(localKeyPair.getPrivate(), remotePublicKey);
 
         // Use that shared secret to derive the hmacKey and the sessionKey
         Pair<byte[], byte[]> tuple = deriveKeyMaterial(sharedSecret);
         SecretKey hmacKey = SymEncryption.generateAESKey(tuple.first());
         SecretKey sessionKey = SymEncryption.generateAESKey(tuple.second());
+        // We use a separate key for VERSION_2 to not use the same key with different cipher modes
+        SecretKey aeadKey = SymEncryption.generateAESKey(DigestUtil.sha256(concat(sharedSecret, AEAD_KEY_LABEL)));
+        return new DerivedKeys(hmacKey, sessionKey, aeadKey);
+    }
 
-        IvParameterSpec ivSpec = SymEncryption.generateIv();
-        byte[] cypherText = SymEncryption.encrypt(message, sessionKey, ivSpec);
-
-        byte[] iv = ivSpec.getIV();
-        byte[] encodedSenderPublicKey = senderKeyPair.getPublic().getEncoded();
-        byte[] encodedReceiverPublicKey = receiverPublicKey.getEncoded();
-        byte[] hmacInput = getHmacInput(iv, cypherText, encodedSenderPublicKey, encodedReceiverPublicKey);
-        byte[] hmac = HmacUtil.createHmac(hmacInput, hmacKey);
+    // Package private for tests and benchmarks with VERSION_1
+    static ConfidentialData encryptAndSign(int version,
+                                           byte[] message,
+                                           KeyPair senderKeyPair,
+                                           byte[] encodedSenderPublicKey,
+                                           byte[] encodedReceiverPublicKey,
+                                           DerivedKeys derivedKeys) throws GeneralSecurityException {
+        checkArgument(version == ConfidentialData.VERSION_1 || version == ConfidentialData.VERSION_2,
+                "Unsupported version %s", version);
+        byte[] hmac;
+        byte[] iv;
+        byte[] cypherText;
+        if (version == ConfidentialData.VERSION_2) {
+            hmac = new byte[0];
+            iv = SymEncryption.generateNonce();
+            byte[] associatedData = getAssociatedData(version, encodedSenderPublicKey, encodedReceiverPublicKey);
+            cypherText = SymEncryption.encryptAead(message, derivedKeys.aeadKey(), iv, associatedData);
+        } else {
+            IvParameterSpec ivSpec = SymEncryption.generateIv();
+            cypherText = SymEncryption.encrypt(message, derivedKeys.sessionKey(), ivSpec);
+            iv = ivSpec.getIV();
+            byte[] hmacInput = getHmacInput(iv, cypherText, encodedSenderPublicKey, encodedReceiverPublicKey);
+            hmac = HmacUtil.createHmac(hmacInput, derivedKeys.hmacKey());
+        }
 
-        byte[] messageToSign = concat(hmac, cypherText);
+        byte[] messageToSign = getMessageToSign(version, hmac, iv, cypherText);
         byte[] signature = SignatureUtil.sign(messageToSign, senderKeyPair.getPrivate());
-        return new ConfidentialData(encodedSenderPublicKey, hmac, iv, cypherText, signature);
+        return new ConfidentialData(version, encodedSenderPublicKey, hmac, iv, cypherText, signature);
     }
 
-    private static byte[] getHmacInput(byte[] iv, byte[] cypherText, byte[] senderPublicKey, byte[] receiverPublicKey) {
-        return concat(iv, cypherText, senderPublicKey, receiverPublicKey);
+    private static void verifySignature(ConfidentialData confidentialData, PublicKey senderPublicKey)
+            throws GeneralSecurityException {
+        checkArgument(ConfidentialData.isSupportedVersion(confidentialData.version()), "Unsupported version");
+        byte[] messageToVerify = getMessageToSign(confidentialData.version(),
+                confidentialData.hmac(),
+                confidentialData.iv(),
+                confidentialData.cypherText());
+        checkArgument(SignatureUtil.verify(messageToVerify, confidentialData.signature(), senderPublicKey), "Invalid signature");
     }
 
-    public static byte[] decryptAndVerify(ConfidentialData confidentialData, KeyPair receiversKeyPair) throws GeneralSecurityException {
-        byte[] encodedSenderPublicKey = confidentialData.encodedSenderPublicKey();
-        byte[] hmac = confidentialData.hmac();
+    private static byte[] decrypt(ConfidentialData confidentialData,
+                                  byte[] encodedReceiverPublicKey,
+                                  DerivedKeys derivedKeys) throws GeneralSecurityException {
         byte[] iv = confidentialData.iv();
         byte[] cypherText = confidentialData.cypherText();
-        byte[] signature = confidentialData.signature();
+        if (confidentialData.isAead()) {
+            byte[] associatedData = getAssociatedData(confidentialData.version(),
+                    confidentialData.encodedSenderPublicKey(),
+                    encodedReceiverPublicKey);
+            try {
+                return SymEncryption.decryptAead(cypherText, derivedKeys.aeadKey(), iv, associatedData);
+            } catch (AEADBadTagException e) {
+                throw new IllegalArgumentException("Invalid authentication tag", e);
+            }
+        }
 
-        PublicKey senderPublicKey = KeyGeneration.generatePublic(encodedSenderPublicKey);
-        byte[] messageToVerify = concat(hmac, cypherText);
-        checkArgument(SignatureUtil.verify(messageToVerify, signature, senderPublicKey), "Invalid signature");
+        byte[] hmac = confidentialData.hmac();
+        byte[] input = getHmacInput(iv, cypherText, confidentialData.encodedSenderPublicKey(), encodedReceiverPublicKey);
+        checkArgument(HmacUtil.verifyHmac(input, derivedKeys.hmacKey(), hmac), "Invalid Hmac");
 
-        // Create shared secret with our private key and senders public key
-        byte[] sharedSecret = SymEncryption.generateSharedSecret(receiversKeyPair.getPrivate(), senderPublicKey);
+        return SymEncryption.decrypt(cypherText, derivedKeys.sessionKey(), new IvParameterSpec(iv));
+    }
 
-        Pair<byte[], byte[]> tuple = deriveKeyMaterial(sharedSecret);
-        SecretKey hmacKey = SymEncryption.generateAESKey(tuple.first());
-        SecretKey sessionKey = SymEncryption.generateAESKey(tuple.second());
+    // VERSION_1 signs the hmac and cypherText. As VERSION_2 has no hmac, we sign the hash of the nonce and cypherText
+    // (which contains the authentication tag). The hash is computed with the default provider which uses the SHA
+    // intrinsics of the CPU. Otherwise, the hashing inside the BC signature would dominate for large messages.
+    private static byte[] getMessageToSign(int version, byte[] hmac, byte[] iv, byte[] cypherText)
+            throws NoSuchAlgorithmException {
+        if (version == ConfidentialData.VERSION_2) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(iv);
+            return digest.digest(cypherText);
+        }
+        return concat(hmac, cypherText);
+    }
 
-        byte[] encodedReceiverPublicKey = receiversKeyPair.getPublic().getEncoded();
-        byte[] input = getHmacInput(iv, cypherText, encodedSenderPublicKey, encodedReceiverPublicKey);
-        checkArgument(HmacUtil.verifyHmac(input, hmacKey, hmac), "Invalid Hmac");
+    private static byte[] getAssociatedData(int version, byte[] senderPublicKey, byte[] receiverPublicKey) {
+        return concat(Ints.toByteArray(version), senderPublicKey, receiverPublicKey);
+    }
 
-        return SymEncryption.decrypt(cypherText, sessionKey, new IvParameterSpec(iv));
+    private static byte[] getHmacInput(byte[] iv, byte[] cypherText, byte[] senderPublicKey, byte[] receiverPublicKey) {
+        return concat(iv, cypherText, senderPublicKey, receiverPublicKey);
     }
 
     private static Pair<byte[], byte[]> deriveKeyMaterial(byte[] input) {
@@ -0,0 +1,95 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.security;
+
+import bisq.common.data.ByteArray;
+
+import javax.crypto.SecretKey;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the decoded public keys of peers and the hmac, session and AEAD keys derived from the ECDH shared secret with
+ * them, so repeated messages between the same key pairs do not need a key agreement and key derivation each time.
+ * <p>
+ * The derived keys are mapped by our public key and the peers public key. As ECDH is symmetric, both sides derive
+ * the same keys. Both maps are bounded and evict the least recently used entry.
+ * <p>
+ * Values are computed outside the lock. Concurrent misses for the same key might compute the value twice, which is
+ * harmless as the result is the same.
+ */
+public class SharedKeyCache {
+    public record DerivedKeys(SecretKey hmacKey, SecretKey sessionKey, SecretKey aeadKey) {
+    }
+
+    private record KeyPairId(ByteArray localPublicKey, ByteArray remotePublicKey) {
+    }
+
+    private final Map<ByteArray, PublicKey> publicKeys;
+    private final Map<KeyPairId, DerivedKeys> derivedKeys;
+
+    public SharedKeyCache(int maxSize) {
+        publicKeys = createLruMap(maxSize);
+        derivedKeys = createLruMap(maxSize);
+    }
+
+    public PublicKey getPublicKey(byte[] encodedPublicKey) throws GeneralSecurityException {
+        ByteArray key = new ByteArray(encodedPublicKey);
+        PublicKey publicKey = publicKeys.get(key);
+        if (publicKey == null) {
+            publicKey = KeyGeneration.generatePublic(encodedPublicKey);
+            publicKeys.put(key, publicKey);
+        }
+        return publicKey;
+    }
+
+    public DerivedKeys getDerivedKeys(KeyPair localKeyPair,
+                                      byte[] encodedLocalPublicKey,
+                                      PublicKey remotePublicKey,
+                                      byte[] encodedRemotePublicKey) throws GeneralSecurityException {
+        KeyPairId key = new KeyPairId(new ByteArray(encodedLocalPublicKey), new ByteArray(encodedRemotePublicKey));
+        DerivedKeys keys = derivedKeys.get(key);
+        if (keys == null) {
+            keys = HybridEncryption.deriveKeys(localKeyPair, remotePublicKey);
+            derivedKeys.put(key, keys);
+        }
+        return keys;
+    }
+
+    public int size() {
+        return derivedKeys.size();
+    }
+
+    public void clear() {
+        publicKeys.clear();
+        derivedKeys.clear();
+    }
+
+    private static <K, V> Map<K, V> createLruMap(int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+}
@@ -24,6 +24,16 @@ import java.security.*;
 public class SignatureUtil {
     public static final String ECDSA = "SHA256withECDSA";
 
+    // Signature.getInstance does a provider lookup which is costly compared to the verification of small messages.
+    // Signature objects are not thread safe, so we cache one instance per thread.
+    private static final ThreadLocal<Signature> VERIFIER = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance(ECDSA, "BC");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
     static {
         if (java.security.Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
             Security.addProvider(new BouncyCastleProvider());
@@ -38,7 +48,7 @@ public class SignatureUtil {
     }
 
     public static boolean verify(byte[] message, byte[] signature, PublicKey publicKey) throws GeneralSecurityException {
-        Signature sig = Signature.getInstance(ECDSA, "BC");
+        Signature sig = VERIFIER.get();
         sig.initVerify(publicKey);
         sig.update(message);
         return sig.verify(signature);
@@ -23,6 +23,7 @@ import javax.crypto.Cipher;
 import javax.crypto.KeyAgreement;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.security.*;
@@ -35,8 +36,19 @@ class SymEncryption {
     }
 
     static final String CIPHER_ALGO = "AES/CBC/PKCS5Padding";
+    static final String AEAD_CIPHER_ALGO = "AES/GCM/NoPadding";
     static final String AES = "AES";
     static final int KEY_SIZE = 256;
+    static final int NONCE_SIZE = 12;
+    static final int TAG_SIZE_IN_BITS = 128;
+
+    // SecureRandom.nextBytes does not block, in contrast to generateSeed which might wait for entropy.
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+    // Cipher.getInstance is expensive and a Cipher is not thread safe, so we reuse one instance per thread.
+    private static final ThreadLocal<Cipher> CIPHER = ThreadLocal.withInitial(() -> getCipher(CIPHER_ALGO, "BC"));
+    // We use the default provider for GCM as it uses the hardware acceleration of the CPU.
+    private static final ThreadLocal<Cipher> AEAD_CIPHER =
+            ThreadLocal.withInitial(() -> getCipher(AEAD_CIPHER_ALGO, ""));
 
     static SecretKey generateAESKey() throws NoSuchAlgorithmException {
         return generateKey(KEY_SIZE);
@@ -60,18 +72,60 @@ class SymEncryption {
     }
 
     static IvParameterSpec generateIv() {
-        return new IvParameterSpec(new SecureRandom().generateSeed(16));
+        byte[] iv = new byte[16];
+        SECURE_RANDOM.nextBytes(iv);
+        return new IvParameterSpec(iv);
+    }
+
+    /**
+     * A random nonce is safe as long as we do not encrypt more than 2^32 messages with the same key.
+     */
+    static byte[] generateNonce() {
+        byte[] nonce = new byte[NONCE_SIZE];
+        SECURE_RANDOM.nextBytes(nonce);
+        return nonce;
     }
 
     static byte[] encrypt(byte[] message, SecretKey secretKey, IvParameterSpec iv) throws GeneralSecurityException {
-        Cipher cipher = Cipher.getInstance(CIPHER_ALGO, "BC");
+        Cipher cipher = CIPHER.get();
         cipher.init(Cipher.ENCRYPT_MODE, secretKey, iv);
         return cipher.doFinal(message);
     }
 
     static byte[] decrypt(byte[] encrypted, SecretKey secretKey, IvParameterSpec iv) throws GeneralSecurityException {
-        Cipher cipher = Cipher.getInstance(CIPHER_ALGO, "BC");
+        Cipher cipher = CIPHER.get();
         cipher.init(Cipher.DECRYPT_MODE, secretKey, iv);
         return cipher.doFinal(encrypted);
     }
+
+    /**
+     * @return The cypherText with the authentication tag appended.
+     */
+    static byte[] encryptAead(byte[] message, SecretKey secretKey, byte[] nonce, byte[] associatedData)
+            throws GeneralSecurityException {
+        Cipher cipher = AEAD_CIPHER.get();
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(TAG_SIZE_IN_BITS, nonce));
+        cipher.updateAAD(associatedData);
+        return cipher.doFinal(message);
+    }
+
+    /**
+     * @throws javax.crypto.AEADBadTagException if the authentication tag is invalid.
+     */
+    static byte[] decryptAead(byte[] encrypted, SecretKey secretKey, byte[] nonce, byte[] associatedData)
+            throws GeneralSecurityException {
+        Cipher cipher = AEAD_CIPHER.get();
+        cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(TAG_SIZE_IN_BITS, nonce));
+        cipher.updateAAD(associatedData);
+        return cipher.doFinal(encrypted);
+    }
+
+    // An empty provider uses the default provider
+    private static Cipher getCipher(String algorithm, String provider) {
+        try {
+            return provider.isEmpty() ? Cipher.getInstance(algorithm) : Cipher.getInstance(algorithm, provider);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cipher " + algorithm + " not available", e);
+        }
+    }
 }
@@ -37,12 +37,22 @@ public class HybridEncryptionTest {
         KeyPair keyPairSender = KeyGeneration.generateKeyPair();
         KeyPair keyPairReceiver = KeyGeneration.generateKeyPair();
 
-        ConfidentialData confidentialData = HybridEncryption.encryptAndSign(message, keyPairReceiver.getPublic(), keyPairSender);
+        // Older versions cannot decrypt VERSION_2, so it must only be used if requested
+        assertEquals(ConfidentialData.VERSION_1,
+                HybridEncryption.encryptAndSign(message, keyPairReceiver.getPublic(), keyPairSender).version());
+
+        ConfidentialData confidentialData = HybridEncryption.encryptAndSign(ConfidentialData.VERSION_2,
+                message,
+                keyPairReceiver.getPublic(),
+                keyPairSender,
+                new SharedKeyCache(10));
+        assertEquals(ConfidentialData.VERSION_2, confidentialData.version());
         PublicKey senderPublicKey = keyPairSender.getPublic();
         byte[] decrypted = HybridEncryption.decryptAndVerify(confidentialData, keyPairReceiver);
         assertArrayEquals(message, decrypted);
 
         // failure cases
+        int version = confidentialData.version();
         byte[] encodedSenderPublicKey = confidentialData.encodedSenderPublicKey();
         byte[] hmac = confidentialData.hmac();
         byte[] iv = confidentialData.iv();
@@ -52,7 +62,7 @@ public class HybridEncryptionTest {
         KeyPair fakeKeyPair = KeyGeneration.generateKeyPair();
         byte[] bitStream = ByteArrayUtils.concat(hmac, cypherText);
         byte[] fakeSignature = SignatureUtil.sign(bitStream, fakeKeyPair.getPrivate());
-        ConfidentialData withFakeSigAndPubKey = new ConfidentialData(encodedSenderPublicKey, hmac, iv, cypherText, fakeSignature);
+        ConfidentialData withFakeSigAndPubKey = new ConfidentialData(version, encodedSenderPublicKey, hmac, iv, cypherText, fakeSignature);
         try {
             // Expect to fail as pub key in method call not matching the one in sealed data
             HybridEncryption.decryptAndVerify(withFakeSigAndPubKey, keyPairReceiver);
@@ -63,7 +73,7 @@ public class HybridEncryptionTest {
 
         // fake sig or fake signed message throw SignatureException
         try {
-            ConfidentialData withFakeSig = new ConfidentialData(encodedSenderPublicKey, hmac, iv, cypherText, "signature".getBytes());
+            ConfidentialData withFakeSig = new ConfidentialData(version, encodedSenderPublicKey, hmac, iv, cypherText, "signature".getBytes());
             HybridEncryption.decryptAndVerify(withFakeSig, keyPairReceiver);
             fail();
         } catch (Throwable e) {
@@ -72,20 +82,181 @@ public class HybridEncryptionTest {
 
         // fake iv
         try {
-            ConfidentialData withFakeIv = new ConfidentialData(encodedSenderPublicKey, hmac, "iv".getBytes(), cypherText, signature);
+            ConfidentialData withFakeIv = new ConfidentialData(version, encodedSenderPublicKey, hmac, "iv".getBytes(), cypherText, signature);
             HybridEncryption.decryptAndVerify(withFakeIv, keyPairReceiver);
             fail();
         } catch (Throwable e) {
             assertTrue(e instanceof IllegalArgumentException);
         }
 
+        // modified cypherText with a valid signature fails at the authentication tag
+        byte[] modifiedCypherText = cypherText.clone();
+        modifiedCypherText[0] ^= 1;
+        byte[] signatureOfModified = SignatureUtil.sign(DigestUtil.sha256(ByteArrayUtils.concat(iv, modifiedCypherText)), keyPairSender.getPrivate());
+        ConfidentialData withModifiedCypherText = new ConfidentialData(version, encodedSenderPublicKey, hmac, iv, modifiedCypherText, signatureOfModified);
+        assertThrows(IllegalArgumentException.class, () -> HybridEncryption.decryptAndVerify(withModifiedCypherText, keyPairReceiver));
+
+        // unknown versions
+        for (int unknownVersion : new int[]{-1, 3, Integer.MIN_VALUE}) {
+            ConfidentialData withUnknownVersion = new ConfidentialData(unknownVersion, encodedSenderPublicKey, hmac, iv, cypherText, signature);
+            assertThrows(IllegalArgumentException.class, () -> HybridEncryption.decryptAndVerify(withUnknownVersion, keyPairReceiver));
+        }
+        assertThrows(IllegalArgumentException.class, () -> HybridEncryption.encryptAndSign(0,
+                message,
+                keyPairReceiver.getPublic(),
+                keyPairSender,
+                new SharedKeyCache(10)));
+    }
+
+    @Test
+    public void testDecryptVersion1() throws GeneralSecurityException {
+        byte[] message = "hello".getBytes();
+        KeyPair keyPairSender = KeyGeneration.generateKeyPair();
+        KeyPair keyPairReceiver = KeyGeneration.generateKeyPair();
+
+        ConfidentialData confidentialData = encryptVersion1(message, keyPairReceiver, keyPairSender);
+        assertArrayEquals(message, HybridEncryption.decryptAndVerify(confidentialData, keyPairReceiver));
+        assertArrayEquals(message, HybridEncryption.decryptAndVerify(confidentialData, keyPairReceiver, new SharedKeyCache(10)));
+
+        // Data serialized before we added the version gets version 0
+        ConfidentialData withoutVersion = new ConfidentialData(0,
+                confidentialData.encodedSenderPublicKey(),
+                confidentialData.hmac(),
+                confidentialData.iv(),
+                confidentialData.cypherText(),
+                confidentialData.signature());
+        assertArrayEquals(message, HybridEncryption.decryptAndVerify(withoutVersion, keyPairReceiver));
+
         // fake hmac
         try {
-            ConfidentialData withFakeHmac = new ConfidentialData(encodedSenderPublicKey, "hmac".getBytes(), iv, cypherText, signature);
+            ConfidentialData withFakeHmac = new ConfidentialData(confidentialData.encodedSenderPublicKey(),
+                    "hmac".getBytes(),
+                    confidentialData.iv(),
+                    confidentialData.cypherText(),
+                    confidentialData.signature());
             HybridEncryption.decryptAndVerify(withFakeHmac, keyPairReceiver);
             fail();
         } catch (Throwable e) {
             assertTrue(e instanceof IllegalArgumentException);
         }
     }
+
+    private static ConfidentialData encryptVersion1(byte[] message, KeyPair keyPairReceiver, KeyPair keyPairSender)
+            throws GeneralSecurityException {
+        return HybridEncryption.encryptAndSign(ConfidentialData.VERSION_1,
+                message,
+                keyPairSender,
+                keyPairSender.getPublic().getEncoded(),
+                keyPairReceiver.getPublic().getEncoded(),
+                HybridEncryption.deriveKeys(keyPairSender, keyPairReceiver.getPublic()));
+    }
+
+    @Test
+    public void testHybridEncryptionWithSharedKeyCache() throws GeneralSecurityException {
+        byte[] message = "hello".getBytes();
+        KeyPair keyPairSender = KeyGeneration.generateKeyPair();
+        KeyPair keyPairReceiver = KeyGeneration.generateKeyPair();
+        SharedKeyCache senderCache = new SharedKeyCache(10);
+        SharedKeyCache receiverCache = new SharedKeyCache(10);
+
+        for (int i = 0; i < 3; i++) {
+            ConfidentialData confidentialData = HybridEncryption.encryptAndSign(message, keyPairReceiver.getPublic(), keyPairSender, senderCache);
+            assertArrayEquals(message, HybridEncryption.decryptAndVerify(confidentialData, keyPairReceiver, receiverCache));
+            // Compatible with the non-cached version
+            assertArrayEquals(message, HybridEncryption.decryptAndVerify(confidentialData, keyPairReceiver));
+        }
+        assertEquals(1, senderCache.size());
+        assertEquals(1, receiverCache.size());
+
+        // A message from another sender must not use the keys of the first sender
+        KeyPair keyPairOtherSender = KeyGeneration.generateKeyPair();
+        ConfidentialData fromOtherSender = HybridEncryption.encryptAndSign(message, keyPairReceiver.getPublic(), keyPairOtherSender);
+        assertArrayEquals(message, HybridEncryption.decryptAndVerify(fromOtherSender, keyPairReceiver, receiverCache));
+        assertEquals(2, receiverCache.size());
+
+        // Invalid signature does not add an entry
+        ConfidentialData withFakeSig = new ConfidentialData(KeyGeneration.generateKeyPair().getPublic().getEncoded(),
+                fromOtherSender.hmac(),
+                fromOtherSender.iv(),
+                fromOtherSender.cypherText(),
+                fromOtherSender.signature());
+        assertThrows(IllegalArgumentException.class, () -> HybridEncryption.decryptAndVerify(withFakeSig, keyPairReceiver, receiverCache));
+        assertEquals(2, receiverCache.size());
+    }
+
+    // Messages per second on one thread for repeated messages to the same peer. Not run by default.
+    // @Test
+    public void benchmarkRepeatedPeer() throws GeneralSecurityException {
+        byte[] message = new byte[1000];
+        KeyPair keyPairSender = KeyGeneration.generateKeyPair();
+        KeyPair keyPairReceiver = KeyGeneration.generateKeyPair();
+        SharedKeyCache senderCache = new SharedKeyCache(10);
+        SharedKeyCache receiverCache = new SharedKeyCache(10);
+        int iterations = 2000;
+        for (int run = 0; run < 2; run++) {
+            long ts = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                ConfidentialData confidentialData = HybridEncryption.encryptAndSign(message, keyPairReceiver.getPublic(), keyPairSender);
+                HybridEncryption.decryptAndVerify(confidentialData, keyPairReceiver);
+            }
+            long uncached = System.nanoTime() - ts;
+
+            ts = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                ConfidentialData confidentialData = HybridEncryption.encryptAndSign(message, keyPairReceiver.getPublic(), keyPairSender, senderCache);
+                HybridEncryption.decryptAndVerify(confidentialData, keyPairReceiver, receiverCache);
+            }
+            long cached = System.nanoTime() - ts;
+            log.info("Encrypt and decrypt of {} messages per second: uncached={}, cached={}",
+                    iterations, iterations * 1_000_000_000L / uncached, iterations * 1_000_000_000L / cached);
+        }
+    }
+
+    // Compares VERSION_1 and VERSION_2 for different message sizes. Keys are derived once, so we measure the
+    // symmetric encryption, authentication and the signature. Not run by default.
+    // @Test
+    public void benchmarkVersions() throws GeneralSecurityException {
+        KeyPair keyPairSender = KeyGeneration.generateKeyPair();
+        KeyPair keyPairReceiver = KeyGeneration.generateKeyPair();
+        SharedKeyCache receiverCache = new SharedKeyCache(10);
+        SharedKeyCache.DerivedKeys derivedKeys = HybridEncryption.deriveKeys(keyPairSender, keyPairReceiver.getPublic());
+        byte[] encodedSenderPublicKey = keyPairSender.getPublic().getEncoded();
+        byte[] encodedReceiverPublicKey = keyPairReceiver.getPublic().getEncoded();
+        // Warm up, so that the JIT uses the AES intrinsics for both versions
+        byte[] warmUpMessage = new byte[16 * 1024];
+        for (int i = 0; i < 3000; i++) {
+            for (int version = ConfidentialData.VERSION_1; version <= ConfidentialData.VERSION_2; version++) {
+                ConfidentialData confidentialData = HybridEncryption.encryptAndSign(version,
+                        warmUpMessage,
+                        keyPairSender,
+                        encodedSenderPublicKey,
+                        encodedReceiverPublicKey,
+                        derivedKeys);
+                HybridEncryption.decryptAndVerify(confidentialData, keyPairReceiver, receiverCache);
+            }
+        }
+
+        for (int size : new int[]{1024, 64 * 1024, 1024 * 1024}) {
+            byte[] message = new byte[size];
+            int iterations = Math.max(50, 20_000_000 / size);
+            for (int run = 0; run < 5; run++) {
+                long[] nanos = new long[2];
+                for (int version = ConfidentialData.VERSION_1; version <= ConfidentialData.VERSION_2; version++) {
+                    long ts = System.nanoTime();
+                    for (int i = 0; i < iterations; i++) {
+                        ConfidentialData confidentialData = HybridEncryption.encryptAndSign(version,
+                                message,
+                                keyPairSender,
+                                encodedSenderPublicKey,
+                                encodedReceiverPublicKey,
+                                derivedKeys);
+                        HybridEncryption.decryptAndVerify(confidentialData, keyPairReceiver, receiverCache);
+                    }
+                    nanos[version - 1] = (System.nanoTime() - ts) / iterations;
+                }
+                log.info("Message size {} bytes: version 1 {} us/op, version 2 {} us/op",
+                        size, nanos[0] / 1000, nanos[1] / 1000);
+            }
+        }
+    }
 }
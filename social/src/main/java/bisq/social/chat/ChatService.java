@@ -23,6 +23,7 @@ import bisq.identity.IdentityService;
 import bisq.network.NetworkService;
 import bisq.network.p2p.message.Message;
 import bisq.network.p2p.services.confidential.MessageListener;
+import bisq.network.p2p.services.data.storage.StorageService;
 import bisq.persistence.Persistence;
 import bisq.persistence.PersistenceClient;
 import bisq.persistence.PersistenceService;
@@ -65,6 +66,8 @@ public class ChatService implements PersistenceClient<ChatModel>, MessageListene
         persistence = persistenceService.getOrCreatePersistence(this, "db", chatModel);
 
         networkService.addMessageListener(this);
+        // The chat history is the largest part of the inventory. We let our peers receive other data like offers first.
+        networkService.setInventoryPriority(ChatMessage.class.getSimpleName(), StorageService.LOW_INVENTORY_PRIORITY);
     }
 
 
@@ -117,7 +117,10 @@ public class MultiNodesModel {
                 if (delay > 0) {
                     int delayMs = (i + 1) * delay;
                     long randDelay = new Random().nextInt(delayMs) + 1;
-                    Scheduler.run(() -> bootstrap(address, transportType)).name("monitor-bootstrap-" + address).after(randDelay);
+                    Scheduler.run(() -> bootstrap(address, transportType))
+                            .executor(NetworkService.NETWORK_IO_POOL)
+                            .name("monitor-bootstrap-" + address)
+                            .after(randDelay);
                 } else {
                     bootstrap(address, transportType);
                 }
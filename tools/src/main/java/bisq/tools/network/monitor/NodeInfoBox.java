@@ -62,7 +62,7 @@ public class NodeInfoBox extends VBox {
     }
 
     public void onData(NetworkPayload networkPayload) {
-        byte[] hash = DigestUtil.hash(networkPayload.serialize());
+        byte[] hash = networkPayload.getHash();
         String id = Hex.encode(hash).substring(0, 8);
         int red = 128 + new BigInteger(hash).mod(BigInteger.valueOf(128)).intValue();
         hash = DigestUtil.hash(hash);